@@ -140,7 +140,8 @@ public class AnnotationInstanceInfo implements Resolvable {
     ArrayList<AnnotationInstanceInfo> list = new ArrayList<AnnotationInstanceInfo>();
     if (annotations != null) {
       for (AnnotationInstanceInfo info : annotations) {
-        if (Doclava.showAnnotations.contains(info.type().qualifiedName())) {
+        if (info.type() != null
+            && Doclava.showAnnotations.contains(info.type().qualifiedName())) {
           list.add(info);
         }
       }
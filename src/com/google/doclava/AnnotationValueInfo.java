@@ -57,7 +57,8 @@ public class AnnotationValueInfo implements Resolvable {
   public String valueString() {
     Object v = mValue;
     if (v instanceof TypeInfo) {
-      return ((TypeInfo) v).fullName();
+      // a class literal, which the stubs have to write as one
+      return ((TypeInfo) v).fullName() + ".class";
     } else if (v instanceof FieldInfo) {
       StringBuilder str = new StringBuilder();
       FieldInfo f = (FieldInfo) v;
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.doclava.Errors.ErrorMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks run over the classes of the api before the stubs and api files are written.
+ * <p>
+ * A {@link Check} looks at one class at a time and reports what it finds through
+ * {@link Errors#error}; it must not change the class. {@link #run} hands the classes to
+ * {@link Doclava#threads} workers, each of which captures its errors privately. The
+ * captured errors are merged into {@link Errors} once every worker is done, and since the errors
+ * are kept sorted by position and message, what is reported does not depend on the number of
+ * threads or on which worker checked which class.
+ */
+public class ApiLint {
+  public interface Check {
+    void check(ClassInfo cl);
+  }
+
+  /**
+   * Complains about the hidden or removed methods, return types and parameter types that a
+   * visible class refers to.
+   */
+  public static final Check UNAVAILABLE_SYMBOLS = new Check() {
+    public void check(ClassInfo cl) {
+      if (cl.isHiddenOrRemoved()) {
+        return;
+      }
+      for (MethodInfo m : cl.selfMethods()) {
+        if (m.isHiddenOrRemoved()) {
+          Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Reference to unavailable method "
+              + m.name());
+        }
+
+        ClassInfo returnClass = m.returnType().asClassInfo();
+        if (returnClass != null && returnClass.isHiddenOrRemoved()) {
+          Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Method " + cl.qualifiedName()
+              + "." + m.name() + " returns unavailable type " + returnClass.name());
+        }
+
+        for (ParameterInfo p :  m.parameters()) {
+          TypeInfo t = p.type();
+          if (!t.isPrimitive()) {
+            if (t.asClassInfo() != null && t.asClassInfo().isHiddenOrRemoved()) {
+              Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Parameter of unavailable type "
+                  + t.fullName() + " in " + cl.qualifiedName() + "." + m.name() + "()");
+            }
+          }
+        }
+      }
+
+      // annotations are handled like methods
+      for (MethodInfo m : cl.annotationElements()) {
+        if (m.isHiddenOrRemoved()) {
+          Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Reference to unavailable annotation "
+              + m.name());
+        }
+
+        ClassInfo returnClass = m.returnType().asClassInfo();
+        if (returnClass != null && returnClass.isHiddenOrRemoved()) {
+          Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Annotation '" + m.name()
+              + "' returns unavailable type " + returnClass.name());
+        }
+
+        for (ParameterInfo p :  m.parameters()) {
+          TypeInfo t = p.type();
+          if (!t.isPrimitive()) {
+            if (t.asClassInfo() != null && t.asClassInfo().isHiddenOrRemoved()) {
+              Errors.error(Errors.UNAVAILABLE_SYMBOL, p.position(),
+                  "Reference to unavailable annotation class " + t.fullName());
+            }
+          }
+        }
+      }
+    }
+  };
+
+  /**
+   * Reports the deprecated public methods of visible classes, and the deprecated hidden classes.
+   */
+  public static final Check DEPRECATIONS = new Check() {
+    public void check(ClassInfo cl) {
+      if (!cl.isHiddenOrRemoved()) {
+        for (MethodInfo m : cl.selfMethods()) {
+          // don't bother reporting deprecated methods
+          // unless they are public
+          if (!m.isHiddenOrRemoved() && m.isDeprecated()) {
+            Errors.error(Errors.DEPRECATED, m.position(), "Method " + cl.qualifiedName() + "."
+                + m.name() + " is deprecated");
+          }
+        }
+      } else if (cl.isDeprecated()) {
+        // not hidden, but deprecated
+        Errors.error(Errors.DEPRECATED, cl.position(), "Class " + cl.qualifiedName()
+            + " is deprecated");
+      }
+    }
+  };
+
+  /** The checks run on the classes the stubs are written for. */
+  public static final List<Check> STUB_CHECKS =
+      Collections.unmodifiableList(Arrays.asList(UNAVAILABLE_SYMBOLS, DEPRECATIONS));
+
+  /**
+   * Runs every one of {@code checks} on every one of {@code classes}, on
+   * {@link Doclava#threads} threads.
+   */
+  public static void run(Collection<ClassInfo> classes, final List<Check> checks) {
+    List<ClassInfo> list = new ArrayList<ClassInfo>(classes);
+    int threads = Math.min(Doclava.threads, list.size());
+    if (threads <= 1) {
+      checkAll(list, checks);
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Set<ErrorMessage>>> chunks = new ArrayList<Future<Set<ErrorMessage>>>();
+    try {
+      int chunkSize = (list.size() + threads - 1) / threads;
+      for (int start = 0; start < list.size(); start += chunkSize) {
+        final List<ClassInfo> chunk = list.subList(start, Math.min(start + chunkSize, list.size()));
+        chunks.add(executor.submit(new Callable<Set<ErrorMessage>>() {
+          public Set<ErrorMessage> call() {
+            Set<ErrorMessage> errors;
+            Errors.beginCapture();
+            try {
+              checkAll(chunk, checks);
+            } finally {
+              errors = Errors.endCapture();
+            }
+            return errors;
+          }
+        }));
+      }
+      for (Future<Set<ErrorMessage>> chunk : chunks) {
+        Errors.addErrors(chunk.get());
+      }
+    } catch (InterruptedException e) {
+      // the errors of the chunks not merged yet would be lost, and the build would pass
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted checking the api", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("error checking the api", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void checkAll(List<ClassInfo> classes, List<Check> checks) {
+    for (ClassInfo cl : classes) {
+      for (Check check : checks) {
+        check.check(cl);
+      }
+    }
+  }
+
+  private ApiLint() {} // non-instantiable
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Writes the text of an api file, such as {@code api.txt} or {@code removed.txt}, as UTF-8.
+ * <p>
+ * Text is copied into a char buffer and encoded straight into a byte buffer that is reused for
+ * the whole file, so writing a line allocates nothing beyond the strings the model already holds.
+ * The full names of types that involve no type variables do not depend on the method they appear
+ * in, so each is built once and kept; names with type variables are built every time, exactly as
+ * the rest of doclava builds them.
+ * <p>
+ * Like {@link java.io.PrintStream}, this never throws; {@link #checkError()} tells whether
+ * writing failed.
+ * <p>
+ * The api files used to be written through a {@link java.io.PrintStream} in the platform's
+ * default charset. They are now UTF-8 whatever the platform, even when written to a PrintStream
+ * by {@link Stubs#writeApi}, and {@link com.google.doclava.apicheck.ApiFile} reads them as UTF-8.
+ * Files that are all ASCII, as api files nearly always are, come out the same as before.
+ */
+public class ApiTextWriter {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final OutputStream mOut;
+  private final char[] mChars = new char[BUFFER_SIZE];
+  /** Room for every char of {@link #mChars} as three bytes, plus a split surrogate pair. */
+  private final byte[] mBytes = new byte[BUFFER_SIZE * 3 + 4];
+  private int mCount;
+  /** The high surrogate ending the last buffer flushed, or 0. */
+  private char mPendingHighSurrogate;
+  private boolean mError;
+
+  /** The full names of types without type variables; null for those with type variables. */
+  private final IdentityHashMap<TypeInfo, String> mTypeNames =
+      new IdentityHashMap<TypeInfo, String>();
+
+  public ApiTextWriter(OutputStream out) {
+    mOut = out;
+  }
+
+  public ApiTextWriter print(String s) {
+    return print(s, 0, s.length());
+  }
+
+  public ApiTextWriter print(String s, int start, int end) {
+    while (start < end) {
+      if (mCount == mChars.length) {
+        flushBuffer();
+      }
+      int n = Math.min(end - start, mChars.length - mCount);
+      s.getChars(start, start + n, mChars, mCount);
+      mCount += n;
+      start += n;
+    }
+    return this;
+  }
+
+  public ApiTextWriter print(char c) {
+    if (mCount == mChars.length) {
+      flushBuffer();
+    }
+    mChars[mCount++] = c;
+    return this;
+  }
+
+  public ApiTextWriter print(int i) {
+    return print(Integer.toString(i));
+  }
+
+  /**
+   * Writes {@code value} as lowercase hex digits, zero-padded to {@code width}.
+   */
+  public ApiTextWriter printHex(long value, int width) {
+    String digits = Long.toHexString(value);
+    for (int i = digits.length(); i < width; i++) {
+      print('0');
+    }
+    return print(digits);
+  }
+
+  /**
+   * Writes the full name of {@code type} as it appears in the signature of {@code method}, that
+   * is {@link TypeInfo#fullName(HashSet)} with the method's {@link MethodInfo#typeVariables()},
+   * or {@link TypeInfo#fullName()} if {@code method} is null.
+   */
+  public ApiTextWriter printTypeName(TypeInfo type, MethodInfo method) {
+    String name = cachedTypeName(type);
+    if (name == null) {
+      name = method != null ? type.fullName(method.typeVariables()) : type.fullName();
+    }
+    return print(name);
+  }
+
+  /**
+   * Writes {@link TypeInfo#fullNameNoDimension(HashSet)} of {@code type} as it appears in the
+   * signature of {@code method}.
+   */
+  public ApiTextWriter printTypeNameNoDimension(TypeInfo type, MethodInfo method) {
+    String name = cachedTypeName(type);
+    if (name != null) {
+      return print(name, 0, name.length() - type.dimension().length());
+    }
+    return print(type.fullNameNoDimension(method.typeVariables()));
+  }
+
+  /**
+   * @return the full name of {@code type} if it involves no type variables, or null
+   */
+  private String cachedTypeName(TypeInfo type) {
+    if (mTypeNames.containsKey(type)) {
+      return mTypeNames.get(type);
+    }
+    String name = hasTypeVariables(type) ? null : type.fullName(new HashSet<String>());
+    mTypeNames.put(type, name);
+    return name;
+  }
+
+  private static boolean hasTypeVariables(TypeInfo type) {
+    if (type.isTypeVariable()) {
+      return true;
+    }
+    return hasTypeVariables(type.typeArguments()) || hasTypeVariables(type.superBounds())
+        || hasTypeVariables(type.extendsBounds());
+  }
+
+  private static boolean hasTypeVariables(ArrayList<TypeInfo> types) {
+    if (types != null) {
+      for (TypeInfo type : types) {
+        if (hasTypeVariables(type)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public void flush() {
+    flushBuffer();
+    try {
+      mOut.flush();
+    } catch (IOException e) {
+      mError = true;
+    }
+  }
+
+  public void close() {
+    // a high surrogate is only held back once the buffer is encoded, and nothing follows it now
+    flushBuffer();
+    if (mPendingHighSurrogate != 0) {
+      mPendingHighSurrogate = 0;
+      print('?');
+    }
+    flush();
+    try {
+      mOut.close();
+    } catch (IOException e) {
+      mError = true;
+    }
+  }
+
+  /**
+   * @return true if writing to the underlying stream has failed
+   */
+  public boolean checkError() {
+    return mError;
+  }
+
+  /**
+   * Encodes the buffered chars as UTF-8 and writes them out. A high surrogate at the end of the
+   * buffer is held back until the low surrogate that follows it arrives.
+   */
+  private void flushBuffer() {
+    char[] chars = mChars;
+    byte[] bytes = mBytes;
+    int n = 0;
+    int end = mCount;
+    int i = 0;
+    if (mPendingHighSurrogate != 0) {
+      if (end > 0) {
+        n = encode(mPendingHighSurrogate, chars[0], bytes, n);
+        if (Character.isLowSurrogate(chars[0])) {
+          i = 1;
+        }
+        mPendingHighSurrogate = 0;
+      }
+    }
+    for (; i < end; i++) {
+      char c = chars[i];
+      if (c < 0x80) {
+        bytes[n++] = (byte) c;
+      } else if (Character.isHighSurrogate(c) && i + 1 == end) {
+        mPendingHighSurrogate = c;
+      } else {
+        n = encode(c, i + 1 < end ? chars[i + 1] : 0, bytes, n);
+        if (Character.isHighSurrogate(c) && Character.isLowSurrogate(chars[i + 1])) {
+          i++;
+        }
+      }
+    }
+    mCount = 0;
+    if (n > 0) {
+      try {
+        mOut.write(bytes, 0, n);
+      } catch (IOException e) {
+        mError = true;
+      }
+    }
+  }
+
+  /**
+   * Encodes the non-ASCII char {@code c}, or the pair {@code c next} if it is a surrogate pair,
+   * into {@code bytes} at {@code n}. An unpaired surrogate is written as '?', as the JDK encoder
+   * does.
+   *
+   * @return the offset following the bytes written
+   */
+  private static int encode(char c, char next, byte[] bytes, int n) {
+    if (c < 0x80) {
+      bytes[n++] = (byte) c;
+    } else if (c < 0x800) {
+      bytes[n++] = (byte) (0xc0 | (c >> 6));
+      bytes[n++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+      int codePoint = Character.toCodePoint(c, next);
+      bytes[n++] = (byte) (0xf0 | (codePoint >> 18));
+      bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+      bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+      bytes[n++] = (byte) (0x80 | (codePoint & 0x3f));
+    } else if (Character.isSurrogate(c)) {
+      bytes[n++] = '?';
+    } else {
+      bytes[n++] = (byte) (0xe0 | (c >> 12));
+      bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      bytes[n++] = (byte) (0x80 | (c & 0x3f));
+    }
+    return n;
+  }
+}
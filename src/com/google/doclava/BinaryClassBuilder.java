@@ -0,0 +1,605 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Builds a class that Doclava2 refers to but does not parse out of its class file, with what
+ * javadoc knows of a class on its class path: its modifiers, type parameters, superclass,
+ * interfaces and members, but no comments or annotations. The classes that these refer to are
+ * obtained from {@link InfoBuilder.Caches} like any others, and are built in turn.
+ */
+class BinaryClassBuilder {
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SYNCHRONIZED = 0x0020;
+    private static final int ACC_VOLATILE = 0x0040;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_TRANSIENT = 0x0080;
+    private static final int ACC_VARARGS = 0x0080;
+    private static final int ACC_NATIVE = 0x0100;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_ENUM = 0x4000;
+
+    private static final ArrayList<AnnotationInstanceInfo> NO_ANNOTATIONS
+            = new ArrayList<AnnotationInstanceInfo>();
+
+    private final ClassInfo mClass;
+    private final DataInputStream mIn;
+    // the constant pool: the Strings of CONSTANT_Utf8, the values of numbers, and for a
+    // CONSTANT_Class or CONSTANT_String the index of its name or value, as a ClassRef or StringRef
+    private Object[] mConstants;
+    // the classes of the erasures of the type variables in scope
+    private HashMap<String, ClassInfo> mTypeVariables = new HashMap<String, ClassInfo>();
+
+    private BinaryClassBuilder(ClassInfo cls, byte[] bytes) {
+        mClass = cls;
+        mIn = new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Builds {@code cls} out of its class file on {@code classPath}.
+     * @return false if the class has no class file or it cannot be read, in which case the
+     * class is left as it was.
+     */
+    static boolean build(ClassInfo cls, ClassPath classPath) {
+        String binaryName = classPath.binaryName(cls.qualifiedName());
+        if (binaryName == null) {
+            return false;
+        }
+        try {
+            new BinaryClassBuilder(cls, classPath.read(binaryName)).build();
+            return true;
+        } catch (IOException e) {
+            System.err.println(binaryName + ".class: cannot read class file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // a signature of a form not known here
+            System.err.println(binaryName + ".class: cannot read class file: " + e);
+        }
+        return false;
+    }
+
+    /**
+     * A field or method of the class file, with the attributes that are of use.
+     */
+    private static class Member {
+        int access;
+        String name;
+        String descriptor;
+        String signature;
+        Object constantValue;
+        ArrayList<String> exceptions = new ArrayList<String>();
+        boolean deprecated;
+    }
+
+    private void build() throws IOException {
+        if (mIn.readInt() != 0xcafebabe) {
+            throw new IOException("not a class file");
+        }
+        mIn.readUnsignedShort(); // minor version
+        mIn.readUnsignedShort(); // major version
+        readConstantPool();
+
+        int access = mIn.readUnsignedShort();
+        String binaryName = className(mIn.readUnsignedShort());
+        int superIndex = mIn.readUnsignedShort();
+        String superName = superIndex == 0 ? null : className(superIndex);
+        String[] interfaceNames = new String[mIn.readUnsignedShort()];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaceNames[i] = className(mIn.readUnsignedShort());
+        }
+        ArrayList<Member> fields = readMembers();
+        ArrayList<Member> methods = readMembers();
+
+        String signature = null;
+        String outerName = null;
+        boolean deprecated = false;
+        int attributes = mIn.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            String name = utf8(mIn.readUnsignedShort());
+            int length = mIn.readInt();
+            if ("Signature".equals(name)) {
+                signature = utf8(mIn.readUnsignedShort());
+            } else if ("InnerClasses".equals(name)) {
+                int count = mIn.readUnsignedShort();
+                for (int j = 0; j < count; j++) {
+                    int inner = mIn.readUnsignedShort();
+                    int outer = mIn.readUnsignedShort();
+                    mIn.readUnsignedShort(); // simple name
+                    int innerAccess = mIn.readUnsignedShort();
+                    // the entry of the class itself has the modifiers it was declared with
+                    if (outer != 0 && binaryName.equals(className(inner))) {
+                        access = innerAccess;
+                        outerName = className(outer);
+                    }
+                }
+            } else if ("Deprecated".equals(name)) {
+                deprecated = true;
+            } else {
+                mIn.skipBytes(length);
+            }
+        }
+
+        // javadoc does not report annotation types as interfaces
+        boolean isAnnotation = (access & ACC_ANNOTATION) != 0;
+        boolean isInterface = (access & ACC_INTERFACE) != 0 && !isAnnotation;
+        boolean isEnum = (access & ACC_ENUM) != 0;
+        String qualifiedName = mClass.qualifiedName();
+        mClass.initialize("", SourcePositionInfo.UNKNOWN, (access & ACC_PUBLIC) != 0,
+                (access & ACC_PROTECTED) != 0,
+                (access & (ACC_PUBLIC | ACC_PROTECTED | ACC_PRIVATE)) == 0,
+                (access & ACC_PRIVATE) != 0, (access & ACC_STATIC) != 0, isInterface,
+                (access & ACC_ABSTRACT) != 0, !isInterface && !isAnnotation && !isEnum,
+                false, false, isEnum, isAnnotation, (access & ACC_FINAL) != 0, false,
+                qualifiedName, false, NO_ANNOTATIONS);
+        // javadoc has @Deprecated among the annotations, which javac also marks this way
+        mClass.setDeprecated(deprecated);
+
+        if (outerName != null) {
+            ClassInfo outer = InfoBuilder.Caches.obtainClass(sourceName(outerName));
+            // the members look at the type of their classes' containing classes, which are
+            // given theirs once they are built
+            if (outer.asTypeInfo() == null) {
+                outer.setTypeInfo(new TypeInfo(false, "", outer.name(), outer.qualifiedName(),
+                        outer));
+            }
+            mClass.setContainingClass(outer);
+        }
+        int slash = binaryName.lastIndexOf('/');
+        mClass.setContainingPackage(InfoBuilder.Caches.obtainPackage(
+                slash == -1 ? "" : binaryName.substring(0, slash).replace('/', '.')));
+
+        TypeInfo type = new TypeInfo(false, "", mClass.name(), qualifiedName, mClass);
+        mClass.setTypeInfo(type);
+
+        // the signature of a generic class has its type parameters, superclass and interfaces
+        SignatureReader reader = null;
+        if (signature != null) {
+            reader = new SignatureReader(signature);
+            type.setTypeArguments(reader.typeParameters());
+        }
+        TypeInfo superType = null;
+        if (superName != null) {
+            superType = reader != null ? reader.type() : classType(superName, "");
+        }
+        // javadoc gives interfaces no superclass
+        if (superType != null && !isInterface && !isAnnotation) {
+            mClass.setSuperclassType(superType);
+            mClass.setSuperClass(superType.asClassInfo());
+        }
+        for (String interfaceName : interfaceNames) {
+            TypeInfo interfaceType = reader != null ? reader.type() : classType(interfaceName, "");
+            mClass.addInterfaceType(interfaceType);
+            mClass.addInterface(interfaceType.asClassInfo());
+        }
+
+        for (Member field : fields) {
+            // the compiler's own members, which javac does not read either
+            if ((field.access & ACC_SYNTHETIC) == 0) {
+                buildField(field);
+            }
+        }
+        // the constructors of inner classes take their outer instance first
+        boolean hasOuterInstance = outerName != null && (access & ACC_STATIC) == 0;
+        for (Member method : methods) {
+            // bridge methods are synthetic too, but javac reads them and javadoc lists them
+            if ((method.access & (ACC_SYNTHETIC | ACC_BRIDGE)) != ACC_SYNTHETIC
+                    && !"<clinit>".equals(method.name)) {
+                buildMethod(method, isAnnotation, hasOuterInstance);
+            }
+        }
+    }
+
+    private void buildField(Member member) {
+        int access = member.access;
+        TypeInfo type = new SignatureReader(
+                member.signature != null ? member.signature : member.descriptor).type();
+
+        // class files keep boolean constants as ints, javadoc gives them as Booleans but leaves
+        // those of chars, shorts and bytes as Integers
+        Object constantValue = member.constantValue;
+        if (constantValue instanceof Integer && "Z".equals(member.descriptor)) {
+            constantValue = (Integer) constantValue != 0;
+        }
+
+        FieldInfo field = new FieldInfo(member.name, mClass, mClass,
+                (access & ACC_PUBLIC) != 0, (access & ACC_PROTECTED) != 0,
+                (access & (ACC_PUBLIC | ACC_PROTECTED | ACC_PRIVATE)) == 0,
+                (access & ACC_PRIVATE) != 0, (access & ACC_FINAL) != 0,
+                (access & ACC_STATIC) != 0, (access & ACC_TRANSIENT) != 0,
+                (access & ACC_VOLATILE) != 0, false, type, "", constantValue,
+                SourcePositionInfo.UNKNOWN, NO_ANNOTATIONS);
+        field.setDeprecated(member.deprecated);
+        if ((access & ACC_ENUM) != 0) {
+            mClass.addEnumConstant(field);
+        } else {
+            mClass.addField(field);
+        }
+    }
+
+    private void buildMethod(Member member, boolean isAnnotation, boolean hasOuterInstance) {
+        int access = member.access;
+        boolean isConstructor = "<init>".equals(member.name);
+        HashMap<String, ClassInfo> classTypeVariables = mTypeVariables;
+        mTypeVariables = new HashMap<String, ClassInfo>(classTypeVariables);
+
+        SignatureReader reader = new SignatureReader(
+                member.signature != null ? member.signature : member.descriptor);
+        ArrayList<TypeInfo> typeParameters = reader.typeParameters();
+        reader.expect('(');
+        ArrayList<TypeInfo> types = new ArrayList<TypeInfo>();
+        while (!reader.at(')')) {
+            types.add(reader.type());
+        }
+        reader.expect(')');
+        TypeInfo returnType = reader.at('V')
+                ? new TypeInfo(true, "", "void", "void", null) : reader.type();
+        ArrayList<ClassInfo> thrownExceptions = new ArrayList<ClassInfo>();
+        while (reader.at('^')) {
+            reader.expect('^');
+            thrownExceptions.add(reader.type().asClassInfo());
+        }
+        if (thrownExceptions.isEmpty()) {
+            for (String exception : member.exceptions) {
+                thrownExceptions.add(InfoBuilder.Caches.obtainClass(sourceName(exception)));
+            }
+        }
+        mTypeVariables = classTypeVariables;
+
+        // only the descriptor has the outer instance, which javac leaves out as well
+        if (isConstructor && hasOuterInstance && member.signature == null && !types.isEmpty()) {
+            types.remove(0);
+        }
+
+        boolean isVarArgs = (access & ACC_VARARGS) != 0;
+        ArrayList<ParameterInfo> parameters = new ArrayList<ParameterInfo>();
+        StringBuilder flatSignature = new StringBuilder("(");
+        for (int i = 0; i < types.size(); i++) {
+            TypeInfo type = types.get(i);
+            boolean isVarArg = isVarArgs && i == types.size() - 1;
+            if (isVarArg) {
+                // javadoc shows the last array of a variable arity method as ...
+                String dimension = type.dimension();
+                type.setDimension(dimension.substring(0, dimension.length() - 2) + "...");
+            }
+            if (i > 0) {
+                flatSignature.append(", ");
+            }
+            flatSignature.append(type.simpleTypeName()).append(type.dimension());
+            // the names of parameters are not kept, javadoc names them the same way
+            parameters.add(new ParameterInfo("arg" + i, type.qualifiedTypeName(), type, isVarArg,
+                    SourcePositionInfo.UNKNOWN));
+        }
+        flatSignature.append(')');
+
+        String kind = isConstructor ? "constructor" : isAnnotation ? "annotationElement" : "method";
+        MethodInfo method = new MethodInfo("", typeParameters,
+                isConstructor ? mClass.name() : member.name, null, mClass, mClass,
+                (access & ACC_PUBLIC) != 0, (access & ACC_PROTECTED) != 0,
+                (access & (ACC_PUBLIC | ACC_PROTECTED | ACC_PRIVATE)) == 0,
+                (access & ACC_PRIVATE) != 0, (access & ACC_FINAL) != 0,
+                (access & ACC_STATIC) != 0, (access & ACC_SYNTHETIC) != 0,
+                (access & ACC_ABSTRACT) != 0, (access & ACC_SYNCHRONIZED) != 0,
+                (access & ACC_NATIVE) != 0, isAnnotation, kind, flatSignature.toString(), null,
+                isConstructor ? null : returnType, parameters, thrownExceptions,
+                SourcePositionInfo.UNKNOWN, NO_ANNOTATIONS);
+        method.setVarargs(isVarArgs);
+        method.setDeprecated(member.deprecated);
+        method.init(null);
+
+        if (isConstructor) {
+            mClass.addConstructor(method);
+        } else if (isAnnotation) {
+            mClass.addAnnotationElement(method);
+        } else {
+            mClass.addMethod(method);
+        }
+    }
+
+    /**
+     * A class reference of the constant pool, by the index of its name.
+     */
+    private static class ClassRef {
+        final int mName;
+
+        ClassRef(int name) {
+            mName = name;
+        }
+    }
+
+    /**
+     * A string constant of the constant pool, by the index of its value.
+     */
+    private static class StringRef {
+        final int mValue;
+
+        StringRef(int value) {
+            mValue = value;
+        }
+    }
+
+    private void readConstantPool() throws IOException {
+        mConstants = new Object[mIn.readUnsignedShort()];
+        for (int i = 1; i < mConstants.length; i++) {
+            int tag = mIn.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    mConstants[i] = mIn.readUTF();
+                    break;
+                case 3: // Integer
+                    mConstants[i] = mIn.readInt();
+                    break;
+                case 4: // Float
+                    mConstants[i] = mIn.readFloat();
+                    break;
+                case 5: // Long, which takes two entries
+                    mConstants[i++] = mIn.readLong();
+                    break;
+                case 6: // Double, which takes two entries
+                    mConstants[i++] = mIn.readDouble();
+                    break;
+                case 7: // Class
+                    mConstants[i] = new ClassRef(mIn.readUnsignedShort());
+                    break;
+                case 8: // String
+                    mConstants[i] = new StringRef(mIn.readUnsignedShort());
+                    break;
+                case 15: // MethodHandle
+                    mIn.skipBytes(3);
+                    break;
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    mIn.skipBytes(4);
+                    break;
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    mIn.skipBytes(2);
+                    break;
+                default:
+                    throw new IOException("bad constant pool tag " + tag);
+            }
+        }
+    }
+
+    private ArrayList<Member> readMembers() throws IOException {
+        int count = mIn.readUnsignedShort();
+        ArrayList<Member> members = new ArrayList<Member>(count);
+        for (int i = 0; i < count; i++) {
+            Member member = new Member();
+            member.access = mIn.readUnsignedShort();
+            member.name = utf8(mIn.readUnsignedShort());
+            member.descriptor = utf8(mIn.readUnsignedShort());
+            int attributes = mIn.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                String name = utf8(mIn.readUnsignedShort());
+                int length = mIn.readInt();
+                if ("Signature".equals(name)) {
+                    member.signature = utf8(mIn.readUnsignedShort());
+                } else if ("ConstantValue".equals(name)) {
+                    Object value = mConstants[mIn.readUnsignedShort()];
+                    member.constantValue = value instanceof StringRef
+                            ? utf8(((StringRef) value).mValue) : value;
+                } else if ("Exceptions".equals(name)) {
+                    int exceptions = mIn.readUnsignedShort();
+                    for (int k = 0; k < exceptions; k++) {
+                        member.exceptions.add(className(mIn.readUnsignedShort()));
+                    }
+                } else if ("Deprecated".equals(name)) {
+                    member.deprecated = true;
+                } else {
+                    mIn.skipBytes(length);
+                }
+            }
+            members.add(member);
+        }
+        return members;
+    }
+
+    private String utf8(int index) {
+        return (String) mConstants[index];
+    }
+
+    private String className(int index) {
+        return utf8(((ClassRef) mConstants[index]).mName);
+    }
+
+    /**
+     * Returns the name that the source of a class would use, "java.util.Map.Entry" for
+     * "java/util/Map$Entry". A $ within a name is taken to be a nesting too.
+     */
+    private static String sourceName(String binaryName) {
+        return binaryName.replace('/', '.').replace('$', '.');
+    }
+
+    private static TypeInfo classType(String binaryName, String dimension) {
+        String qualifiedName = sourceName(binaryName);
+        return new TypeInfo(false, dimension,
+                qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1), qualifiedName,
+                InfoBuilder.Caches.obtainClass(qualifiedName));
+    }
+
+    /**
+     * Reads the types of a descriptor or generic signature, one at a time. Type variables get the
+     * class of their erasure, as javadoc gives them.
+     */
+    private class SignatureReader {
+        private final String mText;
+        private int mPosition;
+
+        SignatureReader(String text) {
+            mText = text;
+        }
+
+        boolean at(char c) {
+            return mPosition < mText.length() && mText.charAt(mPosition) == c;
+        }
+
+        void expect(char c) {
+            if (!at(c)) {
+                throw new IllegalArgumentException("expected " + c + " at " + mPosition
+                        + " of " + mText);
+            }
+            mPosition++;
+        }
+
+        /**
+         * Reads the type parameters at the start of a signature, if it has any, and puts them
+         * in scope.
+         * @return the type parameters, or null if there are none.
+         */
+        ArrayList<TypeInfo> typeParameters() {
+            if (!at('<')) {
+                return null;
+            }
+            expect('<');
+            ArrayList<TypeInfo> parameters = new ArrayList<TypeInfo>();
+            while (!at('>')) {
+                int colon = mText.indexOf(':', mPosition);
+                String name = mText.substring(mPosition, colon);
+                mPosition = colon;
+                // a bound may refer to the parameter itself, as in T extends Comparable<T>
+                mTypeVariables.put(name, InfoBuilder.Caches.obtainClass("java.lang.Object"));
+
+                ArrayList<TypeInfo> bounds = new ArrayList<TypeInfo>();
+                while (at(':')) {
+                    expect(':');
+                    // an interface bound follows an empty class bound
+                    if (!at(':')) {
+                        bounds.add(type());
+                    }
+                }
+                if (!bounds.isEmpty() && bounds.get(0).asClassInfo() != null) {
+                    mTypeVariables.put(name, bounds.get(0).asClassInfo());
+                }
+
+                TypeInfo parameter = new TypeInfo(false, "", name, name, mTypeVariables.get(name));
+                parameter.setIsTypeVariable(true);
+                parameter.setBounds(new ArrayList<TypeInfo>(), bounds);
+                parameters.add(parameter);
+            }
+            expect('>');
+            return parameters;
+        }
+
+        TypeInfo type() {
+            int start = mPosition;
+            while (at('[')) {
+                mPosition++;
+            }
+            StringBuilder dimension = new StringBuilder();
+            for (int i = start; i < mPosition; i++) {
+                dimension.append("[]");
+            }
+
+            char c = mText.charAt(mPosition++);
+            switch (c) {
+                case 'B': return primitive("byte", dimension);
+                case 'C': return primitive("char", dimension);
+                case 'D': return primitive("double", dimension);
+                case 'F': return primitive("float", dimension);
+                case 'I': return primitive("int", dimension);
+                case 'J': return primitive("long", dimension);
+                case 'S': return primitive("short", dimension);
+                case 'Z': return primitive("boolean", dimension);
+                case 'T': {
+                    int end = mText.indexOf(';', mPosition);
+                    String name = mText.substring(mPosition, end);
+                    mPosition = end + 1;
+                    ClassInfo erasure = mTypeVariables.get(name);
+                    if (erasure == null) {
+                        // the variable of an outer class, which is not looked for
+                        erasure = InfoBuilder.Caches.obtainClass("java.lang.Object");
+                    }
+                    TypeInfo type = new TypeInfo(false, dimension.toString(), name, name, erasure);
+                    type.setIsTypeVariable(true);
+                    return type;
+                }
+                case 'L': {
+                    StringBuilder binaryName = new StringBuilder();
+                    ArrayList<TypeInfo> typeArguments = null;
+                    while (!at(';')) {
+                        char d = mText.charAt(mPosition);
+                        if (d == '<') {
+                            typeArguments = typeArguments();
+                        } else if (d == '.') {
+                            // a member of a parameterized outer class, of which only the type
+                            // arguments of the member are kept
+                            binaryName.append('$');
+                            typeArguments = null;
+                            mPosition++;
+                        } else {
+                            binaryName.append(d);
+                            mPosition++;
+                        }
+                    }
+                    expect(';');
+                    TypeInfo type = classType(binaryName.toString(), dimension.toString());
+                    type.setTypeArguments(typeArguments);
+                    return type;
+                }
+                default:
+                    throw new IllegalArgumentException("bad type " + c + " at "
+                            + (mPosition - 1) + " of " + mText);
+            }
+        }
+
+        private ArrayList<TypeInfo> typeArguments() {
+            expect('<');
+            ArrayList<TypeInfo> arguments = new ArrayList<TypeInfo>();
+            while (!at('>')) {
+                if (at('*') || at('+') || at('-')) {
+                    char c = mText.charAt(mPosition++);
+                    TypeInfo wildcard = new TypeInfo(false, "", "?", "?", null);
+                    wildcard.setIsWildcard(true);
+                    ArrayList<TypeInfo> superBounds = new ArrayList<TypeInfo>();
+                    ArrayList<TypeInfo> extendsBounds = new ArrayList<TypeInfo>();
+                    if (c == '+') {
+                        extendsBounds.add(type());
+                    } else if (c == '-') {
+                        superBounds.add(type());
+                    }
+                    wildcard.setBounds(superBounds, extendsBounds);
+                    arguments.add(wildcard);
+                } else {
+                    arguments.add(type());
+                }
+            }
+            expect('>');
+            return arguments;
+        }
+
+        private TypeInfo primitive(String name, StringBuilder dimension) {
+            return new TypeInfo(true, dimension.toString(), name, name, null);
+        }
+    }
+}
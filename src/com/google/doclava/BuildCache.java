@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.data.Data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what every output file was generated from, so that an {@code -incremental} run can
+ * leave files alone when their inputs have not changed since the previous run.
+ * <p>
+ * A page's key is a hash of its template name, the complete HDF it is rendered with and the
+ * contents of every template that could be loaded for it. Everything a page shows about other
+ * classes, such as known subclasses or inherited members, is part of its HDF, so a change to one
+ * class changes the key of every page that depends on it.
+ * <p>
+ * The keys are kept in {@link #FILENAME} under the output directory, one {@code key path} line
+ * per file. Files written by earlier runs but not by this one are dropped from it.
+ */
+public class BuildCache {
+  public static final String FILENAME = ".doclava-cache";
+
+  private final File mFile;
+  private final Map<String, String> mPrevious = new HashMap<String, String>();
+  private final Map<String, String> mCurrent = new ConcurrentHashMap<String, String>();
+  // keys of files that are being written, recorded in mCurrent once they have been
+  private final Map<String, String> mPending = new ConcurrentHashMap<String, String>();
+  private final Map<List<String>, byte[]> mTemplateHashes = new HashMap<List<String>, byte[]>();
+
+  private int mSkipped;
+  private int mWritten;
+
+  public BuildCache(String outputDir) {
+    mFile = new File(outputDir, FILENAME);
+    if (!mFile.exists()) {
+      return;
+    }
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new FileReader(mFile));
+      String line;
+      while ((line = in.readLine()) != null) {
+        int space = line.indexOf(' ');
+        if (space > 0) {
+          mPrevious.put(line.substring(space + 1), line.substring(0, space));
+        }
+      }
+    } catch (IOException e) {
+      System.err.println(mFile + ": error reading build cache, rebuilding everything");
+      mPrevious.clear();
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {}
+      }
+    }
+  }
+
+  /**
+   * Works out whether {@code file}, rendered from {@code templ} and {@code data} with
+   * {@code htmlDirs} on the template load path, is up to date. If it is not, the caller writes
+   * it and then calls {@link #written(File)}; a file that fails to be written is not recorded,
+   * so the next run writes it again.
+   *
+   * @return true if the file already holds exactly that rendering and need not be written
+   */
+  public boolean isUpToDate(File file, String templ, Data data, List<String> htmlDirs) {
+    MessageDigest digest = newDigest();
+    digest.update(templateHash(htmlDirs));
+    DigestAppendable out = new DigestAppendable(digest);
+    out.append(templ).append('\0');
+    try {
+      data.write(out, 0);
+    } catch (IOException e) {
+      // cannot happen, DigestAppendable does not throw
+      throw new RuntimeException(e);
+    }
+    out.flush();
+    return isUpToDate(file, toHex(digest.digest()));
+  }
+
+  private boolean isUpToDate(File file, String key) {
+    String path = file.getPath();
+    boolean upToDate = key.equals(mPrevious.get(path)) && file.exists();
+    if (upToDate) {
+      mCurrent.put(path, key);
+    } else {
+      mPending.put(path, key);
+    }
+    synchronized (this) {
+      if (upToDate) {
+        mSkipped++;
+      } else {
+        mWritten++;
+      }
+    }
+    return upToDate;
+  }
+
+  /**
+   * Records that {@code file}, which {@link #isUpToDate} found out of date, has been written.
+   */
+  public void written(File file) {
+    String path = file.getPath();
+    String key = mPending.remove(path);
+    if (key != null) {
+      mCurrent.put(path, key);
+    }
+  }
+
+  /**
+   * Writes the keys recorded by this run for the next one.
+   */
+  public void save() {
+    BufferedWriter out = null;
+    try {
+      mFile.getParentFile().mkdirs();
+      out = new BufferedWriter(new FileWriter(mFile));
+      for (Map.Entry<String, String> entry : new TreeMap<String, String>(mCurrent).entrySet()) {
+        out.write(entry.getValue());
+        out.write(' ');
+        out.write(entry.getKey());
+        out.write('\n');
+      }
+    } catch (IOException e) {
+      System.err.println(mFile + ": error writing build cache");
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {}
+      }
+    }
+    System.out.println("Incremental build: " + mWritten + " files written, " + mSkipped
+        + " unchanged");
+  }
+
+  /**
+   * Hashes every template that pages can load: the {@code -templatedir} directories, the
+   * {@code .cs} files in {@code htmlDirs}, and the templates bundled with doclava itself. Bundled
+   * templates that live in a jar are represented by the jar's size and modification time.
+   */
+  private synchronized byte[] templateHash(List<String> htmlDirs) {
+    List<String> key = new ArrayList<String>(htmlDirs);
+    byte[] hash = mTemplateHashes.get(key);
+    if (hash == null) {
+      MessageDigest digest = newDigest();
+      for (String dir : ClearPage.getTemplateDirs()) {
+        hashTree(digest, new File(dir), null);
+      }
+      for (String dir : htmlDirs) {
+        hashTree(digest, new File(dir), ".cs");
+      }
+      for (String dir : ClearPage.getBundledTemplateDirs()) {
+        hashResource(digest, Doclava.class.getResource("/" + dir));
+      }
+      hash = digest.digest();
+      mTemplateHashes.put(key, hash);
+    }
+    return hash;
+  }
+
+  private static void hashResource(MessageDigest digest, URL url) {
+    if (url == null) {
+      return;
+    }
+    if ("jar".equals(url.getProtocol())) {
+      String path = url.getPath();
+      int bang = path.indexOf("!/");
+      if (bang >= 0) {
+        path = path.substring(0, bang);
+      }
+      try {
+        url = new URL(path);
+      } catch (MalformedURLException e) {
+        return;
+      }
+    }
+    if (!"file".equals(url.getProtocol())) {
+      return;
+    }
+    File file;
+    try {
+      file = new File(url.toURI());
+    } catch (URISyntaxException e) {
+      return;
+    }
+    if (file.isDirectory()) {
+      hashTree(digest, file, null);
+    } else {
+      digest.update((file.getPath() + ":" + file.length() + ":" + file.lastModified() + "\0")
+          .getBytes());
+    }
+  }
+
+  private static void hashTree(MessageDigest digest, File f, String suffix) {
+    if (f.isDirectory()) {
+      File[] children = f.listFiles();
+      if (children == null) {
+        return;
+      }
+      Arrays.sort(children);
+      for (File child : children) {
+        hashTree(digest, child, suffix);
+      }
+    } else if (f.isFile() && (suffix == null || f.getName().endsWith(suffix))) {
+      digest.update((f.getPath() + "\0").getBytes());
+      InputStream in = null;
+      try {
+        in = new FileInputStream(f);
+        byte[] buf = new byte[8192];
+        int amt;
+        while ((amt = in.read(buf)) > 0) {
+          digest.update(buf, 0, amt);
+        }
+      } catch (IOException e) {
+        // an unreadable template just makes every page look changed
+        digest.update((byte) 0);
+      } finally {
+        if (in != null) {
+          try {
+            in.close();
+          } catch (IOException e) {}
+        }
+      }
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Feeds the UTF-16 code units of whatever is appended to it into a digest.
+   */
+  private static class DigestAppendable implements Appendable {
+    private final MessageDigest mDigest;
+    private final byte[] mBuf = new byte[8192];
+    private int mLength;
+
+    DigestAppendable(MessageDigest digest) {
+      mDigest = digest;
+    }
+
+    public DigestAppendable append(CharSequence csq) {
+      return append(csq, 0, csq.length());
+    }
+
+    public DigestAppendable append(CharSequence csq, int start, int end) {
+      for (int i = start; i < end; i++) {
+        append(csq.charAt(i));
+      }
+      return this;
+    }
+
+    public DigestAppendable append(char c) {
+      if (mLength + 2 > mBuf.length) {
+        flush();
+      }
+      mBuf[mLength++] = (byte) (c >> 8);
+      mBuf[mLength++] = (byte) c;
+      return this;
+    }
+
+    void flush() {
+      mDigest.update(mBuf, 0, mLength);
+      mLength = 0;
+    }
+  }
+}
@@ -353,8 +353,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    * between this class and the first visible superclass and those interface class's parameterized types.
    */
   private ArrayList<ClassTypePair> interfacesWithTypes() {
-    if (mInterfacesWithTypes == null) {
-      mInterfacesWithTypes = new ArrayList<ClassTypePair>();
+    ArrayList<ClassTypePair> interfacesWithTypes = mInterfacesWithTypes;
+    if (interfacesWithTypes == null) {
+      interfacesWithTypes = new ArrayList<ClassTypePair>();
 
       Iterator<ClassTypePair> itr = superClassesWithTypes().iterator();
       // skip the first one, which is this class
@@ -364,15 +365,16 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         if (ctp.classInfo().checkLevel()) {
           break;
         } else {
-          // fill mInterfacesWithTypes from the hidden superclass
-          mInterfacesWithTypes.addAll(
+          // fill interfacesWithTypes from the hidden superclass
+          interfacesWithTypes.addAll(
               ctp.classInfo().justMyInterfacesWithTypes(ctp.getTypeArgumentMapping()));
         }
       }
-      mInterfacesWithTypes.addAll(
+      interfacesWithTypes.addAll(
           justMyInterfacesWithTypes());
+      mInterfacesWithTypes = interfacesWithTypes;
     }
-    return mInterfacesWithTypes;
+    return interfacesWithTypes;
   }
 
   /**
@@ -380,8 +382,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    * and those interface class's parameterized types.
    */
   private ArrayList<ClassTypePair> allInterfacesWithTypes() {
-    if (mAllInterfacesWithTypes == null) {
-        mAllInterfacesWithTypes = new ArrayList<ClassTypePair>();
+    ArrayList<ClassTypePair> allInterfacesWithTypes = mAllInterfacesWithTypes;
+    if (allInterfacesWithTypes == null) {
+        allInterfacesWithTypes = new ArrayList<ClassTypePair>();
         Queue<ClassTypePair> toParse = new ArrayDeque<ClassTypePair>();
         Set<String> visited = new HashSet<String>();
 
@@ -397,13 +400,14 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         while (!toParse.isEmpty()) {
           ClassTypePair ctp = toParse.remove();
           if (!visited.contains(ctp.typeInfo().fullName())) {
-            mAllInterfacesWithTypes.add(ctp);
+            allInterfacesWithTypes.add(ctp);
             visited.add(ctp.typeInfo().fullName());
             toParse.addAll(ctp.classInfo().justMyInterfacesWithTypes(ctp.getTypeArgumentMapping()));
           }
         }
+        mAllInterfacesWithTypes = allInterfacesWithTypes;
     }
-    return mAllInterfacesWithTypes;
+    return allInterfacesWithTypes;
   }
 
   /**
@@ -414,11 +418,12 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    * heirarchy tree.
    * */
   private ArrayList<ClassTypePair> superClassesWithTypes() {
-    if (mSuperclassesWithTypes == null) {
-      mSuperclassesWithTypes = new ArrayList<ClassTypePair>();
+    ArrayList<ClassTypePair> superclassesWithTypes = mSuperclassesWithTypes;
+    if (superclassesWithTypes == null) {
+      superclassesWithTypes = new ArrayList<ClassTypePair>();
 
       ClassTypePair lastCtp = new ClassTypePair(this, this.asTypeInfo());
-      mSuperclassesWithTypes.add(lastCtp);
+      superclassesWithTypes.add(lastCtp);
 
       Map<String, TypeInfo> typeArgumentsMap;
       ClassInfo superclass = mRealSuperclass;
@@ -427,13 +432,14 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       while (superclass != null && supertype != null) {
         typeArgumentsMap = lastCtp.getTypeArgumentMapping();
         lastCtp = new ClassTypePair(superclass, supertype.getTypeWithArguments(typeArgumentsMap));
-        mSuperclassesWithTypes.add(lastCtp);
+        superclassesWithTypes.add(lastCtp);
 
         supertype = superclass.mRealSuperclassType;
         superclass = superclass.mRealSuperclass;
       }
+      mSuperclassesWithTypes = superclassesWithTypes;
     }
-    return mSuperclassesWithTypes;
+    return superclassesWithTypes;
   }
 
   private static void gatherHiddenInterfaces(ClassInfo cl, HashSet<ClassInfo> interfaces) {
@@ -447,7 +453,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<ClassInfo> interfaces() {
-    if (mInterfaces == null) {
+    ArrayList<ClassInfo> result = mInterfaces;
+    if (result == null) {
       if (checkLevel()) {
         HashSet<ClassInfo> interfaces = new HashSet<ClassInfo>();
         ClassInfo superclass = mRealSuperclass;
@@ -456,14 +463,15 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
           superclass = superclass.mRealSuperclass;
         }
         gatherHiddenInterfaces(this, interfaces);
-        mInterfaces = new ArrayList<ClassInfo>(interfaces);
+        result = new ArrayList<ClassInfo>(interfaces);
       } else {
         // put something here in case someone uses it
-        mInterfaces = new ArrayList<ClassInfo>(mRealInterfaces);
+        result = new ArrayList<ClassInfo>(mRealInterfaces);
       }
-      Collections.sort(mInterfaces, ClassInfo.qualifiedComparator);
+      Collections.sort(result, ClassInfo.qualifiedComparator);
+      mInterfaces = result;
     }
-    return mInterfaces;
+    return result;
   }
 
   public ArrayList<ClassInfo> realInterfaces() {
@@ -511,21 +519,23 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<MethodInfo> constructors() {
-    if (mConstructors == null) {
+    ArrayList<MethodInfo> constructors = mConstructors;
+    if (constructors == null) {
       if (mAllConstructors == null) {
         return new ArrayList<MethodInfo>();
       }
 
-      mConstructors = new ArrayList<MethodInfo>();
+      constructors = new ArrayList<MethodInfo>();
       for (MethodInfo m : mAllConstructors) {
         if (!m.isHiddenOrRemoved()) {
-            mConstructors.add(m);
+            constructors.add(m);
         }
       }
 
-      Collections.sort(mConstructors, MethodInfo.comparator);
+      Collections.sort(constructors, MethodInfo.comparator);
+      mConstructors = constructors;
     }
-    return mConstructors;
+    return constructors;
   }
 
   public ArrayList<ClassInfo> innerClasses() {
@@ -573,7 +583,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<MethodInfo> methods() {
-      if (mMethods == null) {
+      ArrayList<MethodInfo> methods = mMethods;
+      if (methods == null) {
           TreeMap<String, MethodInfo> all = new TreeMap<String, MethodInfo>();
 
           ArrayList<ClassInfo> interfaces = interfaces();
@@ -596,10 +607,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
               all.put(method.getHashableName(), method);
           }
 
-          mMethods = new ArrayList<MethodInfo>(all.values());
-          Collections.sort(mMethods, MethodInfo.comparator);
+          methods = new ArrayList<MethodInfo>(all.values());
+          Collections.sort(methods, MethodInfo.comparator);
+          mMethods = methods;
       }
-    return mMethods;
+    return methods;
   }
 
   public ArrayList<MethodInfo> annotationElements() {
@@ -617,7 +629,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<FieldInfo> fields() {
-    if (mFields == null) {
+    ArrayList<FieldInfo> fields = mFields;
+    if (fields == null) {
       TreeMap<String, FieldInfo> all = new TreeMap<String, FieldInfo>();
 
       for (ClassInfo iface : interfaces()) {
@@ -641,9 +654,10 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         }
       }
 
-      mFields = new ArrayList<FieldInfo>(all.values());
+      fields = new ArrayList<FieldInfo>(all.values());
+      mFields = fields;
     }
-    return mFields;
+    return fields;
   }
 
   public void gatherFields(ClassInfo owner, ClassInfo cl, HashMap<String, FieldInfo> fields) {
@@ -655,7 +669,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<FieldInfo> selfFields() {
-    if (mSelfFields == null) {
+    ArrayList<FieldInfo> selfFields = mSelfFields;
+    if (selfFields == null) {
         HashMap<String, FieldInfo> fields = new HashMap<String, FieldInfo>();
       // our hidden parents
       if (mRealSuperclass != null && !mRealSuperclass.checkLevel()) {
@@ -673,10 +688,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
           }
       }
 
-      mSelfFields = new ArrayList<FieldInfo>(fields.values());
-      Collections.sort(mSelfFields, FieldInfo.comparator);
+      selfFields = new ArrayList<FieldInfo>(fields.values());
+      Collections.sort(selfFields, FieldInfo.comparator);
+      mSelfFields = selfFields;
     }
-    return mSelfFields;
+    return selfFields;
   }
 
   public ArrayList<FieldInfo> allSelfFields() {
@@ -692,7 +708,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<MethodInfo> selfMethods() {
-    if (mSelfMethods == null) {
+    ArrayList<MethodInfo> selfMethods = mSelfMethods;
+    if (selfMethods == null) {
         HashMap<String, MethodInfo> methods = new HashMap<String, MethodInfo>();
       // our hidden parents
       for (ClassTypePair ctp : superClassesWithTypes()) {
@@ -719,10 +736,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       }
 
       // sort it
-      mSelfMethods = new ArrayList<MethodInfo>(methods.values());
-      Collections.sort(mSelfMethods, MethodInfo.comparator);
+      selfMethods = new ArrayList<MethodInfo>(methods.values());
+      Collections.sort(selfMethods, MethodInfo.comparator);
+      mSelfMethods = selfMethods;
     }
-    return mSelfMethods;
+    return selfMethods;
   }
 
   public ArrayList<MethodInfo> allSelfMethods() {
@@ -892,10 +910,12 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     mContainingPackage = pkg;
   }
 
+  // A nested class is only known to its package by its containing class, as nested classes of
+  // different classes may share a name. Set the containing class first.
   public void setContainingPackage(PackageInfo pkg) {
     mContainingPackage = pkg;
 
-    if (mContainingPackage != null) {
+    if (mContainingPackage != null && mContainingClass == null) {
         if (mIsEnum) {
             mContainingPackage.addEnum(this);
         } else if (mIsInterface) {
@@ -907,7 +927,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ArrayList<AttributeInfo> selfAttributes() {
-    if (mSelfAttributes == null) {
+    ArrayList<AttributeInfo> selfAttributes = mSelfAttributes;
+    if (selfAttributes == null) {
+      // threads that race here each link the tags to attributes of their own, which are equal
       TreeMap<FieldInfo, AttributeInfo> attrs = new TreeMap<FieldInfo, AttributeInfo>();
 
       // the ones in the class comment won't have any methods
@@ -955,10 +977,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         }
       }
 
-      mSelfAttributes = new ArrayList<AttributeInfo>(attrs.values());
-      Collections.sort(mSelfAttributes, AttributeInfo.comparator);
+      selfAttributes = new ArrayList<AttributeInfo>(attrs.values());
+      Collections.sort(selfAttributes, AttributeInfo.comparator);
+      mSelfAttributes = selfAttributes;
     }
-    return mSelfAttributes;
+    return selfAttributes;
   }
 
   public ArrayList<FieldInfo> enumConstants() {
@@ -1280,13 +1303,12 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     // known subclasses
     TreeMap<String, ClassInfo> direct = new TreeMap<String, ClassInfo>();
     TreeMap<String, ClassInfo> indirect = new TreeMap<String, ClassInfo>();
-    ClassInfo[] all = Converter.rootClasses();
-    for (ClassInfo cl : all) {
-      if (cl.superclass() != null && cl.superclass().equals(this)) {
-        direct.put(cl.name(), cl);
-      } else if (cl.isDerivedFrom(this)) {
-        indirect.put(cl.name(), cl);
-      }
+    SubclassIndex subclasses = Converter.subclassIndex();
+    for (ClassInfo cl : subclasses.directSubclasses(this)) {
+      direct.put(cl.name(), cl);
+    }
+    for (ClassInfo cl : subclasses.indirectSubclasses(this)) {
+      indirect.put(cl.name(), cl);
     }
     // direct
     i = 0;
@@ -1586,7 +1608,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public boolean hasShowAnnotation() {
-    return mShowAnnotations.size() > 0;
+    // classes InfoBuilder only saw referred to have none until they are completed
+    return mShowAnnotations != null && mShowAnnotations.size() > 0;
   }
 
   public ArrayList<AnnotationInstanceInfo> showAnnotations() {
@@ -1693,6 +1716,10 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ClassInfo findClass(String className) {
+    if (mClass == null) {
+      // built from source by InfoBuilder, which resolved the names of the class already
+      return null;
+    }
     return Converter.obtainClass(mClass.findClass(className));
   }
 
@@ -1701,6 +1728,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     // we try what they gave us first, but if that didn't work, then
     // we see if there are any periods in className, and start searching
     // from there.
+    if (mClass == null) {
+      return extendedFindClass(className);
+    }
     String[] nodes = className.split("\\.");
     ClassDoc cl = mClass;
 
@@ -1861,9 +1891,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
 
   // init
   private ArrayList<ClassInfo> mRealInterfaces = new ArrayList<ClassInfo>();
-  private ArrayList<ClassInfo> mInterfaces;
+  private volatile ArrayList<ClassInfo> mInterfaces;
   private ArrayList<TypeInfo> mRealInterfaceTypes;
-  private ArrayList<ClassInfo> mInnerClasses;
+  private ArrayList<ClassInfo> mInnerClasses = new ArrayList<ClassInfo>();
   // mAllConstructors will not contain *all* constructors. Only the constructors that pass
   // checkLevel. @see {@link Converter#convertMethods(ConstructorDoc[])}
   private ArrayList<MethodInfo> mAllConstructors = new ArrayList<MethodInfo>();
@@ -1877,28 +1907,29 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   private ClassInfo mContainingClass;
   private ClassInfo mRealSuperclass;
   private TypeInfo mRealSuperclassType;
-  private ClassInfo mSuperclass;
+  private volatile ClassInfo mSuperclass;
   private ArrayList<AnnotationInstanceInfo> mAnnotations;
   private ArrayList<AnnotationInstanceInfo> mShowAnnotations;
   private boolean mSuperclassInit;
-  private boolean mDeprecatedKnown;
-
-  // lazy
-  private ArrayList<ClassTypePair> mSuperclassesWithTypes;
-  private ArrayList<ClassTypePair> mInterfacesWithTypes;
-  private ArrayList<ClassTypePair> mAllInterfacesWithTypes;
-  private ArrayList<MethodInfo> mConstructors;
+  private volatile boolean mDeprecatedKnown;
+
+  // lazy. These are only ever assigned once fully built, and are volatile so that several
+  // threads may race to fill them in: the loser's copy is simply dropped.
+  private volatile ArrayList<ClassTypePair> mSuperclassesWithTypes;
+  private volatile ArrayList<ClassTypePair> mInterfacesWithTypes;
+  private volatile ArrayList<ClassTypePair> mAllInterfacesWithTypes;
+  private volatile ArrayList<MethodInfo> mConstructors;
   private ArrayList<ClassInfo> mRealInnerClasses;
-  private ArrayList<MethodInfo> mSelfMethods;
-  private ArrayList<FieldInfo> mSelfFields;
-  private ArrayList<AttributeInfo> mSelfAttributes;
-  private ArrayList<MethodInfo> mMethods;
-  private ArrayList<FieldInfo> mFields;
+  private volatile ArrayList<MethodInfo> mSelfMethods;
+  private volatile ArrayList<FieldInfo> mSelfFields;
+  private volatile ArrayList<AttributeInfo> mSelfAttributes;
+  private volatile ArrayList<MethodInfo> mMethods;
+  private volatile ArrayList<FieldInfo> mFields;
   private ArrayList<TypeInfo> mTypeParameters;
   private ArrayList<MethodInfo> mHiddenMethods;
-  private Boolean mHidden = null;
-  private Boolean mRemoved = null;
-  private Boolean mCheckLevel = null;
+  private volatile Boolean mHidden = null;
+  private volatile Boolean mRemoved = null;
+  private volatile Boolean mCheckLevel = null;
   private String mReasonIncluded;
   private ArrayList<MethodInfo> mNonWrittenConstructors;
   private boolean mIsDeprecated;
@@ -2265,6 +2296,14 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       mContainingClass = containingClass;
   }
 
+  /**
+   * Sets the name of the class within its package, such as "Outer.Inner" for a nested class.
+   */
+  public void setName(String name) {
+      mName = name;
+      mNameParts = name.split("\\.");
+  }
+
   public void setSuperclassType(TypeInfo superclassType) {
       mRealSuperclassType = superclassType;
   }
@@ -2289,6 +2328,40 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       mResolutions.add(resolution);
   }
 
+  /**
+   * Puts a resolved interface in the place InfoBuilder kept for it, so the interfaces stay in
+   * step with their types.
+   */
+  private void resolveInterface(String name, ClassInfo iface) {
+      for (int i = 0; i < mRealInterfaces.size(); i++) {
+          if (mRealInterfaces.get(i) == null && mRealInterfaceTypes != null
+                  && i < mRealInterfaceTypes.size()
+                  && name.equals(mRealInterfaceTypes.get(i).simpleTypeName())) {
+              mRealInterfaces.set(i, iface);
+              return;
+          }
+      }
+      addInterface(iface);
+  }
+
+  /**
+   * Drops the places InfoBuilder kept for interfaces that were never resolved, and their types,
+   * as javadoc leaves out the interfaces it cannot find.
+   * @return the names of the interfaces dropped, as they were written
+   */
+  ArrayList<String> removeUnresolvedInterfaces() {
+      ArrayList<String> names = new ArrayList<String>();
+      for (int i = mRealInterfaces.size() - 1; i >= 0; i--) {
+          if (mRealInterfaces.get(i) == null) {
+              mRealInterfaces.remove(i);
+              if (mRealInterfaceTypes != null && i < mRealInterfaceTypes.size()) {
+                  names.add(0, mRealInterfaceTypes.remove(i).simpleTypeName());
+              }
+          }
+      }
+      return names;
+  }
+
   public boolean resolveResolutions() {
       ArrayList<Resolution> resolutions = mResolutions;
       mResolutions = new ArrayList<Resolution>();
@@ -2306,7 +2379,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
           } else if ("superclassQualifiedName".equals(resolution.getVariable())) {
               setSuperClass(InfoBuilder.Caches.obtainClass(qualifiedClassName.toString()));
           } else if ("interfaceQualifiedName".equals(resolution.getVariable())) {
-              addInterface(InfoBuilder.Caches.obtainClass(qualifiedClassName.toString()));
+              resolveInterface(resolution.getValue(),
+                      InfoBuilder.Caches.obtainClass(qualifiedClassName.toString()));
           }
       }
 
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipFile;
+
+/**
+ * The class files that Doclava2 looks classes up in when they are not among the files it
+ * parses, as javadoc does on its -bootclasspath and -classpath. The boot class path is searched
+ * first. Without one, the classes of the JDK that doclava runs on are used, but never those of
+ * doclava's own class path, which are nothing to do with the sources.
+ */
+public class ClassPath {
+    // the directories, as Files, and jars, as ZipFiles, in order
+    private final ArrayList<Object> mEntries = new ArrayList<Object>();
+    // the class files of the JDK, if no boot class path was given
+    private final ClassLoader mPlatform;
+    // whether each binary name has a class file
+    private final ConcurrentHashMap<String, Boolean> mKnown
+            = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * @param bootClassPath The boot class path, or null for the JDK that doclava runs on.
+     * @param classPath The class path, or null for none.
+     */
+    public ClassPath(String bootClassPath, String classPath) {
+        if (bootClassPath != null) {
+            add(bootClassPath);
+            mPlatform = null;
+        } else {
+            // the parent of the system class loader has the JDK's classes only, it is the
+            // extension class loader up to Java 8 and the platform class loader after
+            mPlatform = ClassLoader.getSystemClassLoader().getParent();
+        }
+        if (classPath != null) {
+            add(classPath);
+        }
+    }
+
+    private void add(String path) {
+        for (String entry : path.split(File.pathSeparator)) {
+            File file = new File(entry);
+            if (entry.isEmpty() || !file.exists()) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                mEntries.add(file);
+            } else {
+                try {
+                    mEntries.add(new ZipFile(file));
+                } catch (IOException e) {
+                    System.err.println(file + ": cannot read class path entry: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the binary name of the class file of a class, such as "java/util/Map$Entry" for
+     * "java.util.Map.Entry", or null if there is none. As the name does not tell packages from
+     * containing classes, each split is tried from the right.
+     */
+    public String binaryName(String qualifiedName) {
+        String name = qualifiedName.replace('.', '/');
+        while (true) {
+            if (contains(name)) {
+                return name;
+            }
+            int slash = name.lastIndexOf('/');
+            if (slash == -1) {
+                return null;
+            }
+            name = name.substring(0, slash) + '$' + name.substring(slash + 1);
+        }
+    }
+
+    /**
+     * Returns whether there is a class file for {@code binaryName}.
+     */
+    public boolean contains(String binaryName) {
+        Boolean known = mKnown.get(binaryName);
+        if (known == null) {
+            known = find(binaryName + ".class") != null;
+            mKnown.put(binaryName, known);
+        }
+        return known;
+    }
+
+    /**
+     * Returns the contents of the class file of {@code binaryName}, or null if there is none.
+     */
+    public byte[] read(String binaryName) throws IOException {
+        String resource = binaryName + ".class";
+        Object entry = find(resource);
+        InputStream in;
+        if (entry instanceof File) {
+            in = new FileInputStream(new File((File) entry, resource));
+        } else if (entry instanceof ZipFile) {
+            ZipFile jar = (ZipFile) entry;
+            in = jar.getInputStream(jar.getEntry(resource));
+        } else if (entry != null) {
+            in = mPlatform.getResourceAsStream(resource);
+        } else {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the first entry that has {@code resource}: a directory, a jar, or the class
+     * loader of the JDK; or null if none has it.
+     */
+    private Object find(String resource) {
+        if (mPlatform != null && mPlatform.getResource(resource) != null) {
+            return mPlatform;
+        }
+        for (Object entry : mEntries) {
+            if (entry instanceof File ? new File((File) entry, resource).isFile()
+                    : ((ZipFile) entry).getEntry(resource) != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -26,9 +26,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ClearPage {
   /*
@@ -46,6 +52,9 @@ public class ClearPage {
   public static List<String> htmlDirs = new ArrayList<String>();
   public static String toroot = null;
 
+  /** When set, pages and files whose inputs are unchanged since the last run are not rewritten. */
+  public static BuildCache buildCache = null;
+
   public static void addTemplateDir(String dir) {
     mTemplateDirSet = true;
     mTemplateDirs.add(dir);
@@ -131,13 +140,20 @@ public class ClearPage {
     }
 
     File file = new File(outputFilename(filename));
+    if (buildCache != null && buildCache.isUpToDate(file, templ, data, htmlDirs)) {
+      return;
+    }
 
     ensureDirectory(file);
     Writer stream = null;
+    boolean written = false;
     try {
       stream = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
       String rendered = cs.render(templ, data);
       stream.write(rendered, 0, rendered.length());
+      stream.close();
+      stream = null;
+      written = true;
     } catch (IOException e) {
       System.out.println("error: " + e.getMessage() + "; when writing file: " + filename);
     } finally {
@@ -147,6 +163,10 @@ public class ClearPage {
         } catch (IOException e) {}
       }
     }
+    if (written && buildCache != null) {
+      buildCache.written(file);
+    }
+    Timings.fileWritten(file);
   }
 
   // recursively create the directories to the output
@@ -157,61 +177,199 @@ public class ClearPage {
     }
   }
 
-  public static void copyFile(boolean allowExcepted, File from, String toPath) {
-    File to = new File(outputDir + "/" + toPath);
+  /**
+   * Copies {@code from} to {@code toPath} under the output directory, unless the destination
+   * already has the same size and modification time; copies get the modification time of their
+   * source so that the next run can skip them. With {@link #hardLinkFiles} the destination is
+   * hard linked to {@code from} where the file system allows it. Between
+   * {@link #startParallelCopies(int)} and {@link #finishCopies()} the copy happens on a worker
+   * thread.
+   */
+  public static void copyFile(final boolean allowExcepted, final File from, final String toPath) {
+    final File to = new File(outputDir + "/" + toPath);
+    if (sCopyExecutor == null) {
+      copyFile(allowExcepted, from, to, toPath);
+      return;
+    }
+    synchronized (sPendingCopies) {
+      sPendingCopies.add(sCopyExecutor.submit(new Runnable() {
+        public void run() {
+          copyFile(allowExcepted, from, to, toPath);
+        }
+      }));
+    }
+  }
+
+  private static void copyFile(boolean allowExcepted, File from, File to, String toPath) {
+    if (!from.exists()) {
+      System.err.println(from.getAbsolutePath() + ": Error opening file");
+      return;
+    }
+    if (!isValidContentType(allowExcepted, toPath, DROIDDOC_VALID_CONTENT_TYPES)) {
+        Errors.error(Errors.INVALID_CONTENT_TYPE, null, "Failed to process " + from
+                + ": Invalid file type. Please move the file to frameworks/base/docs/image_sources/... or docs/downloads/...");
+        return;
+    }
+
+    long start = System.nanoTime();
+    if (to.length() == from.length() && to.lastModified() == from.lastModified()) {
+      sCopyStats.skipped(System.nanoTime() - start);
+      return;
+    }
+
+    ensureDirectory(to);
+    if (hardLinkFiles && link(from, to)) {
+      sCopyStats.linked(System.nanoTime() - start);
+      return;
+    }
+
     FileInputStream in;
     FileOutputStream out;
     try {
-      if (!from.exists()) {
-        throw new IOException();
-      }
       in = new FileInputStream(from);
     } catch (IOException e) {
       System.err.println(from.getAbsolutePath() + ": Error opening file");
       return;
     }
-    ensureDirectory(to);
     try {
+      // replace the destination rather than write through it: it may be a hard link to a
+      // source file, made by an earlier copy with hardLinkFiles
+      Files.deleteIfExists(to.toPath());
       out = new FileOutputStream(to);
     } catch (IOException e) {
       System.err.println(from.getAbsolutePath() + ": Error opening file");
+      try {
+        in.close();
+      } catch (IOException ignored) {}
       return;
     }
-    if (!isValidContentType(allowExcepted, toPath, DROIDDOC_VALID_CONTENT_TYPES)) {
-        Errors.error(Errors.INVALID_CONTENT_TYPE, null, "Failed to process " + from
-                + ": Invalid file type. Please move the file to frameworks/base/docs/image_sources/... or docs/downloads/...");
-        return;
-    }
 
-    long sizel = from.length();
-    final int maxsize = 64 * 1024;
-    int size = sizel > maxsize ? maxsize : (int) sizel;
-    byte[] buf = new byte[size];
-    while (true) {
-      try {
-        size = in.read(buf);
-      } catch (IOException e) {
-        System.err.println(from.getAbsolutePath() + ": error reading file");
-        break;
-      }
-      if (size > 0) {
-        try {
-          out.write(buf, 0, size);
-        } catch (IOException e) {
-          System.err.println(from.getAbsolutePath() + ": error writing file");
-        }
-      } else {
-        break;
+    boolean copied = false;
+    try {
+      FileChannel src = in.getChannel();
+      FileChannel dst = out.getChannel();
+      long size = src.size();
+      long position = 0;
+      while (position < size) {
+        position += src.transferTo(position, size - position, dst);
       }
+      copied = true;
+    } catch (IOException e) {
+      System.err.println(from.getAbsolutePath() + ": error copying file");
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {}
+      try {
+        out.close();
+      } catch (IOException e) {}
     }
+    if (copied) {
+      to.setLastModified(from.lastModified());
+      sCopyStats.copied(from.length(), System.nanoTime() - start);
+      Timings.fileWritten(to);
+    }
+  }
+
+  /**
+   * Replaces {@code to} with a hard link to {@code from}.
+   *
+   * @return false if the link could not be made, in which case the caller should copy instead
+   */
+  private static boolean link(File from, File to) {
     try {
-      in.close();
-    } catch (IOException e) {}
+      Files.deleteIfExists(to.toPath());
+      Files.createLink(to.toPath(), from.toPath());
+      return true;
+    } catch (IOException e) {
+      return false;
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Makes {@link #copyFile(boolean, File, String)} copy on {@code threads} worker threads until
+   * {@link #finishCopies()} is called.
+   */
+  public static void startParallelCopies(int threads) {
+    sCopyExecutor = Executors.newFixedThreadPool(threads);
+  }
+
+  /**
+   * Waits for the copies started since {@link #startParallelCopies(int)}, and goes back to
+   * copying on the calling thread.
+   */
+  public static void finishCopies() {
+    if (sCopyExecutor == null) {
+      return;
+    }
     try {
-      out.close();
-    } catch (IOException e) {}
+      synchronized (sPendingCopies) {
+        for (Future<?> copy : sPendingCopies) {
+          copy.get();
+        }
+        sPendingCopies.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      sCopyExecutor.shutdownNow();
+      sCopyExecutor = null;
+    }
+  }
+
+  /**
+   * @return a summary of the files copied so far, for the end of the run
+   */
+  public static String copyStats() {
+    return sCopyStats.toString();
   }
 
+  /**
+   * Counts the files handled by {@link ClearPage#copyFile(boolean, File, String)} and
+   * {@link JarUtils#copyResourcesToDirectory(java.util.jar.JarFile, String, String)}.
+   */
+  static class CopyStats {
+    private int mCopied;
+    private int mLinked;
+    private int mSkipped;
+    private long mBytes;
+    private long mNanos;
+
+    synchronized void copied(long bytes, long nanos) {
+      mCopied++;
+      mBytes += bytes;
+      mNanos += nanos;
+    }
+
+    synchronized void linked(long nanos) {
+      mLinked++;
+      mNanos += nanos;
+    }
+
+    synchronized void skipped(long nanos) {
+      mSkipped++;
+      mNanos += nanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "Copied " + mCopied + " files (" + (mBytes / 1024) + " KB), linked " + mLinked
+          + ", skipped " + mSkipped + " unchanged in " + (mNanos / 1000000) + " ms";
+    }
+  }
+
+  static final CopyStats sCopyStats = new CopyStats();
+  private static ExecutorService sCopyExecutor = null;
+  private static final List<Future<?>> sPendingCopies = new ArrayList<Future<?>>();
+
+  /** Whether {@link #copyFile(boolean, File, String)} may hard link files instead of copying. */
+  public static boolean hardLinkFiles = false;
+
   /** Takes a string that ends w/ .html and changes the .html to htmlExtension */
   public static String outputFilename(String htmlFile) {
     if (!Doclava.htmlExtension.equals(".html") && htmlFile.endsWith(".html")) {
@@ -229,8 +387,8 @@ public class ClearPage {
   public static ArrayList<String> DROIDDOC_EXCEPTED_CONTENT_TYPES = new ArrayList<String>(Arrays.asList(""));
 
   public static boolean isValidContentType(boolean allowExcepted, String s, ArrayList<String> list) {
-    if(allowExcepted){
-      list.addAll(DROIDDOC_EXCEPTED_CONTENT_TYPES);
+    if (allowExcepted && isValidContentType(false, s, DROIDDOC_EXCEPTED_CONTENT_TYPES)) {
+      return true;
     }
     for (String t : list) {
       if (s.endsWith(t)) {
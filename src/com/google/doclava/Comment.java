@@ -459,7 +459,7 @@ public class Comment {
     return mBriefTags;
   }
 
-  public boolean isHidden() {
+  public synchronized boolean isHidden() {
     if (mHidden == null) {
       mHidden = !Doclava.checkLevel(Doclava.SHOW_HIDDEN) &&
           (mText != null) && (mText.indexOf("@hide") >= 0 || mText.indexOf("@pending") >= 0);
@@ -467,7 +467,7 @@ public class Comment {
     return mHidden;
   }
 
-  public boolean isRemoved() {
+  public synchronized boolean isRemoved() {
     if (mRemoved == null) {
         mRemoved = !Doclava.checkLevel(Doclava.SHOW_HIDDEN) &&
             (mText != null) && (mText.indexOf("@removed") >= 0);
@@ -476,14 +476,14 @@ public class Comment {
     return mRemoved;
   }
 
-  public boolean isDocOnly() {
+  public synchronized boolean isDocOnly() {
     if (mDocOnly == null) {
       mDocOnly = (mText != null) && (mText.indexOf("@doconly") >= 0);
     }
     return mDocOnly;
   }
 
-  public boolean isDeprecated() {
+  public synchronized boolean isDeprecated() {
     if (mDeprecated == null) {
       mDeprecated = (mText != null) && (mText.indexOf("@deprecated") >= 0);
     }
@@ -491,7 +491,7 @@ public class Comment {
     return mDeprecated;
   }
 
-  private void init() {
+  private synchronized void init() {
     if (!mInitialized) {
       initImpl();
     }
@@ -0,0 +1,688 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.ParseTree;
+
+import java.math.BigInteger;
+
+/**
+ * The initializer of a field that may be a constant expression, as the Java Language
+ * Specification has them: literals, the names of other constants, casts to primitive types and
+ * String, and the unary, binary and conditional operators over them. Its value is worked out as
+ * javac works it out for javadoc.
+ * <p>
+ * An expression holds the text of its tokens, not the parse tree, so that it can be kept until
+ * the constants it names are known, after the files they are in have been let go of.
+ */
+abstract class ConstantExpression {
+    /**
+     * Finds the fields that the names in an expression refer to.
+     */
+    interface Names {
+        /**
+         * @param name A name as it is written in the expression, such as "MAX" or
+         * "Integer.MAX_VALUE".
+         * @return the field, with its constant value if it has one, or null if there is none.
+         */
+        FieldInfo field(String name);
+    }
+
+    /**
+     * Returns the value of this expression, or null if it is not constant.
+     * @param names Finds the fields that names refer to, or null to take every name as not
+     * constant.
+     */
+    abstract Object value(Names names);
+
+    /**
+     * Returns the value a field initialized with this expression gets, converted to the type of
+     * the field. Like javadoc, chars, shorts and bytes are given as Integers.
+     * @param type The type of the field.
+     * @param names Finds the fields that names refer to, or null to take every name as not
+     * constant.
+     * @return the value, or null if it is not constant.
+     */
+    Object fieldValue(TypeInfo type, Names names) {
+        Object value = value(names);
+        if (value == null || !isConstantType(type)) {
+            return null;
+        }
+
+        String typeName = type.qualifiedTypeName();
+        if (!type.isPrimitive()) {
+            return value instanceof String ? value : null;
+        } else if ("boolean".equals(typeName)) {
+            return value instanceof Boolean ? value : null;
+        } else if (!isNumeric(value)) {
+            return null;
+        }
+
+        Number number = number(value);
+        if ("long".equals(typeName)) {
+            return Long.valueOf(number.longValue());
+        } else if ("int".equals(typeName)) {
+            return Integer.valueOf(number.intValue());
+        } else if ("short".equals(typeName)) {
+            return Integer.valueOf(number.shortValue());
+        } else if ("byte".equals(typeName)) {
+            return Integer.valueOf(number.byteValue());
+        } else if ("char".equals(typeName)) {
+            return Integer.valueOf((char) number.intValue());
+        } else if ("float".equals(typeName)) {
+            return Float.valueOf(number.floatValue());
+        } else if ("double".equals(typeName)) {
+            return Double.valueOf(number.doubleValue());
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether fields of {@code type} can be constants: whether it is a primitive type
+     * or String.
+     */
+    static boolean isConstantType(TypeInfo type) {
+        if (!"".equals(type.dimension())) {
+            return false;
+        }
+        String typeName = type.qualifiedTypeName();
+        return (type.isPrimitive() && !"void".equals(typeName))
+                || "java.lang.String".equals(typeName);
+    }
+
+    /**
+     * Reads an expression out of its parse tree.
+     * @param tree The tree of the expression, such as a variableInitializer or an expression.
+     * @return the expression, or null if it cannot be constant, such as a method call.
+     */
+    static ConstantExpression parse(ParseTree tree) {
+        if (tree.payload instanceof Token) {
+            return null;
+        }
+
+        String rule = tree.toString();
+        int count = tree.getChildCount();
+        if ("literal".equals(rule)) {
+            Object value = literal(tree.getChild(0).toString());
+            return value != null ? new Literal(value) : null;
+        } else if ("primary".equals(rule)) {
+            ParseTree first = child(tree, 0);
+            if (!(first.payload instanceof Token)) {
+                // a literal or a parenthesized expression
+                return count == 1 ? parse(first) : null;
+            }
+            // a name; one followed by arguments, an array index or .class is not constant
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                ParseTree child = child(tree, i);
+                if (!(child.payload instanceof Token) || "this".equals(child.toString())
+                        || "super".equals(child.toString())) {
+                    return null;
+                }
+                name.append(child.toString());
+            }
+            return new Name(name.toString());
+        } else if ("parExpression".equals(rule)) {
+            return count == 3 ? parse(child(tree, 1)) : null;
+        } else if ("castExpression".equals(rule)) {
+            ConstantExpression operand = parse(child(tree, count - 1));
+            if (operand == null) {
+                return null;
+            }
+            String typeName = text(child(tree, 1));
+            if ("primitiveType".equals(child(tree, 1).toString())) {
+                return new Cast(typeName, operand);
+            } else if ("String".equals(typeName) || "java.lang.String".equals(typeName)) {
+                return new Cast("String", operand);
+            }
+            return null;
+        } else if ("unaryExpression".equals(rule) || "unaryExpressionNotPlusMinus".equals(rule)) {
+            if (count == 1) {
+                return parse(child(tree, 0));
+            }
+            String op = child(tree, 0).toString();
+            if (count != 2 || "++".equals(op) || "--".equals(op)
+                    || !(child(tree, 0).payload instanceof Token)) {
+                // an increment, or a primary with selectors
+                return null;
+            }
+            ConstantExpression operand = parse(child(tree, 1));
+            return operand != null ? new Unary(op, operand) : null;
+        } else if ("conditionalExpression".equals(rule)) {
+            if (count == 1) {
+                return parse(child(tree, 0));
+            } else if (count != 5) {
+                return null;
+            }
+            ConstantExpression condition = parse(child(tree, 0));
+            ConstantExpression ifTrue = parse(child(tree, 2));
+            ConstantExpression ifFalse = parse(child(tree, 4));
+            if (condition == null || ifTrue == null || ifFalse == null) {
+                return null;
+            }
+            return new Conditional(condition, ifTrue, ifFalse);
+        } else if (isBinary(rule)) {
+            ConstantExpression left = parse(child(tree, 0));
+            for (int i = 1; left != null && i + 1 < count; i += 2) {
+                // relationalOp and shiftOp are rules of several tokens, such as '<' '<'
+                String op = text(child(tree, i));
+                ConstantExpression right = parse(child(tree, i + 1));
+                left = right != null ? new Binary(op, left, right) : null;
+            }
+            return left;
+        } else if (count == 1) {
+            // variableInitializer, expression, instanceOfExpression and the like, when they
+            // are only the expression below them
+            return parse(child(tree, 0));
+        }
+        return null;
+    }
+
+    private static boolean isBinary(String rule) {
+        return "conditionalOrExpression".equals(rule) || "conditionalAndExpression".equals(rule)
+                || "inclusiveOrExpression".equals(rule) || "exclusiveOrExpression".equals(rule)
+                || "andExpression".equals(rule) || "equalityExpression".equals(rule)
+                || "relationalExpression".equals(rule) || "shiftExpression".equals(rule)
+                || "additiveExpression".equals(rule) || "multiplicativeExpression".equals(rule);
+    }
+
+    private static ParseTree child(ParseTree tree, int i) {
+        return (ParseTree) tree.getChild(i);
+    }
+
+    /**
+     * Returns the text of the tokens of a tree, put together.
+     */
+    private static String text(ParseTree tree) {
+        if (tree.payload instanceof Token) {
+            return tree.toString();
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            text.append(text(child(tree, i)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the value of a literal, or null if it is null or malformed.
+     */
+    static Object literal(String text) {
+        if ("true".equals(text)) {
+            return Boolean.TRUE;
+        } else if ("false".equals(text)) {
+            return Boolean.FALSE;
+        } else if (text.isEmpty() || "null".equals(text)) {
+            return null;
+        }
+
+        char first = text.charAt(0);
+        if (first == '"' || first == '\'') {
+            if (text.length() < 2 || text.charAt(text.length() - 1) != first) {
+                return null;
+            }
+            String value = unescape(text.substring(1, text.length() - 1));
+            if (first == '"' || value == null) {
+                return value;
+            }
+            return value.length() == 1 ? Character.valueOf(value.charAt(0)) : null;
+        }
+
+        try {
+            String literal = text.replace("_", "");
+            char last = Character.toLowerCase(literal.charAt(literal.length() - 1));
+            boolean hex = literal.startsWith("0x") || literal.startsWith("0X");
+            boolean hexFloat = hex && (literal.indexOf('p') != -1 || literal.indexOf('P') != -1);
+            if (hexFloat || (!hex && (literal.indexOf('.') != -1 || literal.indexOf('e') != -1
+                    || literal.indexOf('E') != -1 || last == 'f' || last == 'd'))) {
+                if (last == 'f') {
+                    return Float.valueOf(literal);
+                }
+                return Double.valueOf(literal);
+            }
+
+            // integer literal, which may be hexadecimal, octal or binary
+            String digits = (last == 'l') ? literal.substring(0, literal.length() - 1) : literal;
+            int radix = 10;
+            if (hex) {
+                radix = 16;
+                digits = digits.substring(2);
+            } else if (digits.startsWith("0b") || digits.startsWith("0B")) {
+                radix = 2;
+                digits = digits.substring(2);
+            } else if (digits.length() > 1 && digits.charAt(0) == '0') {
+                radix = 8;
+                digits = digits.substring(1);
+            }
+            // 0xffffffff is an int literal of -1, and 2147483648 can only be negated, which
+            // leaves it as it is
+            BigInteger value = new BigInteger(digits, radix);
+            if (last == 'l') {
+                return Long.valueOf(value.longValue());
+            }
+            return Integer.valueOf(value.intValue());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the escape sequences of the text of a string or character literal.
+     * @param text The text between the quotes.
+     * @return the text the literal stands for, or null if an escape sequence is malformed.
+     */
+    static String unescape(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (i == text.length()) {
+                return null;
+            }
+
+            c = text.charAt(i++);
+            switch (c) {
+                case 'b': builder.append('\b'); break;
+                case 't': builder.append('\t'); break;
+                case 'n': builder.append('\n'); break;
+                case 'f': builder.append('\f'); break;
+                case 'r': builder.append('\r'); break;
+                case '"': builder.append('"'); break;
+                case '\'': builder.append('\''); break;
+                case '\\': builder.append('\\'); break;
+                case 'u':
+                    while (i < text.length() && text.charAt(i) == 'u') {
+                        i++;
+                    }
+                    if (i + 4 > text.length()) {
+                        return null;
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    i += 4;
+                    break;
+                default:
+                    // octal escape, of up to three digits below \400
+                    int end = i - 1;
+                    int max = (c <= '3') ? 3 : 2;
+                    while (end < text.length() && end < i - 1 + max
+                            && text.charAt(end) >= '0' && text.charAt(end) <= '7') {
+                        end++;
+                    }
+                    if (end == i - 1) {
+                        return null;
+                    }
+                    builder.append((char) Integer.parseInt(text.substring(i - 1, end), 8));
+                    i = end;
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isNumeric(Object value) {
+        return value instanceof Number || value instanceof Character;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof Character;
+    }
+
+    private static Number number(Object value) {
+        if (value instanceof Character) {
+            return Integer.valueOf((Character) value);
+        }
+        return (Number) value;
+    }
+
+    /**
+     * Returns the value of a field as an operand: the constants of chars, which are kept as
+     * Integers, are turned back into Characters, as they are concatenated to strings as such.
+     */
+    private static Object operand(FieldInfo field) {
+        Object value = field.constantValue();
+        if (value instanceof Integer && "char".equals(field.type().qualifiedTypeName())
+                && "".equals(field.type().dimension())) {
+            return Character.valueOf((char) ((Integer) value).intValue());
+        }
+        return value;
+    }
+
+    /**
+     * Converts numbers to the type binary numeric promotion gives them.
+     */
+    private static Number promote(Object value, Object other) {
+        Number number = number(value);
+        if (value instanceof Double || other instanceof Double) {
+            return Double.valueOf(number.doubleValue());
+        } else if (value instanceof Float || other instanceof Float) {
+            return Float.valueOf(number.floatValue());
+        } else if (value instanceof Long || other instanceof Long) {
+            return Long.valueOf(number.longValue());
+        }
+        return Integer.valueOf(number.intValue());
+    }
+
+    private static class Literal extends ConstantExpression {
+        private final Object mValue;
+
+        Literal(Object value) {
+            mValue = value;
+        }
+
+        Object value(Names names) {
+            return mValue;
+        }
+    }
+
+    private static class Name extends ConstantExpression {
+        private final String mName;
+
+        Name(String name) {
+            mName = name;
+        }
+
+        Object value(Names names) {
+            FieldInfo field = names != null ? names.field(mName) : null;
+            return field != null ? operand(field) : null;
+        }
+    }
+
+    private static class Cast extends ConstantExpression {
+        private final String mType;
+        private final ConstantExpression mOperand;
+
+        Cast(String type, ConstantExpression operand) {
+            mType = type;
+            mOperand = operand;
+        }
+
+        Object value(Names names) {
+            Object value = mOperand.value(names);
+            if (value == null) {
+                return null;
+            } else if ("String".equals(mType)) {
+                return value instanceof String ? value : null;
+            } else if ("boolean".equals(mType)) {
+                return value instanceof Boolean ? value : null;
+            } else if (!isNumeric(value)) {
+                return null;
+            }
+
+            Number number = number(value);
+            if ("char".equals(mType)) {
+                return Character.valueOf((char) number.intValue());
+            } else if ("byte".equals(mType)) {
+                return Byte.valueOf(number.byteValue());
+            } else if ("short".equals(mType)) {
+                return Short.valueOf(number.shortValue());
+            } else if ("int".equals(mType)) {
+                return Integer.valueOf(number.intValue());
+            } else if ("long".equals(mType)) {
+                return Long.valueOf(number.longValue());
+            } else if ("float".equals(mType)) {
+                return Float.valueOf(number.floatValue());
+            } else if ("double".equals(mType)) {
+                return Double.valueOf(number.doubleValue());
+            }
+            return null;
+        }
+    }
+
+    private static class Unary extends ConstantExpression {
+        private final String mOp;
+        private final ConstantExpression mOperand;
+
+        Unary(String op, ConstantExpression operand) {
+            mOp = op;
+            mOperand = operand;
+        }
+
+        Object value(Names names) {
+            Object value = mOperand.value(names);
+            if ("!".equals(mOp)) {
+                return value instanceof Boolean ? Boolean.valueOf(!(Boolean) value) : null;
+            } else if (!isNumeric(value)) {
+                return null;
+            }
+
+            Number number = promote(value, null);
+            if ("+".equals(mOp)) {
+                return number;
+            } else if ("-".equals(mOp)) {
+                if (number instanceof Double) {
+                    return Double.valueOf(-number.doubleValue());
+                } else if (number instanceof Float) {
+                    return Float.valueOf(-number.floatValue());
+                } else if (number instanceof Long) {
+                    return Long.valueOf(-number.longValue());
+                }
+                return Integer.valueOf(-number.intValue());
+            } else if ("~".equals(mOp)) {
+                if (number instanceof Long) {
+                    return Long.valueOf(~number.longValue());
+                } else if (number instanceof Integer) {
+                    return Integer.valueOf(~number.intValue());
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Conditional extends ConstantExpression {
+        private final ConstantExpression mCondition;
+        private final ConstantExpression mIfTrue;
+        private final ConstantExpression mIfFalse;
+
+        Conditional(ConstantExpression condition, ConstantExpression ifTrue,
+                ConstantExpression ifFalse) {
+            mCondition = condition;
+            mIfTrue = ifTrue;
+            mIfFalse = ifFalse;
+        }
+
+        Object value(Names names) {
+            Object condition = mCondition.value(names);
+            // both operands must be constant, and give the type of the expression
+            Object ifTrue = mIfTrue.value(names);
+            Object ifFalse = mIfFalse.value(names);
+            if (!(condition instanceof Boolean) || ifTrue == null || ifFalse == null) {
+                return null;
+            }
+            Object value = (Boolean) condition ? ifTrue : ifFalse;
+            Object other = (Boolean) condition ? ifFalse : ifTrue;
+            if (isNumeric(value) && isNumeric(other) && value.getClass() != other.getClass()) {
+                return promote(value, other);
+            }
+            return value;
+        }
+    }
+
+    private static class Binary extends ConstantExpression {
+        private final String mOp;
+        private final ConstantExpression mLeft;
+        private final ConstantExpression mRight;
+
+        Binary(String op, ConstantExpression left, ConstantExpression right) {
+            mOp = op;
+            mLeft = left;
+            mRight = right;
+        }
+
+        Object value(Names names) {
+            Object left = mLeft.value(names);
+            Object right = mRight.value(names);
+            if (left == null || right == null) {
+                return null;
+            }
+
+            if ("+".equals(mOp) && (left instanceof String || right instanceof String)) {
+                return String.valueOf(left) + String.valueOf(right);
+            }
+            if (left instanceof Boolean && right instanceof Boolean) {
+                return logical((Boolean) left, (Boolean) right);
+            }
+            if (!isNumeric(left) || !isNumeric(right)) {
+                return null;
+            }
+            if ("<<".equals(mOp) || ">>".equals(mOp) || ">>>".equals(mOp)) {
+                return shift(left, right);
+            }
+
+            Number a = promote(left, right);
+            Number b = promote(right, left);
+            if ("==".equals(mOp) || "!=".equals(mOp) || "<".equals(mOp) || "<=".equals(mOp)
+                    || ">".equals(mOp) || ">=".equals(mOp)) {
+                return compare(a, b);
+            } else if (a instanceof Double || a instanceof Float) {
+                return floating(a, b);
+            }
+            return integral(a, b);
+        }
+
+        private Object logical(boolean a, boolean b) {
+            if ("&&".equals(mOp) || "&".equals(mOp)) {
+                return Boolean.valueOf(a & b);
+            } else if ("||".equals(mOp) || "|".equals(mOp)) {
+                return Boolean.valueOf(a | b);
+            } else if ("^".equals(mOp) || "!=".equals(mOp)) {
+                return Boolean.valueOf(a ^ b);
+            } else if ("==".equals(mOp)) {
+                return Boolean.valueOf(a == b);
+            }
+            return null;
+        }
+
+        private Object shift(Object left, Object right) {
+            if (!isIntegral(left) || !isIntegral(right)) {
+                return null;
+            }
+            // only the left operand decides the type, the distance is masked to fit it
+            long distance = number(right).longValue();
+            Number value = promote(left, null);
+            if (value instanceof Long) {
+                long a = value.longValue();
+                int n = (int) (distance & 0x3f);
+                if ("<<".equals(mOp)) {
+                    return Long.valueOf(a << n);
+                }
+                return Long.valueOf(">>".equals(mOp) ? a >> n : a >>> n);
+            }
+            int a = value.intValue();
+            int n = (int) (distance & 0x1f);
+            if ("<<".equals(mOp)) {
+                return Integer.valueOf(a << n);
+            }
+            return Integer.valueOf(">>".equals(mOp) ? a >> n : a >>> n);
+        }
+
+        private Object compare(Number a, Number b) {
+            if (a instanceof Double || a instanceof Float) {
+                return compare(a.doubleValue(), b.doubleValue());
+            }
+            // longs are compared as they are, doubles would round the large ones
+            long x = a.longValue();
+            long y = b.longValue();
+            return compare(x < y ? -1.0 : (x == y ? 0.0 : 1.0), 0.0);
+        }
+
+        private Object compare(double x, double y) {
+            if ("==".equals(mOp)) {
+                return Boolean.valueOf(x == y);
+            } else if ("!=".equals(mOp)) {
+                return Boolean.valueOf(x != y);
+            } else if ("<".equals(mOp)) {
+                return Boolean.valueOf(x < y);
+            } else if ("<=".equals(mOp)) {
+                return Boolean.valueOf(x <= y);
+            } else if (">".equals(mOp)) {
+                return Boolean.valueOf(x > y);
+            }
+            return Boolean.valueOf(x >= y);
+        }
+
+        private Object floating(Number a, Number b) {
+            double x = a.doubleValue();
+            double y = b.doubleValue();
+            double value;
+            if ("+".equals(mOp)) {
+                value = x + y;
+            } else if ("-".equals(mOp)) {
+                value = x - y;
+            } else if ("*".equals(mOp)) {
+                value = x * y;
+            } else if ("/".equals(mOp)) {
+                value = x / y;
+            } else if ("%".equals(mOp)) {
+                value = x % y;
+            } else {
+                return null;
+            }
+            if (a instanceof Float) {
+                // float arithmetic rounds each result to a float, which computing in double and
+                // rounding once gives too for these operators
+                return Float.valueOf((float) value);
+            }
+            return Double.valueOf(value);
+        }
+
+        private Object integral(Number a, Number b) {
+            long x = a.longValue();
+            long y = b.longValue();
+            long value;
+            if ("+".equals(mOp)) {
+                value = x + y;
+            } else if ("-".equals(mOp)) {
+                value = x - y;
+            } else if ("*".equals(mOp)) {
+                value = x * y;
+            } else if ("/".equals(mOp) || "%".equals(mOp)) {
+                // javac will not compile a division by zero into a constant
+                if (y == 0) {
+                    return null;
+                }
+                if (a instanceof Integer) {
+                    int p = (int) x;
+                    int q = (int) y;
+                    return Integer.valueOf("/".equals(mOp) ? p / q : p % q);
+                }
+                value = "/".equals(mOp) ? x / y : x % y;
+            } else if ("&".equals(mOp)) {
+                value = x & y;
+            } else if ("|".equals(mOp)) {
+                value = x | y;
+            } else if ("^".equals(mOp)) {
+                value = x ^ y;
+            } else {
+                return null;
+            }
+            if (a instanceof Long) {
+                return Long.valueOf(value);
+            }
+            return Integer.valueOf((int) value);
+        }
+    }
+}
@@ -30,17 +30,22 @@ import com.sun.javadoc.MethodDoc;
 import com.sun.javadoc.PackageDoc;
 import com.sun.javadoc.ParamTag;
 import com.sun.javadoc.Parameter;
+import com.sun.javadoc.ParameterizedType;
 import com.sun.javadoc.RootDoc;
 import com.sun.javadoc.SeeTag;
 import com.sun.javadoc.SourcePosition;
 import com.sun.javadoc.Tag;
 import com.sun.javadoc.ThrowsTag;
 import com.sun.javadoc.Type;
+import com.sun.javadoc.TypeVariable;
+import com.sun.javadoc.WildcardType;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 public class Converter {
@@ -99,12 +104,52 @@ public class Converter {
 
   private static ClassInfo[] mRootClasses;
 
+  // the classes InfoBuilder built from source, by qualified name, when there is no RootDoc
+  private static HashMap<String, ClassInfo> mSourceClasses;
+  private static HashMap<String, PackageInfo> mSourcePackages;
+
+  /**
+   * Makes the classes InfoBuilder built from source, rather than those of a RootDoc, the ones
+   * the rest of doclava sees; the included ones become the root classes.
+   */
+  public static void setClasses(Collection<ClassInfo> classes) {
+    mSourceClasses = new HashMap<String, ClassInfo>();
+    mSourcePackages = new HashMap<String, PackageInfo>();
+    ArrayList<ClassInfo> rootClasses = new ArrayList<ClassInfo>();
+    for (ClassInfo cl : classes) {
+      mSourceClasses.put(cl.qualifiedName(), cl);
+      if (cl.containingPackage() != null) {
+        mSourcePackages.put(cl.containingPackage().name(), cl.containingPackage());
+      }
+      if (cl.isIncluded()) {
+        rootClasses.add(cl);
+      }
+    }
+    mRootClasses = rootClasses.toArray(new ClassInfo[rootClasses.size()]);
+    mSubclassIndex = null;
+  }
+
   public static ClassInfo[] rootClasses() {
     return mRootClasses;
   }
 
+  private static SubclassIndex mSubclassIndex;
+
+  /**
+   * Returns the known subclasses of every root class. This is built on first use, once
+   * {@link #makeInfo} has resolved the whole class graph.
+   */
+  public static synchronized SubclassIndex subclassIndex() {
+    if (mSubclassIndex == null) {
+      mSubclassIndex = new SubclassIndex(mRootClasses);
+    }
+    return mSubclassIndex;
+  }
+
   public static ClassInfo[] allClasses() {
-    return (ClassInfo[]) mClasses.all();
+    Collection<ClassInfo> classes =
+        mSourceClasses != null ? mSourceClasses.values() : mClasses.values();
+    return classes.toArray(new ClassInfo[classes.size()]);
   }
 
   private static void initClass(ClassDoc c, ClassInfo cl) {
@@ -154,10 +199,16 @@ public class Converter {
   }
 
   public static ClassInfo obtainClass(String className) {
+    if (root == null && mSourceClasses != null) {
+      return mSourceClasses.get(className);
+    }
     return Converter.obtainClass(root.classNamed(className));
   }
 
   public static PackageInfo obtainPackage(String packageName) {
+    if (root == null && mSourcePackages != null) {
+      return mSourcePackages.get(packageName);
+    }
     return Converter.obtainPackage(root.packageNamed(packageName));
   }
 
@@ -266,13 +317,12 @@ public class Converter {
       new ArrayList<ClassNeedingInit>();
 
   static ClassInfo obtainClass(ClassDoc o) {
-    return (ClassInfo) mClasses.obtain(o);
+    return mClasses.obtain(o);
   }
 
-  private static Cache mClasses = new Cache() {
+  private static Cache<ClassDoc, ClassInfo> mClasses = new Cache<ClassDoc, ClassInfo>() {
     @Override
-    protected Object make(Object o) {
-      ClassDoc c = (ClassDoc) o;
+    protected ClassInfo make(ClassDoc c) {
       ClassInfo cl =
           new ClassInfo(c, c.getRawCommentText(), Converter.convertSourcePosition(c.position()), c
               .isPublic(), c.isProtected(), c.isPackagePrivate(), c.isPrivate(), c.isStatic(), c
@@ -286,17 +336,12 @@ public class Converter {
     }
 
     @Override
-    protected void made(Object o, Object r) {
+    protected void made(ClassDoc c, ClassInfo cl) {
       if (mClassesNeedingInit == null) {
-        initClass((ClassDoc) o, (ClassInfo) r);
-        ((ClassInfo) r).init2();
+        initClass(c, cl);
+        cl.init2();
       }
     }
-
-    @Override
-    ClassInfo[] all() {
-      return mCache.values().toArray(new ClassInfo[mCache.size()]);
-    }
   };
 
   private static MethodInfo[] getHiddenMethods(MethodDoc[] methods) {
@@ -386,12 +431,13 @@ public class Converter {
   }
 
   private static <E extends ExecutableMemberDoc> MethodInfo obtainMethod(E o) {
-    return (MethodInfo) mMethods.obtain(o);
+    return mMethods.obtain(o);
   }
 
-  private static Cache mMethods = new Cache() {
+  private static Cache<ExecutableMemberDoc, MethodInfo> mMethods =
+      new Cache<ExecutableMemberDoc, MethodInfo>() {
     @Override
-    protected Object make(Object o) {
+    protected MethodInfo make(ExecutableMemberDoc o) {
       if (o instanceof AnnotationTypeElementDoc) {
         AnnotationTypeElementDoc m = (AnnotationTypeElementDoc) o;
         MethodInfo result =
@@ -468,17 +514,12 @@ public class Converter {
   }
 
   private static FieldInfo obtainField(FieldDoc o) {
-    return (FieldInfo) mFields.obtain(o);
-  }
-
-  private static FieldInfo obtainField(ConstructorDoc o) {
-    return (FieldInfo) mFields.obtain(o);
+    return mFields.obtain(o);
   }
 
-  private static Cache mFields = new Cache() {
+  private static Cache<FieldDoc, FieldInfo> mFields = new Cache<FieldDoc, FieldInfo>() {
     @Override
-    protected Object make(Object o) {
-      FieldDoc f = (FieldDoc) o;
+    protected FieldInfo make(FieldDoc f) {
       return new FieldInfo(f.name(), Converter.obtainClass(f.containingClass()), Converter
           .obtainClass(f.containingClass()), f.isPublic(), f.isProtected(), f.isPackagePrivate(), f
           .isPrivate(), f.isFinal(), f.isStatic(), f.isTransient(), f.isVolatile(),
@@ -490,25 +531,115 @@ public class Converter {
   };
 
   private static PackageInfo obtainPackage(PackageDoc o) {
-    return (PackageInfo) mPackagees.obtain(o);
+    return mPackagees.obtain(o);
   }
 
-  private static Cache mPackagees = new Cache() {
+  private static Cache<PackageDoc, PackageInfo> mPackagees =
+      new Cache<PackageDoc, PackageInfo>() {
     @Override
-    protected Object make(Object o) {
-      PackageDoc p = (PackageDoc) o;
+    protected PackageInfo make(PackageDoc p) {
       return new PackageInfo(p, p.name(), Converter.convertSourcePosition(p.position()));
     }
   };
 
   private static TypeInfo obtainType(Type o) {
-    return (TypeInfo) mTypes.obtain(o);
+    return mTypes.obtain(o);
+  }
+
+  /**
+   * Structural cache key for a javadoc {@link Type}. Javadoc hands out distinct but equivalent
+   * instances for the same parameterized type, type variable or wildcard, so types are matched
+   * on their implementation class, their rendered form and those of their type arguments and
+   * bounds. A {@code null} entry in {@code mParts} separates the argument and bound lists.
+   */
+  private static final class TypeKey {
+    private final Class<?> mKind;
+    private final String mName;
+    private final String[] mParts;
+    private final int mHash;
+
+    TypeKey(Type t) {
+      ArrayList<String> parts = new ArrayList<String>();
+      ParameterizedType parameterized = t.asParameterizedType();
+      if (parameterized != null) {
+        parts.add(parameterized.toString());
+        addAll(parts, parameterized.typeArguments());
+      }
+      parts.add(null);
+      TypeVariable variable = t.asTypeVariable();
+      if (variable != null) {
+        parts.add(variable.toString());
+        addAll(parts, variable.bounds());
+      }
+      parts.add(null);
+      WildcardType wildcard = t.asWildcardType();
+      if (wildcard != null) {
+        parts.add(wildcard.toString());
+        addAll(parts, wildcard.superBounds());
+        parts.add(null);
+        addAll(parts, wildcard.extendsBounds());
+      }
+
+      mKind = t.getClass();
+      mName = t.toString();
+      mParts = parts.toArray(new String[parts.size()]);
+      mHash = 31 * (31 * mKind.hashCode() + mName.hashCode()) + Arrays.hashCode(mParts);
+    }
+
+    private static void addAll(ArrayList<String> parts, Type[] types) {
+      if (types != null) {
+        for (Type t : types) {
+          parts.add(t.toString());
+        }
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return mHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TypeKey)) {
+        return false;
+      }
+      TypeKey that = (TypeKey) o;
+      return mHash == that.mHash && mKind == that.mKind && mName.equals(that.mName)
+          && Arrays.equals(mParts, that.mParts);
+    }
   }
 
-  private static Cache mTypes = new Cache() {
+  /**
+   * Class and primitive types are looked up by instance, since javadoc shares those. The other
+   * types are new instances each time javadoc hands them out, so they are looked up by their
+   * {@link TypeKey} alone; holding on to every instance would only grow the cache.
+   */
+  private static Cache<Type, TypeInfo> mTypes = new Cache<Type, TypeInfo>() {
+    private final IdentityHashMap<Type, TypeInfo> mByInstance =
+        new IdentityHashMap<Type, TypeInfo>();
+
     @Override
-    protected Object make(Object o) {
-      Type t = (Type) o;
+    TypeInfo obtain(Type t) {
+      if (t == null) {
+        return null;
+      }
+      if (!(t instanceof ClassDoc) && !(t.isPrimitive() && t.dimension().isEmpty())) {
+        return super.obtain(t);
+      }
+      TypeInfo r = mByInstance.get(t);
+      if (r == null) {
+        r = super.obtain(t);
+        mByInstance.put(t, r);
+      }
+      return r;
+    }
+
+    @Override
+    protected TypeInfo make(Type t) {
       String simpleTypeName;
       if (t instanceof ClassDoc) {
         simpleTypeName = ((ClassDoc) t).name();
@@ -522,9 +653,7 @@ public class Converter {
     }
 
     @Override
-    protected void made(Object o, Object r) {
-      Type t = (Type) o;
-      TypeInfo ti = (TypeInfo) r;
+    protected void made(Type t, TypeInfo ti) {
       if (t.asParameterizedType() != null) {
         ti.setTypeArguments(new ArrayList<TypeInfo>(Arrays.asList(Converter.convertTypes(t.asParameterizedType().typeArguments()))));
       } else if (t instanceof ClassDoc) {
@@ -540,78 +669,32 @@ public class Converter {
     }
 
     @Override
-    protected Object keyFor(Object o) {
-      Type t = (Type) o;
-      String keyString = o.getClass().getName() + "/" + o.toString() + "/";
-      if (t.asParameterizedType() != null) {
-        keyString += t.asParameterizedType().toString() + "/";
-        if (t.asParameterizedType().typeArguments() != null) {
-          for (Type ty : t.asParameterizedType().typeArguments()) {
-            keyString += ty.toString() + "/";
-          }
-        }
-      } else {
-        keyString += "NoParameterizedType//";
-      }
-      if (t.asTypeVariable() != null) {
-        keyString += t.asTypeVariable().toString() + "/";
-        if (t.asTypeVariable().bounds() != null) {
-          for (Type ty : t.asTypeVariable().bounds()) {
-            keyString += ty.toString() + "/";
-          }
-        }
-      } else {
-        keyString += "NoTypeVariable//";
-      }
-      if (t.asWildcardType() != null) {
-        keyString += t.asWildcardType().toString() + "/";
-        if (t.asWildcardType().superBounds() != null) {
-          for (Type ty : t.asWildcardType().superBounds()) {
-            keyString += ty.toString() + "/";
-          }
-        }
-        if (t.asWildcardType().extendsBounds() != null) {
-          for (Type ty : t.asWildcardType().extendsBounds()) {
-            keyString += ty.toString() + "/";
-          }
-        }
-      } else {
-        keyString += "NoWildCardType//";
-      }
-
-      return keyString;
+    protected Object keyFor(Type t) {
+      return new TypeKey(t);
     }
   };
 
   public static TypeInfo obtainTypeFromString(String type) {
-    return (TypeInfo) mTypesFromString.obtain(type);
+    // API files may be parsed concurrently by apicheck.
+    synchronized (mTypesFromString) {
+      return mTypesFromString.obtain(type);
+    }
   }
 
-  private static final Cache mTypesFromString = new Cache() {
+  private static final Cache<String, TypeInfo> mTypesFromString = new Cache<String, TypeInfo>() {
     @Override
-    protected Object make(Object o) {
-      String name = (String) o;
+    protected TypeInfo make(String name) {
       return new TypeInfo(name);
     }
-
-    @Override
-    protected void made(Object o, Object r) {
-
-    }
-
-    @Override
-    protected Object keyFor(Object o) {
-      return o;
-    }
   };
 
   private static MemberInfo obtainMember(MemberDoc o) {
-    return (MemberInfo) mMembers.obtain(o);
+    return mMembers.obtain(o);
   }
 
-  private static Cache mMembers = new Cache() {
+  private static Cache<MemberDoc, MemberInfo> mMembers = new Cache<MemberDoc, MemberInfo>() {
     @Override
-    protected Object make(Object o) {
+    protected MemberInfo make(MemberDoc o) {
       if (o instanceof MethodDoc) {
         return Converter.obtainMethod((MethodDoc) o);
       } else if (o instanceof ConstructorDoc) {
@@ -635,13 +718,13 @@ public class Converter {
 
 
   private static AnnotationInstanceInfo obtainAnnotationInstance(AnnotationDesc o) {
-    return (AnnotationInstanceInfo) mAnnotationInstances.obtain(o);
+    return mAnnotationInstances.obtain(o);
   }
 
-  private static Cache mAnnotationInstances = new Cache() {
+  private static Cache<AnnotationDesc, AnnotationInstanceInfo> mAnnotationInstances =
+      new Cache<AnnotationDesc, AnnotationInstanceInfo>() {
     @Override
-    protected Object make(Object o) {
-      AnnotationDesc a = (AnnotationDesc) o;
+    protected AnnotationInstanceInfo make(AnnotationDesc a) {
       ClassInfo annotationType = Converter.obtainClass(a.annotationType());
       AnnotationDesc.ElementValuePair[] ev = a.elementValues();
       AnnotationValueInfo[] elementValues = new AnnotationValueInfo[ev.length];
@@ -654,17 +737,21 @@ public class Converter {
   };
 
 
-  private abstract static class Cache {
-    void put(Object key, Object value) {
+  /**
+   * Maps javadoc objects of type {@code T} to the doclava model objects of type {@code R} made
+   * from them. By default the javadoc object is its own key.
+   */
+  private abstract static class Cache<T, R> {
+    void put(Object key, R value) {
       mCache.put(key, value);
     }
 
-    Object obtain(Object o) {
+    R obtain(T o) {
       if (o == null) {
         return null;
       }
       Object k = keyFor(o);
-      Object r = mCache.get(k);
+      R r = mCache.get(k);
       if (r == null) {
         r = make(o);
         mCache.put(k, r);
@@ -673,18 +760,18 @@ public class Converter {
       return r;
     }
 
-    protected HashMap<Object, Object> mCache = new HashMap<Object, Object>();
+    Collection<R> values() {
+      return mCache.values();
+    }
 
-    protected abstract Object make(Object o);
+    protected HashMap<Object, R> mCache = new HashMap<Object, R>();
 
-    protected void made(Object o, Object r) {}
+    protected abstract R make(T o);
 
-    protected Object keyFor(Object o) {
-      return o;
-    }
+    protected void made(T o, R r) {}
 
-    Object[] all() {
-      return null;
+    protected Object keyFor(T o) {
+      return o;
     }
   }
 
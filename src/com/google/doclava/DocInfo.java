@@ -74,7 +74,7 @@ public abstract class DocInfo {
 
   }
 
-  public Comment comment() {
+  public synchronized Comment comment() {
     if (mComment == null) {
       mComment = new Comment(mRawCommentText, parent(), mPosition);
     }
@@ -26,6 +26,11 @@ import com.google.clearsilver.jsilver.resourceloader.ResourceLoader;
 import com.sun.javadoc.*;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.io.*;
@@ -98,6 +103,16 @@ public class Doclava {
 
   public static JSilver jSilver = null;
 
+  /**
+   * Number of threads, set by -threads, for all of doclava's parallel work: parsing -since files,
+   * linting, finding what the stubs need, writing stubs, copying files and rendering class pages.
+   * 1 does all of it on the calling thread.
+   */
+  public static int threads = 1;
+
+  /** Whether to skip writing files whose inputs are unchanged since the last run. */
+  private static boolean incremental = false;
+
   private static boolean gmsRef = false;
   private static boolean gcmRef = false;
   private static boolean samplesRef = false;
@@ -115,6 +130,14 @@ public class Doclava {
     return generateDocs || parseComments;
   }
 
+  /**
+   * Sets whether documentation is generated, as -nodocs does; Doclava2, which has no
+   * options of javadoc, writes none.
+   */
+  static void setGenerateDocs(boolean generate) {
+    generateDocs = generate;
+  }
+
   public static boolean checkLevel(boolean pub, boolean prot, boolean pkgp, boolean priv,
       boolean hidden) {
     if (hidden && !checkLevel(SHOW_HIDDEN)) {
@@ -147,6 +170,8 @@ public class Doclava {
     String todoFile = null;
     String sdkValuePath = null;
     String stubsDir = null;
+    String stubsJar = null;
+    String stubsClassJar = null;
     // Create the dependency graph for the stubs  directory
     boolean offlineMode = false;
     String apiFile = null;
@@ -230,6 +255,12 @@ public class Doclava {
         showLevel = SHOW_HIDDEN;
       } else if (a[0].equals("-stubs")) {
         stubsDir = a[1];
+      } else if (a[0].equals("-stubsjar")) {
+        stubsJar = a[1];
+      } else if (a[0].equals("-stubsclassjar")) {
+        stubsClassJar = a[1];
+      } else if (a[0].equals("-stubsjarlevel")) {
+        Stubs.stubsJarLevel = Integer.parseInt(a[1]);
       } else if (a[0].equals("-stubpackages")) {
         stubPackages = new HashSet<String>();
         for (String pkg : a[1].split(":")) {
@@ -269,6 +300,19 @@ public class Doclava {
         federationTagger.addSiteApi(name, file);
       } else if (a[0].equals("-yaml")) {
         yamlNavFile = a[1];
+      } else if (a[0].equals("-incremental")) {
+        incremental = true;
+      } else if (a[0].equals("-hardlinkassets")) {
+        ClearPage.hardLinkFiles = true;
+      } else if (a[0].equals("-timings")) {
+        Timings.enable(a[1]);
+      } else if (a[0].equals("-threads")) {
+        try {
+          threads = Integer.parseInt(a[1]);
+        } catch (NumberFormatException e) {
+          // already printed by validOptions
+          return false;
+        }
       } else if (a[0].equals("-devsite")) {
         // Don't copy the doclava assets to devsite output (ie use proj assets only)
         includeDefaultAssets = false;
@@ -281,9 +325,14 @@ public class Doclava {
     }
 
     // Set up the data structures
+    Timings.phase("makeInfo");
     Converter.makeInfo(r);
 
     if (generateDocs) {
+      if (incremental) {
+        ClearPage.buildCache = new BuildCache(outputPathBase);
+      }
+
       ClearPage.addBundledTemplateDir("assets/customizations");
       ClearPage.addBundledTemplateDir("assets/templates");
 
@@ -310,9 +359,11 @@ public class Doclava {
       //startTime = System.nanoTime();
 
       // Apply @since tags from the XML file
+      Timings.phase("since");
       sinceTagger.tagAll(Converter.rootClasses());
 
       // Apply details of federated documentation
+      Timings.phase("federation");
       federationTagger.tagAll(Converter.rootClasses());
 
       // Files for proofreading
@@ -323,12 +374,18 @@ public class Doclava {
         TodoFile.writeTodoFile(todoFile);
       }
 
+      if (threads > 1) {
+        ClearPage.startParallelCopies(threads);
+      }
+
+      Timings.phase("samples");
   if (samplesRef) {
         // always write samples without offlineMode behaviors
   writeSamples(false, sampleCodes, SORT_BY_NAV_GROUPS);
   }
 
       // HTML2 Pages -- Generate Pages from optional secondary dir
+      Timings.phase("htmlPages");
       if (!inputPathHtmlDir2.isEmpty()) {
         if (!outputPathHtmlDir2.isEmpty()) {
           ClearPage.outputDir = outputPathBase + "/" + outputPathHtmlDir2;
@@ -345,9 +402,16 @@ public class Doclava {
         writeHTMLPages();
       }
 
+      // the copies of the html dirs may go to assets/ as well, so they must be done before
+      // the assets are written over them
+      Timings.phase("finishCopies");
+      ClearPage.finishCopies();
+
+      Timings.phase("assets");
       writeAssets();
 
       // Navigation tree
+      Timings.phase("navTree");
       String refPrefix = new String();
       if(gmsRef){
         refPrefix = "gms-";
@@ -362,21 +426,27 @@ public class Doclava {
       }
 
       // Packages Pages
+      Timings.phase("packages");
       writePackages(javadocDir + refPrefix + "packages" + htmlExtension);
 
       // Classes
+      Timings.phase("classLists");
   writeClassLists();
+      Timings.phase("classes");
   writeClasses();
+      Timings.phase("hierarchy");
   writeHierarchy();
       // writeKeywords();
 
       // Lists for JavaScript
+      Timings.phase("lists");
   writeLists();
       if (keepListFile != null) {
         writeKeepList(keepListFile);
       }
 
       // Index page
+      Timings.phase("index");
   writeIndex();
 
   Proofread.finishProofread(proofreadFile);
@@ -388,14 +458,24 @@ public class Doclava {
       if (!sTaglist.isEmpty()) {
         PageMetadata.WriteList(sTaglist);
       }
+
+      System.out.println(ClearPage.copyStats());
+
+      if (ClearPage.buildCache != null) {
+        ClearPage.buildCache.save();
+      }
     }
 
     // Stubs
-    if (stubsDir != null || apiFile != null || proguardFile != null || removedApiFile != null) {
-      Stubs.writeStubsAndApi(stubsDir, apiFile, proguardFile, removedApiFile, stubPackages);
+    if (stubsDir != null || stubsJar != null || stubsClassJar != null || apiFile != null
+        || proguardFile != null || removedApiFile != null) {
+      Timings.phase("stubs");
+      Stubs.writeStubsAndApi(stubsDir, stubsJar, stubsClassJar, apiFile, proguardFile,
+          removedApiFile, stubPackages);
     }
 
     Errors.printErrors();
+    Timings.finish();
 
     long time = System.nanoTime() - startTime;
     System.out.println("DroidDoc took " + (time / 1000000000) + " sec. to write docs to "
@@ -613,6 +693,15 @@ public class Doclava {
     if (option.equals("-stubs")) {
       return 2;
     }
+    if (option.equals("-stubsjar")) {
+      return 2;
+    }
+    if (option.equals("-stubsjarlevel")) {
+      return 2;
+    }
+    if (option.equals("-stubsclassjar")) {
+      return 2;
+    }
     if (option.equals("-stubpackages")) {
       return 2;
     }
@@ -663,6 +752,18 @@ public class Doclava {
     if (option.equals("-metadataDebug")) {
       return 1;
     }
+    if (option.equals("-threads")) {
+      return 2;
+    }
+    if (option.equals("-incremental")) {
+      return 1;
+    }
+    if (option.equals("-hardlinkassets")) {
+      return 1;
+    }
+    if (option.equals("-timings")) {
+      return 2;
+    }
     return 0;
   }
   public static boolean validOptions(String[][] options, DocErrorReporter r) {
@@ -674,6 +775,27 @@ public class Doclava {
           r.printError("bad -" + a[0] + " value must be a number: " + a[1]);
           return false;
         }
+      } else if (a[0].equals("-stubsjarlevel")) {
+        try {
+          int level = Integer.parseInt(a[1]);
+          if (level < 0 || level > 9) {
+            r.printError("bad -stubsjarlevel value must be between 0 and 9: " + a[1]);
+            return false;
+          }
+        } catch (NumberFormatException e) {
+          r.printError("bad -stubsjarlevel value must be a number: " + a[1]);
+          return false;
+        }
+      } else if (a[0].equals("-threads")) {
+        try {
+          if (Integer.parseInt(a[1]) < 1) {
+            r.printError("bad -threads value must be at least 1: " + a[1]);
+            return false;
+          }
+        } catch (NumberFormatException e) {
+          r.printError("bad -threads value must be a number: " + a[1]);
+          return false;
+        }
       }
     }
 
@@ -1280,6 +1402,11 @@ public class Doclava {
   public static void writeClasses() {
     ClassInfo[] classes = Converter.rootClasses();
 
+    if (threads > 1) {
+      writeClassesInParallel(classes);
+      return;
+    }
+
     for (ClassInfo cl : classes) {
       Data data = makePackageHDF();
       if (!cl.isHiddenOrRemoved()) {
@@ -1288,6 +1415,55 @@ public class Doclava {
     }
   }
 
+  /**
+   * Writes the class pages using {@link #threads} workers.
+   * <p>
+   * The HDF for each page is still built on this thread and in the same order as the serial
+   * path, because building it parses comments and reports errors. Only template rendering and
+   * file output, which depend on nothing but the page's own HDF, run on the workers, so the
+   * output is identical to {@link #writeClasses()} with a single thread. The number of pages in
+   * flight is bounded so that only a few HDF trees per worker are alive at once.
+   */
+  private static void writeClassesInParallel(ClassInfo[] classes) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final Semaphore inFlight = new Semaphore(2 * threads);
+    List<Future<?>> pages = new ArrayList<Future<?>>();
+    try {
+      for (ClassInfo cl : classes) {
+        if (cl.isHiddenOrRemoved()) {
+          continue;
+        }
+        final Data data = makePackageHDF();
+        cl.makeHDF(data);
+        setPageTitle(data, cl.name());
+        final String outfile = cl.htmlPage();
+
+        inFlight.acquireUninterruptibly();
+        pages.add(executor.submit(new Runnable() {
+          public void run() {
+            try {
+              ClearPage.write(data, "class.cs", outfile);
+            } finally {
+              inFlight.release();
+            }
+          }
+        }));
+        Proofread.writeClass(outfile, cl);
+      }
+
+      for (Future<?> page : pages) {
+        page.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted writing class pages", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("error writing class pages", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   public static void writeClass(ClassInfo cl, Data data) {
     cl.makeHDF(data);
     setPageTitle(data, cl.name());
@@ -19,6 +19,7 @@ package com.google.doclava;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.HashSet;
 
 public class Doclava2 {
     private static final boolean DEBUG_MODE = false;
@@ -48,7 +49,80 @@ public class Doclava2 {
                 System.out.println("You're looking for a class that does not exist.");
             }
         } else {
-            BufferedReader buf = new BufferedReader(new FileReader(args[0]));
+            // usage: Doclava2 [-threads <n>] [-declarationsonly] [-parsecache <dir>]
+            //     [-pruneparsecache] [-api <file>] [-removedApi <file>] [-proguard <file>]
+            //     [-stubs <dir>] [-stubpackages <pkg>:<pkg>...] [-showAnnotation <annotation>]
+            //     [-hidePackage <pkg>] [-bootclasspath <path>] [-classpath <path>]
+            //     [-timings <file>] <file list>
+            int threads = 1;
+            ParseCache parseCache = null;
+            boolean pruneParseCache = false;
+            String apiFile = null;
+            String removedApiFile = null;
+            String proguardFile = null;
+            String stubsDir = null;
+            HashSet<String> stubPackages = null;
+            String bootClassPath = null;
+            String classPath = null;
+            int arg = 0;
+            while (arg < args.length - 1) {
+                if ("-threads".equals(args[arg])) {
+                    threads = Integer.parseInt(args[arg + 1]);
+                    arg += 2;
+                } else if ("-parsecache".equals(args[arg])) {
+                    parseCache = new ParseCache(args[arg + 1]);
+                    InfoBuilder.setParseCache(parseCache);
+                    arg += 2;
+                } else if ("-pruneparsecache".equals(args[arg])) {
+                    pruneParseCache = true;
+                    arg++;
+                } else if ("-declarationsonly".equals(args[arg])) {
+                    InfoBuilder.setDeclarationsOnly(true);
+                    arg++;
+                } else if ("-api".equals(args[arg])) {
+                    apiFile = args[arg + 1];
+                    arg += 2;
+                } else if ("-removedApi".equals(args[arg])) {
+                    removedApiFile = args[arg + 1];
+                    arg += 2;
+                } else if ("-proguard".equals(args[arg])) {
+                    proguardFile = args[arg + 1];
+                    arg += 2;
+                } else if ("-stubs".equals(args[arg])) {
+                    stubsDir = args[arg + 1];
+                    arg += 2;
+                } else if ("-stubpackages".equals(args[arg])) {
+                    stubPackages = new HashSet<String>();
+                    for (String pkg : args[arg + 1].split(":")) {
+                        stubPackages.add(pkg);
+                    }
+                    arg += 2;
+                } else if ("-showAnnotation".equals(args[arg])) {
+                    // needed before the files are parsed, as the members look for them then
+                    Doclava.showAnnotations.add(args[arg + 1]);
+                    arg += 2;
+                } else if ("-hidePackage".equals(args[arg])) {
+                    Doclava.hiddenPackages.add(args[arg + 1]);
+                    arg += 2;
+                } else if ("-bootclasspath".equals(args[arg])) {
+                    bootClassPath = args[arg + 1];
+                    arg += 2;
+                } else if ("-classpath".equals(args[arg])) {
+                    classPath = args[arg + 1];
+                    arg += 2;
+                } else if ("-timings".equals(args[arg])) {
+                    Timings.enable(args[arg + 1]);
+                    arg += 2;
+                } else {
+                    break;
+                }
+            }
+            // the classes that are referenced but not parsed are read from these
+            InfoBuilder.setClassPath(new ClassPath(bootClassPath, classPath));
+            boolean writeApi = apiFile != null || removedApiFile != null || proguardFile != null
+                    || stubsDir != null;
+
+            BufferedReader buf = new BufferedReader(new FileReader(args[arg]));
 
             String line = buf.readLine();
 
@@ -63,14 +137,42 @@ public class Doclava2 {
                 line = buf.readLine();
             }
 
+            Timings.phase("parse");
+            ArrayList<InfoBuilder> builders = new ArrayList<InfoBuilder>();
             for (String filename : files) {
-                InfoBuilder infoBuilder = new InfoBuilder(filename);
-                System.out.println(filename);
-                infoBuilder.parseFile();
+                builders.add(new InfoBuilder(filename));
+                if (!writeApi) {
+                    System.out.println(filename);
+                }
+            }
+            InfoBuilder.parseFiles(builders, threads);
+            if (parseCache != null) {
+                parseCache.report();
+                if (pruneParseCache) {
+                    parseCache.prune();
+                }
             }
 
+            Timings.phase("resolve");
             InfoBuilder.resolve();
 
+            if (writeApi) {
+                // the files javadoc would write, from the parsed classes instead. only api.txt
+                // and removed.txt are checked against javadoc's, by ant compare-api; the
+                // annotation values of the stubs are still written as they appear in the source
+                Doclava.setGenerateDocs(false);
+                InfoBuilder.completeClasses(builders);
+                Timings.phase("stubs");
+                Stubs.writeStubsAndApi(stubsDir, null, null, apiFile, proguardFile,
+                        removedApiFile, stubPackages);
+
+                Errors.printErrors();
+                Timings.finish();
+                if (Errors.hadError) {
+                    System.exit(1);
+                }
+                return;
+            }
 
             System.out.println("\n\n\n\n\n\n\n");
             System.out.println("************************************************");
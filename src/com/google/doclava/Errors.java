@@ -20,9 +20,11 @@ import java.util.Set;
 import java.util.TreeSet;
 
 public class Errors {
-  public static boolean hadError = false;
+  public static volatile boolean hadError = false;
   private static boolean warningsAreErrors = false;
-  private static TreeSet<ErrorMessage> allErrors = new TreeSet<ErrorMessage>();
+  private static final TreeSet<ErrorMessage> allErrors = new TreeSet<ErrorMessage>();
+  private static final ThreadLocal<TreeSet<ErrorMessage>> capturedErrors =
+      new ThreadLocal<TreeSet<ErrorMessage>>();
 
   public static class ErrorMessage implements Comparable {
     Error error;
@@ -66,7 +68,15 @@ public class Errors {
       where = new SourcePositionInfo("unknown", 0, 0);
     }
 
-    allErrors.add(new ErrorMessage(error, where, message));
+    ErrorMessage m = new ErrorMessage(error, where, message);
+    TreeSet<ErrorMessage> captured = capturedErrors.get();
+    if (captured != null) {
+      captured.add(m);
+    } else {
+      synchronized (allErrors) {
+        allErrors.add(m);
+      }
+    }
 
     if (error.level == ERROR || (warningsAreErrors && error.level == WARNING)) {
       hadError = true;
@@ -75,7 +85,37 @@ public class Errors {
   
   public static void clearErrors() {
     hadError = false;
-    allErrors.clear();
+    synchronized (allErrors) {
+      allErrors.clear();
+    }
+  }
+
+  /**
+   * Collects the errors reported on the calling thread into a private buffer rather than the
+   * global set, until {@link #endCapture()}. {@link #hadError} is still updated as usual.
+   */
+  public static void beginCapture() {
+    capturedErrors.set(new TreeSet<ErrorMessage>());
+  }
+
+  /**
+   * @return the errors reported on the calling thread since {@link #beginCapture()}, which can
+   * later be handed to {@link #addErrors(Set)}
+   */
+  public static Set<ErrorMessage> endCapture() {
+    TreeSet<ErrorMessage> captured = capturedErrors.get();
+    capturedErrors.remove();
+    return captured;
+  }
+
+  /**
+   * Merges errors captured on another thread into the global set.  Since the set is ordered by
+   * position and message, the result does not depend on the order in which buffers are merged.
+   */
+  public static void addErrors(Set<ErrorMessage> errors) {
+    synchronized (allErrors) {
+      allErrors.addAll(errors);
+    }
   }
 
   public static void printErrors() {
@@ -97,6 +97,15 @@ public class FieldInfo extends MemberInfo {
     return constantLiteralValue(mConstantValue);
   }
 
+  /**
+   * Sets the value of a constant whose initializer could only be worked out once the
+   * constants it refers to were known.
+   */
+  void setConstantValue(Object constantValue) {
+    mConstantValue = constantValue;
+    mKind = chooseKind(isFinal(), isStatic(), constantValue);
+  }
+
   public void setDeprecated(boolean deprecated) {
     mDeprecatedKnown = true;
     mIsDeprecated = deprecated;
@@ -16,22 +16,38 @@
 
 package com.google.doclava;
 
+import com.google.doclava.parser.DeclarationTokenSource;
+import com.google.doclava.parser.DeclarationTreeBuilder;
 import com.google.doclava.parser.JavaLexer;
 import com.google.doclava.parser.JavaParser;
+import com.google.doclava.parser.MappedFileStream;
 
-import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenSource;
 import org.antlr.runtime.debug.ParseTreeBuilder;
 import org.antlr.runtime.tree.ParseTree;
 import org.antlr.runtime.tree.Tree;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * InfoBuilder parses an individual file and builds Doclava
@@ -39,12 +55,38 @@ import java.util.Iterator;
  * stored within a global cache for later use.
  */
 public class InfoBuilder {
+    // only declarations are parsed, method and initializer bodies are left out
+    private static boolean mDeclarationsOnly = false;
+    // unchanged files are loaded from here rather than parsed, if set
+    private static ParseCache mParseCache = null;
+    // where the classes that are referred to but not parsed are looked for
+    private static ClassPath mClassPath = null;
+
+    // the declarations of classes, with the index of the name among their children
+    private static final HashMap<String, Integer> CLASS_DECLARATIONS =
+            new HashMap<String, Integer>();
+    static {
+        CLASS_DECLARATIONS.put("normalClassDeclaration", 2);
+        CLASS_DECLARATIONS.put("enumDeclaration", 2);
+        CLASS_DECLARATIONS.put("normalInterfaceDeclaration", 2);
+        CLASS_DECLARATIONS.put("annotationTypeDeclaration", 3);
+    }
+
     private PackageInfo mPackage;
+    // the comment of the package, if this is its package-info.java
+    private CommentAndPosition mPackageComment;
     private ArrayList<String> mImports;
     private HashSet<String> mClassNames;
     private String mFilename; // TODO - remove this eventually
     private ClassInfo mRootClass;
 
+    // the names of mClassNames by simple name, for resolveQualifiedName
+    private HashMap<String, String> mClassNameIndex = new HashMap<String, String>();
+    // simple names shared by several of mClassNames, which are searched for as before
+    private HashSet<String> mAmbiguousClassNames = new HashSet<String>();
+    // mImports, indexed on first use and dropped when an import is added
+    private ImportScope mImportScope;
+
     public InfoBuilder(String filename) {
         mImports = new ArrayList<String>();
         mImports.add("java.lang.*"); // should allow us to resolve this properly, eventually
@@ -60,38 +102,549 @@ public class InfoBuilder {
     }
 
     public void parseFile() {
-        JavaLexer lex;
         try {
-            lex = new JavaLexer(new ANTLRFileStream(mFilename, "UTF8"));
+            // build each top declaration as soon as it is parsed, rather than keep the
+            // whole tree of the file
+            MappedFileStream input = parseDeclarations(mFilename,
+                    new DeclarationTreeBuilder.Listener() {
+                        public void declarationParsed(ParseTree tree) {
+                            parseFile(tree);
+                        }
+                    });
+            if (input != null) {
+                input.release();
+            }
+        } catch (IOException e1) {
+            e1.printStackTrace();
+        } catch (RecognitionException e) {
+            e.printStackTrace();
+        }
+    }
 
-            CommonTokenStream tokens = new CommonTokenStream(lex);
+    /**
+     * Sets whether files are parsed for their declarations only. Method, constructor and
+     * initializer bodies are then left out before they reach the parser, which the Doclava
+     * objects never look at anyway, so they come out the same either way.
+     * @param declarationsOnly true to skip the bodies.
+     */
+    public static void setDeclarationsOnly(boolean declarationsOnly) {
+        mDeclarationsOnly = declarationsOnly;
+    }
 
-            // create the ParseTreeBuilder to build a parse tree
-            // much easier to parse than ASTs
-            ParseTreeBuilder builder = new ParseTreeBuilder("compilationUnit");
-            JavaParser g = new JavaParser(tokens, builder);
+    /**
+     * Sets the cache that files are loaded from when they have not changed, and that files
+     * are recorded in when they have to be parsed.
+     * @param parseCache The cache, or null to parse every file.
+     */
+    public static void setParseCache(ParseCache parseCache) {
+        mParseCache = parseCache;
+    }
 
-            g.compilationUnit();
-            ParseTree tree = builder.getTree();
+    /**
+     * Sets the class files that names are resolved against and that the classes which are
+     * referred to but not parsed are read from, as javadoc's -bootclasspath and -classpath.
+     * @param classPath The class files, or null for those of the JDK that doclava runs on.
+     */
+    public static void setClassPath(ClassPath classPath) {
+        mClassPath = classPath;
+    }
 
-            lex = null;
-            tokens = null;
-            builder = null;
-            g = null;
+    private static ClassPath classPath() {
+        if (mClassPath == null) {
+            mClassPath = new ClassPath(null, null);
+        }
+        return mClassPath;
+    }
 
-            parseFile(tree);
+    /**
+     * Hands the top declarations of a file to {@code listener}, in order. They are loaded from
+     * the parse cache if the file has not changed since it was recorded there, and parsed
+     * otherwise. This touches none of the Doclava caches, so any number of files may be done
+     * at once.
+     * @param filename The file to parse.
+     * @param listener Gets the top declarations of the file.
+     * @return the stream the file was parsed from, to be released once the declarations have
+     * been built, or null if they were loaded from the parse cache.
+     */
+    private static MappedFileStream parseDeclarations(String filename,
+            final DeclarationTreeBuilder.Listener listener)
+            throws IOException, RecognitionException {
+        ParseCache cache = mParseCache;
+        if (cache == null) {
+            MappedFileStream input = new MappedFileStream(filename);
+            parseTree(input, listener);
+            return input;
+        }
+
+        String key = cache.key(filename);
+        List<ParseTree> trees = cache.load(key);
+        if (trees != null) {
+            for (ParseTree tree : trees) {
+                listener.declarationParsed(tree);
+            }
+            return null;
+        }
 
-        } catch (IOException e1) {
-            e1.printStackTrace();
-        } catch (RecognitionException e) {
-            e.printStackTrace();
+        final ParseCache.Record record = cache.newRecord();
+        MappedFileStream input = new MappedFileStream(filename);
+        boolean clean = parseTree(input, new DeclarationTreeBuilder.Listener() {
+            public void declarationParsed(ParseTree tree) {
+                record.add(tree);
+                listener.declarationParsed(tree);
+            }
+        });
+        // the trees of a file with syntax errors are what the parser recovered, and loading them
+        // later would hide the errors, so such a file is parsed again every time
+        if (clean) {
+            cache.store(key, record);
         }
+        return input;
+    }
+
+    /**
+     * Lexes and parses a file. The statements of method and initializer bodies are never kept
+     * in the tree.
+     * @param input The file to parse.
+     * @param listener Gets the top declarations of the file as they are parsed.
+     * @return true if neither the lexer nor the parser found a syntax error.
+     */
+    private static boolean parseTree(CharStream input, DeclarationTreeBuilder.Listener listener)
+            throws RecognitionException {
+        // unlike the parser, an ANTLR lexer only reports its errors without counting them
+        JavaLexer lexer = new JavaLexer(input) {
+            @Override
+            public void reportError(RecognitionException e) {
+                state.syntaxErrors++;
+                super.reportError(e);
+            }
+        };
+        TokenSource lex = lexer;
+        if (mDeclarationsOnly) {
+            lex = new DeclarationTokenSource(lex);
+        }
+
+        CommonTokenStream tokens = new CommonTokenStream(lex);
+
+        // create the ParseTreeBuilder to build a parse tree
+        // much easier to parse than ASTs
+        ParseTreeBuilder builder = new DeclarationTreeBuilder("compilationUnit", listener);
+        JavaParser g = new JavaParser(tokens, builder);
+
+        g.compilationUnit();
+        return lexer.getNumberOfSyntaxErrors() == 0 && g.getNumberOfSyntaxErrors() == 0;
+    }
+
+    /**
+     * Parses the files of {@code builders} as {@link #parseFile()} would, one after the other.
+     * Lexing and parsing, which is most of the work, is done for up to {@code threads} files at
+     * once, ahead of the file being built. The Doclava objects of each file are then built on
+     * this thread in the order of {@code builders}, so the caches end up exactly as if the files
+     * had been parsed one by one. Resolution is left to {@link #resolve()}, as usual.
+     * @param builders The builders of the files to parse.
+     * @param threads The number of files to parse at once.
+     */
+    public static void parseFiles(List<InfoBuilder> builders, int threads) {
+        if (threads <= 1) {
+            for (InfoBuilder builder : builders) {
+                builder.parseFile();
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // only a few files are kept waiting for their turn to be built, as their trees are large
+        int window = threads * 2;
+        ArrayList<Future<ParsedFile>> trees = new ArrayList<Future<ParsedFile>>(builders.size());
+        try {
+            for (int i = 0; i < builders.size(); i++) {
+                while (trees.size() < builders.size() && trees.size() < i + window) {
+                    final String filename = builders.get(trees.size()).mFilename;
+                    trees.add(executor.submit(new Callable<ParsedFile>() {
+                        public ParsedFile call() throws IOException, RecognitionException {
+                            final ParsedFile parsed = new ParsedFile();
+                            parsed.mInput = parseDeclarations(filename,
+                                    new DeclarationTreeBuilder.Listener() {
+                                        public void declarationParsed(ParseTree tree) {
+                                            parsed.mDeclarations.add(tree);
+                                        }
+                                    });
+                            return parsed;
+                        }
+                    }));
+                }
+
+                ParsedFile parsed;
+                try {
+                    parsed = trees.get(i).get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    continue;
+                } finally {
+                    trees.set(i, null);
+                }
+                for (ParseTree tree : parsed.mDeclarations) {
+                    builders.get(i).parseFile(tree);
+                }
+                if (parsed.mInput != null) {
+                    parsed.mInput.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            // the files not built yet would be left out without a word
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted parsing files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The declarations of a file parsed ahead of being built, and the stream they were parsed
+     * from, which their tokens still read their text from.
+     */
+    private static class ParsedFile {
+        private final ArrayList<ParseTree> mDeclarations = new ArrayList<ParseTree>();
+        private MappedFileStream mInput;
     }
 
     public static void resolve() {
         Caches.resolve();
     }
 
+    /**
+     * Finishes the classes of the cache the way {@link Converter} finishes those of javadoc, so
+     * that the rest of doclava, the stubs and the api files in particular, can use them as if
+     * they came from a RootDoc. Call once, after the files of {@code builders} are parsed and
+     * {@link #resolve()} has run.
+     * <p>
+     * The classes that were only referred to are read from their class files, like those on
+     * javadoc's class path; any that have none get the package their name suggests. The
+     * constants whose initializers name other constants, which may be in those classes, are
+     * worked out next. Package comments are taken from the parsed package-info.java files, or
+     * else read from the package.html files next to the parsed files, and the members and inner
+     * classes of every class are split into the lists javadoc would give.
+     * @param builders The builders of the parsed files.
+     */
+    public static void completeClasses(List<InfoBuilder> builders) {
+        Caches.completeThrownTypeVariables();
+
+        loadReferencedClasses();
+        Caches.completeConstants();
+        // the classes of the constants refer to more classes
+        loadReferencedClasses();
+
+        ArrayList<ClassInfo> classes = Caches.classes();
+        for (ClassInfo cls : classes) {
+            // like javadoc, report the interfaces that were not found and leave them out
+            for (String name : cls.removeUnresolvedInterfaces()) {
+                Errors.error(Errors.UNAVAILABLE_SYMBOL, cls.position(), "Interface " + name
+                        + " of " + cls.qualifiedName() + " cannot be found");
+            }
+
+            // javadoc names nested classes after their containing classes
+            String packageName = cls.containingPackage().name();
+            cls.setName(packageName.isEmpty() ? cls.qualifiedName()
+                    : cls.qualifiedName().substring(packageName.length() + 1));
+        }
+
+        // like javadoc, the comment of a package-info.java is taken over a package.html
+        HashSet<PackageInfo> commented = new HashSet<PackageInfo>();
+        for (InfoBuilder builder : builders) {
+            if (builder.mPackage != null && builder.mPackageComment != null
+                    && commented.add(builder.mPackage)) {
+                builder.mPackage.setRawCommentText(builder.mPackageComment.getCommentText());
+                builder.mPackage.setPosition(builder.mPackageComment.getPosition());
+            }
+        }
+        for (InfoBuilder builder : builders) {
+            if (builder.mPackage != null && commented.add(builder.mPackage)) {
+                readPackageComment(builder.mPackage, new File(builder.mFilename).getParentFile());
+            }
+        }
+
+        Converter.setClasses(classes);
+
+        // before completeClass leaves only the methods doclava shows
+        for (ClassInfo cls : classes) {
+            if (cls.isIncluded() || Caches.isBinaryClass(cls)) {
+                for (MethodInfo method : cls.allSelfMethods()) {
+                    method.setOverriddenMethod(findOverriddenMethod(method));
+                }
+            }
+        }
+        for (ClassInfo cls : classes) {
+            if (cls.isIncluded() || Caches.isBinaryClass(cls)) {
+                completeClass(cls);
+            }
+        }
+    }
+
+    /**
+     * Reads the classes that were only referred to from the class path. They refer to more
+     * classes in turn, which are read too, until every class javadoc would load is there.
+     */
+    private static void loadReferencedClasses() {
+        boolean referenced = true;
+        while (referenced) {
+            referenced = false;
+            for (ClassInfo cls : Caches.classes()) {
+                if (cls.containingPackage() == null) {
+                    referenced = true;
+                    loadReferencedClass(cls);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a class that was only referred to from its class file, or gives it what javadoc
+     * knows of a class it has no class file of.
+     */
+    private static void loadReferencedClass(ClassInfo cls) {
+        if (BinaryClassBuilder.build(cls, classPath())) {
+            Caches.addBinaryClass(cls);
+        } else {
+            completeReferencedClass(cls);
+        }
+    }
+
+    /**
+     * Gives a class that was referred to but not parsed what javadoc knows of such a class: its
+     * name, package and containing class. Its members stay unknown, as they are not documented.
+     */
+    private static void completeReferencedClass(ClassInfo cls) {
+        String qualifiedName = cls.qualifiedName();
+        String[] parts = qualifiedName.split("\\.");
+        // take the package to be the segments before the first capitalized one
+        StringBuilder packageName = new StringBuilder();
+        int i = 0;
+        while (i < parts.length - 1
+                && (parts[i].isEmpty() || !Character.isUpperCase(parts[i].charAt(0)))) {
+            if (packageName.length() > 0) {
+                packageName.append('.');
+            }
+            packageName.append(parts[i]);
+            i++;
+        }
+
+        cls.initialize("", SourcePositionInfo.UNKNOWN, true, false, false, false, false, false,
+                false, true, false, false, false, false, false, false, qualifiedName, false,
+                new ArrayList<AnnotationInstanceInfo>());
+        if (i < parts.length - 1) {
+            cls.setContainingClass(
+                    Caches.getClass(qualifiedName.substring(0, qualifiedName.lastIndexOf('.'))));
+        }
+        cls.setContainingPackage(Caches.obtainPackage(packageName.toString()));
+        cls.setTypeInfo(new TypeInfo(false, "", parts[parts.length - 1], qualifiedName, cls));
+        cls.setRemovedSelfMethods(new ArrayList<MethodInfo>());
+        cls.setRemovedConstructors(new ArrayList<MethodInfo>());
+        cls.setRemovedSelfFields(new ArrayList<FieldInfo>());
+        cls.setRemovedEnumConstants(new ArrayList<FieldInfo>());
+    }
+
+    /**
+     * Finds the method that {@code method} overrides, as javadoc's MethodDoc.overriddenMethod()
+     * does: the first method along the superclasses with the same name and the same erasures of
+     * its parameters, once the type arguments the superclasses are given are put in, that the
+     * method can override. Interfaces are not looked at, and neither are the superclasses of
+     * classes that are only referred to.
+     * @return the overridden method, or null if there is none.
+     */
+    private static MethodInfo findOverriddenMethod(MethodInfo method) {
+        if (method.isStatic()) {
+            return null;
+        }
+        ClassInfo cls = method.containingClass();
+        Map<String, TypeInfo> arguments = new HashMap<String, TypeInfo>();
+        ArrayList<String> erasures = erasures(method.parameters(), arguments);
+
+        TypeInfo superclassType = superclassType(cls);
+        while (superclassType != null && superclassType.asClassInfo() != null) {
+            ClassInfo superclass = superclassType.asClassInfo();
+            // the type parameters of the superclass, by what the class sees them as
+            Map<String, TypeInfo> superclassArguments = new HashMap<String, TypeInfo>();
+            ArrayList<TypeInfo> parameters = superclass.asTypeInfo().typeArguments();
+            ArrayList<TypeInfo> given = superclassType.typeArguments();
+            if (parameters != null && given != null && parameters.size() == given.size()) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    TypeInfo argument = given.get(i);
+                    if (argument.isTypeVariable()
+                            && arguments.containsKey(argument.simpleTypeName())) {
+                        argument = arguments.get(argument.simpleTypeName());
+                    }
+                    superclassArguments.put(parameters.get(i).simpleTypeName(), argument);
+                }
+            }
+            arguments = superclassArguments;
+
+            for (MethodInfo candidate : superclass.allSelfMethods()) {
+                if (candidate.name().equals(method.name()) && !candidate.isPrivate()
+                        && (!candidate.isPackagePrivate() || cls.containingPackage()
+                                == superclass.containingPackage())
+                        && erasures(candidate.parameters(), arguments).equals(erasures)) {
+                    return candidate;
+                }
+            }
+            superclassType = superclassType(superclass);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the type of the superclass of {@code cls} as javac has it, which is Object for
+     * interfaces and classes that extend nothing.
+     */
+    private static TypeInfo superclassType(ClassInfo cls) {
+        if (cls.superclassType() != null && !cls.isInterface()) {
+            return cls.superclassType();
+        }
+        ClassInfo object = Caches.getClass("java.lang.Object");
+        return object == null || object == cls ? null : object.asTypeInfo();
+    }
+
+    private static ArrayList<String> erasures(List<ParameterInfo> parameters,
+            Map<String, TypeInfo> arguments) {
+        ArrayList<String> erasures = new ArrayList<String>(parameters.size());
+        for (ParameterInfo parameter : parameters) {
+            TypeInfo type = parameter.type();
+            String dimension = type.dimension() == null ? "" : type.dimension().replace("...", "[]");
+            if (type.isTypeVariable() && arguments.containsKey(type.simpleTypeName())) {
+                TypeInfo argument = arguments.get(type.simpleTypeName());
+                dimension = argument.dimension() + dimension;
+                type = argument;
+            }
+            ClassInfo erasure = type.asClassInfo();
+            erasures.add((erasure != null ? erasure.qualifiedName() : type.qualifiedTypeName())
+                    + dimension);
+        }
+        return erasures;
+    }
+
+    /**
+     * Reads the comment of a package from the package.html file in {@code dir}, if there is one;
+     * like javadoc, only the text of the body is kept.
+     */
+    private static void readPackageComment(PackageInfo pkg, File dir) {
+        File file = new File(dir, "package.html");
+        if (!file.isFile()) {
+            return;
+        }
+
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        String lower = text.toLowerCase();
+        int start = lower.indexOf("<body");
+        start = start < 0 ? 0 : lower.indexOf('>', start) + 1;
+        int end = lower.indexOf("</body>", start);
+        if (end < 0) {
+            end = text.length();
+        }
+
+        pkg.setRawCommentText(text.substring(start, end));
+        pkg.setPosition(new SourcePositionInfo(file.getPath(), 1, 0));
+    }
+
+    /**
+     * Splits the members of a parsed class into the lists {@link Converter} gives a class of
+     * javadoc: those doclava shows, and the hidden, removed and not written ones.
+     */
+    private static void completeClass(ClassInfo cls) {
+        ArrayList<MethodInfo> constructors = cls.allConstructors();
+        ArrayList<MethodInfo> methods = cls.allSelfMethods();
+        ArrayList<FieldInfo> fields = cls.allSelfFields();
+        ArrayList<FieldInfo> enumConstants = cls.enumConstants();
+        ArrayList<MethodInfo> annotationElements = cls.annotationElements();
+
+        // the types of the annotations were not known when the members were built
+        ArrayList<ArrayList<? extends MemberInfo>> allMembers =
+                new ArrayList<ArrayList<? extends MemberInfo>>();
+        allMembers.add(constructors);
+        allMembers.add(methods);
+        allMembers.add(fields);
+        allMembers.add(enumConstants);
+        allMembers.add(annotationElements);
+        for (ArrayList<? extends MemberInfo> members : allMembers) {
+            for (MemberInfo member : members) {
+                member.resolveShowAnnotations();
+            }
+        }
+
+        ArrayList<MethodInfo> shownConstructors = new ArrayList<MethodInfo>();
+        ArrayList<MethodInfo> nonWrittenConstructors = new ArrayList<MethodInfo>();
+        for (MethodInfo constructor : constructors) {
+            (constructor.checkLevel() ? shownConstructors : nonWrittenConstructors)
+                    .add(constructor);
+        }
+        ArrayList<MethodInfo> shownMethods = new ArrayList<MethodInfo>();
+        ArrayList<MethodInfo> hiddenMethods = new ArrayList<MethodInfo>();
+        ArrayList<MethodInfo> removedMethods = new ArrayList<MethodInfo>();
+        for (MethodInfo method : methods) {
+            if (method.checkLevel()) {
+                shownMethods.add(method);
+            }
+            if (method.isHidden()) {
+                hiddenMethods.add(method);
+            }
+            if (method.isRemoved()) {
+                removedMethods.add(method);
+            }
+        }
+        ArrayList<MethodInfo> shownAnnotationElements = new ArrayList<MethodInfo>();
+        for (MethodInfo element : annotationElements) {
+            if (element.checkLevel()) {
+                shownAnnotationElements.add(element);
+            }
+        }
+        ArrayList<FieldInfo> shownFields = new ArrayList<FieldInfo>();
+        for (FieldInfo field : fields) {
+            if (field.checkLevel()) {
+                shownFields.add(field);
+            }
+        }
+        ArrayList<FieldInfo> shownEnumConstants = new ArrayList<FieldInfo>();
+        for (FieldInfo enumConstant : enumConstants) {
+            if (enumConstant.checkLevel()) {
+                shownEnumConstants.add(enumConstant);
+            }
+        }
+        // javadoc filters inner classes on their access alone
+        ArrayList<ClassInfo> innerClasses = new ArrayList<ClassInfo>(cls.innerClasses());
+        ArrayList<ClassInfo> shownInnerClasses = new ArrayList<ClassInfo>();
+        for (ClassInfo inner : innerClasses) {
+            if (Doclava.checkLevel(inner.isPublic(), inner.isProtected(),
+                    inner.isPackagePrivate(), inner.isPrivate(), false)) {
+                shownInnerClasses.add(inner);
+            }
+        }
+        ArrayList<TypeInfo> interfaceTypes = cls.realInterfaceTypes();
+        ArrayList<AnnotationInstanceInfo> annotations = cls.annotations();
+
+        // init works the show annotations of the class out again as well
+        cls.init(cls.asTypeInfo(), cls.realInterfaces(),
+                interfaceTypes != null ? interfaceTypes : new ArrayList<TypeInfo>(),
+                shownInnerClasses, shownConstructors, shownMethods, shownAnnotationElements,
+                shownFields, shownEnumConstants, cls.containingPackage(),
+                cls.containingClass(), cls.realSuperclass(), cls.superclassType(),
+                annotations != null ? annotations : new ArrayList<AnnotationInstanceInfo>());
+
+        cls.setHiddenMethods(hiddenMethods);
+        cls.setRemovedMethods(removedMethods);
+        cls.setRemovedSelfMethods(methods);
+        cls.setRemovedConstructors(constructors);
+        cls.setRemovedSelfFields(fields);
+        cls.setRemovedEnumConstants(enumConstants);
+        cls.setNonWrittenConstructors(nonWrittenConstructors);
+
+        ArrayList<TypeInfo> typeParameters = cls.asTypeInfo().typeArguments();
+        cls.init3(typeParameters != null ? typeParameters : new ArrayList<TypeInfo>(),
+                innerClasses);
+    }
+
     // All of the print functions exist for debugging alone.
     public void printStuff() {
         System.out.println(mPackage.name() + "\n");
@@ -351,6 +904,19 @@ public class InfoBuilder {
                 return;
             }
 
+            // the comment of a package-info.java, before the annotations of the package or its
+            // declaration, is that of the package
+            if (mPackageComment == null && mFilename.endsWith("package-info.java")
+                    && ("annotations".equals(payload) || "packageDeclaration".equals(payload))) {
+                mPackageComment = parsePackageComment(tree);
+            }
+
+            // the classes of a top declaration are known by their simple names in all of it,
+            // even before they are declared, and are found before those of the package
+            if (CLASS_DECLARATIONS.containsKey(payload)) {
+                addDeclaredClassNames(tree, mPackage.name());
+            }
+
             // parse package of file
             if ("packageDeclaration".equals(payload)) {
                 mPackage = buildPackage(tree);
@@ -358,6 +924,7 @@ public class InfoBuilder {
             // parse imports
             } else if ("importDeclaration".equals(payload)) {
                 mImports.add(buildImport(tree));
+                mImportScope = null;
                 return;
             // classes
             } else if ("normalClassDeclaration".equals(payload)) {
@@ -384,6 +951,46 @@ public class InfoBuilder {
         }
     }
 
+    /**
+     * Adds the name of a class declaration and those of the classes nested in it to
+     * mClassNames, as buildClassName names them.
+     * @param tree The tree to look in.
+     * @param outerName The qualified name of the package or class that contains {@code tree}.
+     */
+    private void addDeclaredClassNames(ParseTree tree, String outerName) {
+        String payload = tree.payload == null ? null : tree.payload.toString();
+        // classes declared in a body or initializer are local or anonymous
+        if ("block".equals(payload) || "variableInitializer".equals(payload)) {
+            return;
+        }
+        Integer nameIndex = CLASS_DECLARATIONS.get(payload);
+        if (nameIndex != null) {
+            outerName = outerName + "." + tree.getChild(nameIndex).toString();
+            addClassName(outerName);
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            addDeclaredClassNames((ParseTree) tree.getChild(i), outerName);
+        }
+    }
+
+    /**
+     * Parses the comment before the first token of a tree, with the position of the token.
+     * @return the comment and position, or null if there is no comment.
+     */
+    private CommentAndPosition parsePackageComment(ParseTree tree) {
+        while (tree.getChildCount() > 0) {
+            tree = (ParseTree) tree.getChild(0);
+        }
+        if (!(tree.payload instanceof CommonToken)) {
+            return null;
+        }
+
+        CommentAndPosition cAndP = new CommentAndPosition();
+        cAndP.setCommentText(tree);
+        cAndP.setPosition(tree);
+        return cAndP.getCommentText().isEmpty() ? null : cAndP;
+    }
+
     /**
      * Parses a packageDeclaration in the tree. This function should only be called once per file.
      * @param tree The tree to parse. packageDeclaration should be the root value.
@@ -508,9 +1115,32 @@ public class InfoBuilder {
         // finally, parse the body
         buildClassBody(child, cls);
 
+        // a class without constructors has the default one, as javadoc lists it
+        if (cls.allConstructors().isEmpty()) {
+            cls.addConstructor(buildDefaultConstructor(cls, commentAndPosition.getPosition()));
+        }
+
         return cls;
     }
 
+    /**
+     * Builds the constructor that the compiler adds to a class that declares none. It has the
+     * access of the class and no parameters.
+     * @param cls The class of the constructor.
+     * @param position Position of the class.
+     * @return the MethodInfo of the constructor.
+     */
+    private static MethodInfo buildDefaultConstructor(ClassInfo cls,
+            SourcePositionInfo position) {
+        MethodInfo ctor = new MethodInfo("", new ArrayList<TypeInfo>(), cls.name(), null,
+                cls, cls, cls.isPublic(), cls.isProtected(), cls.isPackagePrivate(),
+                cls.isPrivate(), false, false, false, false, false, false, false,
+                "constructor", "()", null, null, new ArrayList<ParameterInfo>(),
+                new ArrayList<ClassInfo>(), position, new ArrayList<AnnotationInstanceInfo>());
+        ctor.init(null);
+        return ctor;
+    }
+
     /**
      * Parses the list of interfaces that the class implements.
      * Should only be called if the implements keyword is found.
@@ -554,10 +1184,12 @@ public class InfoBuilder {
     private ClassInfo buildClassName(ParseTree tree, ClassInfo containingClass, Modifiers modifiers,
             String commentText, SourcePositionInfo position, ClassType classType) {
         String qualifiedClassName = null;
-        boolean isOrdinaryClass = true;
+        boolean isOrdinaryClass = false;
         boolean isException = false;
         boolean isError = false;
-        boolean isIncluded = false;
+        // every class declared in the files being parsed is documented, as the classes of the
+        // source files given to javadoc are
+        boolean isIncluded = true;
         boolean isPrimitive = false;
         boolean isEnum = false;
         boolean isInterface = false;
@@ -570,12 +1202,28 @@ public class InfoBuilder {
                 break;
             case INTERFACE:
                 isInterface = true;
+                modifiers.addImplied("abstract");
                 break;
             case ANNOTATION:
+                // javadoc does not report annotation types as interfaces
                 isAnnotation = true;
+                modifiers.addImplied("abstract");
+                break;
+            default:
+                isOrdinaryClass = true;
                 break;
         }
 
+        // member types of interfaces are public and static, member enums, interfaces and
+        // annotations are static wherever they are
+        if (containingClass != null
+                && (containingClass.isInterface() || containingClass.isAnnotation())) {
+            modifiers.addImplied("public");
+            modifiers.addImplied("static");
+        } else if (containingClass != null && classType != ClassType.ORDINARY) {
+            modifiers.addImplied("static");
+        }
+
         String qualifiedTypeName = null;
         ClassInfo cls = null;
 
@@ -589,7 +1237,7 @@ public class InfoBuilder {
         qualifiedTypeName = new String(qualifiedClassName);
 
         // add the name to mClassNames so that we can use it to resolve usages of this class
-        mClassNames.add(qualifiedClassName);
+        addClassName(qualifiedClassName);
 
         // get the class from the cache and initialize it
         cls = Caches.obtainClass(qualifiedClassName);
@@ -603,13 +1251,25 @@ public class InfoBuilder {
 
         cls.setContainingClass(containingClass);
         cls.setContainingPackage(mPackage);
+        if (containingClass == null) {
+            // so that the other files of the package can resolve the class by its simple name
+            if (isAnnotation) {
+                mPackage.addAnnotation(cls);
+            } else if (isInterface) {
+                mPackage.addInterface(cls);
+            } else if (isEnum) {
+                mPackage.addEnum(cls);
+            } else {
+                mPackage.addOrdinaryClass(cls);
+            }
+        }
 
         if (containingClass == null) {
             mRootClass = cls;
         }
 
         // create an set a TypeInfo for this class
-        TypeInfo type = new TypeInfo(false, null, cls.name(), qualifiedTypeName, cls);
+        TypeInfo type = new TypeInfo(false, "", cls.name(), qualifiedTypeName, cls);
         cls.setTypeInfo(type);
 
         return cls;
@@ -696,6 +1356,13 @@ public class InfoBuilder {
         modifiers.parseModifiers(child);
         child = it.next();
 
+        // fields of interfaces are constants
+        if (containingClass.isInterface() || containingClass.isAnnotation()) {
+            modifiers.addImplied("public");
+            modifiers.addImplied("static");
+            modifiers.addImplied("final");
+        }
+
         // parse the type of this field
         type = buildType(child);
 
@@ -706,7 +1373,13 @@ public class InfoBuilder {
         while (!";".equals(child.toString())) {
             if ("variableDeclarator".equals(child.toString())) {
                 TypeInfo newType;
-                if (firstType) {
+                ConstantExpression initializer = null;
+                constantValue = null;
+                hasValue = false;
+                // a field with dimensions after its name, as in int x[], gets a type of its own
+                boolean hasDimensions = child.getChildCount() > 1
+                        && "[".equals(child.getChild(1).toString());
+                if (firstType && !hasDimensions) {
                     firstType = false;
                     newType = type;
                 } else {
@@ -716,22 +1389,26 @@ public class InfoBuilder {
                     newType.setIsWildcard(type.isWildcard());
                     newType.setIsTypeVariable(type.isTypeVariable());
                     newType.setTypeArguments(type.typeArguments());
+                    // the copy is resolved on its own
+                    if (newType.qualifiedTypeName().isEmpty()) {
+                        addFutureResolution(newType, "class", type.simpleTypeName(), this);
+                    }
                 }
                 name = child.getChild(0).toString();
 
                 // if we have a value for the field and/or dimensions
                 if (child.getChildCount() > 1) {
                     int j = 1;
-                    ParseTree tmp = (ParseTree) child.getChild(j++);
+                    ParseTree tmp;
 
-                    // if we have dimensions in the wrong place
-                    if ("[".equals(tmp.toString())) {
-                        StringBuilder builder = new StringBuilder();
+                    // if we have dimensions in the wrong place, they add to those of the type
+                    if (hasDimensions) {
+                        StringBuilder builder = new StringBuilder(type.dimension());
 
-                        do {
-                            builder.append(tmp.toString());
-                            tmp = (ParseTree) child.getChild(j++);
-                        } while (j < child.getChildCount() && !"=".equals(tmp.toString()));
+                        while (j < child.getChildCount()
+                                && !"=".equals(child.getChild(j).toString())) {
+                            builder.append(child.getChild(j++).toString());
+                        }
 
                         newType.setDimension(builder.toString());
                     }
@@ -743,8 +1420,15 @@ public class InfoBuilder {
                             tmp = (ParseTree) child.getChild(j++);
                         } while (!"variableInitializer".equals(tmp.toString()));
 
-                        // get the constantValue
-                        constantValue = parseExpression(tmp);
+                        // get the constantValue, which only final fields have. a type that is
+                        // not resolved yet, such as String, may turn out to be one of a constant
+                        if (modifiers.isFinal() && (ConstantExpression.isConstantType(newType)
+                                || newType.qualifiedTypeName().isEmpty())) {
+                            initializer = ConstantExpression.parse(tmp);
+                        }
+                        if (initializer != null) {
+                            constantValue = initializer.fieldValue(newType, null);
+                        }
                     }
 
                     hasValue = true;
@@ -759,6 +1443,12 @@ public class InfoBuilder {
                         commentAndPosition.getPosition(), modifiers.getAnnotations());
                 field.setHasValue(hasValue);
                 fields.add(field);
+
+                // an initializer that names other constants can only be worked out once every
+                // class they may be in is known
+                if (constantValue == null && initializer != null) {
+                    Caches.addPendingConstant(new PendingConstant(field, initializer, this));
+                }
             }
 
             child = it.next();
@@ -824,6 +1514,7 @@ public class InfoBuilder {
         String qualifiedTypeName = null;
         ClassInfo cl = null;
         boolean addResolution = false;
+        boolean isTypeVariable = false;
         ArrayList<TypeInfo> typeArguments = null;
 
         // parse primitive types - very easy
@@ -863,6 +1554,11 @@ public class InfoBuilder {
             // otherwise, if the name is not a generic, get the class that this Type refers to
             } else if (!isGeneric) {
                 cl = Caches.obtainClass(qualifiedTypeName);
+            } else {
+                // a type variable, which javadoc takes to be the class of its erasure. the
+                // bounds are not known here, so that is taken to be Object
+                isTypeVariable = true;
+                cl = Caches.obtainClass("java.lang.Object");
             }
         }
 
@@ -871,6 +1567,7 @@ public class InfoBuilder {
 
         TypeInfo type = new TypeInfo(isPrimitive, dimension, simpleTypeName, qualifiedTypeName, cl);
         type.setTypeArguments(typeArguments);
+        type.setIsTypeVariable(isTypeVariable);
 
         if (addResolution) {
             addFutureResolution(type, "class", simpleTypeName, this);
@@ -886,8 +1583,6 @@ public class InfoBuilder {
      */
     private ArrayList<TypeInfo> buildTypeVariables(ParseTree tree) {
         ArrayList<TypeInfo> typeVariables = new ArrayList<TypeInfo>();
-        ArrayList<TypeInfo> superBounds = new ArrayList<TypeInfo>();
-        ArrayList<TypeInfo> extendsBounds = new ArrayList<TypeInfo>();
 
         for (Object o : tree.getChildren()) {
             // if we're not dealing with a type, skip
@@ -898,6 +1593,8 @@ public class InfoBuilder {
             }
 
             ParseTree typeParameter = (ParseTree) o;
+            ArrayList<TypeInfo> superBounds = new ArrayList<TypeInfo>();
+            ArrayList<TypeInfo> extendsBounds = new ArrayList<TypeInfo>();
 
             TypeInfo type;
             // if we have a typeArgument and it is not a wildcard
@@ -909,12 +1606,12 @@ public class InfoBuilder {
                 // which can be more vague because of generics
                 String name = typeParameter.getChild(0).toString();
 
-                type = new TypeInfo(false, null, name, name, null);
+                type = new TypeInfo(false, "", name, name, null);
                 if ("?".equals(name)) {
                     type.setIsWildcard(true);
                 } else {
                     // add generic
-                    mClassNames.add(name);
+                    addClassName(name);
                 }
             }
 
@@ -942,7 +1639,10 @@ public class InfoBuilder {
                 }
             }
 
-            type.setIsTypeVariable(true);
+            // a type argument is a type variable only if it names one, which buildType knows
+            if ("typeParameter".equals(typeParameter.toString())) {
+                type.setIsTypeVariable(true);
+            }
             type.setBounds(superBounds, extendsBounds);
             typeVariables.add(type);
         }
@@ -968,6 +1668,8 @@ public class InfoBuilder {
         ArrayList<TypeInfo> typeParameters = null;
         ArrayList<ParameterInfo> parameters = new ArrayList<ParameterInfo>();
         ArrayList<ClassInfo> thrownExceptions = new ArrayList<ClassInfo>();
+        ArrayList<TypeInfo> thrownTypeVariables = new ArrayList<TypeInfo>();
+        ArrayList<Integer> thrownTypeVariableIndexes = new ArrayList<Integer>();
         TypeInfo returnType = null;
         boolean isAnnotationElement = false;
         boolean isVarArg = false;
@@ -981,6 +1683,15 @@ public class InfoBuilder {
 
         modifiers.parseModifiers(child);
 
+        // methods of interfaces are public, and abstract as MethodInfo makes them. the elements
+        // of annotation types are too, but javadoc reports them abstract itself
+        if (containingClass.isInterface()) {
+            modifiers.addImplied("public");
+        } else if (containingClass.isAnnotation()) {
+            modifiers.addImplied("public");
+            modifiers.addImplied("abstract");
+        }
+
         child = it.next();
 
         // generics stuff
@@ -994,7 +1705,7 @@ public class InfoBuilder {
             returnType = buildType(child);
             child = it.next();
         } else if ("void".equals(child.toString())) {
-            returnType = new TypeInfo(true, null, "void", "void", null);
+            returnType = new TypeInfo(true, "", "void", "void", null);
             child = it.next();
         }
 
@@ -1047,6 +1758,16 @@ public class InfoBuilder {
                     pendingResolutions.add(new Resolution("thrownException", exceptionName, null));
                 } else if (!isGeneric) {
                     thrownExceptions.add(Caches.obtainClass(exceptionQualifiedName.toString()));
+                } else {
+                    // a type variable, which javadoc takes to be the class of its erasure. its
+                    // bounds are not resolved yet, so that is left to completeClasses
+                    TypeInfo variable = findTypeVariable(exceptionName, typeParameters,
+                            containingClass);
+                    if (variable != null) {
+                        thrownTypeVariables.add(variable);
+                        thrownTypeVariableIndexes.add(thrownExceptions.size()
+                                + thrownTypeVariables.size() - 1);
+                    }
                 }
             }
         // handle default values for annotation elements
@@ -1059,6 +1780,7 @@ public class InfoBuilder {
 
         if (isAnnotation) {
             kind = "annotationElement";
+            isAnnotationElement = true;
         }
 
         // Here we set signature, overridden method to null because
@@ -1079,10 +1801,195 @@ public class InfoBuilder {
         for (Resolution r : pendingResolutions) {
             addFutureResolution(method, r.getVariable(), r.getValue(), this);
         }
+        for (int i = 0; i < thrownTypeVariables.size(); i++) {
+            Caches.addThrownTypeVariable(new ThrownTypeVariable(method,
+                    thrownTypeVariableIndexes.get(i), thrownTypeVariables.get(i)));
+        }
 
         return method;
     }
 
+    /**
+     * Finds the declaration of a type variable among the type parameters of a method and those
+     * of its class and the classes that contain it.
+     * @return the type parameter, or null if there is none of that name.
+     */
+    private static TypeInfo findTypeVariable(String name, ArrayList<TypeInfo> typeParameters,
+            ClassInfo cls) {
+        if (typeParameters != null) {
+            for (TypeInfo typeParameter : typeParameters) {
+                if (name.equals(typeParameter.simpleTypeName())) {
+                    return typeParameter;
+                }
+            }
+        }
+        for (; cls != null; cls = cls.containingClass()) {
+            if (cls.asTypeInfo() != null && cls.asTypeInfo().typeArguments() != null) {
+                for (TypeInfo typeParameter : cls.asTypeInfo().typeArguments()) {
+                    if (name.equals(typeParameter.simpleTypeName())) {
+                        return typeParameter;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A type variable that a method throws, and where it comes among the exceptions.
+     */
+    private static class ThrownTypeVariable {
+        private final MethodInfo mMethod;
+        private final int mIndex;
+        private final TypeInfo mVariable;
+
+        public ThrownTypeVariable(MethodInfo method, int index, TypeInfo variable) {
+            mMethod = method;
+            mIndex = index;
+            mVariable = variable;
+        }
+
+        /**
+         * Puts the class of the erasure of the variable, its first bound, among the exceptions
+         * of the method.
+         */
+        public void complete() {
+            ClassInfo erasure = null;
+            ArrayList<TypeInfo> bounds = mVariable.extendsBounds();
+            if (bounds != null && !bounds.isEmpty()) {
+                erasure = bounds.get(0).asClassInfo();
+            }
+            if (erasure == null) {
+                erasure = Caches.obtainClass("java.lang.Object");
+            }
+            ArrayList<ClassInfo> exceptions = mMethod.thrownExceptions();
+            exceptions.add(Math.min(mIndex, exceptions.size()), erasure);
+        }
+    }
+
+    /**
+     * A field whose initializer names other constants, which need to be known to tell whether
+     * it is a constant itself. The names are looked up as javac looks them up: among the fields
+     * of the class and those it inherits, then those of the classes it is nested in, then those
+     * imported statically; or, for a qualified name, among those of the class it starts with.
+     */
+    private static class PendingConstant implements ConstantExpression.Names {
+        private final FieldInfo mField;
+        private final ConstantExpression mInitializer;
+        private final InfoBuilder mBuilder;
+        private boolean mCompleting;
+
+        public PendingConstant(FieldInfo field, ConstantExpression initializer,
+                InfoBuilder builder) {
+            mField = field;
+            mInitializer = initializer;
+            mBuilder = builder;
+        }
+
+        /**
+         * Gives the field the value of its initializer, if it is constant. A constant that
+         * refers to itself, through others or not, is not one.
+         */
+        public void complete() {
+            if (mCompleting) {
+                return;
+            }
+            mCompleting = true;
+            Object value = mInitializer.fieldValue(mField.type(), this);
+            if (value != null) {
+                mField.setConstantValue(value);
+            }
+        }
+
+        public FieldInfo field(String name) {
+            FieldInfo field = findField(name);
+            if (field != null) {
+                // the initializer of the field may need working out first
+                PendingConstant pending = Caches.getPendingConstant(field);
+                if (pending != null) {
+                    pending.complete();
+                }
+            }
+            return field;
+        }
+
+        private FieldInfo findField(String name) {
+            int dot = name.lastIndexOf('.');
+            if (dot != -1) {
+                StringBuilder className = new StringBuilder();
+                resolveQualifiedName(name.substring(0, dot), className, mBuilder);
+                ClassInfo cls = findClass(className.toString());
+                return cls != null ? findInheritedField(cls, name.substring(dot + 1)) : null;
+            }
+
+            for (ClassInfo cls = mField.containingClass(); cls != null;
+                    cls = cls.containingClass()) {
+                FieldInfo field = findInheritedField(cls, name);
+                if (field != null) {
+                    return field;
+                }
+            }
+
+            // the static imports, which are among the others without their "static"
+            for (String imp : mBuilder.getImports()) {
+                if (imp.endsWith("." + name) || imp.endsWith(".*")) {
+                    ClassInfo cls = findClass(imp.substring(0, imp.lastIndexOf('.')));
+                    FieldInfo field = cls != null ? findInheritedField(cls, name) : null;
+                    if (field != null) {
+                        return field;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the class of a qualified name, read from the class path if it was not
+         * parsed, or null if there is no such class.
+         */
+        private static ClassInfo findClass(String qualifiedName) {
+            if (qualifiedName.isEmpty()) {
+                return null;
+            }
+            ClassInfo cls = Caches.getClass(qualifiedName);
+            if (cls == null) {
+                if (classPath().binaryName(qualifiedName) == null) {
+                    return null;
+                }
+                cls = Caches.obtainClass(qualifiedName);
+            }
+            if (cls.containingPackage() == null) {
+                loadReferencedClass(cls);
+            }
+            return cls;
+        }
+
+        private static FieldInfo findInheritedField(ClassInfo cls, String name) {
+            if (cls.containingPackage() == null) {
+                loadReferencedClass(cls);
+            }
+            FieldInfo field = cls.allFields().get(name);
+            if (field != null) {
+                return field;
+            }
+
+            ArrayList<ClassInfo> supertypes = new ArrayList<ClassInfo>();
+            if (cls.realSuperclass() != null) {
+                supertypes.add(cls.realSuperclass());
+            }
+            if (cls.realInterfaces() != null) {
+                supertypes.addAll(cls.realInterfaces());
+            }
+            for (ClassInfo supertype : supertypes) {
+                field = findInheritedField(supertype, name);
+                if (field != null) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * Build the method parameters.
      * @param tree The tree to parse. formalParamaters should be the root value.
@@ -1141,6 +2048,13 @@ public class InfoBuilder {
                     CommentAndPosition commentAndPosition = new CommentAndPosition();
                     commentAndPosition.setPosition(paramPart);
 
+                    // dimensions after the name, as in String args[], are those of the type
+                    StringBuilder dimension = new StringBuilder(type.dimension());
+                    while (it.hasNext()) {
+                        dimension.append(it.next().toString());
+                    }
+                    type.setDimension(dimension.toString());
+
                     parameters.add(new ParameterInfo(name, type.qualifiedTypeName(), type,
                             isVarArg, commentAndPosition.getPosition()));
                 }
@@ -1193,6 +2107,11 @@ public class InfoBuilder {
 
         modifiers.parseModifiers(child);
 
+        // an enum is final unless one of its constants has a body, which subclasses it
+        if (!hasConstantBodies((ParseTree) tree.getChild(tree.getChildCount() - 1))) {
+            modifiers.addImplied("final");
+        }
+
         child = it.next();
         child = it.next();
 
@@ -1200,6 +2119,15 @@ public class InfoBuilder {
                 commentAndPosition.getCommentText(),
                 commentAndPosition.getPosition(), ClassType.ENUM);
 
+        // every enum extends java.lang.Enum of itself
+        ClassInfo enumClass = Caches.obtainClass("java.lang.Enum");
+        TypeInfo enumType = new TypeInfo(false, "", "Enum", "java.lang.Enum", enumClass);
+        ArrayList<TypeInfo> enumArguments = new ArrayList<TypeInfo>();
+        enumArguments.add(cls.type());
+        enumType.setTypeArguments(enumArguments);
+        cls.setSuperclassType(enumType);
+        cls.setSuperClass(enumClass);
+
         child = it.next();
 
         // handle implements
@@ -1213,9 +2141,58 @@ public class InfoBuilder {
 
         buildEnumBody(child, cls);
 
+        // the methods the compiler adds to every enum, which javadoc lists
+        SourcePositionInfo position = commentAndPosition.getPosition();
+        TypeInfo arrayType = new TypeInfo(false, "[]", cls.name(), cls.qualifiedName(), cls);
+        MethodInfo values = new MethodInfo("", new ArrayList<TypeInfo>(), "values", null,
+                cls, cls, true, false, false, false, true, true, false, false, false, false,
+                false, "method", "()", null, arrayType, new ArrayList<ParameterInfo>(),
+                new ArrayList<ClassInfo>(), position, new ArrayList<AnnotationInstanceInfo>());
+        values.init(null);
+        cls.addMethod(values);
+
+        TypeInfo stringType = new TypeInfo(false, "", "String", "java.lang.String",
+                Caches.obtainClass("java.lang.String"));
+        ArrayList<ParameterInfo> parameters = new ArrayList<ParameterInfo>();
+        parameters.add(new ParameterInfo("name", stringType.qualifiedTypeName(), stringType,
+                false, position));
+        MethodInfo valueOf = new MethodInfo("", new ArrayList<TypeInfo>(), "valueOf", null,
+                cls, cls, true, false, false, false, false, true, false, false, false, false,
+                false, "method", "(java.lang.String)", null, cls.type(), parameters,
+                new ArrayList<ClassInfo>(), position, new ArrayList<AnnotationInstanceInfo>());
+        valueOf.init(null);
+        cls.addMethod(valueOf);
+
         return cls;
     }
 
+    /**
+     * Tells whether any constant of an enum has a class body.
+     * @param tree The tree to look at. enumBody should be the root value.
+     * @return true if a constant has a body.
+     */
+    private static boolean hasConstantBodies(ParseTree tree) {
+        for (Object o : tree.getChildren()) {
+            if (!"enumConstants".equals(o.toString())) {
+                continue;
+            }
+
+            for (Object constant : ((ParseTree) o).getChildren()) {
+                if (!"enumConstant".equals(constant.toString())) {
+                    continue;
+                }
+
+                for (Object part : ((ParseTree) constant).getChildren()) {
+                    if ("classBody".equals(part.toString())) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Parses the body of an enum.
      * @param tree The tree to parse. enumBody should be the root value.
@@ -1261,37 +2238,12 @@ public class InfoBuilder {
         CommentAndPosition commentAndPosition = new CommentAndPosition();
         commentAndPosition.setCommentText(child);
         commentAndPosition.setPosition(child);
-        Object constantValue = null;
 
-        // get constantValue if it exists
-        if (it.hasNext()) {
-            child = it.next();
-
-            // if we have an expressionList
-            if (child.getChildCount() == 3) {
-                StringBuilder builder = new StringBuilder();
-                child = (ParseTree) child.getChild(1); // get the middle child
-
-                for (Object o : child.getChildren()) {
-                    if ("expression".equals(o.toString())) {
-                        builder.append(parseExpression((ParseTree) o));
-
-                        if (o != child.getChild(child.getChildCount()-1)) {
-                            builder.append(", ");
-                        }
-                    }
-                }
-
-                constantValue = builder.toString();
-            }
-        }
-
-        return new FieldInfo(name, containingClass, containingClass, containingClass.isPublic(),
-        containingClass.isProtected(), containingClass.isPackagePrivate(),
-        containingClass.isPrivate(), containingClass.isFinal(),
-        containingClass.isStatic(), false, false, false,
+        // enum constants are public static final fields of the enum, without a constant value
+        return new FieldInfo(name, containingClass, containingClass, true, false, false, false,
+        true, true, false, false, false,
         containingClass.type(), commentAndPosition.getCommentText(),
-        constantValue, commentAndPosition.getPosition(),
+        null, commentAndPosition.getPosition(),
         modifiers.getAnnotations());
     }
 
@@ -1413,7 +2365,13 @@ public class InfoBuilder {
         // build class name and initialize the class
         ClassInfo annotation = buildClassName(child, containingClass, modifiers,
                 commentAndPosition.getCommentText(),
-                commentAndPosition.getPosition(), ClassType.INTERFACE);
+                commentAndPosition.getPosition(), ClassType.ANNOTATION);
+
+        // every annotation type implements java.lang.annotation.Annotation
+        ClassInfo annotationInterface = Caches.obtainClass("java.lang.annotation.Annotation");
+        annotation.addInterfaceType(new TypeInfo(false, "", "Annotation",
+                "java.lang.annotation.Annotation", annotationInterface));
+        annotation.addInterface(annotationInterface);
 
         child = it.next();
 
@@ -1580,7 +2538,7 @@ public class InfoBuilder {
     private String getDimensions(ParseTree tree) {
         // we only have dimensions if the count is not 1
         if (tree.getChildCount() == 1) {
-            return null;
+            return "";
         }
 
         StringBuilder builder = new StringBuilder();
@@ -1622,19 +2580,39 @@ public class InfoBuilder {
         // steps to figure out a class's real name
         // check class(es) in this file
 
-        // trying something out. let's see how this works
-        if (name.indexOf('.') != -1) {
-            qualifiedClassName.append(name);
+        // a name with dots either starts with a class, as in Map.Entry, which is resolved like
+        // any other and the rest of the name is put after it, or is already fully qualified
+        int dot = name.indexOf('.');
+        if (dot != -1) {
+            String first = name.substring(0, dot);
+            if (!Character.isUpperCase(first.charAt(0))) {
+                qualifiedClassName.append(name);
+                return false;
+            }
+            StringBuilder outer = new StringBuilder();
+            resolveQualifiedName(first, outer, builder);
+            if (outer.length() > 0) {
+                qualifiedClassName.append(outer).append(name.substring(dot));
+            }
             return false;
         }
 
-        // TODO - search since we're now a HashSet
-        for (String className : builder.getClassNames()) {
-            int beginIndex = className.lastIndexOf(".") + 1;
+        if (builder.mAmbiguousClassNames.contains(name)) {
+            // several classes of this file have this simple name, take the first one found
+            for (String className : builder.getClassNames()) {
+                int beginIndex = className.lastIndexOf(".") + 1;
+
+                if (className.substring(beginIndex).equals(name)) {
+                    qualifiedClassName.append(className);
+                    return qualifiedClassName.toString().equals(name);
+                }
+            }
+        } else {
+            String className = builder.mClassNameIndex.get(name);
 
-            if (className.substring(beginIndex).equals(name)) {
+            if (className != null) {
                 qualifiedClassName.append(className);
-                return qualifiedClassName.toString().equals(name);
+                return className.equals(name);
             }
         }
 
@@ -1660,36 +2638,37 @@ public class InfoBuilder {
             return false;
         }
 
+        if (builder.mImportScope == null) {
+            builder.mImportScope = new ImportScope(builder.getImports());
+        }
+        ImportScope imports = builder.mImportScope;
 
         // check class imports - ie, java.lang.String;
-        ArrayList<String> packagesToCheck = new ArrayList<String>();
-        for (String imp : builder.getImports()) {
-            // +1 to get rid of off by 1 error
-            String endOfName = imp.substring(imp.lastIndexOf('.') + 1);
-            if (endOfName.equals(name) || (name.indexOf('.') != -1 &&
-                                           endOfName.equals(
-                                                   name.substring(0, name.lastIndexOf('.'))))) {
-                qualifiedClassName.append(imp);
-                return qualifiedClassName.toString().equals(name);
-            } else if (endOfName.equals("*")) {
-                // add package to check
-                packagesToCheck.add(imp.substring(0, imp.lastIndexOf('.')));
-            } else {
-                // check inner classes
-                ClassInfo cl = Caches.obtainClass(imp);
-                String possibleName = resolveQualifiedInnerName(cl.qualifiedName() + "." + name,
-                        cl);
-                if (possibleName != null) {
-                    qualifiedClassName.append(possibleName);
-                    return false;
-                }
+        // an inner class of an earlier import wins over a later import of the name itself
+        Integer position = imports.mPositions.get(name);
+        int end = (position == null) ? imports.mClasses.length : position;
+        for (int i = 0; i < end; i++) {
+            ClassInfo cl = imports.mClasses[i];
+            if (cl == null) {
+                continue;
+            }
+
+            // check inner classes
+            String possibleName = resolveQualifiedInnerName(cl.qualifiedName() + "." + name, cl);
+            if (possibleName != null) {
+                qualifiedClassName.append(possibleName);
+                return false;
             }
         }
 
-        // check package imports - ie, java.lang.*;
-        for (String packageName : packagesToCheck) {
-            PackageInfo pkg = Caches.obtainPackage(packageName);
+        if (position != null) {
+            String imp = imports.mImports.get(position);
+            qualifiedClassName.append(imp);
+            return imp.equals(name);
+        }
 
+        // check package imports - ie, java.lang.*;
+        for (PackageInfo pkg : imports.mPackages) {
             ClassInfo cls = pkg.getClass(name);
 
             if (cls != null && name.equals(cls.name())) {
@@ -1697,6 +2676,19 @@ public class InfoBuilder {
                 return qualifiedClassName.toString().equals(name);
             }
         }
+        // the imported packages may have classes that are not among the files parsed, such as
+        // those of java.lang. once every file has been parsed, they are looked for on the class
+        // path
+        if (Caches.isParsed()) {
+            for (PackageInfo pkg : imports.mPackages) {
+                String className = pkg.name() + "." + name;
+                if (isRuntimeClass(className)) {
+                    qualifiedClassName.append(className);
+                    return false;
+                }
+            }
+        }
+
         //     including import's inner classes...
         // check package of imports...
 
@@ -1710,6 +2702,15 @@ public class InfoBuilder {
         return false;
     }
 
+    /**
+     * Tells whether a class has a class file on the class path, without reading it.
+     * @param qualifiedClassName The name of the class, which must not be nested.
+     * @return true if the class file of the class is on the class path.
+     */
+    private static boolean isRuntimeClass(String qualifiedClassName) {
+        return classPath().contains(qualifiedClassName.replace('.', '/'));
+    }
+
     private static String resolveQualifiedNameInInheritedClass(String name, ClassInfo cl,
             String originalPackage) {
         ArrayList<ClassInfo> classesToCheck = new ArrayList<ClassInfo>();
@@ -1721,7 +2722,7 @@ public class InfoBuilder {
                 ClassInfo cls = cl.containingPackage().getClass(name);
 
                 if (cls != null && name.equals(cls.name())) {
-                    return cls.name();
+                    return cls.qualifiedName();
                 }
             }
 
@@ -1767,6 +2768,52 @@ public class InfoBuilder {
         return null;
     }
 
+    /**
+     * Adds a class or type variable name to mClassNames and its index.
+     */
+    private void addClassName(String name) {
+        if (mClassNames.add(name)) {
+            String simpleName = name.substring(name.lastIndexOf('.') + 1);
+            if (mClassNameIndex.put(simpleName, name) != null) {
+                mAmbiguousClassNames.add(simpleName);
+            }
+        }
+    }
+
+    /**
+     * The imports of a file, indexed for resolveQualifiedName. The classes and packages are
+     * obtained once, rather than on every name that reaches the imports.
+     */
+    private static class ImportScope {
+        // the imports, in order
+        private final ArrayList<String> mImports;
+        // the class of each single type import, null for an import on demand
+        private final ClassInfo[] mClasses;
+        // the position of the first import whose last part is each simple name
+        private final HashMap<String, Integer> mPositions = new HashMap<String, Integer>();
+        // the packages of the imports on demand, in order
+        private final ArrayList<PackageInfo> mPackages = new ArrayList<PackageInfo>();
+
+        public ImportScope(ArrayList<String> imports) {
+            mImports = new ArrayList<String>(imports);
+            mClasses = new ClassInfo[imports.size()];
+
+            for (int i = 0; i < mImports.size(); i++) {
+                String imp = mImports.get(i);
+                // +1 to get rid of off by 1 error
+                String endOfName = imp.substring(imp.lastIndexOf('.') + 1);
+                if (endOfName.equals("*")) {
+                    mPackages.add(Caches.obtainPackage(imp.substring(0, imp.lastIndexOf('.'))));
+                    continue;
+                }
+                if (!mPositions.containsKey(endOfName)) {
+                    mPositions.put(endOfName, i);
+                }
+                mClasses[i] = Caches.obtainClass(imp);
+            }
+        }
+    }
+
     /**
      * Parses the tree, looking for the comment and position.
      * @param tree The tree to parse.
@@ -1827,7 +2874,8 @@ public class InfoBuilder {
 
           int line = token.getLine();
           int column = token.getCharPositionInLine();
-          String fileName = ((ANTLRFileStream) token.getInputStream()).getSourceName();
+          // not the token's input stream, which a token loaded from the ParseCache lacks
+          String fileName = mFilename;
 
           mPosition = new SourcePositionInfo(fileName, line, column);
         }
@@ -1899,6 +2947,26 @@ public class InfoBuilder {
             }
         }
 
+        /**
+         * Adds a modifier that the declaration has without it being written, such as the
+         * public of the members of an interface.
+         * @param modifier public, static, abstract or final.
+         */
+        public void addImplied(String modifier) {
+            if ("public".equals(modifier)) {
+                mIsPublic = true;
+                mIsProtected = false;
+                mIsPackagePrivate = false;
+                mIsPrivate = false;
+            } else if ("static".equals(modifier)) {
+                mIsStatic = true;
+            } else if ("abstract".equals(modifier)) {
+                mIsAbstract = true;
+            } else if ("final".equals(modifier)) {
+                mIsFinal = true;
+            }
+        }
+
         public boolean isPublic() {
             return mIsPublic;
         }
@@ -1956,21 +3024,31 @@ public class InfoBuilder {
 
     /**
      * Singleton class to store all of the global data amongst every InfoBuilder.
+     * Classes and packages may be obtained from several threads at once.
      */
     public static class Caches {
-        private static HashMap<String, PackageInfo> mPackages
-                                        = new HashMap<String, PackageInfo>();
-        private static HashMap<String, ClassInfo> mClasses
-                                        = new HashMap<String, ClassInfo>();
-        private static HashSet<Resolvable> mInfosToResolve
-                                        = new HashSet<Resolvable>();
+        private static final ConcurrentHashMap<String, PackageInfo> mPackages
+                                        = new ConcurrentHashMap<String, PackageInfo>();
+        private static final ConcurrentHashMap<String, ClassInfo> mClasses
+                                        = new ConcurrentHashMap<String, ClassInfo>();
+        private static LinkedHashSet<Resolvable> mInfosToResolve
+                                        = new LinkedHashSet<Resolvable>();
+        private static volatile boolean mParsed = false;
+        private static ArrayList<ThrownTypeVariable> mThrownTypeVariables
+                                        = new ArrayList<ThrownTypeVariable>();
+        private static LinkedHashMap<FieldInfo, PendingConstant> mPendingConstants
+                                        = new LinkedHashMap<FieldInfo, PendingConstant>();
+        private static HashSet<ClassInfo> mBinaryClasses = new HashSet<ClassInfo>();
 
         public static PackageInfo obtainPackage(String packageName) {
             PackageInfo pkg = mPackages.get(packageName);
 
             if (pkg == null) {
                 pkg = new PackageInfo(packageName);
-                mPackages.put(packageName, pkg);
+                PackageInfo existing = mPackages.putIfAbsent(packageName, pkg);
+                if (existing != null) {
+                    pkg = existing;
+                }
             }
 
             return pkg;
@@ -1986,7 +3064,10 @@ public class InfoBuilder {
 
             if (cls == null) {
                 cls = new ClassInfo(qualifiedClassName);
-                mClasses.put(cls.qualifiedName(), cls);
+                ClassInfo existing = mClasses.putIfAbsent(cls.qualifiedName(), cls);
+                if (existing != null) {
+                    cls = existing;
+                }
             }
 
             return cls;
@@ -2001,11 +3082,73 @@ public class InfoBuilder {
             return mClasses.get(qualifiedClassName);
         }
 
-        public static void addResolvableToCache(Resolvable resolvable) {
+        /**
+         * @return every class of the master list, parsed or only referred to.
+         */
+        public static ArrayList<ClassInfo> classes() {
+            return new ArrayList<ClassInfo>(mClasses.values());
+        }
+
+        /**
+         * Forgets every package, class and pending resolution, so files may be parsed afresh.
+         */
+        public static synchronized void clear() {
+            mPackages.clear();
+            mClasses.clear();
+            mInfosToResolve.clear();
+            mThrownTypeVariables.clear();
+            mPendingConstants.clear();
+            mBinaryClasses.clear();
+            mParsed = false;
+        }
+
+        public static synchronized void addResolvableToCache(Resolvable resolvable) {
             mInfosToResolve.add(resolvable);
         }
 
-        public static void printResolutions() {
+        private static synchronized void addThrownTypeVariable(ThrownTypeVariable thrown) {
+            mThrownTypeVariables.add(thrown);
+        }
+
+        /**
+         * Gives the methods that throw type variables the classes of their erasures, once
+         * the bounds of the variables are resolved.
+         */
+        private static synchronized void completeThrownTypeVariables() {
+            for (ThrownTypeVariable thrown : mThrownTypeVariables) {
+                thrown.complete();
+            }
+            mThrownTypeVariables.clear();
+        }
+
+        private static synchronized void addPendingConstant(PendingConstant constant) {
+            mPendingConstants.put(constant.mField, constant);
+        }
+
+        /**
+         * Works out the values of the constants whose initializers name other constants.
+         */
+        private static synchronized void completeConstants() {
+            for (PendingConstant constant : new ArrayList<PendingConstant>(
+                    mPendingConstants.values())) {
+                constant.complete();
+            }
+            mPendingConstants.clear();
+        }
+
+        private static synchronized PendingConstant getPendingConstant(FieldInfo field) {
+            return mPendingConstants.get(field);
+        }
+
+        private static synchronized void addBinaryClass(ClassInfo cls) {
+            mBinaryClasses.add(cls);
+        }
+
+        private static synchronized boolean isBinaryClass(ClassInfo cls) {
+            return mBinaryClasses.contains(cls);
+        }
+
+        public static synchronized void printResolutions() {
             if (mInfosToResolve.isEmpty()) {
                 System.out.println("We've resolved everything.");
                 return;
@@ -2017,17 +3160,35 @@ public class InfoBuilder {
             }
         }
 
-        public static void resolve() {
-            HashSet<Resolvable> resolveList = mInfosToResolve;
-            mInfosToResolve = new HashSet<Resolvable>();
+        /**
+         * @return true once every file has been parsed, which is when {@link #resolve()} is
+         * first called.
+         */
+        public static boolean isParsed() {
+            return mParsed;
+        }
 
-            for (Resolvable r : resolveList) {
-                // if we could not resolve everything in this class
-                if (!r.resolveResolutions()) {
-                    mInfosToResolve.add(r);
+        /**
+         * Resolves what can be resolved of the pending resolutions, in the order they were
+         * added. Resolving some of them can make others resolvable, so the ones left are
+         * gone over again, until a pass completes none.
+         */
+        public static synchronized void resolve() {
+            mParsed = true;
+            boolean progress = true;
+            while (progress && !mInfosToResolve.isEmpty()) {
+                LinkedHashSet<Resolvable> resolveList = mInfosToResolve;
+                mInfosToResolve = new LinkedHashSet<Resolvable>();
+                progress = false;
+
+                for (Resolvable r : resolveList) {
+                    // if we could not resolve everything in this class
+                    if (!r.resolveResolutions()) {
+                        mInfosToResolve.add(r);
+                    } else {
+                        progress = true;
+                    }
                 }
-
-                System.out.println();
             }
         }
     }
@@ -17,13 +17,16 @@
 package com.google.doclava;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.Enumeration;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.CRC32;
 
 public class JarUtils {
   /**
@@ -52,7 +55,9 @@ public class JarUtils {
   }
 
   /**
-   * Copies a directory from a jar file to an external directory.
+   * Copies a directory from a jar file to an external directory. Files that already have the
+   * size and either the modification time or the checksum of their jar entry are left alone, and
+   * copied files are given the entry's modification time.
    */
   public static void copyResourcesToDirectory(JarFile fromJar, String jarDir, String destDir)
       throws IOException {
@@ -60,11 +65,21 @@ public class JarUtils {
       JarEntry entry = entries.nextElement();
       if (entry.getName().startsWith(jarDir + "/") && !entry.isDirectory()) {
         File dest = new File(destDir + "/" + entry.getName().substring(jarDir.length() + 1));
+        long start = System.nanoTime();
+        if (dest.length() == entry.getSize()
+            && ((entry.getTime() != -1 && dest.lastModified() == entry.getTime())
+                || (entry.getCrc() != -1 && crc32(dest) == entry.getCrc()))) {
+          ClearPage.sCopyStats.skipped(System.nanoTime() - start);
+          continue;
+        }
         File parent = dest.getParentFile();
         if (parent != null) {
           parent.mkdirs();
         }
 
+        // replace the destination rather than write through it, as it may be a hard link that
+        // ClearPage.copyFile made to a file of an html or template dir
+        Files.deleteIfExists(dest.toPath());
         FileOutputStream out = new FileOutputStream(dest);
         InputStream in = fromJar.getInputStream(entry);
 
@@ -85,10 +100,37 @@ public class JarUtils {
             out.close();
           } catch (IOException ignored) {}
         }
+        if (entry.getTime() != -1) {
+          dest.setLastModified(entry.getTime());
+        }
+        ClearPage.sCopyStats.copied(dest.length(), System.nanoTime() - start);
+        Timings.fileWritten(dest);
       }
     }
 
   }
 
+  private static long crc32(File f) {
+    CRC32 crc = new CRC32();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(f);
+      byte[] buffer = new byte[8 * 1024];
+      int s;
+      while ((s = in.read(buffer)) > 0) {
+        crc.update(buffer, 0, s);
+      }
+      return crc.getValue();
+    } catch (IOException e) {
+      return -1;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ignored) {}
+      }
+    }
+  }
+
   private JarUtils() {} // non-instantiable
 }
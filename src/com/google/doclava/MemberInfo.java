@@ -160,6 +160,13 @@ public abstract class MemberInfo extends DocInfo implements Comparable, Scoped {
     return mShowAnnotations;
   }
 
+  /**
+   * Works out the show annotations again, once the types of the annotations are known.
+   */
+  public void resolveShowAnnotations() {
+    mShowAnnotations = AnnotationInstanceInfo.getShowAnnotationsIntersection(mAnnotations);
+  }
+
   ClassInfo mContainingClass;
   ClassInfo mRealContainingClass;
   String mName;
@@ -638,6 +638,14 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo, Resolv
     return mDefaultAnnotationElementValue;
   }
 
+  /**
+   * Sets the method of a superclass that this one overrides, for classes that were not built
+   * from a MethodDoc, which would have told.
+   */
+  void setOverriddenMethod(MethodInfo overriddenMethod) {
+    mOverriddenMethod = overriddenMethod;
+  }
+
   public void setVarargs(boolean set) {
     mIsVarargs = set;
   }
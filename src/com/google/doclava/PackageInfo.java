@@ -221,7 +221,8 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     if (mAnnotations == null) {
       mAnnotations =
           ClassInfo.sortByName(filterHiddenAndRemoved(
-              Converter.convertClasses(mPackage.annotationTypes())));
+              mPackage == null ? sourceClasses(mAnnotationsMap)
+              : Converter.convertClasses(mPackage.annotationTypes())));
     }
     return mAnnotations;
   }
@@ -230,7 +231,8 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     if (mInterfaces == null) {
       mInterfaces =
           ClassInfo.sortByName(filterHiddenAndRemoved(
-              Converter.convertClasses(mPackage.interfaces())));
+              mPackage == null ? sourceClasses(mInterfacesMap)
+              : Converter.convertClasses(mPackage.interfaces())));
     }
     return mInterfaces;
   }
@@ -239,7 +241,8 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     if (mOrdinaryClasses == null) {
       mOrdinaryClasses =
           ClassInfo.sortByName(filterHiddenAndRemoved(
-              Converter.convertClasses(mPackage.ordinaryClasses())));
+              mPackage == null ? sourceClasses(mOrdinaryClassesMap)
+              : Converter.convertClasses(mPackage.ordinaryClasses())));
     }
     return mOrdinaryClasses;
   }
@@ -247,7 +250,8 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
   public ClassInfo[] enums() {
     if (mEnums == null) {
       mEnums = ClassInfo.sortByName(filterHiddenAndRemoved(
-          Converter.convertClasses(mPackage.enums())));
+          mPackage == null ? sourceClasses(mEnumsMap)
+              : Converter.convertClasses(mPackage.enums())));
     }
     return mEnums;
   }
@@ -256,7 +260,8 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     if (mExceptions == null) {
       mExceptions =
           ClassInfo.sortByName(filterHiddenAndRemoved(
-              Converter.convertClasses(mPackage.exceptions())));
+              mPackage == null ? sourceClasses(mExceptionsMap)
+              : Converter.convertClasses(mPackage.exceptions())));
     }
     return mExceptions;
   }
@@ -264,11 +269,19 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
   public ClassInfo[] errors() {
     if (mErrors == null) {
       mErrors = ClassInfo.sortByName(filterHiddenAndRemoved(
-          Converter.convertClasses(mPackage.errors())));
+          mPackage == null ? sourceClasses(mErrorsMap)
+              : Converter.convertClasses(mPackage.errors())));
     }
     return mErrors;
   }
 
+  /**
+   * Lists the classes of a package that InfoBuilder read from source, which has no PackageDoc.
+   */
+  private static ClassInfo[] sourceClasses(HashMap<String, ClassInfo> classes) {
+    return classes.values().toArray(new ClassInfo[classes.size()]);
+  }
+
   public ApiInfo containingApi() {
     return mContainingApi;
   }
@@ -44,19 +44,19 @@ public class ParameterInfo {
     return mType;
   }
 
-  String name() {
+  public String name() {
     return mName;
   }
 
-  String typeName() {
+  public String typeName() {
     return mTypeName;
   }
 
-  SourcePositionInfo position() {
+  public SourcePositionInfo position() {
     return mPosition;
   }
 
-  boolean isVarArg() {
+  public boolean isVarArg() {
     return mIsVarArg;
   }
 
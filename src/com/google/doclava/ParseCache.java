@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.ParseTree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the declarations parsed out of each source file on disk, so that a file whose contents
+ * have not changed since an earlier run need not be lexed and parsed again.
+ * <p>
+ * A file's key is a hash of its contents. Its record holds the trees of the package, import and
+ * type declarations at the top of the file, as {@link InfoBuilder} gets them from
+ * {@link com.google.doclava.parser.DeclarationTreeBuilder}: without the statements of any
+ * block, but with the comments and source positions of every token. The Doclava objects are
+ * built from the loaded trees exactly as from freshly parsed ones, and any names they cannot
+ * resolve yet are left to {@link InfoBuilder#resolve()} as usual.
+ * <p>
+ * Each record is a file named after its key in the cache directory. It starts with
+ * {@link #MAGIC} and {@link #VERSION}, then the number of trees and the trees, depth first.
+ * Counts and numbers are unsigned LEB128 varints. A string is written out the first time it
+ * appears in a record, as 0 followed by its length and UTF-8 bytes, and is referenced by its
+ * index + 1 afterwards.
+ */
+public class ParseCache {
+    static final int MAGIC = 0x44505243; // "DPRC"
+    // 2 keeps the comments before the first token of a file
+    static final int VERSION = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int RULE = 0;
+    private static final int TOKEN = 1;
+
+    private final File mDir;
+    // the keys read or written by this run
+    private final Map<String, Boolean> mUsed = new ConcurrentHashMap<String, Boolean>();
+
+    private int mLoaded;
+    private int mParsed;
+
+    public ParseCache(String dir) {
+        mDir = new File(dir);
+        mDir.mkdirs();
+    }
+
+    /**
+     * Returns the key of the record of {@code filename}, a hash of its contents.
+     */
+    public String key(String filename) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] buffer = new byte[8192];
+        InputStream in = new FileInputStream(filename);
+        try {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the declaration trees recorded under {@code key}, or null if there is no usable
+     * record of them.
+     */
+    public List<ParseTree> load(String key) {
+        File file = new File(mDir, key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || readVarint(in) != VERSION) {
+                return null;
+            }
+            ArrayList<String> strings = new ArrayList<String>();
+            int count = readVarint(in);
+            ArrayList<ParseTree> trees = new ArrayList<ParseTree>(count);
+            for (int i = 0; i < count; i++) {
+                trees.add(readTree(in, strings));
+            }
+
+            mUsed.put(key, Boolean.TRUE);
+            synchronized (this) {
+                mLoaded++;
+            }
+            return trees;
+        } catch (IOException e) {
+            System.err.println(file + ": error reading parse cache record, parsing again");
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Starts a record of the declaration trees of a file.
+     */
+    public Record newRecord() {
+        return new Record();
+    }
+
+    /**
+     * Keeps {@code record} under {@code key} for later runs. A record that cannot be written is
+     * only reported, as the file is parsed again next time.
+     */
+    public void store(String key, Record record) {
+        mUsed.put(key, Boolean.TRUE);
+        synchronized (this) {
+            mParsed++;
+        }
+
+        File file = new File(mDir, key);
+        File temp = new File(mDir, key + ".tmp" + Thread.currentThread().getId());
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                writeVarint(header, VERSION);
+                writeVarint(header, record.mCount);
+                header.flush();
+                record.mBytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("cannot rename " + temp);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(file + ": error writing parse cache record: " + e.getMessage());
+            temp.delete();
+        }
+    }
+
+    /**
+     * Returns how many files this run loaded from the cache.
+     */
+    public synchronized int loadedCount() {
+        return mLoaded;
+    }
+
+    /**
+     * Returns how many files this run parsed and recorded.
+     */
+    public synchronized int parsedCount() {
+        return mParsed;
+    }
+
+    /**
+     * Reports how many files were loaded from the cache and how many were parsed.
+     */
+    public void report() {
+        System.out.println("Parse cache: " + loadedCount() + " files loaded, "
+                + parsedCount() + " parsed");
+    }
+
+    /**
+     * Deletes the records that this run neither read nor wrote. Only files named like a record
+     * are deleted, so anything else in the directory is left alone, but the records of other
+     * file lists sharing the directory are deleted too, which is why this is only done when
+     * asked for.
+     */
+    public void prune() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (isKey(name) && !mUsed.containsKey(name)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether {@code name} has the form of a key, 40 lower case hex digits.
+     */
+    static boolean isKey(String name) {
+        if (name.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The declaration trees of one file, written out as they are added so that they need not
+     * all be held until the whole file is parsed.
+     */
+    public static class Record {
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBytes);
+        private final Map<String, Integer> mStrings = new HashMap<String, Integer>();
+        private int mCount;
+
+        public void add(ParseTree tree) {
+            try {
+                writeTree(tree);
+                mOut.flush();
+            } catch (IOException e) {
+                // cannot happen, a ByteArrayOutputStream does not throw
+                throw new RuntimeException(e);
+            }
+            mCount++;
+        }
+
+        private void writeTree(ParseTree tree) throws IOException {
+            if (tree.payload instanceof Token) {
+                Token token = (Token) tree.payload;
+                writeVarint(mOut, TOKEN);
+                writeToken(token);
+
+                List<?> hidden = tree.hiddenTokens;
+                int count = hidden == null ? 0 : hidden.size();
+                writeVarint(mOut, count);
+                for (int i = 0; i < count; i++) {
+                    writeToken((Token) hidden.get(i));
+                }
+            } else {
+                writeVarint(mOut, RULE);
+                writeString(tree.payload.toString());
+                writeVarint(mOut, tree.getChildCount());
+                for (int i = 0; i < tree.getChildCount(); i++) {
+                    writeTree((ParseTree) tree.getChild(i));
+                }
+            }
+        }
+
+        private void writeToken(Token token) throws IOException {
+            writeVarint(mOut, token.getType());
+            writeVarint(mOut, token.getChannel());
+            writeString(token.getText());
+            writeVarint(mOut, token.getLine());
+            writeVarint(mOut, token.getCharPositionInLine());
+        }
+
+        private void writeString(String s) throws IOException {
+            Integer index = mStrings.get(s);
+            if (index != null) {
+                writeVarint(mOut, index + 1);
+            } else {
+                mStrings.put(s, mStrings.size());
+                byte[] bytes = s.getBytes(UTF8);
+                writeVarint(mOut, 0);
+                writeVarint(mOut, bytes.length);
+                mOut.write(bytes);
+            }
+        }
+    }
+
+    private static ParseTree readTree(DataInputStream in, List<String> strings)
+            throws IOException {
+        int tag = readVarint(in);
+        if (tag == TOKEN) {
+            ParseTree tree = new ParseTree(readToken(in, strings));
+            int count = readVarint(in);
+            if (count > 0) {
+                tree.hiddenTokens = new ArrayList<Token>(count);
+                for (int i = 0; i < count; i++) {
+                    tree.hiddenTokens.add(readToken(in, strings));
+                }
+            }
+            return tree;
+        } else if (tag == RULE) {
+            ParseTree tree = new ParseTree(readString(in, strings));
+            int count = readVarint(in);
+            for (int i = 0; i < count; i++) {
+                tree.addChild(readTree(in, strings));
+            }
+            return tree;
+        }
+        throw new IOException("bad node tag " + tag);
+    }
+
+    private static Token readToken(DataInputStream in, List<String> strings) throws IOException {
+        int type = readVarint(in);
+        int channel = readVarint(in);
+        CommonToken token = new CommonToken(type, readString(in, strings));
+        token.setChannel(channel);
+        token.setLine(readVarint(in));
+        token.setCharPositionInLine(readVarint(in));
+        return token;
+    }
+
+    private static String readString(DataInputStream in, List<String> strings)
+            throws IOException {
+        int ref = readVarint(in);
+        if (ref == 0) {
+            byte[] bytes = new byte[readVarint(in)];
+            in.readFully(bytes);
+            String s = new String(bytes, UTF8);
+            strings.add(s);
+            return s;
+        }
+        if (ref > strings.size()) {
+            throw new IOException("bad string reference " + ref);
+        }
+        return strings.get(ref - 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("bad varint");
+    }
+}
@@ -24,9 +24,15 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -54,28 +60,78 @@ public class SinceTagger {
   }
 
   public void tagAll(ClassInfo[] classDocs) {
-    // read through the XML files in order, applying their since information
-    // to the Javadoc models
-    for (Map.Entry<String, String> versionSpec : xmlToName.entrySet()) {
-      String xmlFile = versionSpec.getKey();
-      String versionName = versionSpec.getValue();
+    // read all of the XML files into an index of the first version each symbol appears in, then
+    // apply it to the Javadoc models in a single pass
+    String[] versionNames = xmlToName.values().toArray(new String[xmlToName.size()]);
+    VersionIndex index = new VersionIndex();
+    indexAll(index);
 
-      ApiInfo specApi;
+    applyVersions(versionNames, index, classDocs);
+
+    if (!xmlToName.isEmpty()) {
+      warnForMissingVersions(classDocs);
+    }
+  }
+
+  /**
+   * Parses every version's XML file, on up to {@link Doclava#threads} threads, and adds them to
+   * {@code index} oldest first. A parsed API is dropped as soon as it is indexed, and only a few
+   * files are parsed ahead of the one being indexed, so the APIs of all the versions are never
+   * held at once. Files that fail to parse are reported and skipped.
+   */
+  private void indexAll(VersionIndex index) {
+    final String[] xmlFiles = xmlToName.keySet().toArray(new String[xmlToName.size()]);
+    ApiParseException[] failures = new ApiParseException[xmlFiles.length];
+
+    int threads = Math.min(Doclava.threads, xmlFiles.length);
+    if (threads <= 1) {
+      for (int i = 0; i < xmlFiles.length; i++) {
+        try {
+          index.addVersion(i, ApiCheck.parseApi(xmlFiles[i]));
+        } catch (ApiParseException e) {
+          failures[i] = e;
+        }
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
       try {
-        specApi = new ApiCheck().parseApi(xmlFile);
-      } catch (ApiParseException e) {
-        StringWriter stackTraceWriter = new StringWriter();
-        e.printStackTrace(new PrintWriter(stackTraceWriter));
-        Errors.error(Errors.BROKEN_SINCE_FILE, null, "Failed to parse " + xmlFile
-                + " for " + versionName + " since data.\n" + stackTraceWriter.toString());
-        continue;
+        List<Future<ApiInfo>> results = new ArrayList<Future<ApiInfo>>(xmlFiles.length);
+        for (int i = 0; i < xmlFiles.length; i++) {
+          // keep every thread busy with a newer file while this one is indexed
+          while (results.size() < xmlFiles.length && results.size() <= i + threads) {
+            final String xmlFile = xmlFiles[results.size()];
+            results.add(executor.submit(new Callable<ApiInfo>() {
+              public ApiInfo call() throws ApiParseException {
+                return ApiCheck.parseApi(xmlFile);
+              }
+            }));
+          }
+          try {
+            index.addVersion(i, results.get(i).get());
+          } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof ApiParseException)) {
+              throw new RuntimeException(e.getCause());
+            }
+            failures[i] = (ApiParseException) e.getCause();
+          }
+          results.set(i, null);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } finally {
+        executor.shutdownNow();
       }
-
-      applyVersionsFromSpec(versionName, specApi, classDocs);
     }
 
-    if (!xmlToName.isEmpty()) {
-      warnForMissingVersions(classDocs);
+    for (int i = 0; i < xmlFiles.length; i++) {
+      if (failures[i] != null) {
+        StringWriter stackTraceWriter = new StringWriter();
+        failures[i].printStackTrace(new PrintWriter(stackTraceWriter));
+        Errors.error(Errors.BROKEN_SINCE_FILE, null, "Failed to parse " + xmlFiles[i]
+                + " for " + xmlToName.get(xmlFiles[i]) + " since data.\n"
+                + stackTraceWriter.toString());
+      }
     }
   }
 
@@ -97,131 +153,94 @@ public class SinceTagger {
   /**
    * Applies the version information to {@code classDocs} where not already present.
    *
-   * @param versionName the version name
-   * @param specApi the spec for this version. If a symbol is in this spec, it was present in the
-   *        named version
+   * @param versionNames the version names, oldest first
+   * @param index the first version each symbol was present in
    * @param classDocs the doc model to update
    */
-  private void applyVersionsFromSpec(String versionName, ApiInfo specApi, ClassInfo[] classDocs) {
+  private void applyVersions(String[] versionNames, VersionIndex index, ClassInfo[] classDocs) {
+    Map<PackageInfo, Integer> packageVersions = new LinkedHashMap<PackageInfo, Integer>();
     for (ClassInfo classDoc : classDocs) {
-      PackageInfo packageSpec
-          = specApi.getPackages().get(classDoc.containingPackage().name());
-
-      if (packageSpec == null) {
+      ClassVersions versions = index.get(classDoc.containingPackage().name(), classDoc.name());
+      if (versions == null) {
         continue;
       }
 
-      ClassInfo classSpec = packageSpec.allClasses().get(classDoc.name());
-
-      if (classSpec == null) {
-        continue;
+      Integer packageVersion = packageVersions.get(classDoc.containingPackage());
+      if (packageVersion == null || versions.since < packageVersion) {
+        packageVersions.put(classDoc.containingPackage(), versions.since);
       }
-
-      versionPackage(versionName, classDoc.containingPackage());
-      versionClass(versionName, classSpec, classDoc);
-      versionConstructors(versionName, classSpec, classDoc);
-      versionFields(versionName, classSpec, classDoc);
-      versionMethods(versionName, classSpec, classDoc);
+      versionClass(versionNames, versions, classDoc);
+      versionConstructors(versionNames, versions, classDoc);
+      versionFields(versionNames, versions, classDoc);
+      versionMethods(versionNames, versions, classDoc);
     }
-  }
 
-  /**
-   * Applies version information to {@code doc} where not already present.
-   */
-  private void versionPackage(String versionName, PackageInfo doc) {
-    if (doc.getSince() == null) {
-      doc.setSince(versionName);
+    for (Map.Entry<PackageInfo, Integer> entry : packageVersions.entrySet()) {
+      if (entry.getKey().getSince() == null) {
+        entry.getKey().setSince(versionNames[entry.getValue()]);
+      }
     }
   }
 
   /**
    * Applies version information to {@code doc} where not already present.
    */
-  private void versionClass(String versionName, ClassInfo spec, ClassInfo doc) {
+  private void versionClass(String[] versionNames, ClassVersions versions, ClassInfo doc) {
     if (doc.getSince() == null) {
-      doc.setSince(versionName);
+      doc.setSince(versionNames[versions.since]);
     }
 
     // Set deprecated version
-    if (doc.isDeprecated() && doc.getDeprecatedSince() == null) {
-      if (spec.isDeprecated()) {
-        doc.setDeprecatedSince(versionName);
-      }
+    if (doc.isDeprecated() && doc.getDeprecatedSince() == null && versions.deprecatedSince >= 0) {
+      doc.setDeprecatedSince(versionNames[versions.deprecatedSince]);
     }
   }
 
   /**
-   * Applies version information from {@code spec} to {@code doc} where not already present.
+   * Applies version information from {@code versions} to {@code doc} where not already present.
    */
-  private void versionConstructors(String versionName, ClassInfo spec, ClassInfo doc) {
+  private void versionConstructors(String[] versionNames, ClassVersions versions,
+      ClassInfo doc) {
     for (MethodInfo constructor : doc.constructors()) {
-      if (constructor.getSince() == null
-          && spec.hasConstructor(constructor)) {
-        constructor.setSince(versionName);
-      }
-
-      // Set deprecated version
-      if (constructor.isDeprecated() && constructor.getDeprecatedSince() == null) {
-        // Find matching field from API spec
-        if (spec.allConstructorsMap().containsKey(constructor.getHashableName())) {
-          MethodInfo specConstructor = spec.allConstructorsMap().get(constructor.getHashableName());
-          if (specConstructor.isDeprecated()) {
-            constructor.setDeprecatedSince(versionName);
-          }
-        }
-      }
+      versionMember(versionNames, constructor, versions.constructors,
+          versions.deprecatedConstructors, constructor.getHashableName());
     }
   }
 
   /**
-   * Applies version information from {@code spec} to {@code doc} where not already present.
+   * Applies version information from {@code versions} to {@code doc} where not already present.
    */
-  private void versionFields(String versionName, ClassInfo spec, ClassInfo doc) {
+  private void versionFields(String[] versionNames, ClassVersions versions, ClassInfo doc) {
     for (FieldInfo field : doc.fields()) {
-      if (field.getSince() == null && (spec.allFields().containsKey(field.name()) ||
-                                       spec.allEnums().containsKey(field.name()))) {
-        field.setSince(versionName);
-      }
-
-      // Set deprecated version
-      if (field.isDeprecated() && field.getDeprecatedSince() == null) {
-        // Find matching field from API spec
-        if (spec.allFields().containsKey(field.name())) {
-          FieldInfo specField = spec.allFields().get(field.name());
-          if (specField.isDeprecated()) {
-            field.setDeprecatedSince(versionName);
-          }
-        }
-      }
+      versionMember(versionNames, field, versions.fields, versions.deprecatedFields,
+          field.name());
     }
   }
 
   /**
-   * Applies version information from {@code spec} to {@code doc} where not already present.
+   * Applies version information from {@code versions} to {@code doc} where not already present.
    */
-  private void versionMethods(String versionName, ClassInfo spec, ClassInfo doc) {
+  private void versionMethods(String[] versionNames, ClassVersions versions, ClassInfo doc) {
     for (MethodInfo method : doc.methods()) {
+      versionMember(versionNames, method, versions.methods, versions.deprecatedMethods,
+          method.getHashableName());
+    }
+  }
 
-      // Set deprecated version
-      if (method.isDeprecated() && method.getDeprecatedSince() == null) {
-        // Find matching method from API spec
-        if (spec.allMethods().containsKey(method.getHashableName())) {
-          MethodInfo specMethod = spec.allMethods().get(method.getHashableName());
-          if (specMethod.isDeprecated()) {
-            method.setDeprecatedSince(versionName);
-          }
-        }
-      }
-
-      if (method.getSince() != null) {
-        continue;
+  private void versionMember(String[] versionNames, MemberInfo member,
+      Map<String, Integer> since, Map<String, Integer> deprecatedSince, String key) {
+    if (member.getSince() == null) {
+      Integer version = since.get(key);
+      if (version != null) {
+        member.setSince(versionNames[version]);
       }
+    }
 
-      for (ClassInfo superclass : spec.hierarchy()) {
-        if (superclass.allMethods().containsKey(method.getHashableName())) {
-          method.setSince(versionName);
-          break;
-        }
+    // Set deprecated version
+    if (member.isDeprecated() && member.getDeprecatedSince() == null) {
+      Integer version = deprecatedSince.get(key);
+      if (version != null) {
+        member.setDeprecatedSince(versionNames[version]);
       }
     }
   }
@@ -291,4 +310,84 @@ public class SinceTagger {
     }
     return true;
   }
+
+  /**
+   * The first version each class and member of the spec APIs appeared in, and the first version
+   * it was deprecated in. Versions must be added oldest first.
+   */
+  private static class VersionIndex {
+    private final Map<String, ClassVersions> mClasses = new HashMap<String, ClassVersions>();
+
+    ClassVersions get(String packageName, String className) {
+      return mClasses.get(packageName + "." + className);
+    }
+
+    void addVersion(int version, ApiInfo specApi) {
+      for (PackageInfo packageSpec : specApi.getPackages().values()) {
+        for (Map.Entry<String, ClassInfo> entry : packageSpec.allClasses().entrySet()) {
+          String name = packageSpec.name() + "." + entry.getKey();
+          ClassVersions versions = mClasses.get(name);
+          if (versions == null) {
+            versions = new ClassVersions(version);
+            mClasses.put(name, versions);
+          }
+          versions.add(version, entry.getValue());
+        }
+      }
+    }
+  }
+
+  private static class ClassVersions {
+    final int since;
+    int deprecatedSince = -1;
+    final Map<String, Integer> constructors = new HashMap<String, Integer>();
+    final Map<String, Integer> deprecatedConstructors = new HashMap<String, Integer>();
+    final Map<String, Integer> fields = new HashMap<String, Integer>();
+    final Map<String, Integer> deprecatedFields = new HashMap<String, Integer>();
+    final Map<String, Integer> methods = new HashMap<String, Integer>();
+    final Map<String, Integer> deprecatedMethods = new HashMap<String, Integer>();
+
+    ClassVersions(int since) {
+      this.since = since;
+    }
+
+    void add(int version, ClassInfo spec) {
+      if (spec.isDeprecated() && deprecatedSince < 0) {
+        deprecatedSince = version;
+      }
+
+      // the maps of a spec class are keyed by the hashable names of their methods
+      for (Map.Entry<String, MethodInfo> constructor : spec.allConstructorsMap().entrySet()) {
+        addMember(version, constructors, deprecatedConstructors, constructor.getKey(),
+            constructor.getValue());
+      }
+      for (FieldInfo field : spec.allFields().values()) {
+        addMember(version, fields, deprecatedFields, field.name(), field);
+      }
+      for (FieldInfo field : spec.allEnums().values()) {
+        addMember(version, fields, null, field.name(), field);
+      }
+      for (Map.Entry<String, MethodInfo> method : spec.allMethods().entrySet()) {
+        addMember(version, methods, deprecatedMethods, method.getKey(), method.getValue());
+      }
+      // a method is also present if any superclass in this version declares it
+      for (ClassInfo superclass : spec.hierarchy()) {
+        if (superclass != spec) {
+          for (String name : superclass.allMethods().keySet()) {
+            addMember(version, methods, null, name, null);
+          }
+        }
+      }
+    }
+
+    private static void addMember(int version, Map<String, Integer> since,
+        Map<String, Integer> deprecatedSince, String key, MemberInfo member) {
+      if (!since.containsKey(key)) {
+        since.put(key, version);
+      }
+      if (deprecatedSince != null && member.isDeprecated() && !deprecatedSince.containsKey(key)) {
+        deprecatedSince.put(key, version);
+      }
+    }
+  }
 }
@@ -0,0 +1,1069 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the stub of a class as a class file, for the {@code -stubsclassjar} option.
+ * <p>
+ * The class files declare what the stub sources written by {@link Stubs#writeClass} declare, as
+ * javac would compile them: the same classes, supertypes, members, modifiers, generic signatures,
+ * constant values, thrown exceptions and annotations, plus the members javac adds on its own,
+ * such as default constructors and the {@code values()} and {@code valueOf()} methods of enums.
+ * Every method body throws {@code new RuntimeException("Stub!")}; constructors do so without
+ * calling a superclass constructor first, which the verifier allows, so the class files are only
+ * meant to be compiled against, as the stubs are.
+ */
+class StubClassWriter {
+  /** Java 7; none of the method bodies branch, so no stack map frames are needed. */
+  private static final int MAJOR_VERSION = 51;
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_PRIVATE = 0x0002;
+  private static final int ACC_PROTECTED = 0x0004;
+  private static final int ACC_STATIC = 0x0008;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+  private static final int ACC_SYNCHRONIZED = 0x0020;
+  private static final int ACC_VOLATILE = 0x0040;
+  private static final int ACC_TRANSIENT = 0x0080;
+  private static final int ACC_VARARGS = 0x0080;
+  private static final int ACC_NATIVE = 0x0100;
+  private static final int ACC_INTERFACE = 0x0200;
+  private static final int ACC_ABSTRACT = 0x0400;
+  private static final int ACC_ANNOTATION = 0x2000;
+  private static final int ACC_ENUM = 0x4000;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private static final String OBJECT = "java/lang/Object";
+  private static final String STUB_EXCEPTION = "java/lang/RuntimeException";
+
+  private final ClassInfo mClass;
+  private final HashSet<ClassInfo> mNotStrippable;
+  private final List<MethodInfo> mHiddenOverrides;
+  private final List<ClassInfo> mInnerClasses = new ArrayList<ClassInfo>();
+
+  private final ByteArrayOutputStream mPoolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream mPool = new DataOutputStream(mPoolBytes);
+  private final Map<String, Integer> mPoolIndex = new HashMap<String, Integer>();
+  private int mPoolCount = 1;
+  /** Nested classes named in the constant pool, which the InnerClasses attribute must list. */
+  private final LinkedHashSet<ClassInfo> mNestedClasses = new LinkedHashSet<ClassInfo>();
+
+  /**
+   * Adds the class files of {@code cl} and of the inner classes its stub declares to
+   * {@code classFiles}, keyed by their path in a jar.
+   *
+   * @param hiddenOverrides the hidden methods of each class that its stub declares anyway, as
+   *     found by {@link Stubs#writeStubs}
+   */
+  static void writeClassFiles(ClassInfo cl, HashSet<ClassInfo> notStrippable,
+      Map<ClassInfo, List<MethodInfo>> hiddenOverrides, Map<String, byte[]> classFiles) {
+    StubClassWriter writer = new StubClassWriter(cl, notStrippable, hiddenOverrides.get(cl));
+    classFiles.put(binaryName(cl) + ".class", writer.write());
+    for (ClassInfo inner : writer.mInnerClasses) {
+      writeClassFiles(inner, notStrippable, hiddenOverrides, classFiles);
+    }
+  }
+
+  private StubClassWriter(ClassInfo cl, HashSet<ClassInfo> notStrippable,
+      List<MethodInfo> hiddenOverrides) {
+    mClass = cl;
+    mNotStrippable = notStrippable;
+    mHiddenOverrides = hiddenOverrides;
+    for (ClassInfo inner : cl.getRealInnerClasses()) {
+      if (notStrippable.contains(inner) && !inner.isDocOnly()) {
+        mInnerClasses.add(inner);
+      }
+    }
+  }
+
+  private byte[] write() {
+    try {
+      ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+      DataOutputStream body = new DataOutputStream(bodyBytes);
+      writeBody(body);
+
+      ByteArrayOutputStream result = new ByteArrayOutputStream(mPoolBytes.size()
+          + bodyBytes.size() + 10);
+      DataOutputStream out = new DataOutputStream(result);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(MAJOR_VERSION);
+      out.writeShort(mPoolCount);
+      mPoolBytes.writeTo(out);
+      bodyBytes.writeTo(out);
+      out.flush();
+      return result.toByteArray();
+    } catch (IOException e) {
+      // cannot happen, everything is written to memory
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void writeBody(DataOutputStream out) throws IOException {
+    ClassInfo cl = mClass;
+
+    int access;
+    if (cl.isAnnotation()) {
+      access = ACC_ANNOTATION | ACC_INTERFACE | ACC_ABSTRACT;
+    } else if (cl.isInterface()) {
+      access = ACC_INTERFACE | ACC_ABSTRACT;
+    } else if (cl.isEnum()) {
+      access = ACC_ENUM | ACC_SUPER | (cl.isAbstract() ? ACC_ABSTRACT : ACC_FINAL);
+    } else {
+      access = ACC_SUPER;
+      if (cl.isAbstract()) {
+        access |= ACC_ABSTRACT;
+      }
+      if (cl.isFinal()) {
+        access |= ACC_FINAL;
+      }
+    }
+    // a nested class's own access is in the InnerClasses attribute
+    if (cl.isPublic() || cl.isProtected()) {
+      access |= ACC_PUBLIC;
+    }
+
+    String superclass = OBJECT;
+    TypeInfo superclassType = null;
+    if (cl.isEnum()) {
+      superclass = "java/lang/Enum";
+    } else if (!cl.isInterface()) {
+      TypeInfo base = cl.superclassType();
+      if (base != null && !"java.lang.Object".equals(base.qualifiedTypeName())) {
+        superclass = binaryName(base);
+        superclassType = base;
+      }
+    }
+
+    List<TypeInfo> interfaces = new ArrayList<TypeInfo>();
+    if (!cl.isAnnotation()) {
+      for (TypeInfo iface : cl.realInterfaceTypes()) {
+        if (mNotStrippable.contains(iface.asClassInfo()) && !iface.asClassInfo().isDocOnly()) {
+          interfaces.add(iface);
+        }
+      }
+    }
+
+    out.writeShort(access);
+    out.writeShort(classRef(cl));
+    out.writeShort(classRef(superclass));
+    if (cl.isAnnotation()) {
+      out.writeShort(1);
+      out.writeShort(classRef("java/lang/annotation/Annotation"));
+    } else {
+      out.writeShort(interfaces.size());
+      for (TypeInfo iface : interfaces) {
+        out.writeShort(classRef(iface.asClassInfo()));
+      }
+    }
+
+    writeFields(out);
+    writeMethods(out);
+
+    // class attributes
+    List<byte[]> attributes = new ArrayList<byte[]>();
+    String signature = classSignature(superclassType, interfaces);
+    if (signature != null) {
+      attributes.add(attribute("Signature", u2(utf8(signature))));
+    }
+    addAnnotationAttributes(attributes, cl.annotations(), cl.isDeprecated());
+    for (ClassInfo inner : mInnerClasses) {
+      classRef(inner);
+    }
+    // the InnerClasses attribute goes last, after everything that adds classes to the pool
+    if (!mNestedClasses.isEmpty()) {
+      attributes.add(innerClassesAttribute());
+    }
+    writeAttributes(out, attributes);
+  }
+
+  private void writeFields(DataOutputStream out) throws IOException {
+    ClassInfo cl = mClass;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream fields = new DataOutputStream(bytes);
+    int count = 0;
+
+    for (FieldInfo field : cl.enumConstants()) {
+      fields.writeShort(ACC_PUBLIC | ACC_STATIC | ACC_FINAL | ACC_ENUM);
+      fields.writeShort(utf8(field.name()));
+      fields.writeShort(utf8("L" + binaryName(cl) + ";"));
+      List<byte[]> attributes = new ArrayList<byte[]>();
+      addAnnotationAttributes(attributes, field.annotations(), field.isDeprecated());
+      writeAttributes(fields, attributes);
+      count++;
+    }
+
+    for (FieldInfo field : cl.selfFields()) {
+      if (field.isDocOnly()) {
+        continue;
+      }
+      int access = memberAccess(field);
+      if (cl.isInterface()) {
+        access |= ACC_PUBLIC | ACC_STATIC | ACC_FINAL;
+      } else {
+        if (field.isStatic()) {
+          access |= ACC_STATIC;
+        }
+        if (field.isFinal()) {
+          access |= ACC_FINAL;
+        }
+        if (field.isTransient()) {
+          access |= ACC_TRANSIENT;
+        }
+        if (field.isVolatile()) {
+          access |= ACC_VOLATILE;
+        }
+      }
+      TypeInfo type = field.type();
+      fields.writeShort(access);
+      fields.writeShort(utf8(field.name()));
+      fields.writeShort(utf8(descriptor(type)));
+
+      List<byte[]> attributes = new ArrayList<byte[]>();
+      if ((access & ACC_FINAL) != 0 && field.constantValue() != null) {
+        int value = constantValue(type, field.constantValue());
+        if (value != 0) {
+          attributes.add(attribute("ConstantValue", u2(value)));
+        }
+      }
+      if (isGeneric(type)) {
+        attributes.add(attribute("Signature", u2(utf8(signature(type)))));
+      }
+      addAnnotationAttributes(attributes, field.annotations(), field.isDeprecated());
+      writeAttributes(fields, attributes);
+      count++;
+    }
+
+    fields.flush();
+    out.writeShort(count);
+    bytes.writeTo(out);
+  }
+
+  private void writeMethods(DataOutputStream out) throws IOException {
+    ClassInfo cl = mClass;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream methods = new DataOutputStream(bytes);
+    int count = 0;
+
+    boolean hasConstructor = false;
+    for (MethodInfo method : cl.constructors()) {
+      if (!method.isDocOnly()) {
+        writeMethod(methods, method, true);
+        hasConstructor = true;
+        count++;
+      }
+    }
+    if (!hasConstructor && !cl.isAnnotation() && !cl.isInterface() && !cl.isEnum()) {
+      // Stubs writes a package private constructor where the default one might not compile,
+      // and javac adds the default one otherwise
+      boolean fieldNeedsInitialization = false;
+      for (FieldInfo field : cl.selfFields()) {
+        if (!field.isDocOnly() && !field.isStatic() && field.isFinal()
+            && !Stubs.fieldIsInitialized(field)) {
+          fieldNeedsInitialization = true;
+        }
+      }
+      int access = 0;
+      if (cl.constructors().isEmpty()
+          && (!cl.getNonWrittenConstructors().isEmpty() || fieldNeedsInitialization)) {
+        access = 0;
+      } else if (cl.isPublic()) {
+        access = ACC_PUBLIC;
+      } else if (cl.isProtected()) {
+        access = ACC_PROTECTED;
+      } else if (cl.isPrivate()) {
+        access = ACC_PRIVATE;
+      }
+      methods.writeShort(access);
+      methods.writeShort(utf8("<init>"));
+      methods.writeShort(utf8("(" + outerInstanceDescriptor() + ")V"));
+      List<byte[]> attributes = new ArrayList<byte[]>();
+      attributes.add(stubCode(outerInstanceDescriptor().isEmpty() ? 1 : 2));
+      writeAttributes(methods, attributes);
+      count++;
+    }
+
+    if (cl.isEnum()) {
+      String type = "L" + binaryName(cl) + ";";
+      writeSyntheticEnumMethod(methods, "values", "()[" + type);
+      writeSyntheticEnumMethod(methods, "valueOf", "(Ljava/lang/String;)" + type);
+      count += 2;
+    }
+
+    for (MethodInfo method : cl.allSelfMethods()) {
+      if (mHiddenOverrides.contains(method)) {
+        continue;
+      }
+      if (cl.isEnum()) {
+        if (("values".equals(method.name()) && "()".equals(method.signature())) ||
+            ("valueOf".equals(method.name()) &&
+            "(java.lang.String)".equals(method.signature()))) {
+          continue;
+        }
+      }
+      if (!method.isDocOnly()) {
+        writeMethod(methods, method, false);
+        count++;
+      }
+    }
+    for (MethodInfo method : mHiddenOverrides) {
+      writeMethod(methods, method, false);
+      count++;
+    }
+
+    for (MethodInfo element : cl.annotationElements()) {
+      if (!element.isDocOnly()) {
+        methods.writeShort(ACC_PUBLIC | ACC_ABSTRACT);
+        methods.writeShort(utf8(element.name()));
+        methods.writeShort(utf8("()" + descriptor(element.returnType())));
+        List<byte[]> attributes = new ArrayList<byte[]>();
+        if (isGeneric(element.returnType())) {
+          attributes.add(attribute("Signature",
+              u2(utf8("()" + signature(element.returnType())))));
+        }
+        AnnotationValueInfo def = element.defaultAnnotationElementValue();
+        if (def != null) {
+          ByteArrayOutputStream value = new ByteArrayOutputStream();
+          writeElementValue(new DataOutputStream(value), element.returnType(), def.value());
+          attributes.add(attribute("AnnotationDefault", value.toByteArray()));
+        }
+        addAnnotationAttributes(attributes, element.annotations(), element.isDeprecated());
+        writeAttributes(methods, attributes);
+        count++;
+      }
+    }
+
+    methods.flush();
+    out.writeShort(count);
+    bytes.writeTo(out);
+  }
+
+  private void writeSyntheticEnumMethod(DataOutputStream out, String name, String descriptor)
+      throws IOException {
+    out.writeShort(ACC_PUBLIC | ACC_STATIC);
+    out.writeShort(utf8(name));
+    out.writeShort(utf8(descriptor));
+    List<byte[]> attributes = new ArrayList<byte[]>();
+    attributes.add(stubCode(name.equals("values") ? 0 : 1));
+    writeAttributes(out, attributes);
+  }
+
+  private void writeMethod(DataOutputStream out, MethodInfo method, boolean isConstructor)
+      throws IOException {
+    ClassInfo cl = mClass;
+    int access = memberAccess(method);
+    boolean hasCode = true;
+    if (cl.isInterface() && !method.isStatic()) {
+      access |= ACC_PUBLIC | ACC_ABSTRACT;
+      hasCode = false;
+    } else if (cl.isInterface()) {
+      access |= ACC_PUBLIC | ACC_STATIC;
+    } else {
+      if (method.isStatic()) {
+        access |= ACC_STATIC;
+      }
+      if (method.isFinal()) {
+        access |= ACC_FINAL;
+      }
+      if (method.isAbstract()) {
+        access |= ACC_ABSTRACT;
+        hasCode = false;
+      }
+      if (method.isSynchronized()) {
+        access |= ACC_SYNCHRONIZED;
+      }
+      if (method.isNative()) {
+        access |= ACC_NATIVE;
+        hasCode = false;
+      }
+    }
+    if (method.isVarArgs()) {
+      access |= ACC_VARARGS;
+    }
+
+    StringBuilder descriptor = new StringBuilder("(");
+    int locals = method.isStatic() ? 0 : 1;
+    if (isConstructor) {
+      descriptor.append(outerInstanceDescriptor());
+      locals += outerInstanceDescriptor().isEmpty() ? 0 : 1;
+    }
+    boolean generic = method.getTypeParameters() != null && !method.getTypeParameters().isEmpty();
+    for (ParameterInfo param : method.parameters()) {
+      String d = descriptor(param.type());
+      descriptor.append(d);
+      locals += (d.equals("J") || d.equals("D")) ? 2 : 1;
+      generic |= isGeneric(param.type());
+    }
+    descriptor.append(')');
+    if (isConstructor) {
+      descriptor.append('V');
+    } else {
+      descriptor.append(descriptor(method.returnType()));
+      generic |= isGeneric(method.returnType());
+    }
+
+    out.writeShort(access);
+    out.writeShort(utf8(isConstructor ? "<init>" : method.name()));
+    out.writeShort(utf8(descriptor.toString()));
+
+    List<byte[]> attributes = new ArrayList<byte[]>();
+    if (hasCode) {
+      attributes.add(stubCode(locals));
+    }
+    ArrayList<ClassInfo> thrown = method.thrownExceptions();
+    if (!thrown.isEmpty()) {
+      ByteArrayOutputStream exceptions = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(exceptions);
+      data.writeShort(thrown.size());
+      for (ClassInfo exception : thrown) {
+        data.writeShort(classRef(exception));
+      }
+      attributes.add(attribute("Exceptions", exceptions.toByteArray()));
+    }
+    if (generic) {
+      StringBuilder signature = new StringBuilder();
+      appendTypeParameters(signature, method.getTypeParameters());
+      signature.append('(');
+      for (ParameterInfo param : method.parameters()) {
+        signature.append(signature(param.type()));
+      }
+      signature.append(')');
+      signature.append(isConstructor ? "V" : signature(method.returnType()));
+      attributes.add(attribute("Signature", u2(utf8(signature.toString()))));
+    }
+    addAnnotationAttributes(attributes, method.annotations(), method.isDeprecated());
+    writeAttributes(out, attributes);
+  }
+
+  /**
+   * @return the type of the enclosing instance that javac passes to the constructors of inner
+   * classes, or "" if this class has none
+   */
+  private String outerInstanceDescriptor() {
+    ClassInfo cl = mClass;
+    if (cl.containingClass() == null || cl.isStatic() || cl.isInterface() || cl.isEnum()
+        || cl.isAnnotation() || cl.containingClass().isInterface()) {
+      return "";
+    }
+    return "L" + binaryName(cl.containingClass()) + ";";
+  }
+
+  /**
+   * @return a Code attribute that does {@code throw new RuntimeException("Stub!")}
+   */
+  private byte[] stubCode(int maxLocals) throws IOException {
+    int exceptionClass = classRef(STUB_EXCEPTION);
+    int message = constant(CONSTANT_STRING, "Stub!");
+    int init = methodRef(STUB_EXCEPTION, "<init>", "(Ljava/lang/String;)V");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream code = new DataOutputStream(bytes);
+    code.writeByte(0xbb); // new
+    code.writeShort(exceptionClass);
+    code.writeByte(0x59); // dup
+    if (message < 256) {
+      code.writeByte(0x12); // ldc
+      code.writeByte(message);
+    } else {
+      code.writeByte(0x13); // ldc_w
+      code.writeShort(message);
+    }
+    code.writeByte(0xb7); // invokespecial
+    code.writeShort(init);
+    code.writeByte(0xbf); // athrow
+    code.flush();
+
+    ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(attribute);
+    data.writeShort(3); // max_stack
+    data.writeShort(maxLocals);
+    data.writeInt(bytes.size());
+    bytes.writeTo(data);
+    data.writeShort(0); // exception_table_length
+    data.writeShort(0); // attributes_count
+    data.flush();
+    return attribute("Code", attribute.toByteArray());
+  }
+
+  private byte[] innerClassesAttribute() throws IOException {
+    // listing a class can add its outer classes to the pool, so collect those first
+    List<ClassInfo> nested = new ArrayList<ClassInfo>();
+    for (ClassInfo cl : new ArrayList<ClassInfo>(mNestedClasses)) {
+      for (ClassInfo c = cl; c.containingClass() != null; c = c.containingClass()) {
+        if (!nested.contains(c)) {
+          nested.add(c);
+        }
+      }
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeShort(nested.size());
+    for (ClassInfo cl : nested) {
+      int access = memberAccess(cl);
+      if (cl.isAnnotation()) {
+        access |= ACC_ANNOTATION | ACC_INTERFACE | ACC_ABSTRACT | ACC_STATIC;
+      } else if (cl.isInterface()) {
+        access |= ACC_INTERFACE | ACC_ABSTRACT | ACC_STATIC;
+      } else if (cl.isEnum()) {
+        access |= ACC_ENUM | ACC_STATIC | (cl.isAbstract() ? ACC_ABSTRACT : ACC_FINAL);
+      } else {
+        if (cl.isStatic()) {
+          access |= ACC_STATIC;
+        }
+        if (cl.isAbstract()) {
+          access |= ACC_ABSTRACT;
+        }
+        if (cl.isFinal()) {
+          access |= ACC_FINAL;
+        }
+      }
+      if (cl.containingClass().isInterface()) {
+        access |= ACC_PUBLIC | ACC_STATIC;
+      }
+      data.writeShort(classRef(cl));
+      data.writeShort(classRef(cl.containingClass()));
+      data.writeShort(utf8(cl.leafName()));
+      data.writeShort(access);
+    }
+    data.flush();
+    return attribute("InnerClasses", bytes.toByteArray());
+  }
+
+  private static int memberAccess(ClassInfo cl) {
+    if (cl.isPublic()) {
+      return ACC_PUBLIC;
+    } else if (cl.isProtected()) {
+      return ACC_PROTECTED;
+    } else if (cl.isPrivate()) {
+      return ACC_PRIVATE;
+    }
+    return 0;
+  }
+
+  private static int memberAccess(MemberInfo member) {
+    if (member.isPublic()) {
+      return ACC_PUBLIC;
+    } else if (member.isProtected()) {
+      return ACC_PROTECTED;
+    } else if (member.isPrivate()) {
+      return ACC_PRIVATE;
+    }
+    return 0;
+  }
+
+  // Annotations
+
+  /**
+   * Adds the annotations that Stubs writes to the stub source, including {@code @Deprecated} for
+   * elements that are only deprecated in their comments, with the attributes javac would put them
+   * in for their retention.
+   */
+  private void addAnnotationAttributes(List<byte[]> attributes,
+      List<AnnotationInstanceInfo> annotations, boolean isDeprecated) throws IOException {
+    List<AnnotationInstanceInfo> visible = new ArrayList<AnnotationInstanceInfo>();
+    List<AnnotationInstanceInfo> invisible = new ArrayList<AnnotationInstanceInfo>();
+    boolean writeDeprecated = isDeprecated;
+    for (AnnotationInstanceInfo ann : annotations) {
+      ClassInfo type = ann.type();
+      if (type == null || type.qualifiedName().equals("java.lang.Override")
+          || type.isHiddenOrRemoved()) {
+        continue;
+      }
+      if (type.qualifiedName().equals("java.lang.Deprecated")) {
+        writeDeprecated = false;
+      }
+      String retention = retention(type);
+      if ("RUNTIME".equals(retention)) {
+        visible.add(ann);
+      } else if ("CLASS".equals(retention)) {
+        invisible.add(ann);
+      }
+    }
+    if (isDeprecated) {
+      attributes.add(attribute("Deprecated", new byte[0]));
+    }
+    if (writeDeprecated || !visible.isEmpty()) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeShort(visible.size() + (writeDeprecated ? 1 : 0));
+      for (AnnotationInstanceInfo ann : visible) {
+        writeAnnotation(data, ann);
+      }
+      if (writeDeprecated) {
+        data.writeShort(utf8("Ljava/lang/Deprecated;"));
+        data.writeShort(0);
+      }
+      data.flush();
+      attributes.add(attribute("RuntimeVisibleAnnotations", bytes.toByteArray()));
+    }
+    if (!invisible.isEmpty()) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeShort(invisible.size());
+      for (AnnotationInstanceInfo ann : invisible) {
+        writeAnnotation(data, ann);
+      }
+      data.flush();
+      attributes.add(attribute("RuntimeInvisibleAnnotations", bytes.toByteArray()));
+    }
+  }
+
+  /**
+   * @return the name of the RetentionPolicy of the annotation type {@code type}
+   */
+  private static String retention(ClassInfo type) {
+    for (AnnotationInstanceInfo ann : type.annotations()) {
+      if (ann.type() != null
+          && ann.type().qualifiedName().equals("java.lang.annotation.Retention")
+          && !ann.elementValues().isEmpty()) {
+        Object value = ann.elementValues().get(0).value();
+        if (value instanceof FieldInfo) {
+          return ((FieldInfo) value).name();
+        }
+      }
+    }
+    return "CLASS";
+  }
+
+  private void writeAnnotation(DataOutputStream out, AnnotationInstanceInfo ann)
+      throws IOException {
+    out.writeShort(utf8("L" + binaryName(ann.type()) + ";"));
+    out.writeShort(ann.elementValues().size());
+    for (AnnotationValueInfo value : ann.elementValues()) {
+      MethodInfo element = value.element();
+      out.writeShort(utf8(element != null ? element.name() : "value"));
+      writeElementValue(out, element != null ? element.returnType() : null, value.value());
+    }
+  }
+
+  private void writeElementValue(DataOutputStream out, TypeInfo type, Object value)
+      throws IOException {
+    boolean isArray = type != null && !type.dimension().isEmpty();
+    if (value instanceof ArrayList<?> || isArray) {
+      List<?> values = value instanceof ArrayList<?> ? (List<?>) value : null;
+      out.writeByte('[');
+      out.writeShort(values != null ? values.size() : 1);
+      TypeInfo component = null;
+      if (type != null) {
+        component = new TypeInfo(type.isPrimitive(), type.dimension().substring(2),
+            type.simpleTypeName(), type.qualifiedTypeName(), type.asClassInfo());
+      }
+      if (values != null) {
+        for (Object v : values) {
+          writeElementValue(out, component, ((AnnotationValueInfo) v).value());
+        }
+      } else {
+        writeElementValue(out, component, value);
+      }
+      return;
+    }
+
+    if (value instanceof String) {
+      out.writeByte('s');
+      out.writeShort(utf8((String) value));
+    } else if (value instanceof FieldInfo) {
+      FieldInfo field = (FieldInfo) value;
+      out.writeByte('e');
+      out.writeShort(utf8("L" + binaryName(field.containingClass()) + ";"));
+      out.writeShort(utf8(field.name()));
+    } else if (value instanceof TypeInfo) {
+      out.writeByte('c');
+      out.writeShort(utf8(descriptor((TypeInfo) value)));
+    } else if (value instanceof AnnotationInstanceInfo) {
+      out.writeByte('@');
+      writeAnnotation(out, (AnnotationInstanceInfo) value);
+    } else {
+      String primitive = type != null && type.isPrimitive() ? type.simpleTypeName()
+          : primitiveName(value);
+      char tag = descriptor(primitive).charAt(0);
+      out.writeByte(tag);
+      out.writeShort(primitiveConstant(tag, value));
+    }
+  }
+
+  private static String primitiveName(Object value) {
+    if (value instanceof Boolean) {
+      return "boolean";
+    } else if (value instanceof Character) {
+      return "char";
+    } else if (value instanceof Byte) {
+      return "byte";
+    } else if (value instanceof Short) {
+      return "short";
+    } else if (value instanceof Long) {
+      return "long";
+    } else if (value instanceof Float) {
+      return "float";
+    } else if (value instanceof Double) {
+      return "double";
+    }
+    return "int";
+  }
+
+  // Types
+
+  static String binaryName(ClassInfo cl) {
+    String name = cl.name().replace('.', '$');
+    PackageInfo pkg = cl.containingPackage();
+    if (pkg == null || pkg.name().isEmpty() || pkg.name().equals(PackageInfo.DEFAULT_PACKAGE)) {
+      return name;
+    }
+    return pkg.name().replace('.', '/') + '/' + name;
+  }
+
+  private static String binaryName(TypeInfo type) {
+    ClassInfo cl = type.asClassInfo();
+    if (cl != null) {
+      return binaryName(cl);
+    }
+    if (type.isTypeVariable() && type.extendsBounds() != null
+        && !type.extendsBounds().isEmpty()) {
+      return binaryName(type.extendsBounds().get(0));
+    }
+    if (type.isTypeVariable()) {
+      return OBJECT;
+    }
+    return type.qualifiedTypeName().replace('.', '/');
+  }
+
+  private static String dimensions(TypeInfo type) {
+    StringBuilder result = new StringBuilder();
+    String dimension = type.dimension();
+    for (int i = 0; i < dimension.length(); i++) {
+      if (dimension.charAt(i) == '[') {
+        result.append('[');
+      }
+    }
+    return result.toString();
+  }
+
+  private static String descriptor(String primitive) {
+    if ("boolean".equals(primitive)) {
+      return "Z";
+    } else if ("byte".equals(primitive)) {
+      return "B";
+    } else if ("char".equals(primitive)) {
+      return "C";
+    } else if ("short".equals(primitive)) {
+      return "S";
+    } else if ("int".equals(primitive)) {
+      return "I";
+    } else if ("long".equals(primitive)) {
+      return "J";
+    } else if ("float".equals(primitive)) {
+      return "F";
+    } else if ("double".equals(primitive)) {
+      return "D";
+    } else if ("void".equals(primitive)) {
+      return "V";
+    }
+    return null;
+  }
+
+  /**
+   * @return the descriptor of the erasure of {@code type}
+   */
+  private static String descriptor(TypeInfo type) {
+    if (type == null) {
+      return "V";
+    }
+    if (type.isPrimitive()) {
+      return dimensions(type) + descriptor(type.simpleTypeName());
+    }
+    return dimensions(type) + "L" + binaryName(type) + ";";
+  }
+
+  private static boolean isGeneric(TypeInfo type) {
+    if (type == null || type.isPrimitive()) {
+      return false;
+    }
+    return type.isTypeVariable()
+        || (type.typeArguments() != null && !type.typeArguments().isEmpty());
+  }
+
+  /**
+   * @return the generic signature of {@code type}
+   */
+  private static String signature(TypeInfo type) {
+    StringBuilder result = new StringBuilder();
+    appendSignature(result, type);
+    return result.toString();
+  }
+
+  private static void appendSignature(StringBuilder result, TypeInfo type) {
+    if (type == null) {
+      result.append('V');
+      return;
+    }
+    result.append(dimensions(type));
+    if (type.isPrimitive()) {
+      result.append(descriptor(type.simpleTypeName()));
+    } else if (type.isTypeVariable()) {
+      result.append('T').append(type.qualifiedTypeName()).append(';');
+    } else if (type.isWildcard()) {
+      if (type.superBounds() != null && !type.superBounds().isEmpty()) {
+        result.append('-');
+        appendSignature(result, type.superBounds().get(0));
+      } else if (type.extendsBounds() != null && !type.extendsBounds().isEmpty()) {
+        result.append('+');
+        appendSignature(result, type.extendsBounds().get(0));
+      } else {
+        result.append('*');
+      }
+    } else {
+      result.append('L').append(binaryName(type));
+      if (type.typeArguments() != null && !type.typeArguments().isEmpty()) {
+        result.append('<');
+        for (TypeInfo arg : type.typeArguments()) {
+          appendSignature(result, arg);
+        }
+        result.append('>');
+      }
+      result.append(';');
+    }
+  }
+
+  private static void appendTypeParameters(StringBuilder result, List<TypeInfo> params) {
+    if (params == null || params.isEmpty()) {
+      return;
+    }
+    result.append('<');
+    for (TypeInfo param : params) {
+      result.append(param.qualifiedTypeName());
+      List<TypeInfo> bounds = param.extendsBounds();
+      if (bounds == null || bounds.isEmpty()) {
+        result.append(":L").append(OBJECT).append(';');
+        continue;
+      }
+      for (int i = 0; i < bounds.size(); i++) {
+        TypeInfo bound = bounds.get(i);
+        boolean isInterface = !bound.isTypeVariable() && bound.asClassInfo() != null
+            && bound.asClassInfo().isInterface();
+        // the class bound comes first and may be empty; interface bounds follow it
+        if (i == 0 && isInterface) {
+          result.append(':');
+        }
+        result.append(':');
+        appendSignature(result, bound);
+      }
+    }
+    result.append('>');
+  }
+
+  /**
+   * @return the class signature, or null if the class declaration involves no generics
+   */
+  private String classSignature(TypeInfo superclassType, List<TypeInfo> interfaces) {
+    ClassInfo cl = mClass;
+    boolean generic = cl.getTypeParameters() != null && !cl.getTypeParameters().isEmpty();
+    generic |= cl.isEnum() || isGeneric(superclassType);
+    for (TypeInfo iface : interfaces) {
+      generic |= isGeneric(iface);
+    }
+    if (!generic) {
+      return null;
+    }
+
+    StringBuilder result = new StringBuilder();
+    appendTypeParameters(result, cl.getTypeParameters());
+    if (cl.isEnum()) {
+      result.append("Ljava/lang/Enum<L").append(binaryName(cl)).append(";>;");
+    } else if (superclassType != null) {
+      appendSignature(result, superclassType);
+    } else {
+      result.append('L').append(OBJECT).append(';');
+    }
+    for (TypeInfo iface : interfaces) {
+      appendSignature(result, iface);
+    }
+    return result.toString();
+  }
+
+  // Constant pool
+
+  private int utf8(String s) throws IOException {
+    Integer index = mPoolIndex.get("U" + s);
+    if (index == null) {
+      index = mPoolCount++;
+      mPoolIndex.put("U" + s, index);
+      mPool.writeByte(CONSTANT_UTF8);
+      mPool.writeUTF(s);
+    }
+    return index;
+  }
+
+  private int classRef(ClassInfo cl) throws IOException {
+    if (cl.containingClass() != null) {
+      mNestedClasses.add(cl);
+    }
+    return classRef(binaryName(cl));
+  }
+
+  private int classRef(String binaryName) throws IOException {
+    return constant(CONSTANT_CLASS, binaryName);
+  }
+
+  /**
+   * @return the index of a CONSTANT_Class or CONSTANT_String entry for {@code name}
+   */
+  private int constant(int tag, String name) throws IOException {
+    String key = tag + ":" + name;
+    Integer index = mPoolIndex.get(key);
+    if (index == null) {
+      int nameIndex = utf8(name);
+      index = mPoolCount++;
+      mPoolIndex.put(key, index);
+      mPool.writeByte(tag);
+      mPool.writeShort(nameIndex);
+    }
+    return index;
+  }
+
+  private int methodRef(String owner, String name, String descriptor) throws IOException {
+    String key = "M" + owner + "." + name + descriptor;
+    Integer index = mPoolIndex.get(key);
+    if (index == null) {
+      int ownerIndex = classRef(owner);
+      int nameIndex = utf8(name);
+      int descriptorIndex = utf8(descriptor);
+      int nameAndType = mPoolCount++;
+      mPool.writeByte(CONSTANT_NAME_AND_TYPE);
+      mPool.writeShort(nameIndex);
+      mPool.writeShort(descriptorIndex);
+      index = mPoolCount++;
+      mPoolIndex.put(key, index);
+      mPool.writeByte(CONSTANT_METHODREF);
+      mPool.writeShort(ownerIndex);
+      mPool.writeShort(nameAndType);
+    }
+    return index;
+  }
+
+  /**
+   * @return the index of the constant for the value of a field of type {@code type}, or 0 if
+   * fields of that type cannot have a ConstantValue
+   */
+  private int constantValue(TypeInfo type, Object value) throws IOException {
+    if (!type.dimension().isEmpty()) {
+      return 0;
+    }
+    if (!type.isPrimitive()) {
+      if ("java.lang.String".equals(type.qualifiedTypeName()) && value instanceof String) {
+        return constant(CONSTANT_STRING, (String) value);
+      }
+      return 0;
+    }
+    return primitiveConstant(descriptor(type.simpleTypeName()).charAt(0), value);
+  }
+
+  /**
+   * @return the index of the constant for {@code value} as a value of the primitive type with
+   * the descriptor {@code tag}
+   */
+  private int primitiveConstant(char tag, Object value) throws IOException {
+    long bits;
+    int poolTag;
+    if (value instanceof Boolean) {
+      value = ((Boolean) value) ? 1 : 0;
+    } else if (value instanceof Character) {
+      value = (int) ((Character) value).charValue();
+    }
+    if (!(value instanceof Number)) {
+      return 0;
+    }
+    Number number = (Number) value;
+    switch (tag) {
+      case 'J':
+        poolTag = CONSTANT_LONG;
+        bits = number.longValue();
+        break;
+      case 'F':
+        poolTag = CONSTANT_FLOAT;
+        bits = Float.floatToRawIntBits(number.floatValue());
+        break;
+      case 'D':
+        poolTag = CONSTANT_DOUBLE;
+        bits = Double.doubleToRawLongBits(number.doubleValue());
+        break;
+      default:
+        poolTag = CONSTANT_INTEGER;
+        bits = number.intValue();
+        break;
+    }
+
+    String key = poolTag + ":" + bits;
+    Integer index = mPoolIndex.get(key);
+    if (index == null) {
+      index = mPoolCount;
+      mPoolIndex.put(key, index);
+      mPool.writeByte(poolTag);
+      if (poolTag == CONSTANT_LONG || poolTag == CONSTANT_DOUBLE) {
+        mPool.writeLong(bits);
+        mPoolCount += 2;
+      } else {
+        mPool.writeInt((int) bits);
+        mPoolCount += 1;
+      }
+    }
+    return index;
+  }
+
+  // Attributes
+
+  private byte[] attribute(String name, byte[] info) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(info.length + 6);
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeShort(utf8(name));
+    data.writeInt(info.length);
+    data.write(info);
+    data.flush();
+    return bytes.toByteArray();
+  }
+
+  private static byte[] u2(int value) {
+    return new byte[] { (byte) (value >> 8), (byte) value };
+  }
+
+  private static void writeAttributes(DataOutputStream out, List<byte[]> attributes)
+      throws IOException {
+    out.writeShort(attributes.size());
+    for (byte[] attribute : attributes) {
+      out.write(attribute);
+    }
+  }
+}
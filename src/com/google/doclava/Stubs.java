@@ -17,34 +17,58 @@
 package com.google.doclava;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class Stubs {
-  public static void writeStubsAndApi(String stubsDir, String apiFile, String keepListFile,
-      String removedApiFile, HashSet<String> stubPackages) {
+  /** Deflate level of the {@code -stubsjar} and {@code -stubsclassjar} entries. */
+  public static int stubsJarLevel = Deflater.DEFAULT_COMPRESSION;
+
+  /**
+   * Modification time of every {@code -stubsjar} entry, so that the same stubs always make the
+   * same jar.
+   */
+  private static final long STUBS_JAR_TIME = new GregorianCalendar(2008, 0, 1).getTimeInMillis();
+
+  public static void writeStubsAndApi(String stubsDir, String stubsJar, String stubsClassJar,
+      String apiFile, String keepListFile, String removedApiFile, HashSet<String> stubPackages) {
     // figure out which classes we need
     final HashSet<ClassInfo> notStrippable = new HashSet<ClassInfo>();
     ClassInfo[] all = Converter.allClasses();
-    PrintStream apiWriter = null;
+    ApiTextWriter apiWriter = null;
     PrintStream keepListWriter = null;
-    PrintStream removedApiWriter = null;
+    ApiTextWriter removedApiWriter = null;
 
     if (apiFile != null) {
       try {
         File xml = new File(apiFile);
         xml.getParentFile().mkdirs();
-        apiWriter = new PrintStream(new BufferedOutputStream(new FileOutputStream(xml)));
+        apiWriter = new ApiTextWriter(new FileOutputStream(xml));
       } catch (FileNotFoundException e) {
         Errors.error(Errors.IO_ERROR, new SourcePositionInfo(apiFile, 0, 0),
             "Cannot open file for write.");
@@ -64,8 +88,7 @@ public class Stubs {
       try {
         File removedApi = new File(removedApiFile);
         removedApi.getParentFile().mkdirs();
-        removedApiWriter = new PrintStream(
-            new BufferedOutputStream(new FileOutputStream(removedApi)));
+        removedApiWriter = new ApiTextWriter(new FileOutputStream(removedApi));
       } catch (FileNotFoundException e) {
         Errors.error(Errors.IO_ERROR, new SourcePositionInfo(removedApiFile, 0, 0),
             "Cannot open file for write");
@@ -73,253 +96,400 @@ public class Stubs {
     }
     // If a class is public or protected, not hidden, and marked as included,
     // then we can't strip it
+    List<ClassInfo> roots = new ArrayList<ClassInfo>();
     for (ClassInfo cl : all) {
       if (cl.checkLevel() && cl.isIncluded()) {
-        cantStripThis(cl, notStrippable, "0:0");
+        roots.add(cl);
       }
     }
+    cantStripThis(roots, notStrippable, "0:0");
 
     // complain about anything that looks includeable but is not supposed to
     // be written, e.g. hidden things
-    for (ClassInfo cl : notStrippable) {
-      if (!cl.isHiddenOrRemoved()) {
-        for (MethodInfo m : cl.selfMethods()) {
-          if (m.isHiddenOrRemoved()) {
-            Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Reference to unavailable method "
-                + m.name());
-          } else if (m.isDeprecated()) {
-            // don't bother reporting deprecated methods
-            // unless they are public
-            Errors.error(Errors.DEPRECATED, m.position(), "Method " + cl.qualifiedName() + "."
-                + m.name() + " is deprecated");
-          }
-
-          ClassInfo returnClass = m.returnType().asClassInfo();
-          if (returnClass != null && returnClass.isHiddenOrRemoved()) {
-            Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Method " + cl.qualifiedName()
-                + "." + m.name() + " returns unavailable type " + returnClass.name());
-          }
-
-          for (ParameterInfo p :  m.parameters()) {
-            TypeInfo t = p.type();
-            if (!t.isPrimitive()) {
-              if (t.asClassInfo().isHiddenOrRemoved()) {
-                Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Parameter of unavailable type "
-                    + t.fullName() + " in " + cl.qualifiedName() + "." + m.name() + "()");
-              }
-            }
-          }
-        }
-
-        // annotations are handled like methods
-        for (MethodInfo m : cl.annotationElements()) {
-          if (m.isHiddenOrRemoved()) {
-            Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Reference to unavailable annotation "
-                + m.name());
-          }
-
-          ClassInfo returnClass = m.returnType().asClassInfo();
-          if (returnClass != null && returnClass.isHiddenOrRemoved()) {
-            Errors.error(Errors.UNAVAILABLE_SYMBOL, m.position(), "Annotation '" + m.name()
-                + "' returns unavailable type " + returnClass.name());
-          }
-
-          for (ParameterInfo p :  m.parameters()) {
-            TypeInfo t = p.type();
-            if (!t.isPrimitive()) {
-              if (t.asClassInfo().isHiddenOrRemoved()) {
-                Errors.error(Errors.UNAVAILABLE_SYMBOL, p.position(),
-                    "Reference to unavailable annotation class " + t.fullName());
-              }
-            }
-          }
-        }
-      } else if (cl.isDeprecated()) {
-        // not hidden, but deprecated
-        Errors.error(Errors.DEPRECATED, cl.position(), "Class " + cl.qualifiedName()
-            + " is deprecated");
-      }
-    }
+    ApiLint.run(notStrippable, ApiLint.STUB_CHECKS);
 
-    // packages contains all the notStrippable classes mapped by their containing packages
-    HashMap<PackageInfo, List<ClassInfo>> packages = new HashMap<PackageInfo, List<ClassInfo>>();
+    HashSet<ClassInfo> apiClasses = new HashSet<ClassInfo>();
+    List<ClassInfo> stubClasses = new ArrayList<ClassInfo>();
     for (ClassInfo cl : notStrippable) {
       if (!cl.isDocOnly()) {
         if (stubPackages == null || stubPackages.contains(cl.containingPackage().name())) {
-          // write out the stubs
-          if (stubsDir != null) {
-            writeClassFile(stubsDir, notStrippable, cl);
-          }
-          // build class list for api file or keep list file
-          if (apiWriter != null || keepListWriter != null) {
-            if (packages.containsKey(cl.containingPackage())) {
-              packages.get(cl.containingPackage()).add(cl);
-            } else {
-              ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
-              classes.add(cl);
-              packages.put(cl.containingPackage(), classes);
-            }
+          if (hasStubFile(cl)) {
+            stubClasses.add(cl);
           }
+          apiClasses.add(cl);
         }
       }
     }
-    // write out the Api
+
+    // Write the stubs before the api files: writing the stubs adds the hidden methods that
+    // override abstract ones to their classes, and the api files list those methods too.
+    if (stubsDir != null || stubsJar != null || stubsClassJar != null) {
+      writeStubs(stubsDir, stubsJar, stubsClassJar, stubClasses, notStrippable);
+    }
+
+    if (apiWriter != null || keepListWriter != null || removedApiWriter != null) {
+      writeApiFiles(apiWriter, keepListWriter, removedApiWriter, apiClasses, notStrippable);
+    }
     if (apiWriter != null) {
-      writeApi(apiWriter, packages, notStrippable);
       apiWriter.close();
     }
-
-    // write out the keep list
     if (keepListWriter != null) {
-      writeKeepList(keepListWriter, packages, notStrippable);
       keepListWriter.close();
     }
-
-    HashMap<PackageInfo, List<ClassInfo>> allPackageClassMap =
-        new HashMap<PackageInfo, List<ClassInfo>>();
-    for (ClassInfo cl : Converter.allClasses()) {
-      if (allPackageClassMap.containsKey(cl.containingPackage())) {
-        allPackageClassMap.get(cl.containingPackage()).add(cl);
-      } else {
-        ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
-        classes.add(cl);
-        allPackageClassMap.put(cl.containingPackage(), classes);
-      }
-    }
-    // write out the removed Api
     if (removedApiWriter != null) {
-      writeRemovedApi(removedApiWriter, allPackageClassMap, notStrippable);
       removedApiWriter.close();
     }
   }
 
-  public static void cantStripThis(ClassInfo cl, HashSet<ClassInfo> notStrippable, String why) {
+  /**
+   * Writes the api file, keep list and removed api file in a single pass over the packages and
+   * classes in sorted order. Any of the writers may be null. The api file and keep list list the
+   * classes in {@code apiClasses}; the removed api file lists the removed members of every class.
+   */
+  private static void writeApiFiles(ApiTextWriter apiWriter, PrintStream keepListWriter,
+      ApiTextWriter removedApiWriter, HashSet<ClassInfo> apiClasses,
+      HashSet<ClassInfo> notStrippable) {
+    HashSet<ClassInfo> removedClasses = new HashSet<ClassInfo>();
+    if (removedApiWriter != null) {
+      removedClasses.addAll(Arrays.asList(Converter.allClasses()));
+    }
+    HashSet<ClassInfo> classes = new HashSet<ClassInfo>(removedClasses);
+    if (apiWriter != null || keepListWriter != null) {
+      classes.addAll(apiClasses);
+    }
 
-    if (!notStrippable.add(cl)) {
-      // slight optimization: if it already contains cl, it already contains
-      // all of cl's parents
-      return;
+    HashMap<PackageInfo, List<ClassInfo>> packageClasses =
+        new HashMap<PackageInfo, List<ClassInfo>>();
+    for (ClassInfo cl : classes) {
+      List<ClassInfo> list = packageClasses.get(cl.containingPackage());
+      if (list == null) {
+        list = new ArrayList<ClassInfo>();
+        packageClasses.put(cl.containingPackage(), list);
+      }
+      list.add(cl);
     }
-    cl.setReasonIncluded(why);
+    Set<PackageInfo> packageKeys = packageClasses.keySet();
+    PackageInfo[] packages = packageKeys.toArray(new PackageInfo[packageKeys.size()]);
+    Arrays.sort(packages, PackageInfo.comparator);
 
-    // cant strip annotations
-    /*
-     * if (cl.annotations() != null){ for (AnnotationInstanceInfo ai : cl.annotations()){ if
-     * (ai.type() != null){ cantStripThis(ai.type(), notStrippable, "1:" + cl.qualifiedName()); } }
-     * }
-     */
-    // cant strip any public fields or their generics
-    if (cl.selfFields() != null) {
-      for (FieldInfo fInfo : cl.selfFields()) {
-        if (fInfo.type() != null) {
-          if (fInfo.type().asClassInfo() != null) {
-            cantStripThis(fInfo.type().asClassInfo(), notStrippable, "2:" + cl.qualifiedName());
-          }
-          if (fInfo.type().typeArguments() != null) {
-            for (TypeInfo tTypeInfo : fInfo.type().typeArguments()) {
-              if (tTypeInfo.asClassInfo() != null) {
-                cantStripThis(tTypeInfo.asClassInfo(), notStrippable, "3:" + cl.qualifiedName());
-              }
+    for (PackageInfo pkg : packages) {
+      List<ClassInfo> list = packageClasses.get(pkg);
+      Collections.sort(list, ClassInfo.comparator);
+      // Work around the bogus "Array" class we invent for
+      // Arrays.copyOf's Class<? extends T[]> newType parameter. (http://b/2715505)
+      boolean writeApi = !pkg.name().equals(PackageInfo.DEFAULT_PACKAGE);
+      boolean hasWrittenApiHead = false;
+      boolean hasWrittenRemovedHead = false;
+      for (ClassInfo cl : list) {
+        if (writeApi && apiClasses.contains(cl)) {
+          SortedMembers members = new SortedMembers(cl);
+          if (apiWriter != null) {
+            if (!hasWrittenApiHead) {
+              hasWrittenApiHead = true;
+              writePackageApiHead(apiWriter, pkg);
             }
+            writeClassApi(apiWriter, cl, members, notStrippable);
+          }
+          if (keepListWriter != null) {
+            writeClassKeepList(keepListWriter, cl, members);
+          }
+        }
+        if (removedClasses.contains(cl) && cl.hasRemovedSelfMembers()) {
+          if (!hasWrittenRemovedHead) {
+            hasWrittenRemovedHead = true;
+            writePackageApiHead(removedApiWriter, pkg);
           }
+          writeClassRemovedSelfMembers(removedApiWriter, cl, notStrippable);
         }
       }
+      if (hasWrittenApiHead) {
+        apiWriter.print("}\n\n");
+      }
+      if (hasWrittenRemovedHead) {
+        removedApiWriter.print("}\n\n");
+      }
+    }
+  }
+
+  /**
+   * The members of a class that the api files list, each sorted once into the order they are
+   * listed in, so that several api files can be written from the same lists.
+   */
+  static class SortedMembers {
+    final ArrayList<ClassInfo> interfaces;
+    final ArrayList<MethodInfo> constructors;
+    final ArrayList<MethodInfo> methods;
+    final ArrayList<FieldInfo> enumConstants;
+    final ArrayList<FieldInfo> fields;
+
+    SortedMembers(ClassInfo cl) {
+      interfaces = sorted(cl.realInterfaces(), ClassInfo.comparator);
+      constructors = sorted(cl.constructors(), MethodInfo.comparator);
+      methods = sorted(cl.allSelfMethods(), MethodInfo.comparator);
+      enumConstants = sorted(cl.enumConstants(), FieldInfo.comparator);
+      fields = sorted(cl.selfFields(), FieldInfo.comparator);
+    }
+
+    private static <T> ArrayList<T> sorted(List<T> list, Comparator<? super T> comparator) {
+      ArrayList<T> result = new ArrayList<T>(list);
+      Collections.sort(result, comparator);
+      return result;
     }
-    // cant strip any of the type's generics
-    if (cl.asTypeInfo() != null) {
-      if (cl.asTypeInfo().typeArguments() != null) {
-        for (TypeInfo tInfo : cl.asTypeInfo().typeArguments()) {
-          if (tInfo.asClassInfo() != null) {
-            cantStripThis(tInfo.asClassInfo(), notStrippable, "4:" + cl.qualifiedName());
+  }
+
+  public static void cantStripThis(ClassInfo cl, HashSet<ClassInfo> notStrippable, String why) {
+    cantStripThis(Collections.singletonList(cl), notStrippable, why);
+  }
+
+  /**
+   * Adds {@code roots} to {@code notStrippable}, along with every class the stubs of those
+   * classes refer to: the types of their fields and methods and the type arguments of those types,
+   * thrown exceptions, outer classes and superclasses, and so on transitively. Each class added is
+   * given the reason it was reached through as {@link ClassInfo#setReasonIncluded}, {@code why}
+   * for the roots.
+   * <p>
+   * The closure is walked depth first with an explicit stack, in the order the references are
+   * listed by {@link StubReferences}, so the classes and reasons are those a recursive walk would
+   * give, however deep the chains of references are. With {@link Doclava#threads} above 1
+   * the references of the roots, which are most of the classes, are listed by a pool of workers
+   * first; only the walk itself, which changes the classes, runs on this thread.
+   */
+  static void cantStripThis(List<ClassInfo> roots, HashSet<ClassInfo> notStrippable,
+      String why) {
+    Map<ClassInfo, StubReferences> references = findReferencesInParallel(roots);
+
+    ArrayList<ClassInfo> stack = new ArrayList<ClassInfo>();
+    ArrayList<String> reasons = new ArrayList<String>();
+    for (ClassInfo root : roots) {
+      stack.add(root);
+      reasons.add(why);
+      while (!stack.isEmpty()) {
+        ClassInfo cl = stack.remove(stack.size() - 1);
+        String reason = reasons.remove(reasons.size() - 1);
+        if (reason == null) {
+          // every class reached from cl has been visited
+          stripHiddenSuperclass(cl);
+          continue;
+        }
+        if (!notStrippable.add(cl)) {
+          // slight optimization: if it already contains cl, it already contains
+          // all of cl's parents
+          continue;
+        }
+        cl.setReasonIncluded(reason);
+
+        StubReferences refs = references.get(cl);
+        if (refs == null) {
+          refs = new StubReferences(cl);
+        }
+        refs.reportHiddenParameters();
+        if (refs.hasHiddenSuperclass) {
+          stack.add(cl);
+          reasons.add(null);
+        }
+        for (int i = refs.classes.size() - 1; i >= 0; i--) {
+          ClassInfo ref = refs.classes.get(i);
+          if (!notStrippable.contains(ref)) {
+            stack.add(ref);
+            reasons.add(refs.reasons.get(i));
           }
         }
       }
     }
-    // cant strip any of the annotation elements
-    // cantStripThis(cl.annotationElements(), notStrippable);
-    // take care of methods
-    cantStripThis(cl.allSelfMethods(), notStrippable);
-    cantStripThis(cl.allConstructors(), notStrippable);
-    // blow the outer class open if this is an inner class
-    if (cl.containingClass() != null) {
-      cantStripThis(cl.containingClass(), notStrippable, "5:" + cl.qualifiedName());
+  }
+
+  /**
+   * @return the references of each of {@code classes}, listed by {@link Doclava#threads}
+   * workers, or nothing if there is only one thread
+   */
+  private static Map<ClassInfo, StubReferences> findReferencesInParallel(List<ClassInfo> classes) {
+    final HashMap<ClassInfo, StubReferences> result = new HashMap<ClassInfo, StubReferences>();
+    int threads = Math.min(Doclava.threads, classes.size());
+    if (threads <= 1) {
+      return result;
     }
-    // blow open super class and interfaces
-    ClassInfo supr = cl.realSuperclass();
-    if (supr != null) {
-      if (supr.isHiddenOrRemoved()) {
-        // cl is a public class declared as extending a hidden superclass.
-        // this is not a desired practice but it's happened, so we deal
-        // with it by finding the first super class which passes checklevel for purposes of
-        // generating the doc & stub information, and proceeding normally.
-        cl.init(cl.asTypeInfo(), cl.realInterfaces(), cl.realInterfaceTypes(), cl.innerClasses(),
-            cl.allConstructors(), cl.allSelfMethods(), cl.annotationElements(), cl.allSelfFields(),
-            cl.enumConstants(), cl.containingPackage(), cl.containingClass(),
-            supr.superclass(), supr.superclassType(), cl.annotations());
-        Errors.error(Errors.HIDDEN_SUPERCLASS, cl.position(), "Public class " + cl.qualifiedName()
-            + " stripped of unavailable superclass " + supr.qualifiedName());
-      } else {
-        cantStripThis(supr, notStrippable, "6:" + cl.realSuperclass().name() + cl.qualifiedName());
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<List<StubReferences>>> chunks = new ArrayList<Future<List<StubReferences>>>();
+    try {
+      int chunkSize = (classes.size() + threads - 1) / threads;
+      for (int start = 0; start < classes.size(); start += chunkSize) {
+        final List<ClassInfo> chunk =
+            classes.subList(start, Math.min(start + chunkSize, classes.size()));
+        chunks.add(executor.submit(new Callable<List<StubReferences>>() {
+          public List<StubReferences> call() {
+            List<StubReferences> refs = new ArrayList<StubReferences>(chunk.size());
+            for (ClassInfo cl : chunk) {
+              refs.add(new StubReferences(cl));
+            }
+            return refs;
+          }
+        }));
       }
+      for (Future<List<StubReferences>> chunk : chunks) {
+        for (StubReferences refs : chunk.get()) {
+          result.put(refs.cl, refs);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted finding the classes the stubs refer to", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("error finding the classes the stubs refer to", e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
+    return result;
+  }
+
+  /**
+   * cl is a public class declared as extending a hidden superclass. this is not a desired practice
+   * but it's happened, so we deal with it by finding the first super class which passes checklevel
+   * for purposes of generating the doc & stub information, and proceeding normally.
+   */
+  private static void stripHiddenSuperclass(ClassInfo cl) {
+    ClassInfo supr = cl.realSuperclass();
+    cl.init(cl.asTypeInfo(), cl.realInterfaces(), cl.realInterfaceTypes(), cl.innerClasses(),
+        cl.allConstructors(), cl.allSelfMethods(), cl.annotationElements(), cl.allSelfFields(),
+        cl.enumConstants(), cl.containingPackage(), cl.containingClass(),
+        supr.superclass(), supr.superclassType(), cl.annotations());
+    Errors.error(Errors.HIDDEN_SUPERCLASS, cl.position(), "Public class " + cl.qualifiedName()
+        + " stripped of unavailable superclass " + supr.qualifiedName());
   }
 
-  private static void cantStripThis(ArrayList<MethodInfo> mInfos, HashSet<ClassInfo> notStrippable) {
-    // for each method, blow open the parameters, throws and return types. also blow open their
-    // generics
-    if (mInfos != null) {
-      for (MethodInfo mInfo : mInfos) {
-        if (mInfo.getTypeParameters() != null) {
-          for (TypeInfo tInfo : mInfo.getTypeParameters()) {
+  /**
+   * The classes that the stub of one class refers to, each with the reason it cannot be stripped
+   * because of that class. Listing them only reads the class, so it can be done on any thread.
+   */
+  private static class StubReferences {
+    final ClassInfo cl;
+    final List<ClassInfo> classes = new ArrayList<ClassInfo>();
+    final List<String> reasons = new ArrayList<String>();
+    /** Methods with a parameter type argument that is hidden, and that type argument. */
+    final List<MethodInfo> hiddenParameterMethods = new ArrayList<MethodInfo>();
+    final List<TypeInfo> hiddenParameterTypes = new ArrayList<TypeInfo>();
+    /** Whether the class must be stripped of its hidden superclass once it is walked. */
+    final boolean hasHiddenSuperclass;
+
+    StubReferences(ClassInfo cl) {
+      this.cl = cl;
+      // cant strip annotations
+      /*
+       * if (cl.annotations() != null){ for (AnnotationInstanceInfo ai : cl.annotations()){ if
+       * (ai.type() != null){ add(ai.type(), "1:" + cl.qualifiedName()); } } }
+       */
+      // cant strip any public fields or their generics
+      if (cl.selfFields() != null) {
+        for (FieldInfo fInfo : cl.selfFields()) {
+          if (fInfo.type() != null) {
+            if (fInfo.type().asClassInfo() != null) {
+              add(fInfo.type().asClassInfo(), "2:" + cl.qualifiedName());
+            }
+            if (fInfo.type().typeArguments() != null) {
+              for (TypeInfo tTypeInfo : fInfo.type().typeArguments()) {
+                if (tTypeInfo.asClassInfo() != null) {
+                  add(tTypeInfo.asClassInfo(), "3:" + cl.qualifiedName());
+                }
+              }
+            }
+          }
+        }
+      }
+      // cant strip any of the type's generics
+      if (cl.asTypeInfo() != null) {
+        if (cl.asTypeInfo().typeArguments() != null) {
+          for (TypeInfo tInfo : cl.asTypeInfo().typeArguments()) {
             if (tInfo.asClassInfo() != null) {
-              cantStripThis(tInfo.asClassInfo(), notStrippable, "8:"
-                  + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+              add(tInfo.asClassInfo(), "4:" + cl.qualifiedName());
             }
           }
         }
-        if (mInfo.parameters() != null) {
-          for (ParameterInfo pInfo : mInfo.parameters()) {
-            if (pInfo.type() != null && pInfo.type().asClassInfo() != null) {
-              cantStripThis(pInfo.type().asClassInfo(), notStrippable, "9:"
-                  + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
-              if (pInfo.type().typeArguments() != null) {
-                for (TypeInfo tInfoType : pInfo.type().typeArguments()) {
-                  if (tInfoType.asClassInfo() != null) {
-                    ClassInfo tcl = tInfoType.asClassInfo();
-                    if (tcl.isHiddenOrRemoved()) {
-                      Errors
-                          .error(Errors.UNAVAILABLE_SYMBOL, mInfo.position(),
-                              "Parameter of hidden type " + tInfoType.fullName() + " in "
-                                  + mInfo.containingClass().qualifiedName() + '.' + mInfo.name()
-                                  + "()");
-                    } else {
-                      cantStripThis(tcl, notStrippable, "10:"
-                          + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+      }
+      // cant strip any of the annotation elements
+      // addMethods(cl.annotationElements());
+      // take care of methods
+      addMethods(cl.allSelfMethods());
+      addMethods(cl.allConstructors());
+      // blow the outer class open if this is an inner class
+      if (cl.containingClass() != null) {
+        add(cl.containingClass(), "5:" + cl.qualifiedName());
+      }
+      // blow open super class and interfaces
+      ClassInfo supr = cl.realSuperclass();
+      hasHiddenSuperclass = supr != null && supr.isHiddenOrRemoved();
+      if (supr != null && !hasHiddenSuperclass) {
+        add(supr, "6:" + cl.realSuperclass().name() + cl.qualifiedName());
+      }
+    }
+
+    private void addMethods(ArrayList<MethodInfo> mInfos) {
+      // for each method, blow open the parameters, throws and return types. also blow open their
+      // generics
+      if (mInfos != null) {
+        for (MethodInfo mInfo : mInfos) {
+          if (mInfo.getTypeParameters() != null) {
+            for (TypeInfo tInfo : mInfo.getTypeParameters()) {
+              if (tInfo.asClassInfo() != null) {
+                add(tInfo.asClassInfo(), "8:"
+                    + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+              }
+            }
+          }
+          if (mInfo.parameters() != null) {
+            for (ParameterInfo pInfo : mInfo.parameters()) {
+              if (pInfo.type() != null && pInfo.type().asClassInfo() != null) {
+                add(pInfo.type().asClassInfo(), "9:"
+                    + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+                if (pInfo.type().typeArguments() != null) {
+                  for (TypeInfo tInfoType : pInfo.type().typeArguments()) {
+                    if (tInfoType.asClassInfo() != null) {
+                      ClassInfo tcl = tInfoType.asClassInfo();
+                      if (tcl.isHiddenOrRemoved()) {
+                        hiddenParameterMethods.add(mInfo);
+                        hiddenParameterTypes.add(tInfoType);
+                      } else {
+                        add(tcl, "10:"
+                            + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+                      }
                     }
                   }
                 }
               }
             }
           }
-        }
-        for (ClassInfo thrown : mInfo.thrownExceptions()) {
-          cantStripThis(thrown, notStrippable, "11:" + mInfo.realContainingClass().qualifiedName()
-              + ":" + mInfo.name());
-        }
-        if (mInfo.returnType() != null && mInfo.returnType().asClassInfo() != null) {
-          cantStripThis(mInfo.returnType().asClassInfo(), notStrippable, "12:"
-              + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
-          if (mInfo.returnType().typeArguments() != null) {
-            for (TypeInfo tyInfo : mInfo.returnType().typeArguments()) {
-              if (tyInfo.asClassInfo() != null) {
-                cantStripThis(tyInfo.asClassInfo(), notStrippable, "13:"
-                    + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+          for (ClassInfo thrown : mInfo.thrownExceptions()) {
+            add(thrown, "11:" + mInfo.realContainingClass().qualifiedName()
+                + ":" + mInfo.name());
+          }
+          if (mInfo.returnType() != null && mInfo.returnType().asClassInfo() != null) {
+            add(mInfo.returnType().asClassInfo(), "12:"
+                + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+            if (mInfo.returnType().typeArguments() != null) {
+              for (TypeInfo tyInfo : mInfo.returnType().typeArguments()) {
+                if (tyInfo.asClassInfo() != null) {
+                  add(tyInfo.asClassInfo(), "13:"
+                      + mInfo.realContainingClass().qualifiedName() + ":" + mInfo.name());
+                }
               }
             }
           }
         }
       }
     }
+
+    private void add(ClassInfo ref, String reason) {
+      classes.add(ref);
+      reasons.add(reason);
+    }
+
+    void reportHiddenParameters() {
+      for (int i = 0; i < hiddenParameterMethods.size(); i++) {
+        MethodInfo mInfo = hiddenParameterMethods.get(i);
+        Errors.error(Errors.UNAVAILABLE_SYMBOL, mInfo.position(),
+            "Parameter of hidden type " + hiddenParameterTypes.get(i).fullName() + " in "
+                + mInfo.containingClass().qualifiedName() + '.' + mInfo.name() + "()");
+      }
+    }
   }
 
   static String javaFileName(ClassInfo cl) {
@@ -332,45 +502,300 @@ public class Stubs {
     return dir + cl.name() + ".java";
   }
 
-  static void writeClassFile(String stubsDir, HashSet<ClassInfo> notStrippable, ClassInfo cl) {
-    // inner classes are written by their containing class
+  /**
+   * @return true if {@code cl} gets a stub file of its own; inner classes are written by their
+   * containing class
+   */
+  static boolean hasStubFile(ClassInfo cl) {
     if (cl.containingClass() != null) {
-      return;
+      return false;
     }
-
     // Work around the bogus "Array" class we invent for
     // Arrays.copyOf's Class<? extends T[]> newType parameter. (http://b/2715505)
     if (cl.containingPackage() != null
         && cl.containingPackage().name().equals(PackageInfo.DEFAULT_PACKAGE)) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes a stub file for each of {@code classes}, which must all {@link #hasStubFile have one},
+   * to the directory {@code stubsDir}, the jar {@code stubsJar}, or both, and the class files
+   * javac would compile them to, written by {@link StubClassWriter}, to the jar
+   * {@code stubsClassJar}. Any of the three may be null.
+   * <p>
+   * Everything that changes the classes is done first, on this thread and in the order of
+   * {@code classes}: finding the hidden methods each stub has to declare because they override
+   * abstract methods, and adding them to their class. Writing the stubs only reads the classes,
+   * so with {@link Doclava#threads} above 1 the packages are written by a pool of workers,
+   * each writing all the classes of one package, and the files are the same as with one thread.
+   * The jars are written on this thread with their entries sorted by name and all given the
+   * same time, so they do not depend on the number of threads or on when they were built either.
+   */
+  static void writeStubs(final String stubsDir, String stubsJar, String stubsClassJar,
+      List<ClassInfo> classes, final HashSet<ClassInfo> notStrippable) {
+    final HashMap<ClassInfo, List<MethodInfo>> hiddenOverrides =
+        new HashMap<ClassInfo, List<MethodInfo>>();
+    HashMap<PackageInfo, List<ClassInfo>> packageClasses =
+        new HashMap<PackageInfo, List<ClassInfo>>();
+    for (ClassInfo cl : classes) {
+      addHiddenOverrides(cl, notStrippable, hiddenOverrides);
+      List<ClassInfo> list = packageClasses.get(cl.containingPackage());
+      if (list == null) {
+        list = new ArrayList<ClassInfo>();
+        packageClasses.put(cl.containingPackage(), list);
+      }
+      list.add(cl);
+    }
+    Set<PackageInfo> packageKeys = packageClasses.keySet();
+    PackageInfo[] packages = packageKeys.toArray(new PackageInfo[packageKeys.size()]);
+    Arrays.sort(packages, PackageInfo.comparator);
+    for (PackageInfo pkg : packages) {
+      Collections.sort(packageClasses.get(pkg), ClassInfo.comparator);
+    }
+
+    ZipOutputStream jar = openStubsJar(stubsJar);
+    ZipOutputStream classJar = openStubsJar(stubsClassJar);
+    if (stubsDir == null && jar == null && classJar == null) {
       return;
     }
+    final boolean keepStubs = jar != null;
+    final boolean writeClassFiles = classJar != null;
+
+    ExecutorService executor = null;
+    HashMap<PackageInfo, Future<PackageStubs>> results =
+        new HashMap<PackageInfo, Future<PackageStubs>>();
+    // the packages in the order they are handed to the workers
+    PackageInfo[] submitOrder = packages;
+    int window = packages.length;
+    if (Doclava.threads > 1 && packages.length > 1) {
+      int threads = Math.min(Doclava.threads, packages.length);
+      executor = Executors.newFixedThreadPool(threads);
+      if (keepStubs || writeClassFiles) {
+        // the contents of a package are kept until its turn to go into the jars, which is in
+        // the order of the packages, so only a few packages are let ahead of it
+        window = threads * 2;
+      } else {
+        // nothing is kept, so start with the biggest packages so that one of them doesn't
+        // finish last on its own
+        submitOrder = packages.clone();
+        final HashMap<PackageInfo, List<ClassInfo>> sizes = packageClasses;
+        Arrays.sort(submitOrder, new Comparator<PackageInfo>() {
+          public int compare(PackageInfo a, PackageInfo b) {
+            return sizes.get(b).size() - sizes.get(a).size();
+          }
+        });
+      }
+    }
 
-    String filename = stubsDir + '/' + javaFileName(cl);
-    File file = new File(filename);
-    ClearPage.ensureDirectory(file);
+    String writing = null;
+    int submitted = 0;
+    try {
+      for (int p = 0; p < packages.length; p++) {
+        while (executor != null && submitted < submitOrder.length && submitted < p + window) {
+          final List<ClassInfo> list = packageClasses.get(submitOrder[submitted]);
+          results.put(submitOrder[submitted], executor.submit(new Callable<PackageStubs>() {
+            public PackageStubs call() {
+              return writePackageStubs(stubsDir, keepStubs, writeClassFiles, list, notStrippable,
+                  hiddenOverrides);
+            }
+          }));
+          submitted++;
+        }
 
-    PrintStream stream = null;
+        PackageInfo pkg = packages[p];
+        List<ClassInfo> list = packageClasses.get(pkg);
+        PackageStubs stubs;
+        if (executor != null) {
+          stubs = results.remove(pkg).get();
+        } else {
+          stubs = writePackageStubs(stubsDir, keepStubs, writeClassFiles, list, notStrippable,
+              hiddenOverrides);
+        }
+        if (jar != null) {
+          writing = stubsJar;
+          for (int i = 0; i < list.size(); i++) {
+            putStubsJarEntry(jar, javaFileName(list.get(i)), stubs.sources.get(i));
+          }
+        }
+        if (classJar != null) {
+          writing = stubsClassJar;
+          for (Map.Entry<String, byte[]> classFile : stubs.classFiles.entrySet()) {
+            putStubsJarEntry(classJar, classFile.getKey(), classFile.getValue());
+          }
+        }
+      }
+    } catch (IOException e) {
+      Errors.error(Errors.IO_ERROR, new SourcePositionInfo(writing, 0, 0),
+          "Error writing stubs jar: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted writing stubs", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("error writing stubs", e.getCause());
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      closeStubsJar(jar, stubsJar);
+      closeStubsJar(classJar, stubsClassJar);
+    }
+  }
+
+  /**
+   * @return a stream writing the jar {@code filename}, or null if {@code filename} is null or
+   * cannot be written
+   */
+  private static ZipOutputStream openStubsJar(String filename) {
+    if (filename == null) {
+      return null;
+    }
     try {
-      stream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
-      writeClassFile(stream, notStrippable, cl);
+      File file = new File(filename);
+      ClearPage.ensureDirectory(file);
+      ZipOutputStream jar =
+          new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      jar.setLevel(stubsJarLevel);
+      return jar;
     } catch (FileNotFoundException e) {
-      System.err.println("error writing file: " + filename);
-    } finally {
-      if (stream != null) {
-        stream.close();
+      Errors.error(Errors.IO_ERROR, new SourcePositionInfo(filename, 0, 0),
+          "Cannot open file for write.");
+      return null;
+    }
+  }
+
+  private static void putStubsJarEntry(ZipOutputStream jar, String name, byte[] contents)
+      throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTime(STUBS_JAR_TIME);
+    jar.putNextEntry(entry);
+    jar.write(contents);
+    jar.closeEntry();
+  }
+
+  private static void closeStubsJar(ZipOutputStream jar, String filename) {
+    if (jar == null) {
+      return;
+    }
+    try {
+      jar.close();
+    } catch (IOException e) {
+      Errors.error(Errors.IO_ERROR, new SourcePositionInfo(filename, 0, 0),
+          "Error writing stubs jar: " + e.getMessage());
+    }
+    Timings.fileWritten(new File(filename));
+  }
+
+  /**
+   * Finds the hidden and removed methods of {@code cl} and its inner classes that are written to
+   * the stubs anyway because they override abstract or interface methods, adds them to their
+   * classes and records them in {@code hiddenOverrides}. The inner classes are done first, as
+   * they are when the stub is written.
+   */
+  private static void addHiddenOverrides(ClassInfo cl, HashSet<ClassInfo> notStrippable,
+      HashMap<ClassInfo, List<MethodInfo>> hiddenOverrides) {
+    for (ClassInfo inner : cl.getRealInnerClasses()) {
+      if (notStrippable.contains(inner) && !inner.isDocOnly()) {
+        addHiddenOverrides(inner, notStrippable, hiddenOverrides);
+      }
+    }
+
+    List<MethodInfo> overrides = new ArrayList<MethodInfo>();
+    List<MethodInfo> hiddenAndRemovedMethods = new ArrayList<MethodInfo>(cl.getHiddenMethods());
+    hiddenAndRemovedMethods.addAll(cl.getRemovedMethods());
+    for (MethodInfo method : hiddenAndRemovedMethods) {
+      MethodInfo overriddenMethod =
+          method.findRealOverriddenMethod(method.name(), method.signature(), notStrippable);
+      ClassInfo classContainingMethod =
+          method.findRealOverriddenClass(method.name(), method.signature());
+      if (overriddenMethod != null && !overriddenMethod.isHiddenOrRemoved() &&
+          !overriddenMethod.isDocOnly() &&
+          (overriddenMethod.isAbstract() || overriddenMethod.containingClass().isInterface())) {
+        method.setReason("1:" + classContainingMethod.qualifiedName());
+        cl.addMethod(method);
+        overrides.add(method);
+      }
+    }
+    hiddenOverrides.put(cl, overrides);
+  }
+
+  /** The stubs of one package, as {@link #writePackageStubs} keeps them. */
+  private static class PackageStubs {
+    /** The contents of each stub source, in the order of the package's classes, or null. */
+    List<byte[]> sources;
+    /** The class files of the package, keyed by their path in a jar, or null. */
+    TreeMap<String, byte[]> classFiles;
+  }
+
+  /**
+   * Writes the stubs of {@code classes}, all in one package, to {@code stubsDir} if it is not
+   * null, keeping the contents of each stub if {@code keepStubs} is set and building the class
+   * files of the package if {@code writeClassFiles} is set.
+   */
+  private static PackageStubs writePackageStubs(String stubsDir, boolean keepStubs,
+      boolean writeClassFiles, List<ClassInfo> classes, HashSet<ClassInfo> notStrippable,
+      HashMap<ClassInfo, List<MethodInfo>> hiddenOverrides) {
+    PackageStubs result = new PackageStubs();
+    if (writeClassFiles) {
+      result.classFiles = new TreeMap<String, byte[]>();
+      for (ClassInfo cl : classes) {
+        StubClassWriter.writeClassFiles(cl, notStrippable, hiddenOverrides, result.classFiles);
+      }
+    }
+    if (stubsDir == null && !keepStubs) {
+      return result;
+    }
+
+    if (keepStubs) {
+      result.sources = new ArrayList<byte[]>(classes.size());
+    }
+    if (stubsDir != null) {
+      ClearPage.ensureDirectory(new File(stubsDir + '/' + javaFileName(classes.get(0))));
+    }
+    for (ClassInfo cl : classes) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      PrintStream stream = new PrintStream(bytes);
+      writeClassFile(stream, notStrippable, hiddenOverrides, cl);
+      stream.close();
+      if (keepStubs) {
+        result.sources.add(bytes.toByteArray());
+      }
+      if (stubsDir == null) {
+        continue;
+      }
+
+      String filename = stubsDir + '/' + javaFileName(cl);
+      File file = new File(filename);
+      OutputStream out = null;
+      try {
+        out = new FileOutputStream(file);
+        bytes.writeTo(out);
+      } catch (IOException e) {
+        System.err.println("error writing file: " + filename);
+      } finally {
+        if (out != null) {
+          try {
+            out.close();
+          } catch (IOException e) {}
+        }
       }
+      Timings.fileWritten(file);
     }
+    return result;
   }
 
-  static void writeClassFile(PrintStream stream, HashSet<ClassInfo> notStrippable, ClassInfo cl) {
+  static void writeClassFile(PrintStream stream, HashSet<ClassInfo> notStrippable,
+      HashMap<ClassInfo, List<MethodInfo>> hiddenOverrides, ClassInfo cl) {
     PackageInfo pkg = cl.containingPackage();
     if (pkg != null) {
       stream.println("package " + pkg.name() + ";");
     }
-    writeClass(stream, notStrippable, cl);
+    writeClass(stream, notStrippable, hiddenOverrides, cl);
   }
 
-  static void writeClass(PrintStream stream, HashSet<ClassInfo> notStrippable, ClassInfo cl) {
+  static void writeClass(PrintStream stream, HashSet<ClassInfo> notStrippable,
+      HashMap<ClassInfo, List<MethodInfo>> hiddenOverrides, ClassInfo cl) {
     writeAnnotations(stream, cl.annotations(), cl.isDeprecated());
 
     stream.print(cl.scope() + " ");
@@ -433,6 +858,7 @@ public class Stubs {
     int N = enumConstants.size();
     int i = 0;
     for (FieldInfo field : enumConstants) {
+      writeAnnotations(stream, field.annotations(), field.isDeprecated());
       if (!field.constantLiteralValue().equals("null")) {
         stream.println(field.name() + "(" + field.constantLiteralValue()
             + (i == N - 1 ? ");" : "),"));
@@ -444,7 +870,7 @@ public class Stubs {
 
     for (ClassInfo inner : cl.getRealInnerClasses()) {
       if (notStrippable.contains(inner) && !inner.isDocOnly()) {
-        writeClass(stream, notStrippable, inner);
+        writeClass(stream, notStrippable, hiddenOverrides, inner);
       }
     }
 
@@ -485,8 +911,19 @@ public class Stubs {
       stream.println(cl.leafName() + "() { " + superCtorCall(cl, null) + "throw new"
           + " RuntimeException(\"Stub!\"); }");
     }
+    // an enum's constructors are private, so none are written, but its final fields still need
+    // one that does not return; it must not call a superclass constructor
+    if (cl.isEnum() && fieldNeedsInitialization) {
+      stream.println(cl.leafName() + "() { throw new RuntimeException(\"Stub!\"); }");
+    }
 
+    // the hidden methods that override abstract ones are already among the class's methods, but
+    // are written after all the others
+    List<MethodInfo> overrides = hiddenOverrides.get(cl);
     for (MethodInfo method : cl.allSelfMethods()) {
+      if (overrides.contains(method)) {
+        continue;
+      }
       if (cl.isEnum()) {
         if (("values".equals(method.name()) && "()".equals(method.signature())) ||
             ("valueOf".equals(method.name()) &&
@@ -503,20 +940,8 @@ public class Stubs {
     }
     // Write all methods that are hidden or removed, but override abstract methods or interface methods.
     // These can't be hidden.
-    List<MethodInfo> hiddenAndRemovedMethods = cl.getHiddenMethods();
-    hiddenAndRemovedMethods.addAll(cl.getRemovedMethods());
-    for (MethodInfo method : hiddenAndRemovedMethods) {
-      MethodInfo overriddenMethod =
-          method.findRealOverriddenMethod(method.name(), method.signature(), notStrippable);
-      ClassInfo classContainingMethod =
-          method.findRealOverriddenClass(method.name(), method.signature());
-      if (overriddenMethod != null && !overriddenMethod.isHiddenOrRemoved() &&
-          !overriddenMethod.isDocOnly() &&
-          (overriddenMethod.isAbstract() || overriddenMethod.containingClass().isInterface())) {
-        method.setReason("1:" + classContainingMethod.qualifiedName());
-        cl.addMethod(method);
-        writeMethod(stream, method, false);
-      }
+    for (MethodInfo method : overrides) {
+      writeMethod(stream, method, false);
     }
 
     for (MethodInfo element : cl.annotationElements()) {
@@ -855,14 +1280,15 @@ public class Stubs {
     // + " source=\"" + pack.position() + "\"\n"
         + ">");
     for (ClassInfo cl : classes) {
-      writeClassXML(xmlWriter, cl, notStrippable);
+      writeClassXML(xmlWriter, cl, new SortedMembers(cl), notStrippable);
     }
     xmlWriter.println("</package>");
 
 
   }
 
-  static void writeClassXML(PrintStream xmlWriter, ClassInfo cl, HashSet<ClassInfo> notStrippable) {
+  static void writeClassXML(PrintStream xmlWriter, ClassInfo cl, SortedMembers members,
+      HashSet<ClassInfo> notStrippable) {
     String scope = cl.scope();
     String deprecatedString = "";
     String declString = (cl.isInterface()) ? "interface" : "class";
@@ -883,32 +1309,24 @@ public class Stubs {
         // + " source=\"" + cl.position() + "\"\n"
         + ">");
 
-    ArrayList<ClassInfo> interfaces = cl.realInterfaces();
-    Collections.sort(interfaces, ClassInfo.comparator);
-    for (ClassInfo iface : interfaces) {
+    for (ClassInfo iface : members.interfaces) {
       if (notStrippable.contains(iface)) {
         xmlWriter.println("<implements name=\"" + iface.qualifiedName() + "\">");
         xmlWriter.println("</implements>");
       }
     }
 
-    ArrayList<MethodInfo> constructors = cl.constructors();
-    Collections.sort(constructors, MethodInfo.comparator);
-    for (MethodInfo mi : constructors) {
+    for (MethodInfo mi : members.constructors) {
       writeConstructorXML(xmlWriter, mi);
     }
 
-    ArrayList<MethodInfo> methods = cl.allSelfMethods();
-    Collections.sort(methods, MethodInfo.comparator);
-    for (MethodInfo mi : methods) {
+    for (MethodInfo mi : members.methods) {
       if (!methodIsOverride(notStrippable, mi)) {
         writeMethodXML(xmlWriter, mi);
       }
     }
 
-    ArrayList<FieldInfo> fields = cl.selfFields();
-    Collections.sort(fields, FieldInfo.comparator);
-    for (FieldInfo fi : fields) {
+    for (FieldInfo fi : members.fields) {
       writeFieldXML(xmlWriter, fi);
     }
     xmlWriter.println("</" + declString + ">");
@@ -1027,38 +1445,10 @@ public class Stubs {
     return returnString;
   }
 
-  static void writeRemovedApi(PrintStream apiWriter, HashMap<PackageInfo,
-      List<ClassInfo>> allPackageClassMap, Set<ClassInfo> notStrippable) {
-    final PackageInfo[] packages = allPackageClassMap.keySet().toArray(new PackageInfo[0]);
-    Arrays.sort(packages, PackageInfo.comparator);
-    for (PackageInfo pkg : packages) {
-      // beware that pkg.allClasses() has no class in it at the moment
-      final List<ClassInfo> classes = allPackageClassMap.get(pkg);
-      Collections.sort(classes, ClassInfo.comparator);
-      boolean hasWrittenPackageHead = false;
-      for (ClassInfo cl : classes) {
-        if (cl.hasRemovedSelfMembers()) {
-          if (!hasWrittenPackageHead) {
-            hasWrittenPackageHead = true;
-            apiWriter.print("package ");
-            apiWriter.print(pkg.qualifiedName());
-            apiWriter.print(" {\n\n");
-          }
-          writeClassRemovedSelfMembers(apiWriter, cl, notStrippable);
-        }
-      }
-
-      // the package contains some classes with some removed members
-      if (hasWrittenPackageHead) {
-        apiWriter.print("}\n\n");
-      }
-    }
-  }
-
   /**
    * Write the removed members of the class to removed.txt
    */
-  private static void writeClassRemovedSelfMembers(PrintStream apiWriter, ClassInfo cl,
+  private static void writeClassRemovedSelfMembers(ApiTextWriter apiWriter, ClassInfo cl,
       Set<ClassInfo> notStrippable) {
     apiWriter.print("  ");
     apiWriter.print(cl.scope());
@@ -1126,7 +1516,8 @@ public class Stubs {
     apiWriter.print("  }\n\n");
   }
 
-  public static void writeApi(PrintStream apiWriter, Collection<PackageInfo> pkgs) {
+  public static void writeApi(PrintStream stream, Collection<PackageInfo> pkgs) {
+    ApiTextWriter apiWriter = new ApiTextWriter(stream);
     final PackageInfo[] packages = pkgs.toArray(new PackageInfo[pkgs.size()]);
     Arrays.sort(packages, PackageInfo.comparator);
 
@@ -1139,21 +1530,10 @@ public class Stubs {
     for (PackageInfo pkg: packages) {
       writePackageApi(apiWriter, pkg, pkg.allClasses().values(), notStrippable);
     }
+    apiWriter.flush();
   }
 
-  static void writeApi(PrintStream apiWriter, HashMap<PackageInfo, List<ClassInfo>> allClasses,
-      HashSet<ClassInfo> notStrippable) {
-    // extract the set of packages, sort them by name, and write them out in that order
-    Set<PackageInfo> allClassKeys = allClasses.keySet();
-    PackageInfo[] allPackages = allClassKeys.toArray(new PackageInfo[allClassKeys.size()]);
-    Arrays.sort(allPackages, PackageInfo.comparator);
-
-    for (PackageInfo pack : allPackages) {
-      writePackageApi(apiWriter, pack, allClasses.get(pack), notStrippable);
-    }
-  }
-
-  static void writePackageApi(PrintStream apiWriter, PackageInfo pack,
+  static void writePackageApi(ApiTextWriter apiWriter, PackageInfo pack,
       Collection<ClassInfo> classList, HashSet<ClassInfo> notStrippable) {
     // Work around the bogus "Array" class we invent for
     // Arrays.copyOf's Class<? extends T[]> newType parameter. (http://b/2715505)
@@ -1161,20 +1541,25 @@ public class Stubs {
       return;
     }
 
-    apiWriter.print("package ");
-    apiWriter.print(pack.qualifiedName());
-    apiWriter.print(" {\n\n");
+    writePackageApiHead(apiWriter, pack);
 
     ClassInfo[] classes = classList.toArray(new ClassInfo[classList.size()]);
     Arrays.sort(classes, ClassInfo.comparator);
     for (ClassInfo cl : classes) {
-      writeClassApi(apiWriter, cl, notStrippable);
+      writeClassApi(apiWriter, cl, new SortedMembers(cl), notStrippable);
     }
 
     apiWriter.print("}\n\n");
   }
 
-  static void writeClassApi(PrintStream apiWriter, ClassInfo cl, HashSet<ClassInfo> notStrippable) {
+  static void writePackageApiHead(ApiTextWriter apiWriter, PackageInfo pack) {
+    apiWriter.print("package ");
+    apiWriter.print(pack.qualifiedName());
+    apiWriter.print(" {\n\n");
+  }
+
+  static void writeClassApi(ApiTextWriter apiWriter, ClassInfo cl, SortedMembers members,
+      HashSet<ClassInfo> notStrippable) {
     boolean first;
 
     apiWriter.print("  ");
@@ -1204,10 +1589,8 @@ public class Stubs {
       apiWriter.print(cl.realSuperclass().qualifiedName());
     }
 
-    ArrayList<ClassInfo> interfaces = cl.realInterfaces();
-    Collections.sort(interfaces, ClassInfo.comparator);
     first = true;
-    for (ClassInfo iface : interfaces) {
+    for (ClassInfo iface : members.interfaces) {
       if (notStrippable.contains(iface)) {
         if (first) {
           apiWriter.print(" implements");
@@ -1220,36 +1603,28 @@ public class Stubs {
 
     apiWriter.print(" {\n");
 
-    ArrayList<MethodInfo> constructors = cl.constructors();
-    Collections.sort(constructors, MethodInfo.comparator);
-    for (MethodInfo mi : constructors) {
+    for (MethodInfo mi : members.constructors) {
       writeConstructorApi(apiWriter, mi);
     }
 
-    ArrayList<MethodInfo> methods = cl.allSelfMethods();
-    Collections.sort(methods, MethodInfo.comparator);
-    for (MethodInfo mi : methods) {
+    for (MethodInfo mi : members.methods) {
       if (!methodIsOverride(notStrippable, mi)) {
         writeMethodApi(apiWriter, mi);
       }
     }
 
-    ArrayList<FieldInfo> enums = cl.enumConstants();
-    Collections.sort(enums, FieldInfo.comparator);
-    for (FieldInfo fi : enums) {
+    for (FieldInfo fi : members.enumConstants) {
       writeFieldApi(apiWriter, fi, "enum_constant");
     }
 
-    ArrayList<FieldInfo> fields = cl.selfFields();
-    Collections.sort(fields, FieldInfo.comparator);
-    for (FieldInfo fi : fields) {
+    for (FieldInfo fi : members.fields) {
       writeFieldApi(apiWriter, fi, "field");
     }
 
     apiWriter.print("  }\n\n");
   }
 
-  static void writeConstructorApi(PrintStream apiWriter, MethodInfo mi) {
+  static void writeConstructorApi(ApiTextWriter apiWriter, MethodInfo mi) {
     apiWriter.print("    ctor ");
     apiWriter.print(mi.scope());
     if (mi.isDeprecated()) {
@@ -1263,7 +1638,7 @@ public class Stubs {
     apiWriter.print(";\n");
   }
 
-  static void writeMethodApi(PrintStream apiWriter, MethodInfo mi) {
+  static void writeMethodApi(ApiTextWriter apiWriter, MethodInfo mi) {
     apiWriter.print("    method ");
     apiWriter.print(mi.scope());
     if (mi.isStatic()) {
@@ -1285,7 +1660,7 @@ public class Stubs {
     if (mi.returnType() == null) {
       apiWriter.print("void");
     } else {
-      apiWriter.print(fullParameterTypeName(mi, mi.returnType(), false));
+      writeParameterTypeName(apiWriter, mi, mi.returnType(), false);
     }
     apiWriter.print(" ");
     apiWriter.print(mi.name());
@@ -1296,7 +1671,7 @@ public class Stubs {
     apiWriter.print(";\n");
   }
 
-  static void writeParametersApi(PrintStream apiWriter, MethodInfo method,
+  static void writeParametersApi(ApiTextWriter apiWriter, MethodInfo method,
       ArrayList<ParameterInfo> params) {
     apiWriter.print("(");
 
@@ -1304,7 +1679,7 @@ public class Stubs {
       if (pi != params.get(0)) {
         apiWriter.print(", ");
       }
-      apiWriter.print(fullParameterTypeName(method, pi.type(), pi == params.get(params.size()-1)));
+      writeParameterTypeName(apiWriter, method, pi.type(), pi == params.get(params.size()-1));
       // turn on to write the names too
       if (false) {
         apiWriter.print(" ");
@@ -1315,10 +1690,12 @@ public class Stubs {
     apiWriter.print(")");
   }
 
-  static void writeThrowsApi(PrintStream apiWriter, ArrayList<ClassInfo> exceptions) {
+  static void writeThrowsApi(ApiTextWriter apiWriter, ArrayList<ClassInfo> exceptions) {
     // write in a canonical order
-    exceptions = (ArrayList<ClassInfo>) exceptions.clone();
-    Collections.sort(exceptions, ClassInfo.comparator);
+    if (exceptions.size() > 1) {
+      exceptions = (ArrayList<ClassInfo>) exceptions.clone();
+      Collections.sort(exceptions, ClassInfo.comparator);
+    }
     //final int N = exceptions.length;
     boolean first = true;
     for (ClassInfo ex : exceptions) {
@@ -1336,7 +1713,7 @@ public class Stubs {
     }
   }
 
-  static void writeFieldApi(PrintStream apiWriter, FieldInfo fi, String label) {
+  static void writeFieldApi(ApiTextWriter apiWriter, FieldInfo fi, String label) {
     apiWriter.print("    ");
     apiWriter.print(label);
     apiWriter.print(" ");
@@ -1358,7 +1735,7 @@ public class Stubs {
     }
 
     apiWriter.print(" ");
-    apiWriter.print(fi.type().fullName());
+    apiWriter.printTypeName(fi.type(), null);
 
     apiWriter.print(" ");
     apiWriter.print(fi.name());
@@ -1374,80 +1751,50 @@ public class Stubs {
 
     if (val != null) {
       if (val instanceof Integer && "char".equals(fi.type().qualifiedTypeName())) {
-        apiWriter.format(" // 0x%04x '%s'", val,
-            FieldInfo.javaEscapeString("" + ((char)((Integer)val).intValue())));
-      } else if (val instanceof Byte || val instanceof Short || val instanceof Integer) {
-        apiWriter.format(" // 0x%x", val);
+        apiWriter.print(" // 0x").printHex(((Integer) val) & 0xffffffffL, 4).print(" '")
+            .print(FieldInfo.javaEscapeString("" + ((char)((Integer)val).intValue())))
+            .print('\'');
+      } else if (val instanceof Byte) {
+        apiWriter.print(" // 0x").printHex(((Byte) val) & 0xffL, 0);
+      } else if (val instanceof Short) {
+        apiWriter.print(" // 0x").printHex(((Short) val) & 0xffffL, 0);
+      } else if (val instanceof Integer) {
+        apiWriter.print(" // 0x").printHex(((Integer) val) & 0xffffffffL, 0);
       } else if (val instanceof Long) {
-        apiWriter.format(" // 0x%xL", val);
+        apiWriter.print(" // 0x").printHex((Long) val, 0).print('L');
       }
     }
 
     apiWriter.print("\n");
   }
 
-  static void writeKeepList(PrintStream keepListWriter,
-      HashMap<PackageInfo, List<ClassInfo>> allClasses, HashSet<ClassInfo> notStrippable) {
-    // extract the set of packages, sort them by name, and write them out in that order
-    Set<PackageInfo> allClassKeys = allClasses.keySet();
-    PackageInfo[] allPackages = allClassKeys.toArray(new PackageInfo[allClassKeys.size()]);
-    Arrays.sort(allPackages, PackageInfo.comparator);
-
-    for (PackageInfo pack : allPackages) {
-      writePackageKeepList(keepListWriter, pack, allClasses.get(pack), notStrippable);
-    }
-  }
-
-  static void writePackageKeepList(PrintStream keepListWriter, PackageInfo pack,
-      Collection<ClassInfo> classList, HashSet<ClassInfo> notStrippable) {
-    // Work around the bogus "Array" class we invent for
-    // Arrays.copyOf's Class<? extends T[]> newType parameter. (http://b/2715505)
-    if (pack.name().equals(PackageInfo.DEFAULT_PACKAGE)) {
-      return;
-    }
-
-    ClassInfo[] classes = classList.toArray(new ClassInfo[classList.size()]);
-    Arrays.sort(classes, ClassInfo.comparator);
-    for (ClassInfo cl : classes) {
-      writeClassKeepList(keepListWriter, cl, notStrippable);
-    }
-  }
-
   static void writeClassKeepList(PrintStream keepListWriter, ClassInfo cl,
-      HashSet<ClassInfo> notStrippable) {
+      SortedMembers members) {
     keepListWriter.print("-keep class ");
     keepListWriter.print(to$Class(cl.qualifiedName()));
 
     keepListWriter.print(" {\n");
 
-    ArrayList<MethodInfo> constructors = cl.constructors();
-    Collections.sort(constructors, MethodInfo.comparator);
-    for (MethodInfo mi : constructors) {
+    for (MethodInfo mi : members.constructors) {
       writeConstructorKeepList(keepListWriter, mi);
     }
 
     keepListWriter.print("\n");
 
-    ArrayList<MethodInfo> methods = cl.allSelfMethods();
-    Collections.sort(methods, MethodInfo.comparator);
-    for (MethodInfo mi : methods) {
+    for (MethodInfo mi : members.methods) {
       // allSelfMethods is the non-hidden and visible methods. See Doclava.checkLevel.
       writeMethodKeepList(keepListWriter, mi);
     }
 
     keepListWriter.print("\n");
 
-    ArrayList<FieldInfo> enums = cl.enumConstants();
-    Collections.sort(enums, FieldInfo.comparator);
-    for (FieldInfo fi : enums) {
+    for (FieldInfo fi : members.enumConstants) {
       writeFieldKeepList(keepListWriter, fi);
     }
 
     keepListWriter.print("\n");
 
-    ArrayList<FieldInfo> fields = cl.selfFields();
-    Collections.sort(fields, FieldInfo.comparator);
-    for (FieldInfo fi : fields) {
+    for (FieldInfo fi : members.fields) {
       writeFieldKeepList(keepListWriter, fi);
     }
 
@@ -1526,6 +1873,19 @@ public class Stubs {
     keepListWriter.print(";\n");
   }
 
+  /**
+   * Writes {@link #fullParameterTypeName} without building it when the name of the type does not
+   * depend on {@code method}.
+   */
+  static void writeParameterTypeName(ApiTextWriter apiWriter, MethodInfo method, TypeInfo type,
+      boolean isLast) {
+    if (isLast && method.isVarArgs()) {
+      apiWriter.printTypeNameNoDimension(type, method).print("...");
+    } else {
+      apiWriter.printTypeName(type, method);
+    }
+  }
+
   static String fullParameterTypeName(MethodInfo method, TypeInfo type, boolean isLast) {
     String fullTypeName = type.fullName(method.typeVariables());
     if (isLast && method.isVarArgs()) {
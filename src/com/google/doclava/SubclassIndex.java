@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Known subclasses and implementors of every class, computed once from a set of classes.
+ * <p>
+ * A class is a direct subclass of {@code cl} if {@code cl} is its {@link ClassInfo#superclass()},
+ * and an indirect one if it is otherwise {@link ClassInfo#isDerivedFrom(ClassInfo) derived from}
+ * {@code cl}, which includes every class implementing {@code cl} as an interface. Both lists keep
+ * the order of the classes the index was built from.
+ */
+public class SubclassIndex {
+  private static final List<ClassInfo> NONE = Collections.emptyList();
+
+  private final HashMap<String, List<ClassInfo>> mDirect = new HashMap<String, List<ClassInfo>>();
+  private final HashMap<String, List<ClassInfo>> mIndirect =
+      new HashMap<String, List<ClassInfo>>();
+
+  public SubclassIndex(ClassInfo[] classes) {
+    Queue<ClassInfo> toVisit = new ArrayDeque<ClassInfo>();
+    HashSet<String> visited = new HashSet<String>();
+
+    for (ClassInfo cl : classes) {
+      ClassInfo superclass = cl.superclass();
+      if (superclass != null) {
+        add(mDirect, superclass, cl);
+        visited.add(superclass.qualifiedName());
+        toVisit.addAll(superclass.interfaces());
+        if (superclass.superclass() != null) {
+          toVisit.add(superclass.superclass());
+        }
+      }
+      toVisit.addAll(cl.interfaces());
+
+      while (!toVisit.isEmpty()) {
+        ClassInfo ancestor = toVisit.remove();
+        if (!visited.add(ancestor.qualifiedName())) {
+          continue;
+        }
+        add(mIndirect, ancestor, cl);
+        if (ancestor.superclass() != null) {
+          toVisit.add(ancestor.superclass());
+        }
+        toVisit.addAll(ancestor.interfaces());
+      }
+      visited.clear();
+    }
+  }
+
+  private static void add(HashMap<String, List<ClassInfo>> map, ClassInfo ancestor,
+      ClassInfo cl) {
+    List<ClassInfo> list = map.get(ancestor.qualifiedName());
+    if (list == null) {
+      list = new ArrayList<ClassInfo>();
+      map.put(ancestor.qualifiedName(), list);
+    }
+    list.add(cl);
+  }
+
+  /**
+   * @return the classes whose superclass is {@code cl}
+   */
+  public List<ClassInfo> directSubclasses(ClassInfo cl) {
+    List<ClassInfo> list = mDirect.get(cl.qualifiedName());
+    return list != null ? list : NONE;
+  }
+
+  /**
+   * @return the classes derived from {@code cl}, through any chain of superclasses or
+   * interfaces, that are not {@link #directSubclasses(ClassInfo) direct subclasses}
+   */
+  public List<ClassInfo> indirectSubclasses(ClassInfo cl) {
+    List<ClassInfo> list = mIndirect.get(cl.qualifiedName());
+    return list != null ? list : NONE;
+  }
+}
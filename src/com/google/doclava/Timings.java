@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-phase measurements of a doclava run, enabled with {@code -timings <file>}.
+ * <p>
+ * {@link #phase(String)} ends the current phase and starts the next one, so the phases of
+ * {@link Doclava#start} are marked by one call each. For every phase the report records wall
+ * time, CPU time of the whole process, bytes allocated by the calling thread (worker threads are
+ * not included), heap in use at the end of the phase, and the number and size of the files
+ * written. The report is a JSON object with one phase per line. If the file already holds a
+ * report from an earlier run, phases whose wall time grew noticeably are pointed out.
+ */
+public class Timings {
+  /** Wall time growth, in percent, above which a phase is reported as slower than last time. */
+  private static final int REGRESSION_PERCENT = 10;
+
+  /** Phases shorter than this are too noisy to compare between runs. */
+  private static final long MIN_COMPARED_MS = 100;
+
+  private static final Pattern PHASE_LINE =
+      Pattern.compile("\\{\"name\": \"([^\"]*)\", \"wallMs\": (\\d+),");
+
+  private static String sReportFile = null;
+  private static final List<Phase> sPhases = new ArrayList<Phase>();
+  private static Phase sCurrent = null;
+
+  private static final AtomicLong sFilesWritten = new AtomicLong();
+  private static final AtomicLong sBytesWritten = new AtomicLong();
+
+  private static class Phase {
+    final String name;
+    final long startWall = System.nanoTime();
+    final long startCpu = processCpuTime();
+    final long startAllocated = threadAllocatedBytes();
+    final long startFiles = sFilesWritten.get();
+    final long startBytes = sBytesWritten.get();
+    long wallMs;
+    long cpuMs = -1;
+    long allocatedBytes = -1;
+    long heapUsedBytes;
+    long files;
+    long bytes;
+
+    Phase(String name) {
+      this.name = name;
+    }
+
+    void end() {
+      wallMs = (System.nanoTime() - startWall) / 1000000;
+      long cpu = processCpuTime();
+      if (cpu >= 0 && startCpu >= 0) {
+        cpuMs = (cpu - startCpu) / 1000000;
+      }
+      long allocated = threadAllocatedBytes();
+      if (allocated >= 0 && startAllocated >= 0) {
+        allocatedBytes = allocated - startAllocated;
+      }
+      heapUsedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      files = sFilesWritten.get() - startFiles;
+      bytes = sBytesWritten.get() - startBytes;
+    }
+  }
+
+  /**
+   * Turns on the measurements; the report is written to {@code reportFile} by {@link #finish()}.
+   */
+  public static void enable(String reportFile) {
+    sReportFile = reportFile;
+  }
+
+  public static boolean isEnabled() {
+    return sReportFile != null;
+  }
+
+  /**
+   * Ends the current phase, if any, and starts measuring {@code name}.
+   */
+  public static void phase(String name) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (sCurrent != null) {
+      sCurrent.end();
+    }
+    sCurrent = new Phase(name);
+    sPhases.add(sCurrent);
+  }
+
+  /**
+   * Counts {@code file} as written in the current phase. May be called from any thread.
+   */
+  public static void fileWritten(File file) {
+    if (!isEnabled()) {
+      return;
+    }
+    sFilesWritten.incrementAndGet();
+    sBytesWritten.addAndGet(file.length());
+  }
+
+  /**
+   * Ends the last phase, prints a summary and writes the report, comparing it with the report
+   * left in the same file by the previous run.
+   */
+  public static void finish() {
+    if (!isEnabled()) {
+      return;
+    }
+    if (sCurrent != null) {
+      sCurrent.end();
+      sCurrent = null;
+    }
+
+    Map<String, Long> previous = readPreviousReport();
+    for (Phase p : sPhases) {
+      System.out.println("  " + p.name + ": " + p.wallMs + " ms wall, " + p.cpuMs + " ms cpu, "
+          + (p.allocatedBytes / (1024 * 1024)) + " MB allocated, " + p.files + " files");
+      Long before = previous.get(p.name);
+      if (before != null && Math.max(before, p.wallMs) >= MIN_COMPARED_MS
+          && p.wallMs * 100 > before * (100 + REGRESSION_PERCENT)) {
+        System.out.println("    slower than the previous run: " + before + " ms -> " + p.wallMs
+            + " ms");
+      }
+    }
+
+    PrintWriter out = null;
+    try {
+      File file = new File(sReportFile);
+      ClearPage.ensureDirectory(file);
+      out = new PrintWriter(new FileWriter(file));
+      out.println("{\"phases\": [");
+      for (int i = 0; i < sPhases.size(); i++) {
+        Phase p = sPhases.get(i);
+        out.print("  {\"name\": \"" + p.name + "\", \"wallMs\": " + p.wallMs + ", \"cpuMs\": "
+            + p.cpuMs + ", \"allocatedBytes\": " + p.allocatedBytes + ", \"heapUsedBytes\": "
+            + p.heapUsedBytes + ", \"filesWritten\": " + p.files + ", \"bytesWritten\": "
+            + p.bytes);
+        Long before = previous.get(p.name);
+        if (before != null) {
+          out.print(", \"previousWallMs\": " + before);
+        }
+        out.println(i < sPhases.size() - 1 ? "}," : "}");
+      }
+      out.println("]}");
+    } catch (IOException e) {
+      System.err.println("error writing timings: " + sReportFile);
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * @return the wall time of each phase in the report currently in the report file, if any
+   */
+  private static Map<String, Long> readPreviousReport() {
+    Map<String, Long> result = new HashMap<String, Long>();
+    File file = new File(sReportFile);
+    if (!file.exists()) {
+      return result;
+    }
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new FileReader(file));
+      String line;
+      while ((line = in.readLine()) != null) {
+        Matcher m = PHASE_LINE.matcher(line);
+        if (m.find()) {
+          result.put(m.group(1), Long.valueOf(m.group(2)));
+        }
+      }
+    } catch (IOException e) {
+      // nothing to compare with
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {}
+      }
+    }
+    return result;
+  }
+
+  private static long processCpuTime() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private static long threadAllocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private Timings() {} // non-instantiable
+}
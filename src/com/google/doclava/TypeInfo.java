@@ -438,7 +438,9 @@ public class TypeInfo implements Resolvable {
                   mResolutions.add(resolution);
                   allResolved = false;
               } else {
-                  mClass = InfoBuilder.Caches.obtainClass(qualifiedClassName.toString());
+                  mQualifiedTypeName = qualifiedClassName.toString();
+                  mFullName = null;
+                  mClass = InfoBuilder.Caches.obtainClass(mQualifiedTypeName);
               }
           }
       }
@@ -475,6 +477,10 @@ public class TypeInfo implements Resolvable {
    */
   public static Map<String, TypeInfo> getTypeArgumentMapping(TypeInfo generic, TypeInfo typed) {
     Map<String, TypeInfo> map = new HashMap<String, TypeInfo>();
+    if (generic.typeArguments() == null) {
+      // a class that is only referred to, whose type parameters are not known
+      return map;
+    }
     for (int i = 0; i < generic.typeArguments().size(); i++) {
       if (typed.typeArguments() != null && typed.typeArguments().size() > i) {
         map.put(generic.typeArguments().get(i).fullName(), typed.typeArguments().get(i));
@@ -16,15 +16,22 @@
 
 package com.google.doclava.apicheck;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.google.doclava.Errors;
 import com.google.doclava.Errors.ErrorMessage;
@@ -39,7 +46,8 @@ public class ApiCheck {
     for (i = 0; i < allArgs.size(); i++) {
       // flags with one value attached
       String flag = allArgs.get(i);
-      if (flag.equals("-error") || flag.equals("-warning") || flag.equals("-hide")) {
+      if (flag.equals("-error") || flag.equals("-warning") || flag.equals("-hide")
+          || flag.equals("-threads")) {
         String[] arg = new String[2];
         arg[0] = flag;
         arg[1] = allArgs.get(++i);
@@ -62,6 +70,8 @@ public class ApiCheck {
       System.exit(convertToApi(originalArgs[1], originalArgs[2]));
     } else if (originalArgs.length == 3 && "-convert2xml".equals(originalArgs[0])) {
       System.exit(convertToXml(originalArgs[1], originalArgs[2]));
+    } else if (originalArgs.length == 3 && "-convert2bin".equals(originalArgs[0])) {
+      System.exit(convertToBinary(originalArgs[1], originalArgs[2]));
     } else {
       ApiCheck acheck = new ApiCheck();
       Report report = acheck.checkApi(originalArgs);
@@ -81,9 +91,20 @@ public class ApiCheck {
       args.add(a);
     }
 
+    int threads = 1;
     ArrayList<String[]> flags = ApiCheck.parseFlags(args);
     for (String[] a : flags) {
-      if (a[0].equals("-error") || a[0].equals("-warning") || a[0].equals("-hide")) {
+      if (a[0].equals("-threads")) {
+        try {
+          threads = Integer.parseInt(a[1]);
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          System.err.println("Bad argument: " + a[0] + " " + a[1]);
+          return new Report(2, Errors.getErrors());
+        }
+      } else if (a[0].equals("-error") || a[0].equals("-warning") || a[0].equals("-hide")) {
         try {
           int level = -1;
           if (a[0].equals("-error")) {
@@ -101,6 +122,10 @@ public class ApiCheck {
       }
     }
 
+    if (threads > 1) {
+      return checkApiConcurrently(args, threads);
+    }
+
     ApiInfo oldApi;
     ApiInfo newApi;
     ApiInfo oldRemovedApi;
@@ -131,9 +156,66 @@ public class ApiCheck {
     return new Report(Errors.hadError ? 1 : 0, Errors.getErrors());
   }
 
+  /**
+   * Same as the serial check, but parses the four api files at once and compares them one
+   * package per task on a pool of {@code threads} workers.
+   */
+  private Report checkApiConcurrently(ArrayList<String> args, int threads) {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ArrayList<Future<ApiInfo>> parsed = new ArrayList<Future<ApiInfo>>(4);
+      for (int i = 0; i < 4; i++) {
+        final String filename = args.get(i);
+        parsed.add(pool.submit(new Callable<ApiInfo>() {
+          public ApiInfo call() throws ApiParseException {
+            return parseApi(filename);
+          }
+        }));
+      }
+
+      ApiInfo oldApi;
+      ApiInfo newApi;
+      ApiInfo oldRemovedApi;
+      ApiInfo newRemovedApi;
+      try {
+        oldApi = parsed.get(0).get();
+        newApi = parsed.get(1).get();
+        oldRemovedApi = parsed.get(2).get();
+        newRemovedApi = parsed.get(3).get();
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof ApiParseException)) {
+          throw new RuntimeException(e.getCause());
+        }
+        e.getCause().printStackTrace();
+        System.err.println("Error parsing API");
+        return new Report(1, Errors.getErrors());
+      }
+
+      // only run the consistency check if we haven't had XML parse errors
+      if (!Errors.hadError) {
+        oldApi.isConsistent(newApi, pool);
+      }
+
+      if (!Errors.hadError) {
+        oldRemovedApi.isConsistent(newRemovedApi, pool);
+      }
+
+      return new Report(Errors.hadError ? 1 : 0, Errors.getErrors());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
   public static ApiInfo parseApi(String filename) throws ApiParseException {
     InputStream stream = null;
     Throwable textParsingError = null;
+    // snapshots written by -convert2bin are recognized by their header
+    if (BinaryApiFile.isBinaryApi(filename)) {
+      return BinaryApiFile.parseApi(filename);
+    }
     // try it as our format
     try {
       stream = new FileInputStream(filename);
@@ -179,33 +261,30 @@ public class ApiCheck {
 
   public ApiInfo parseApi(URL url) throws ApiParseException {
     InputStream stream = null;
-    // try it as our format
+    ByteBuffer bytes;
     try {
       stream = url.openStream();
+      bytes = BinaryApiFile.readBytes(stream);
     } catch (IOException e) {
       throw new ApiParseException("Could not open stream for parsing: " + url, e);
-    }
-    try {
-      return ApiFile.parseApi(url.toString(), stream);
-    } catch (ApiParseException ignored) {
     } finally {
-      try {
-        stream.close();
-      } catch (IOException ignored) {}
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (IOException ignored) {}
+      }
     }
-    // try it as xml
-    try {
-      stream = url.openStream();
-    } catch (IOException e) {
-      throw new ApiParseException("Could not open stream for parsing: " + url, e);
+    // snapshots written by -convert2bin are recognized by their header
+    if (BinaryApiFile.isBinaryApi(bytes)) {
+      return BinaryApiFile.parseApi(url.toString(), bytes);
     }
+    // try it as our format
     try {
-      return XmlApiFile.parseApi(stream);
-    } finally {
-      try {
-        stream.close();
-      } catch (IOException ignored) {}
+      return ApiFile.parseApi(url.toString(), new ByteArrayInputStream(bytes.array()));
+    } catch (ApiParseException ignored) {
     }
+    // try it as xml
+    return XmlApiFile.parseApi(new ByteArrayInputStream(bytes.array()));
   }
 
   public class Report {
@@ -270,4 +349,31 @@ public class ApiCheck {
     return 0;
   }
 
+  static int convertToBinary(String src, String dst) {
+    ApiInfo api;
+    try {
+      api = parseApi(src);
+    } catch (ApiParseException e) {
+      e.printStackTrace();
+      System.err.println("Error parsing API: " + src);
+      return 1;
+    }
+
+    FileOutputStream out = null;
+    try {
+      out = new FileOutputStream(dst);
+      BinaryApiFile.writeApi(out, api.getPackages().values());
+    } catch (IOException ex) {
+      System.err.println("can't write file: " + dst);
+      return 1;
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ignored) {}
+      }
+    }
+
+    return 0;
+  }
 }
@@ -26,45 +26,28 @@ import com.google.doclava.ParameterInfo;
 import com.google.doclava.SourcePositionInfo;
 import com.google.doclava.TypeInfo;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
 class ApiFile {
 
   public static ApiInfo parseApi(String filename, InputStream stream) throws ApiParseException {
-    final int CHUNK = 1024*1024;
-    int hint = 0;
+    final CharBuffer chars;
     try {
-      hint = stream.available() + CHUNK;
-    } catch (IOException ex) {
-    }
-    if (hint < CHUNK) {
-      hint = CHUNK;
-    }
-    byte[] buf = new byte[hint];
-    int size = 0;
-
-    try {
-      while (true) {
-        if (size == buf.length) {
-          byte[] tmp = new byte[buf.length+CHUNK];
-          System.arraycopy(buf, 0, tmp, 0, buf.length);
-          buf = tmp;
-        }
-        int amt = stream.read(buf, size, (buf.length-size));
-        if (amt < 0) {
-          break;
-        } else {
-          size += amt;
-        }
-      }
+      chars = readChars(stream);
     } catch (IOException ex) {
       throw new ApiParseException("Error reading API file", ex);
     }
 
-    final Tokenizer tokenizer = new Tokenizer(filename, (new String(buf, 0, size)).toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(filename, chars.array(),
+        chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit());
     final ApiInfo api = new ApiInfo();
 
     while (true) {
@@ -85,6 +68,51 @@ class ApiFile {
     return api;
   }
 
+  /** The charset of api files, which {@link com.google.doclava.ApiTextWriter} writes. */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Decodes the whole stream as UTF-8 into a heap {@link CharBuffer}. Files are memory-mapped and
+   * decoded straight from the mapping; other streams are read into a single byte array first.
+   */
+  private static CharBuffer readChars(InputStream stream) throws IOException {
+    if (stream instanceof FileInputStream) {
+      FileChannel channel = ((FileInputStream) stream).getChannel();
+      long size = channel.size() - channel.position();
+      if (size <= Integer.MAX_VALUE) {
+        return UTF_8.decode(
+            channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), size));
+      }
+    }
+
+    final int CHUNK = 1024*1024;
+    int hint = 0;
+    try {
+      hint = stream.available() + CHUNK;
+    } catch (IOException ex) {
+    }
+    if (hint < CHUNK) {
+      hint = CHUNK;
+    }
+    byte[] buf = new byte[hint];
+    int size = 0;
+
+    while (true) {
+      if (size == buf.length) {
+        byte[] tmp = new byte[buf.length+CHUNK];
+        System.arraycopy(buf, 0, tmp, 0, buf.length);
+        buf = tmp;
+      }
+      int amt = stream.read(buf, size, (buf.length-size));
+      if (amt < 0) {
+        break;
+      } else {
+        size += amt;
+      }
+    }
+    return UTF_8.decode(ByteBuffer.wrap(buf, 0, size));
+  }
+
   private static void parsePackage(ApiInfo api, Tokenizer tokenizer)
       throws ApiParseException {
     String token;
@@ -540,10 +568,22 @@ class ApiFile {
     char[] mBuf;
     String mFilename;
     int mPos;
+    int mEnd;
     int mLine = 1;
+    final SymbolTable mSymbols = new SymbolTable();
+
     Tokenizer(String filename, char[] buf) {
+      this(filename, buf, 0, buf.length);
+    }
+
+    /**
+     * Tokenizes {@code buf[start..end)} in place, without copying it.
+     */
+    Tokenizer(String filename, char[] buf, int start, int end) {
       mFilename = filename;
       mBuf = buf;
+      mPos = start;
+      mEnd = end;
     }
 
     public SourcePositionInfo pos() {
@@ -556,7 +596,7 @@ class ApiFile {
 
     boolean eatWhitespace() {
       boolean ate = false;
-      while (mPos < mBuf.length && isspace(mBuf[mPos])) {
+      while (mPos < mEnd && isspace(mBuf[mPos])) {
         if (mBuf[mPos] == '\n') {
           mLine++;
         }
@@ -567,10 +607,10 @@ class ApiFile {
     }
 
     boolean eatComment() {
-      if (mPos+1 < mBuf.length) {
+      if (mPos+1 < mEnd) {
         if (mBuf[mPos] == '/' && mBuf[mPos+1] == '/') {
           mPos += 2;
-          while (mPos < mBuf.length && !isnewline(mBuf[mPos])) {
+          while (mPos < mEnd && !isnewline(mBuf[mPos])) {
             mPos++;
           }
           return true;
@@ -603,7 +643,7 @@ class ApiFile {
 
     public String getToken(boolean parenIsSep) throws ApiParseException {
       eatWhitespaceAndComments();
-      if (mPos >= mBuf.length) {
+      if (mPos >= mEnd) {
         return null;
       }
       final int line = mLine;
@@ -615,7 +655,7 @@ class ApiFile {
         final int STATE_ESCAPE = 1;
         int state = STATE_BEGIN;
         while (true) {
-          if (mPos >= mBuf.length) {
+          if (mPos >= mEnd) {
             throw new ApiParseException("Unexpected end of file for \" starting at " + line, mLine);
           }
           final char k = mBuf[mPos];
@@ -639,14 +679,14 @@ class ApiFile {
           }
         }
       } else if (issep(c, parenIsSep)) {
-        return "" + c;
+        return mSymbols.intern(mBuf, start, 1);
       } else {
         int genericDepth = 0;
         do {
-          while (mPos < mBuf.length && !isspace(mBuf[mPos]) && !issep(mBuf[mPos], parenIsSep)) {
+          while (mPos < mEnd && !isspace(mBuf[mPos]) && !issep(mBuf[mPos], parenIsSep)) {
             mPos++;
           }
-          if (mPos < mBuf.length) {
+          if (mPos < mEnd) {
             if (mBuf[mPos] == '<') {
               genericDepth++;
               mPos++;
@@ -657,12 +697,69 @@ class ApiFile {
               mPos++;
             }
           }
-        } while (mPos < mBuf.length
+        } while (mPos < mEnd
             && ((!isspace(mBuf[mPos]) && !issep(mBuf[mPos], parenIsSep)) || genericDepth != 0));
-        if (mPos >= mBuf.length) {
+        if (mPos >= mEnd) {
           throw new ApiParseException("Unexpected end of file for \" starting at " + line, mLine);
         }
-        return new String(mBuf, start, mPos-start);
+        return mSymbols.intern(mBuf, start, mPos-start);
+      }
+    }
+  }
+
+  /**
+   * Interns identifier and separator tokens straight from the tokenizer's buffer. API files
+   * repeat a small vocabulary (modifiers, keywords, common type names) millions of times, so
+   * each distinct token is only turned into a String once. Lookups don't allocate.
+   */
+  static class SymbolTable {
+    private String[] mTable = new String[4096];
+    private int mSize;
+
+    String intern(char[] buf, int start, int length) {
+      int hash = 0;
+      for (int i = start; i < start + length; i++) {
+        hash = 31 * hash + buf[i];
+      }
+      int mask = mTable.length - 1;
+      int index = hash & mask;
+      String s;
+      while ((s = mTable[index]) != null) {
+        if (s.length() == length && matches(s, buf, start)) {
+          return s;
+        }
+        index = (index + 1) & mask;
+      }
+      s = new String(buf, start, length);
+      mTable[index] = s;
+      if (++mSize * 2 > mTable.length) {
+        rehash();
+      }
+      return s;
+    }
+
+    private static boolean matches(String s, char[] buf, int start) {
+      for (int i = 0; i < s.length(); i++) {
+        if (s.charAt(i) != buf[start + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void rehash() {
+      String[] old = mTable;
+      mTable = new String[old.length * 2];
+      int mask = mTable.length - 1;
+      for (String s : old) {
+        if (s != null) {
+          // String.hashCode() is the same polynomial hash computed in intern()
+          int index = s.hashCode() & mask;
+          while (mTable[index] != null) {
+            index = (index + 1) & mask;
+          }
+          mTable[index] = s;
+        }
       }
     }
   }
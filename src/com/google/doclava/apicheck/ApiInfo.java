@@ -18,10 +18,17 @@ package com.google.doclava.apicheck;
 
 import com.google.doclava.ClassInfo;
 import com.google.doclava.Errors;
+import com.google.doclava.Errors.ErrorMessage;
 import com.google.doclava.PackageInfo;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class ApiInfo {
 
@@ -80,6 +87,71 @@ public class ApiInfo {
     return consistent;
   }
 
+  /**
+   * Like {@link #isConsistent(ApiInfo)}, but compares the packages present in both apis as
+   * separate tasks on {@code executor}. Each task collects its errors privately and they are
+   * merged into {@link Errors} once all the tasks are done, so the reported errors are the same
+   * as for the serial check.
+   */
+  public boolean isConsistent(final ApiInfo otherApi, ExecutorService executor) {
+    boolean consistent = true;
+    List<PackageCheck> checks = new ArrayList<PackageCheck>();
+    for (PackageInfo pInfo : mPackages.values()) {
+      PackageInfo otherInfo = otherApi.getPackages().get(pInfo.name());
+      if (otherInfo != null) {
+        checks.add(new PackageCheck(pInfo, otherInfo));
+      } else {
+        Errors.error(Errors.REMOVED_PACKAGE, pInfo.position(), "Removed package " + pInfo.name());
+        consistent = false;
+      }
+    }
+    for (PackageInfo pInfo : otherApi.mPackages.values()) {
+      if (!mPackages.containsKey(pInfo.name())) {
+        Errors.error(Errors.ADDED_PACKAGE, pInfo.position(), "Added package " + pInfo.name());
+        consistent = false;
+      }
+    }
+
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(checks.size());
+    for (PackageCheck check : checks) {
+      results.add(executor.submit(check));
+    }
+    try {
+      for (int i = 0; i < checks.size(); i++) {
+        if (!results.get(i).get()) {
+          consistent = false;
+        }
+        Errors.addErrors(checks.get(i).mErrors);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    return consistent;
+  }
+
+  private static class PackageCheck implements Callable<Boolean> {
+    private final PackageInfo mOld;
+    private final PackageInfo mNew;
+    Set<ErrorMessage> mErrors;
+
+    PackageCheck(PackageInfo oldInfo, PackageInfo newInfo) {
+      mOld = oldInfo;
+      mNew = newInfo;
+    }
+
+    public Boolean call() {
+      Errors.beginCapture();
+      try {
+        return mOld.isConsistent(mNew);
+      } finally {
+        mErrors = Errors.endCapture();
+      }
+    }
+  }
+
   public HashMap<String, PackageInfo> getPackages() {
     return mPackages;
   }
@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava.apicheck;
+
+import com.google.doclava.AnnotationInstanceInfo;
+import com.google.doclava.ClassInfo;
+import com.google.doclava.Converter;
+import com.google.doclava.FieldInfo;
+import com.google.doclava.MethodInfo;
+import com.google.doclava.PackageInfo;
+import com.google.doclava.ParameterInfo;
+import com.google.doclava.SourcePositionInfo;
+import com.google.doclava.TypeInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A compact binary snapshot of an {@link ApiInfo}, written by {@code ApiCheck -convert2bin} and
+ * picked up automatically by {@link ApiCheck#parseApi(String)}. Loading one skips tokenizing
+ * and SAX parsing entirely, which adds up when many api levels are read on every doc build.
+ * <p>
+ * The file is a header ({@link #MAGIC}, {@link #VERSION}), a table of every distinct string, then
+ * the packages. Counts, flags and string references are unsigned LEB128 varints, a string being
+ * referenced by its index + 1 with 0 meaning null; constant values are stored as fixed-width
+ * big-endian numbers after a one byte tag. Source positions are kept, so errors reported against a
+ * snapshot still point into the file it was converted from.
+ */
+class BinaryApiFile {
+  static final int MAGIC = 0x44415049; // "DAPI"
+  static final int VERSION = 1;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // class flags
+  private static final int PUBLIC = 1 << 0;
+  private static final int PROTECTED = 1 << 1;
+  private static final int PACKAGE_PRIVATE = 1 << 2;
+  private static final int PRIVATE = 1 << 3;
+  private static final int STATIC = 1 << 4;
+  private static final int FINAL = 1 << 5;
+  private static final int ABSTRACT = 1 << 6;
+  private static final int DEPRECATED = 1 << 7;
+  private static final int INTERFACE = 1 << 8;
+  private static final int ORDINARY = 1 << 9;
+  private static final int EXCEPTION = 1 << 10;
+  private static final int ERROR = 1 << 11;
+  private static final int ENUM = 1 << 12;
+  private static final int ANNOTATION = 1 << 13;
+
+  // member flags, sharing the low bits with the class flags
+  private static final int SYNCHRONIZED = 1 << 8;
+  private static final int NATIVE = 1 << 9;
+  private static final int VARARGS = 1 << 10;
+  private static final int TRANSIENT = 1 << 11;
+  private static final int VOLATILE = 1 << 12;
+
+  // constant value tags
+  private static final int VALUE_NULL = 0;
+  private static final int VALUE_BOOLEAN = 1;
+  private static final int VALUE_INT = 2;
+  private static final int VALUE_LONG = 3;
+  private static final int VALUE_FLOAT = 4;
+  private static final int VALUE_DOUBLE = 5;
+  private static final int VALUE_STRING = 6;
+
+  /**
+   * @return true if {@code filename} starts with the snapshot header
+   */
+  public static boolean isBinaryApi(String filename) {
+    FileInputStream stream = null;
+    try {
+      stream = new FileInputStream(filename);
+      byte[] header = new byte[4];
+      int n = 0;
+      while (n < header.length) {
+        int amt = stream.read(header, n, header.length - n);
+        if (amt < 0) {
+          return false;
+        }
+        n += amt;
+      }
+      return ByteBuffer.wrap(header).getInt() == MAGIC;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (IOException ignored) {}
+      }
+    }
+  }
+
+  /**
+   * @return true if {@code buf}, read from its current position, starts with the snapshot header
+   */
+  public static boolean isBinaryApi(ByteBuffer buf) {
+    return buf.remaining() >= 4 && buf.getInt(buf.position()) == MAGIC;
+  }
+
+  /**
+   * Loads the snapshot in {@code filename}, memory-mapping the file rather than reading it.
+   */
+  public static ApiInfo parseApi(String filename) throws ApiParseException {
+    FileInputStream stream;
+    try {
+      stream = new FileInputStream(filename);
+    } catch (IOException e) {
+      throw new ApiParseException("Could not open file for parsing: " + filename, e);
+    }
+    try {
+      FileChannel channel = stream.getChannel();
+      return parseApi(filename, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException e) {
+      throw new ApiParseException("Error reading API file: " + filename, e);
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException ignored) {}
+    }
+  }
+
+  public static ApiInfo parseApi(String filename, ByteBuffer buf) throws ApiParseException {
+    if (!isBinaryApi(buf)) {
+      throw new ApiParseException("Not a binary API file: " + filename);
+    }
+    try {
+      return new Reader(buf).readApi();
+    } catch (BufferUnderflowException e) {
+      throw new ApiParseException("Truncated binary API file: " + filename, e);
+    } catch (IndexOutOfBoundsException e) {
+      throw new ApiParseException("Corrupt binary API file: " + filename, e);
+    }
+  }
+
+  /**
+   * Reads all of {@code stream} into a buffer that {@link #parseApi(String, ByteBuffer)} and
+   * {@link #isBinaryApi(ByteBuffer)} accept.
+   */
+  public static ByteBuffer readBytes(InputStream stream) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[64 * 1024];
+    int amt;
+    while ((amt = stream.read(buf)) >= 0) {
+      bytes.write(buf, 0, amt);
+    }
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  private static class Reader {
+    private final ByteBuffer mBuf;
+    private String[] mStrings;
+
+    Reader(ByteBuffer buf) {
+      mBuf = buf;
+    }
+
+    ApiInfo readApi() throws ApiParseException {
+      mBuf.getInt(); // magic
+      int version = mBuf.getInt();
+      if (version != VERSION) {
+        throw new ApiParseException("Unsupported binary API file version " + version);
+      }
+
+      mStrings = new String[readInt()];
+      for (int i = 0; i < mStrings.length; i++) {
+        byte[] bytes = new byte[readInt()];
+        mBuf.get(bytes);
+        mStrings[i] = new String(bytes, UTF8);
+      }
+
+      ApiInfo api = new ApiInfo();
+      for (int i = readInt(); i > 0; i--) {
+        PackageInfo pkg = new PackageInfo(readString(), readPosition());
+        for (int j = readInt(); j > 0; j--) {
+          readClass(api, pkg);
+        }
+        api.addPackage(pkg);
+      }
+
+      api.resolveSuperclasses();
+      api.resolveInterfaces();
+      return api;
+    }
+
+    private void readClass(ApiInfo api, PackageInfo pkg) {
+      int flags = readInt();
+      String name = readString();
+      String qname = readString();
+      SourcePositionInfo pos = readPosition();
+      ClassInfo cl = new ClassInfo(null/*classDoc*/, ""/*rawCommentText*/, pos,
+          has(flags, PUBLIC), has(flags, PROTECTED), has(flags, PACKAGE_PRIVATE),
+          has(flags, PRIVATE), has(flags, STATIC), has(flags, INTERFACE), has(flags, ABSTRACT),
+          has(flags, ORDINARY), has(flags, EXCEPTION), has(flags, ERROR), has(flags, ENUM),
+          has(flags, ANNOTATION), has(flags, FINAL), false/*isIncluded*/, name, qname,
+          null/*qualifiedTypeName*/, false/*isPrimitive*/);
+      cl.setDeprecated(has(flags, DEPRECATED));
+      cl.setContainingPackage(pkg);
+      api.mapClassToSuper(cl, readString());
+      cl.setTypeInfo(Converter.obtainTypeFromString(qname));
+      cl.setAnnotations(new ArrayList<AnnotationInstanceInfo>());
+      for (int i = readInt(); i > 0; i--) {
+        api.mapClassToInterface(cl, readString());
+      }
+
+      for (int i = readInt(); i > 0; i--) {
+        cl.addConstructor(readMethod(cl, true));
+      }
+      for (int i = readInt(); i > 0; i--) {
+        cl.addMethod(readMethod(cl, false));
+      }
+      for (int i = readInt(); i > 0; i--) {
+        cl.addEnumConstant(readField(cl));
+      }
+      for (int i = readInt(); i > 0; i--) {
+        cl.addField(readField(cl));
+      }
+      pkg.addClass(cl);
+    }
+
+    private MethodInfo readMethod(ClassInfo cl, boolean ctor) {
+      int flags = readInt();
+      String name = readString();
+      TypeInfo returnType = ctor ? cl.asTypeInfo() : Converter.obtainTypeFromString(readString());
+      SourcePositionInfo pos = readPosition();
+      MethodInfo method = new MethodInfo(""/*rawCommentText*/,
+          new ArrayList<TypeInfo>()/*typeParameters*/, name, null/*signature*/, cl, cl,
+          has(flags, PUBLIC), has(flags, PROTECTED), has(flags, PACKAGE_PRIVATE),
+          has(flags, PRIVATE), has(flags, FINAL), has(flags, STATIC), false/*isSynthetic*/,
+          has(flags, ABSTRACT), has(flags, SYNCHRONIZED), has(flags, NATIVE),
+          false/*isAnnotationElement*/, ctor ? "constructor" : "method", null/*flatSignature*/,
+          null/*overriddenMethod*/, returnType, new ArrayList<ParameterInfo>(),
+          new ArrayList<ClassInfo>()/*thrownExceptions*/, pos,
+          new ArrayList<AnnotationInstanceInfo>()/*annotations*/);
+      method.setDeprecated(has(flags, DEPRECATED));
+      for (int i = readInt(); i > 0; i--) {
+        String paramName = readString();
+        String type = readString();
+        method.addParameter(new ParameterInfo(paramName, type,
+            Converter.obtainTypeFromString(type), type.endsWith("..."), readPosition()));
+      }
+      method.setVarargs(has(flags, VARARGS));
+      for (int i = readInt(); i > 0; i--) {
+        method.addException(readString());
+      }
+      return method;
+    }
+
+    private FieldInfo readField(ClassInfo cl) {
+      int flags = readInt();
+      String name = readString();
+      String type = readString();
+      SourcePositionInfo pos = readPosition();
+      Object value = readValue();
+      FieldInfo field = new FieldInfo(name, cl, cl, has(flags, PUBLIC), has(flags, PROTECTED),
+          has(flags, PACKAGE_PRIVATE), has(flags, PRIVATE), has(flags, FINAL), has(flags, STATIC),
+          has(flags, TRANSIENT), has(flags, VOLATILE), false, Converter.obtainTypeFromString(type),
+          "", value, pos, new ArrayList<AnnotationInstanceInfo>());
+      field.setDeprecated(has(flags, DEPRECATED));
+      return field;
+    }
+
+    private Object readValue() {
+      switch (mBuf.get()) {
+        case VALUE_BOOLEAN:
+          return mBuf.get() != 0 ? Boolean.TRUE : Boolean.FALSE;
+        case VALUE_INT:
+          return Integer.valueOf(mBuf.getInt());
+        case VALUE_LONG:
+          return Long.valueOf(mBuf.getLong());
+        case VALUE_FLOAT:
+          return Float.valueOf(mBuf.getFloat());
+        case VALUE_DOUBLE:
+          return Double.valueOf(mBuf.getDouble());
+        case VALUE_STRING:
+          return readString();
+        default:
+          return null;
+      }
+    }
+
+    private SourcePositionInfo readPosition() {
+      String file = readString();
+      if (file == null) {
+        return null;
+      }
+      int line = readInt();
+      int column = readInt();
+      return new SourcePositionInfo(file, line, column);
+    }
+
+    private String readString() {
+      int index = readInt();
+      return index == 0 ? null : mStrings[index - 1];
+    }
+
+    private int readInt() {
+      int result = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = mBuf.get();
+        result |= (b & 0x7f) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return result;
+    }
+
+    private static boolean has(int flags, int flag) {
+      return (flags & flag) != 0;
+    }
+  }
+
+  /**
+   * Writes {@code packages} as a snapshot. Packages and classes are written in name order, and
+   * members in the order they were added to their class, so converting the same api twice gives
+   * identical files.
+   */
+  public static void writeApi(OutputStream out, Collection<PackageInfo> packages)
+      throws IOException {
+    Writer writer = new Writer();
+    TreeMap<String, PackageInfo> sorted = new TreeMap<String, PackageInfo>();
+    for (PackageInfo pkg : packages) {
+      sorted.put(pkg.name(), pkg);
+    }
+    writer.writeInt(sorted.size());
+    for (PackageInfo pkg : sorted.values()) {
+      writer.writeString(pkg.name());
+      writer.writePosition(pkg.position());
+      TreeMap<String, ClassInfo> classes = new TreeMap<String, ClassInfo>(pkg.allClasses());
+      writer.writeInt(classes.size());
+      for (ClassInfo cl : classes.values()) {
+        writer.writeClass(cl);
+      }
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    out.write(header.array());
+
+    Writer strings = new Writer();
+    strings.writeInt(writer.mStrings.size());
+    for (String s : writer.mStrings) {
+      byte[] bytes = s.getBytes(UTF8);
+      strings.writeInt(bytes.length);
+      strings.mOut.write(bytes, 0, bytes.length);
+    }
+    strings.mOut.writeTo(out);
+    writer.mOut.writeTo(out);
+  }
+
+  private static class Writer {
+    final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+    final List<String> mStrings = new ArrayList<String>();
+    private final HashMap<String, Integer> mStringIndex = new HashMap<String, Integer>();
+    private final ByteBuffer mScratch = ByteBuffer.allocate(9);
+
+    void writeClass(ClassInfo cl) {
+      int flags = flag(cl.isPublic(), PUBLIC) | flag(cl.isProtected(), PROTECTED)
+          | flag(cl.isPackagePrivate(), PACKAGE_PRIVATE) | flag(cl.isPrivate(), PRIVATE)
+          | flag(cl.isStatic(), STATIC) | flag(cl.isFinal(), FINAL)
+          | flag(cl.isAbstract(), ABSTRACT) | flag(cl.isDeprecated(), DEPRECATED)
+          | flag(cl.isInterface(), INTERFACE) | flag(cl.isOrdinaryClass(), ORDINARY)
+          | flag(cl.isException(), EXCEPTION) | flag(cl.isError(), ERROR)
+          | flag(cl.isEnum(), ENUM) | flag(cl.isAnnotation(), ANNOTATION);
+      writeInt(flags);
+      writeString(cl.name());
+      writeString(cl.qualifiedName());
+      writePosition(cl.position());
+      writeString(cl.realSuperclass() != null ? cl.realSuperclass().qualifiedName() : null);
+      writeInt(cl.realInterfaces().size());
+      for (ClassInfo iface : cl.realInterfaces()) {
+        writeString(iface.qualifiedName());
+      }
+
+      writeInt(cl.allConstructors().size());
+      for (MethodInfo ctor : cl.allConstructors()) {
+        writeMethod(ctor, true);
+      }
+      writeInt(cl.allSelfMethods().size());
+      for (MethodInfo method : cl.allSelfMethods()) {
+        writeMethod(method, false);
+      }
+      writeInt(cl.enumConstants().size());
+      for (FieldInfo field : cl.enumConstants()) {
+        writeField(field);
+      }
+      writeInt(cl.allSelfFields().size());
+      for (FieldInfo field : cl.allSelfFields()) {
+        writeField(field);
+      }
+    }
+
+    void writeMethod(MethodInfo method, boolean ctor) {
+      int flags = flag(method.isPublic(), PUBLIC) | flag(method.isProtected(), PROTECTED)
+          | flag(method.isPackagePrivate(), PACKAGE_PRIVATE) | flag(method.isPrivate(), PRIVATE)
+          | flag(method.isStatic(), STATIC) | flag(method.isFinal(), FINAL)
+          | flag(method.isAbstract(), ABSTRACT) | flag(method.isDeprecated(), DEPRECATED)
+          | flag(method.isSynchronized(), SYNCHRONIZED) | flag(method.isNative(), NATIVE)
+          | flag(method.isVarArgs(), VARARGS);
+      writeInt(flags);
+      writeString(method.name());
+      if (!ctor) {
+        writeString(method.returnType().fullName());
+      }
+      writePosition(method.position());
+      writeInt(method.parameters().size());
+      for (ParameterInfo param : method.parameters()) {
+        writeString(param.name());
+        writeString(param.typeName());
+        writePosition(param.position());
+      }
+      writeInt(method.thrownExceptions().size());
+      for (ClassInfo exception : method.thrownExceptions()) {
+        writeString(exception.qualifiedName());
+      }
+    }
+
+    void writeField(FieldInfo field) {
+      int flags = flag(field.isPublic(), PUBLIC) | flag(field.isProtected(), PROTECTED)
+          | flag(field.isPackagePrivate(), PACKAGE_PRIVATE) | flag(field.isPrivate(), PRIVATE)
+          | flag(field.isStatic(), STATIC) | flag(field.isFinal(), FINAL)
+          | flag(field.isDeprecated(), DEPRECATED) | flag(field.isTransient(), TRANSIENT)
+          | flag(field.isVolatile(), VOLATILE);
+      writeInt(flags);
+      writeString(field.name());
+      writeString(field.type().fullName());
+      writePosition(field.position());
+      writeValue(field.constantValue());
+    }
+
+    void writeValue(Object value) {
+      if (value == null) {
+        mScratch.put((byte) VALUE_NULL);
+      } else if (value instanceof Boolean) {
+        mScratch.put((byte) VALUE_BOOLEAN);
+        mScratch.put((byte) (((Boolean) value) ? 1 : 0));
+      } else if (value instanceof Integer) {
+        mScratch.put((byte) VALUE_INT);
+        mScratch.putInt((Integer) value);
+      } else if (value instanceof Long) {
+        mScratch.put((byte) VALUE_LONG);
+        mScratch.putLong((Long) value);
+      } else if (value instanceof Float) {
+        mScratch.put((byte) VALUE_FLOAT);
+        mScratch.putFloat((Float) value);
+      } else if (value instanceof Double) {
+        mScratch.put((byte) VALUE_DOUBLE);
+        mScratch.putDouble((Double) value);
+      } else {
+        mOut.write(VALUE_STRING);
+        writeString(value.toString());
+        return;
+      }
+      mOut.write(mScratch.array(), 0, mScratch.position());
+      mScratch.clear();
+    }
+
+    void writePosition(SourcePositionInfo pos) {
+      if (pos == null) {
+        writeString(null);
+        return;
+      }
+      writeString(pos.file);
+      writeInt(pos.line);
+      writeInt(pos.column);
+    }
+
+    void writeString(String s) {
+      if (s == null) {
+        writeInt(0);
+        return;
+      }
+      Integer index = mStringIndex.get(s);
+      if (index == null) {
+        mStrings.add(s);
+        index = mStrings.size();
+        mStringIndex.put(s, index);
+      }
+      writeInt(index);
+    }
+
+    void writeInt(int value) {
+      while ((value & ~0x7f) != 0) {
+        mOut.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      mOut.write(value);
+    }
+
+    private static int flag(boolean set, int flag) {
+      return set ? flag : 0;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava.parser;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+
+import java.util.ArrayList;
+
+/**
+ * Passes on the tokens of a {@link JavaLexer}, leaving out everything between the braces of
+ * method, constructor and initializer bodies. The parser then sees every body as an empty
+ * block, so only declarations, annotations and comments get parsed and end up in the parse
+ * tree.
+ * <p>
+ * Bodies are found by matching braces: a '{' that opens neither a class, interface, enum or
+ * annotation body, nor part of a field initializer, an annotation argument or an annotation
+ * element default, is a body. The lexer has already made tokens of strings, characters and
+ * comments, so braces inside those are never counted.
+ */
+public class DeclarationTokenSource implements TokenSource {
+    /** The body of a class, interface or annotation, or the members of an enum. */
+    private static final int CLASS_BODY = 0;
+    /** The constants at the start of an enum body, up to the first ';'. */
+    private static final int ENUM_CONSTANTS = 1;
+
+    private final TokenSource mSource;
+    // the open bodies, innermost last; the file itself counts as a class body
+    private final ArrayList<Integer> mScopes = new ArrayList<Integer>();
+
+    // the state of the declaration being read in the innermost scope
+    private int mTypeKeyword;   // CLASS, INTERFACE or ENUM once one was seen, else 0
+    private boolean mInitializer; // after the '=' of a field or the default of an element
+    private int mNesting;       // open parentheses, brackets and braces of the declaration
+    private int mPrevious;      // the type of the previous token on the default channel
+
+    // the open braces of the body being left out, or 0
+    private int mSkipped;
+
+    public DeclarationTokenSource(TokenSource source) {
+        mSource = source;
+        mScopes.add(CLASS_BODY);
+    }
+
+    public Token nextToken() {
+        while (true) {
+            Token token = mSource.nextToken();
+            int type = token.getType();
+            if (type == Token.EOF) {
+                return token;
+            }
+
+            if (mSkipped > 0) {
+                if (type == JavaParser.LBRACE) {
+                    mSkipped++;
+                } else if (type == JavaParser.RBRACE && --mSkipped == 0) {
+                    endDeclaration();
+                    mPrevious = type;
+                    return token;
+                }
+                continue;
+            }
+
+            if (token.getChannel() == Token.DEFAULT_CHANNEL) {
+                declare(type);
+                mPrevious = type;
+            }
+            return token;
+        }
+    }
+
+    public String getSourceName() {
+        return mSource.getSourceName();
+    }
+
+    /**
+     * Follows one token of a declaration, starting to leave out a body if the token opens one.
+     */
+    private void declare(int type) {
+        if (mInitializer || mNesting > 0) {
+            switch (type) {
+                case JavaParser.LPAREN:
+                case JavaParser.LBRACKET:
+                case JavaParser.LBRACE:
+                    mNesting++;
+                    break;
+                case JavaParser.RPAREN:
+                case JavaParser.RBRACKET:
+                case JavaParser.RBRACE:
+                    mNesting--;
+                    break;
+                case JavaParser.SEMI:
+                    if (mNesting == 0) {
+                        endDeclaration();
+                    }
+                    break;
+            }
+            return;
+        }
+
+        int scope = mScopes.get(mScopes.size() - 1);
+        switch (type) {
+            case JavaParser.LPAREN:
+            case JavaParser.LBRACKET:
+                mNesting++;
+                break;
+            case JavaParser.EQ:
+                mInitializer = true;
+                break;
+            case JavaParser.DEFAULT:
+                // the default value of an annotation element, as in "int value() default 1;"
+                mInitializer = mPrevious == JavaParser.RPAREN;
+                break;
+            case JavaParser.CLASS:
+                // not a class literal, as in "Foo.class"
+                if (mPrevious != JavaParser.DOT) {
+                    mTypeKeyword = type;
+                }
+                break;
+            case JavaParser.INTERFACE:
+            case JavaParser.ENUM:
+                mTypeKeyword = type;
+                break;
+            case JavaParser.SEMI:
+                if (scope == ENUM_CONSTANTS) {
+                    mScopes.set(mScopes.size() - 1, CLASS_BODY);
+                }
+                endDeclaration();
+                break;
+            case JavaParser.LBRACE:
+                if (mTypeKeyword == JavaParser.ENUM) {
+                    mScopes.add(ENUM_CONSTANTS);
+                } else if (mTypeKeyword != 0 || scope == ENUM_CONSTANTS) {
+                    // a class body, or the body of an enum constant
+                    mScopes.add(CLASS_BODY);
+                } else {
+                    // a method, constructor or initializer body
+                    mSkipped = 1;
+                }
+                endDeclaration();
+                break;
+            case JavaParser.RBRACE:
+                if (mScopes.size() > 1) {
+                    mScopes.remove(mScopes.size() - 1);
+                }
+                endDeclaration();
+                break;
+        }
+    }
+
+    private void endDeclaration() {
+        mTypeKeyword = 0;
+        mInitializer = false;
+        mNesting = 0;
+    }
+}
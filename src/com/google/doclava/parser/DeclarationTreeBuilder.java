@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava.parser;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.debug.ParseTreeBuilder;
+import org.antlr.runtime.tree.ParseTree;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link ParseTreeBuilder} that keeps only as much of the parse tree as is needed to build
+ * declarations.
+ * <p>
+ * The statements of a block are dropped as soon as the block has been parsed, leaving just its
+ * braces, so no method body is held in memory for longer than it takes to parse it. If a
+ * {@link Listener} is given, each package, import and type declaration at the top of the file
+ * is handed to it as soon as it has been parsed, and then dropped from the tree, so the tree
+ * never holds more than one of them.
+ * <p>
+ * The comments before the first token of the file are kept with that token, as the comments
+ * before any other token are. A ParseTreeBuilder drops them, as the parser first looks at the
+ * file inside a decision, where hidden tokens are taken to be backtracked over.
+ */
+public class DeclarationTreeBuilder extends ParseTreeBuilder {
+    /**
+     * Receives the declarations at the top of a file as they are parsed.
+     */
+    public interface Listener {
+        /**
+         * @param tree The tree of the declaration. Its root is a packageDeclaration,
+         * importDeclaration or typeDeclaration, or the annotations of the package.
+         */
+        void declarationParsed(ParseTree tree);
+    }
+
+    private final Listener mListener;
+    // the rules being parsed, innermost last, as they are in the tree
+    private final ArrayList<ParseTree> mRules = new ArrayList<ParseTree>();
+    private ParseTree mCreated;
+    private int mBacktracking = 0;
+    // the hidden tokens before the first token, until it is consumed outside a decision
+    private ArrayList<Token> mInitialHiddenTokens = new ArrayList<Token>();
+    // whether any token has been consumed, if only while backtracking
+    private boolean mConsumed = false;
+
+    /**
+     * @param grammarName The name of the start rule.
+     * @param listener The listener of the top declarations, or null to keep them in the tree.
+     */
+    public DeclarationTreeBuilder(String grammarName, Listener listener) {
+        super(grammarName);
+        mListener = listener;
+        mRules.add(getTree());
+    }
+
+    @Override
+    public ParseTree create(Object payload) {
+        mCreated = super.create(payload);
+        return mCreated;
+    }
+
+    @Override
+    public void consumeToken(Token token) {
+        super.consumeToken(token);
+        mConsumed = true;
+        if (mBacktracking > 0 || mInitialHiddenTokens == null) {
+            return;
+        }
+        // the first token consumed outside a decision is the first token of the file
+        if (!mInitialHiddenTokens.isEmpty()) {
+            mCreated.hiddenTokens = mInitialHiddenTokens;
+        }
+        mInitialHiddenTokens = null;
+    }
+
+    @Override
+    public void consumeHiddenToken(Token token) {
+        super.consumeHiddenToken(token);
+        if (!mConsumed) {
+            mInitialHiddenTokens.add(token);
+        }
+    }
+
+    @Override
+    public void enterDecision(int d, boolean couldBacktrack) {
+        super.enterDecision(d, couldBacktrack);
+        mBacktracking++;
+    }
+
+    @Override
+    public void exitDecision(int i) {
+        super.exitDecision(i);
+        mBacktracking--;
+    }
+
+    @Override
+    public void enterRule(String filename, String ruleName) {
+        super.enterRule(filename, ruleName);
+        if (mBacktracking > 0) {
+            return;
+        }
+        mRules.add(mCreated);
+    }
+
+    @Override
+    public void exitRule(String filename, String ruleName) {
+        super.exitRule(filename, ruleName);
+        if (mBacktracking > 0) {
+            return;
+        }
+        ParseTree rule = mRules.remove(mRules.size() - 1);
+
+        // keep the braces of a block, but none of its statements
+        if ("block".equals(ruleName)) {
+            for (int i = rule.getChildCount() - 2; i > 0; i--) {
+                rule.deleteChild(i);
+            }
+        }
+
+        // mRules holds the root and the compilationUnit while a top declaration is parsed
+        if (mListener != null && mRules.size() == 2) {
+            ParseTree parent = mRules.get(1);
+            mListener.declarationParsed(rule);
+            parent.deleteChild(parent.getChildCount() - 1);
+        }
+    }
+}
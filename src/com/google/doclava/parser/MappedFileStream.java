@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava.parser;
+
+import org.antlr.runtime.ANTLRStringStream;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A UTF-8 source file as an ANTLR char stream, in place of {@code ANTLRFileStream}.
+ * <p>
+ * Large files are memory mapped, smaller ones are read straight into a byte buffer, and either
+ * way the bytes are decoded into a char buffer. Both buffers are pooled, so parsing many files
+ * allocates few. ASCII is copied byte for byte, and only the rest of a file from its first
+ * non-ASCII byte goes through a UTF-8 decoder. Malformed input is replaced, as an
+ * {@code InputStreamReader} would.
+ * <p>
+ * Tokens read their text from the stream's chars lazily, so {@link #release()} must not be
+ * called until nothing will ask the tokens of the file for their text any more.
+ */
+public class MappedFileStream extends ANTLRStringStream {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // files at least this large are mapped rather than read; mapping many small files costs
+    // more than it saves, and mappings are only let go of by the garbage collector
+    private static final long MAP_THRESHOLD = 256 * 1024;
+    // buffers larger than this are left to the garbage collector rather than pooled
+    private static final int MAX_POOLED = 1024 * 1024;
+    private static final int MAX_POOL_SIZE = 32;
+
+    private static final ConcurrentLinkedQueue<char[]> sChars =
+            new ConcurrentLinkedQueue<char[]>();
+    private static final ConcurrentLinkedQueue<ByteBuffer> sBytes =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+
+    public MappedFileStream(String fileName) throws IOException {
+        this.name = fileName;
+
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(fileName + ": file too large");
+            }
+
+            if (size >= MAP_THRESHOLD) {
+                decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            } else {
+                ByteBuffer bytes = obtainBytes((int) size);
+                try {
+                    while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                    }
+                    bytes.flip();
+                    decode(bytes);
+                } finally {
+                    releaseBytes(bytes);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String getSourceName() {
+        return name;
+    }
+
+    /**
+     * Returns the chars of this stream to the pool. The stream, and the text of tokens that have
+     * not been asked for it yet, must not be used afterwards.
+     */
+    public void release() {
+        char[] chars = data;
+        data = null;
+        if (chars != null && chars.length <= MAX_POOLED && sChars.size() < MAX_POOL_SIZE) {
+            sChars.offer(chars);
+        }
+    }
+
+    private void decode(ByteBuffer bytes) {
+        int size = bytes.remaining();
+        // UTF-8 never decodes to more chars than it has bytes
+        data = obtainChars(size);
+
+        int i = 0;
+        int start = bytes.position();
+        while (i < size) {
+            byte b = bytes.get(start + i);
+            if (b < 0) {
+                break;
+            }
+            data[i++] = (char) b;
+        }
+
+        if (i < size) {
+            bytes.position(start + i);
+            CharBuffer chars = CharBuffer.wrap(data, i, data.length - i);
+            CharsetDecoder decoder = UTF8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            i = chars.position();
+        }
+        n = i;
+    }
+
+    private static char[] obtainChars(int size) {
+        char[] chars = sChars.poll();
+        if (chars == null || chars.length < size) {
+            // a pooled buffer that is too small is dropped for a new one that fits
+            chars = new char[Math.max(size, 16 * 1024)];
+        }
+        return chars;
+    }
+
+    private static ByteBuffer obtainBytes(int size) {
+        ByteBuffer bytes = sBytes.poll();
+        if (bytes == null || bytes.capacity() < size) {
+            bytes = ByteBuffer.allocate(Math.max(size, 16 * 1024));
+        }
+        bytes.clear();
+        bytes.limit(size);
+        return bytes;
+    }
+
+    private static void releaseBytes(ByteBuffer bytes) {
+        if (bytes.capacity() <= MAX_POOLED && sBytes.size() < MAX_POOL_SIZE) {
+            sBytes.offer(bytes);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes api.txt and removed.txt of the same sources twice, once with javadoc and the Doclava
+ * doclet and once with Doclava2, which builds its classes with InfoBuilder instead, and checks
+ * that the files come out the same.
+ * <p>
+ * Doclava2 is run as a build would run it: with -declarationsonly, which leaves the method
+ * bodies out and writes the same files, and with -threads set to the number of processors
+ * unless another number is given. Parsing the bodies takes it longer than javadoc on most
+ * trees, doclava's own sources among them.
+ * <p>
+ * Each tool runs in a JVM of its own, with the class path of this one, so both start cold as
+ * they would in a build. Every round runs both; the best wall time of each is reported, along
+ * with how many times faster Doclava2 is. The first lines that differ are printed if the files
+ * are not the same, and the exit status is then 1. The default sources are
+ * {@link #CORPUS}.
+ * <p>
+ * Both tools are given the same -stubpackages, -showAnnotation, -bootclasspath and -classpath
+ * options, if any. Without -stubpackages, the API is that of every class the sources refer
+ * to, those read from the class path included.
+ * <p>
+ * usage: ApiComparison [-rounds &lt;rounds&gt;] [-out &lt;dir&gt;] [-threads &lt;threads&gt;]
+ * [-stubpackages &lt;pkg&gt;:&lt;pkg&gt;...] [-showAnnotation &lt;annotation&gt;]
+ * [-bootclasspath &lt;path&gt;] [-classpath &lt;path&gt;] [&lt;file or directory&gt; ...]
+ */
+public class ApiComparison {
+  private static final String CORPUS = "test/doclava/sample/benchmark";
+  private static final String[] API_FILES = { "api.txt", "removed.txt" };
+  private static final int MAX_DIFFERENCES = 10;
+
+  public static void main(String[] args) throws Exception {
+    int rounds = 3;
+    String out = "build/compare-api";
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<String> shared = new ArrayList<String>();
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-out".equals(args[i])) {
+        out = args[++i];
+      } else if ("-threads".equals(args[i])) {
+        threads = Integer.parseInt(args[++i]);
+      } else if ("-stubpackages".equals(args[i]) || "-showAnnotation".equals(args[i])
+          || "-bootclasspath".equals(args[i]) || "-classpath".equals(args[i])) {
+        shared.add(args[i]);
+        shared.add(args[++i]);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      paths.add(CORPUS);
+    }
+
+    List<String> files = new ArrayList<String>();
+    for (String path : paths) {
+      addSources(new File(path), files);
+    }
+    File javadocDir = new File(out, "javadoc");
+    File doclava2Dir = new File(out, "doclava2");
+    javadocDir.mkdirs();
+    doclava2Dir.mkdirs();
+    File fileList = new File(out, "files");
+    PrintWriter list = new PrintWriter(fileList, "UTF-8");
+    try {
+      for (String file : files) {
+        list.println(file);
+      }
+    } finally {
+      list.close();
+    }
+
+    String classPath = classPath();
+    List<String> javadoc = new ArrayList<String>(Arrays.asList(
+        "com.google.doclava.Doclava",
+        "-doclet", "com.google.doclava.Doclava",
+        "-docletpath", classPath,
+        "-quiet",
+        "-nodocs",
+        "-api", new File(javadocDir, "api.txt").getPath(),
+        "-removedApi", new File(javadocDir, "removed.txt").getPath()));
+    javadoc.addAll(shared);
+    javadoc.addAll(files);
+    List<String> doclava2 = new ArrayList<String>(Arrays.asList(
+        "com.google.doclava.Doclava2",
+        "-threads", String.valueOf(threads),
+        "-declarationsonly",
+        "-api", new File(doclava2Dir, "api.txt").getPath(),
+        "-removedApi", new File(doclava2Dir, "removed.txt").getPath()));
+    doclava2.addAll(shared);
+    doclava2.add(fileList.getPath());
+
+    System.out.println(files.size() + " files, " + rounds + " rounds, doclava2 -threads "
+        + threads + " -declarationsonly");
+    long javadocNanos = Long.MAX_VALUE;
+    long doclava2Nanos = Long.MAX_VALUE;
+    for (int i = 0; i < rounds; i++) {
+      javadocNanos = Math.min(javadocNanos, run(classPath, javadoc));
+      doclava2Nanos = Math.min(doclava2Nanos, run(classPath, doclava2));
+    }
+
+    boolean same = true;
+    for (String name : API_FILES) {
+      same &= compare(new File(javadocDir, name), new File(doclava2Dir, name));
+    }
+
+    System.out.println(String.format("%-12s %12s", "tool", "ms"));
+    System.out.println(String.format("%-12s %12.0f", "javadoc", javadocNanos / 1e6));
+    System.out.println(String.format("%-12s %12.0f", "doclava2", doclava2Nanos / 1e6));
+    System.out.println(String.format("speedup %.2fx", (double) javadocNanos / doclava2Nanos));
+    if (!same) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs {@code args} in a JVM of its own and returns its wall time, in nanoseconds.
+   */
+  private static long run(String classPath, List<String> args) throws Exception {
+    List<String> command = new ArrayList<String>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    command.add("-cp");
+    command.add(classPath);
+    command.addAll(args);
+
+    long start = System.nanoTime();
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    // the output is only shown when the tool fails, but must be read for it not to block
+    StringBuilder output = new StringBuilder();
+    BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        output.append(line).append('\n');
+      }
+    } finally {
+      in.close();
+    }
+    int status = process.waitFor();
+    long nanos = System.nanoTime() - start;
+    if (status != 0) {
+      System.out.print(output);
+      throw new IllegalStateException(args.get(0) + " exited with status " + status);
+    }
+    return nanos;
+  }
+
+  /**
+   * Prints whether two files are the same and, if not, the first lines where they differ.
+   */
+  private static boolean compare(File expected, File actual) throws IOException {
+    List<String> expectedLines = readLines(expected);
+    List<String> actualLines = readLines(actual);
+    if (expectedLines.equals(actualLines)) {
+      System.out.println(actual.getName() + ": same, " + expectedLines.size() + " lines");
+      return true;
+    }
+
+    System.out.println(actual.getName() + ": different");
+    int differences = 0;
+    int lines = Math.max(expectedLines.size(), actualLines.size());
+    for (int i = 0; i < lines && differences < MAX_DIFFERENCES; i++) {
+      String a = i < expectedLines.size() ? expectedLines.get(i) : null;
+      String b = i < actualLines.size() ? actualLines.get(i) : null;
+      if (a == null ? b != null : !a.equals(b)) {
+        System.out.println("  line " + (i + 1) + ":");
+        System.out.println("    javadoc:  " + (a != null ? a : "<end of file>"));
+        System.out.println("    doclava2: " + (b != null ? b : "<end of file>"));
+        differences++;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    if (!file.exists()) {
+      return lines;
+    }
+    BufferedReader in = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      in.close();
+    }
+    return lines;
+  }
+
+  /**
+   * The class path of this JVM, with the JDK's tools.jar added for javadoc if it is not on it.
+   */
+  private static String classPath() {
+    String classPath = System.getProperty("java.class.path");
+    File tools = new File(new File(System.getProperty("java.home")).getParentFile(),
+        "lib/tools.jar");
+    if (tools.exists() && !classPath.contains(tools.getPath())) {
+      classPath += File.pathSeparator + tools.getPath();
+    }
+    return classPath;
+  }
+
+  private static void addSources(File file, List<String> files) {
+    if (file.isDirectory()) {
+      File[] children = file.listFiles();
+      Arrays.sort(children);
+      for (File child : children) {
+        addSources(child, files);
+      }
+    } else if (file.getName().endsWith(".java")) {
+      files.add(file.getPath());
+    }
+  }
+}
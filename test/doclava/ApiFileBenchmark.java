@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.Stubs;
+import com.google.doclava.apicheck.ApiCheck;
+import com.google.doclava.apicheck.ApiInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collection;
+
+/**
+ * Measures reading an api file, as apicheck does, on a {@link SyntheticApi} of 50,000 members
+ * by default, written as text, as XML by {@link Stubs#writeXml} and as a binary snapshot, as
+ * {@code ApiCheck -convert2bin} writes it.
+ * <p>
+ * "read" only reads the text file and decodes it to a String, the copying the tokenizer used to
+ * start with; it is the floor the other rows can be compared to. "parse file" is
+ * {@link ApiCheck#parseApi(String)}, which maps the file and tokenizes it in place, and
+ * "parse url" is {@link ApiCheck#parseApi(URL)}, which reads the stream into one array first.
+ * "xml file" and "binary file" are ApiCheck#parseApi(String) on the other two files; as in
+ * apicheck, the XML file is only parsed as XML once parsing it as text has failed. Each row
+ * reports the time per round, the throughput in bytes of the file read and the bytes allocated
+ * per member; the model built, which is the same for every format, is part of the allocation.
+ * Every api parsed is checked against the synthetic api it was written from.
+ * <p>
+ * usage: ApiFileBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-classes &lt;classes&gt;] [-members &lt;members per class&gt;]
+ */
+public class ApiFileBenchmark {
+  private static final String[] BENCHMARKS =
+      { "read", "parse file", "parse url", "xml file", "binary file" };
+
+  public static void main(String[] args) throws Exception {
+    int warmup = 10;
+    int rounds = 10;
+    int classes = 500;
+    int members = 100;
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-classes".equals(args[i])) {
+        classes = Integer.parseInt(args[++i]);
+      } else if ("-members".equals(args[i])) {
+        members = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    String text = SyntheticApi.text(classes, members);
+    File file = SyntheticApi.write(classes, members);
+    ApiInfo api = ApiCheck.parseApi(file.getPath());
+    File xml = File.createTempFile("synthetic-", ".xml");
+    xml.deleteOnExit();
+    PrintStream xmlWriter = new PrintStream(xml, "UTF-8");
+    Stubs.writeXml(xmlWriter, api.getPackages().values());
+    xmlWriter.close();
+    File binary = File.createTempFile("synthetic-", ".api");
+    binary.deleteOnExit();
+    writeBinary(binary, api);
+    File[] files = { file, file, file, xml, binary };
+
+    for (int benchmark = 1; benchmark < BENCHMARKS.length; benchmark++) {
+      if (!text.equals(write((ApiInfo) run(benchmark, files[benchmark])))) {
+        System.out.println("the api parsed by " + BENCHMARKS[benchmark]
+            + " is not the synthetic api it was written from");
+        System.exit(1);
+      }
+    }
+
+    long total = (long) classes * members;
+    System.out.println(classes + " classes, " + total + " members, " + file.length()
+        + " bytes of text, " + xml.length() + " of XML, " + binary.length() + " of binary, "
+        + warmup + " warmup rounds, " + rounds + " measured rounds");
+    System.out.println(String.format("%-26s %12s %14s %14s",
+        "benchmark", "ms/round", "MB/s", "bytes/member"));
+
+    for (int benchmark = 0; benchmark < BENCHMARKS.length; benchmark++) {
+      for (int i = 0; i < warmup; i++) {
+        run(benchmark, files[benchmark]);
+      }
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        run(benchmark, files[benchmark]);
+      }
+      long nanos = System.nanoTime() - start;
+      allocated = allocatedBytes() - allocated;
+      System.out.println(String.format("%-26s %12.2f %14.1f %14s",
+          BENCHMARKS[benchmark],
+          nanos / 1e6 / rounds,
+          files[benchmark].length() * rounds / (nanos / 1e9) / (1 << 20),
+          allocated < 0 ? "n/a" : String.valueOf(allocated / (total * rounds))));
+    }
+  }
+
+  private static Object run(int benchmark, File file) throws Exception {
+    switch (benchmark) {
+      case 0:
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+      case 2:
+        return new ApiCheck().parseApi(file.toURI().toURL());
+      default:
+        return ApiCheck.parseApi(file.getPath());
+    }
+  }
+
+  /**
+   * Writes {@code api} as {@code ApiCheck -convert2bin} does; the writer is not public.
+   */
+  private static void writeBinary(File file, ApiInfo api) throws Exception {
+    Method writeApi = Class.forName("com.google.doclava.apicheck.BinaryApiFile")
+        .getDeclaredMethod("writeApi", OutputStream.class, Collection.class);
+    writeApi.setAccessible(true);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      writeApi.invoke(null, out, api.getPackages().values());
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String write(ApiInfo api) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Stubs.writeApi(new PrintStream(bytes), api.getPackages().values());
+    return bytes.toString("UTF-8");
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
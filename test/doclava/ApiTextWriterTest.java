@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.ApiTextWriter;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public class ApiTextWriterTest extends TestCase {
+  /** The size of the writer's char buffer, where a surrogate pair can be split. */
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final String PAIR = "\ud83d\ude00";
+
+  public void testAsciiAndMultibyte() throws Exception {
+    assertSameAsString("field public static final java.lang.String NAME = \"name\";\n");
+    assertSameAsString("caf\u00e9 \u0800 \uffff \u00ff\u07ff " + PAIR + " \udbff\udfff");
+  }
+
+  public void testSurrogatePairAcrossBufferBoundary() throws Exception {
+    for (int offset = BUFFER_SIZE - 3; offset <= BUFFER_SIZE + 1; offset++) {
+      assertSameAsString(ascii(offset) + PAIR + "\u00e9" + ascii(10));
+      assertSameAsString(ascii(offset) + PAIR + PAIR + PAIR);
+      assertSameAsString(ascii(2 * BUFFER_SIZE - 1) + "\u00e9" + ascii(offset) + PAIR);
+    }
+  }
+
+  public void testUnpairedSurrogates() throws Exception {
+    assertSameAsString(ascii(BUFFER_SIZE - 1) + "\ud83d" + "x");
+    assertSameAsString(ascii(BUFFER_SIZE - 1) + "\ud83d" + "\ud83d" + "\ude00");
+    assertSameAsString(ascii(BUFFER_SIZE) + "\ude00" + "x");
+    assertSameAsString("\ude00\ud83d");
+    assertSameAsString(ascii(BUFFER_SIZE - 1) + "\ud83d");
+  }
+
+  /**
+   * Checks that the writer encodes {@code text} as {@link String#getBytes(String)} does, however
+   * it is split into calls.
+   */
+  private static void assertSameAsString(String text) throws Exception {
+    byte[] expected = text.getBytes("UTF-8");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ApiTextWriter writer = new ApiTextWriter(out);
+    writer.print(text);
+    writer.close();
+    assertTrue(Arrays.equals(expected, out.toByteArray()));
+
+    out = new ByteArrayOutputStream();
+    writer = new ApiTextWriter(out);
+    for (int i = 0; i < text.length(); i++) {
+      writer.print(text.charAt(i));
+    }
+    writer.close();
+    assertTrue(Arrays.equals(expected, out.toByteArray()));
+
+    // split in the middle of the text, which may be in the middle of a pair
+    out = new ByteArrayOutputStream();
+    writer = new ApiTextWriter(out);
+    writer.print(text, 0, text.length() / 2);
+    writer.flush();
+    writer.print(text, text.length() / 2, text.length());
+    writer.close();
+    assertTrue(Arrays.equals(expected, out.toByteArray()));
+  }
+
+  private static String ascii(int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) ('a' + i % 26);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.Stubs;
+import com.google.doclava.apicheck.ApiInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures writing api.txt, by {@link Stubs#writeApi}, on a {@link SyntheticApi} of 50,000
+ * members by default. writeApi writes each class with the same code as the api files of
+ * {@code -api} and {@code -removedApi}, through an {@code ApiTextWriter}; only the choice of
+ * classes, made from a javadoc model, is left out.
+ * <p>
+ * Some rounds are run first to warm up the JIT and are not counted; then the measured rounds
+ * report the time per round, members written per second and the bytes allocated per member.
+ * The text is written to memory, so no I/O is measured. The first text written is checked
+ * against the synthetic api it was parsed from.
+ * <p>
+ * usage: ApiWriterBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-classes &lt;classes&gt;] [-members &lt;members per class&gt;]
+ */
+public class ApiWriterBenchmark {
+  public static void main(String[] args) throws Exception {
+    int warmup = 20;
+    int rounds = 20;
+    int classes = 500;
+    int members = 100;
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-classes".equals(args[i])) {
+        classes = Integer.parseInt(args[++i]);
+      } else if ("-members".equals(args[i])) {
+        members = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    String text = SyntheticApi.text(classes, members);
+    ApiInfo api = SyntheticApi.parse(classes, members);
+    if (!text.equals(write(api, text.length()).toString("UTF-8"))) {
+      System.out.println("the api written is not the synthetic api it was parsed from");
+      System.exit(1);
+    }
+
+    long total = (long) classes * members;
+    System.out.println(classes + " classes, " + total + " members, " + text.length()
+        + " chars, " + warmup + " warmup rounds, " + rounds + " measured rounds");
+    System.out.println(String.format("%-26s %12s %14s %14s",
+        "benchmark", "ms/round", "members/s", "bytes/member"));
+
+    for (int i = 0; i < warmup; i++) {
+      write(api, text.length());
+    }
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      write(api, text.length());
+    }
+    long nanos = System.nanoTime() - start;
+    allocated = allocatedBytes() - allocated;
+
+    // the output buffer, which the writer does not allocate, is not counted
+    allocated -= (long) text.length() * rounds;
+    System.out.println(String.format("%-26s %12.2f %14.0f %14s",
+        "writeapi",
+        nanos / 1e6 / rounds,
+        total * rounds / (nanos / 1e9),
+        allocated < 0 ? "n/a" : String.valueOf(allocated / (total * rounds))));
+  }
+
+  private static ByteArrayOutputStream write(ApiInfo api, int size) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+    Stubs.writeApi(new PrintStream(bytes), api.getPackages().values());
+    return bytes;
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.clearsilver.jsilver.JSilver;
+import com.google.clearsilver.jsilver.data.Data;
+import com.google.clearsilver.jsilver.resourceloader.InMemoryResourceLoader;
+import com.google.doclava.BuildCache;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+public class BuildCacheTest extends TestCase {
+  private static final List<String> NO_DIRS = Collections.emptyList();
+
+  private File mDir;
+  private File mPage;
+  private Data mData;
+
+  public void setUp() throws Exception {
+    mDir = Files.createTempDirectory("buildcache").toFile();
+    mPage = new File(mDir, "page.html");
+    Files.write(mPage.toPath(), "page".getBytes("UTF-8"));
+    mData = new JSilver(new InMemoryResourceLoader()).createData();
+    mData.setValue("class.name", "Example");
+  }
+
+  public void tearDown() {
+    for (File file : mDir.listFiles()) {
+      file.delete();
+    }
+    mDir.delete();
+  }
+
+  public void testWrittenPageIsUpToDateNextRun() {
+    BuildCache cache = new BuildCache(mDir.getPath());
+    assertFalse(cache.isUpToDate(mPage, "class.cs", mData, NO_DIRS));
+    cache.written(mPage);
+    cache.save();
+
+    assertTrue(new BuildCache(mDir.getPath()).isUpToDate(mPage, "class.cs", mData, NO_DIRS));
+  }
+
+  public void testFailedPageIsWrittenAgainNextRun() {
+    BuildCache cache = new BuildCache(mDir.getPath());
+    assertFalse(cache.isUpToDate(mPage, "class.cs", mData, NO_DIRS));
+    // the page could not be written, so written() is not called
+    cache.save();
+
+    assertFalse(new BuildCache(mDir.getPath()).isUpToDate(mPage, "class.cs", mData, NO_DIRS));
+  }
+
+  public void testChangedDataIsNotUpToDate() {
+    BuildCache cache = new BuildCache(mDir.getPath());
+    cache.isUpToDate(mPage, "class.cs", mData, NO_DIRS);
+    cache.written(mPage);
+    cache.save();
+
+    mData.setValue("class.name", "Changed");
+    assertFalse(new BuildCache(mDir.getPath()).isUpToDate(mPage, "class.cs", mData, NO_DIRS));
+  }
+}
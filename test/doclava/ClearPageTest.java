@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.ClearPage;
+import com.google.doclava.JarUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+public class ClearPageTest extends TestCase {
+  private File mDir;
+  private String mOutputDir;
+
+  public void setUp() throws Exception {
+    mDir = Files.createTempDirectory("clearpage").toFile();
+    mOutputDir = ClearPage.outputDir;
+    ClearPage.outputDir = new File(mDir, "out").getPath();
+  }
+
+  public void tearDown() throws Exception {
+    ClearPage.outputDir = mOutputDir;
+    ClearPage.hardLinkFiles = false;
+    delete(mDir);
+  }
+
+  public void testCopyOverLinkLeavesSourceAlone() throws Exception {
+    File source = write("htmldir/style.css", "the source");
+    File other = write("other/style.css", "another, longer file");
+
+    ClearPage.hardLinkFiles = true;
+    ClearPage.copyFile(false, source, "assets/style.css");
+    File dest = new File(ClearPage.outputDir, "assets/style.css");
+    if (!Files.isSameFile(source.toPath(), dest.toPath())) {
+      return; // the file system cannot link, so there is nothing to write through
+    }
+
+    // a later run without hard links copies another file to the same place
+    ClearPage.hardLinkFiles = false;
+    ClearPage.copyFile(false, other, "assets/style.css");
+
+    assertEquals("the source", read(source));
+    assertEquals("another, longer file", read(dest));
+  }
+
+  public void testJarAssetOverLinkLeavesSourceAlone() throws Exception {
+    File source = write("htmldir/style.css", "the source");
+    File jar = new File(mDir, "assets.jar");
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+    try {
+      out.putNextEntry(new JarEntry("templates/assets/style.css"));
+      out.write("the bundled asset".getBytes("UTF-8"));
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+
+    ClearPage.hardLinkFiles = true;
+    ClearPage.copyFile(false, source, "assets/style.css");
+    File dest = new File(ClearPage.outputDir, "assets/style.css");
+    if (!Files.isSameFile(source.toPath(), dest.toPath())) {
+      return;
+    }
+
+    JarFile jarFile = new JarFile(jar);
+    try {
+      JarUtils.copyResourcesToDirectory(jarFile, "templates/assets",
+          ClearPage.outputDir + "/assets");
+    } finally {
+      jarFile.close();
+    }
+
+    assertEquals("the source", read(source));
+    assertEquals("the bundled asset", read(dest));
+  }
+
+  private File write(String path, String text) throws Exception {
+    File file = new File(mDir, path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), text.getBytes("UTF-8"));
+    return file;
+  }
+
+  private static String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
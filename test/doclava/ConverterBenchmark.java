@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.Converter;
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.LanguageVersion;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.Type;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DocumentationTool;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures the type cache of {@link Converter} on the types javadoc hands out for a source tree,
+ * doclava's own sources by default. This class is the doclet javadoc runs.
+ * <p>
+ * Javadoc shares the instances of classes and primitive types, but makes a new instance of a
+ * parameterized type, type variable, wildcard or array each time a signature is asked for. Every
+ * round asks the members of every class for their types again, as the conversion does, and looks
+ * each up in the cache: a shared instance is a hit by identity, and a new one is a hit on its
+ * structural key. "fetch" only asks javadoc for the types, the cost the other rows include;
+ * "obtaintype" looks them up through Converter's cache, and "string key" as it used to, by a
+ * String joining the type with its arguments and bounds. The cache is private, so obtainType is
+ * called by reflection, which adds a few ns to each of its lookups. Converting the whole tree,
+ * which makes every type once and is where the misses are, can only be done once in a JVM, so it
+ * is timed once. Last, the number of types the cache holds by instance is printed; it should
+ * not grow with the rounds.
+ * <p>
+ * usage: ConverterBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-sources &lt;directory&gt;]
+ */
+public class ConverterBenchmark {
+  private static int sWarmup = 40;
+  private static int sRounds = 40;
+
+  public static void main(String[] args) throws Exception {
+    String sources = "src";
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        sWarmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        sRounds = Integer.parseInt(args[++i]);
+      } else if ("-sources".equals(args[i])) {
+        sources = args[++i];
+      } else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    DocumentationTool javadoc = ToolProvider.getSystemDocumentationTool();
+    StandardJavaFileManager files = javadoc.getStandardFileManager(null, null, null);
+    List<String> options =
+        Arrays.asList("-quiet", "-private", "-classpath", System.getProperty("java.class.path"));
+    boolean success = javadoc.getTask(null, files, null, ConverterBenchmark.class, options,
+        files.getJavaFileObjectsFromFiles(sources(new File(sources)))).call();
+    files.close();
+    if (!success) {
+      System.exit(1);
+    }
+  }
+
+  public static LanguageVersion languageVersion() {
+    return LanguageVersion.JAVA_1_5;
+  }
+
+  public static boolean start(RootDoc root) throws Exception {
+    ClassDoc[] classes = root.classes();
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    Converter.makeInfo(root);
+    long nanos = System.nanoTime() - start;
+    allocated = allocatedBytes() - allocated;
+
+    List<Type> uses = types(classes);
+    List<Type> again = types(classes);
+    int shared = 0;
+    HashMap<String, Type> distinct = new HashMap<String, Type>();
+    for (int i = 0; i < uses.size(); i++) {
+      if (uses.get(i) == again.get(i)) {
+        shared++;
+      }
+      distinct.put(stringKey(uses.get(i)), uses.get(i));
+    }
+
+    System.out.println(classes.length + " classes, " + uses.size() + " type uses, " + shared
+        + " of shared instances, " + distinct.size() + " distinct types, " + sWarmup
+        + " warmup rounds, " + sRounds + " measured rounds");
+    System.out.println(String.format("%-26s %12s %14s %14s",
+        "benchmark", "ms/round", "ns/use", "bytes/use"));
+    System.out.println(String.format("%-26s %12.2f %14.0f %14s",
+        "makeinfo (once)",
+        nanos / 1e6,
+        (double) nanos / uses.size(),
+        allocated < 0 ? "n/a" : String.valueOf(allocated / uses.size())));
+
+    Method obtainType = Converter.class.getDeclaredMethod("obtainType", Type.class);
+    obtainType.setAccessible(true);
+    for (int benchmark = 0; benchmark < 3; benchmark++) {
+      for (int i = 0; i < sWarmup; i++) {
+        round(benchmark, classes, obtainType, distinct);
+      }
+      allocated = allocatedBytes();
+      start = System.nanoTime();
+      for (int i = 0; i < sRounds; i++) {
+        round(benchmark, classes, obtainType, distinct);
+      }
+      nanos = System.nanoTime() - start;
+      allocated = allocatedBytes() - allocated;
+      long total = (long) uses.size() * sRounds;
+      System.out.println(String.format("%-26s %12.2f %14.0f %14s",
+          benchmark == 0 ? "fetch" : benchmark == 1 ? "obtaintype" : "string key",
+          nanos / 1e6 / sRounds,
+          (double) nanos / total,
+          allocated < 0 ? "n/a" : String.valueOf(allocated / total)));
+    }
+    System.out.println(instances() + " types held by instance");
+    return true;
+  }
+
+  /**
+   * @return the size of the map the type cache keeps types by instance in
+   */
+  private static int instances() throws Exception {
+    Field types = Converter.class.getDeclaredField("mTypes");
+    types.setAccessible(true);
+    Object cache = types.get(null);
+    Field byInstance = cache.getClass().getDeclaredField("mByInstance");
+    byInstance.setAccessible(true);
+    return ((Map<?, ?>) byInstance.get(cache)).size();
+  }
+
+  /**
+   * Asks javadoc for the types of {@code classes} and, for benchmark 1 and 2, looks each up.
+   */
+  private static void round(int benchmark, ClassDoc[] classes, Method obtainType,
+      HashMap<String, Type> distinct) throws Exception {
+    List<Type> uses = types(classes);
+    if (benchmark == 1) {
+      for (Type t : uses) {
+        if (obtainType.invoke(null, t) == null) {
+          throw new AssertionError(t);
+        }
+      }
+    } else if (benchmark == 2) {
+      for (Type t : uses) {
+        if (distinct.get(stringKey(t)) == null) {
+          throw new AssertionError(t);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the types in the signatures of {@code classes}, fetched from javadoc anew
+   */
+  private static List<Type> types(ClassDoc[] classes) {
+    List<Type> types = new ArrayList<Type>();
+    for (ClassDoc cl : classes) {
+      types.add(cl);
+      if (cl.superclassType() != null) {
+        types.add(cl.superclassType());
+      }
+      types.addAll(Arrays.asList(cl.interfaceTypes()));
+      types.addAll(Arrays.asList(cl.typeParameters()));
+      for (FieldDoc field : cl.fields(false)) {
+        types.add(field.type());
+      }
+      for (MethodDoc method : cl.methods(false)) {
+        types.add(method.returnType());
+        types.addAll(Arrays.asList(method.typeParameters()));
+        for (Parameter parameter : method.parameters()) {
+          types.add(parameter.type());
+        }
+        types.addAll(Arrays.asList(method.thrownExceptionTypes()));
+      }
+      for (ConstructorDoc constructor : cl.constructors(false)) {
+        for (Parameter parameter : constructor.parameters()) {
+          types.add(parameter.type());
+        }
+        types.addAll(Arrays.asList(constructor.thrownExceptionTypes()));
+      }
+    }
+    return types;
+  }
+
+  /**
+   * The key Converter's type cache used before it had structural keys.
+   */
+  private static String stringKey(Type t) {
+    String keyString = t.getClass().getName() + "/" + t.toString() + "/";
+    if (t.asParameterizedType() != null) {
+      keyString += t.asParameterizedType().toString() + "/";
+      if (t.asParameterizedType().typeArguments() != null) {
+        for (Type ty : t.asParameterizedType().typeArguments()) {
+          keyString += ty.toString() + "/";
+        }
+      }
+    } else {
+      keyString += "NoParameterizedType//";
+    }
+    if (t.asTypeVariable() != null) {
+      keyString += t.asTypeVariable().toString() + "/";
+      if (t.asTypeVariable().bounds() != null) {
+        for (Type ty : t.asTypeVariable().bounds()) {
+          keyString += ty.toString() + "/";
+        }
+      }
+    } else {
+      keyString += "NoTypeVariable//";
+    }
+    if (t.asWildcardType() != null) {
+      keyString += t.asWildcardType().toString() + "/";
+      if (t.asWildcardType().superBounds() != null) {
+        for (Type ty : t.asWildcardType().superBounds()) {
+          keyString += ty.toString() + "/";
+        }
+      }
+      if (t.asWildcardType().extendsBounds() != null) {
+        for (Type ty : t.asWildcardType().extendsBounds()) {
+          keyString += ty.toString() + "/";
+        }
+      }
+    } else {
+      keyString += "NoWildCardType//";
+    }
+    return keyString;
+  }
+
+  private static List<File> sources(File dir) {
+    List<File> sources = new ArrayList<File>();
+    File[] children = dir.listFiles();
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        sources.addAll(sources(child));
+      } else if (child.getName().endsWith(".java")) {
+        sources.add(child);
+      }
+    }
+    return sources;
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
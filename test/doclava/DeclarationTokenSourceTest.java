@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.InfoBuilder;
+import com.google.doclava.parser.DeclarationTokenSource;
+import com.google.doclava.parser.JavaLexer;
+
+import junit.framework.TestCase;
+
+import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+
+public class DeclarationTokenSourceTest extends TestCase {
+  private static final String SAMPLE = "test/doclava/sample/Declarations.java";
+
+  public void tearDown() {
+    InfoBuilder.setDeclarationsOnly(false);
+    InfoBuilder.Caches.clear();
+  }
+
+  public void testSameClassInfo() {
+    String full = parse(false);
+    String declarations = parse(true);
+    assertTrue(full.contains("Class: doclava.sample.Declarations"));
+    assertEquals(full, declarations);
+  }
+
+  public void testSameClassInfoFromWholeTree() {
+    // on several threads, parseFiles collects the declarations of a file before building them
+    String streamed = parse(false);
+    InfoBuilder.Caches.clear();
+
+    PrintStream out = System.out;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(bytes));
+    try {
+      InfoBuilder builder = new InfoBuilder(SAMPLE);
+      InfoBuilder.parseFiles(Collections.singletonList(builder), 2);
+      InfoBuilder.resolve();
+      InfoBuilder.printClassInfo(builder.getRootClass());
+    } finally {
+      System.setOut(out);
+    }
+    assertEquals(streamed, bytes.toString());
+  }
+
+  public void testBodiesLeftOut() throws Exception {
+    String tokens = tokens(new DeclarationTokenSource(lexer()));
+    assertFalse(tokens.contains("ArrayList<T>()"));
+    assertFalse(tokens.contains("mValue=value"));
+    assertTrue(tokens.contains("publicvoidrun(){}"));
+    assertTrue(tokens.contains("static{}"));
+    assertTrue(tokens.contains("VALUES={1,2,3};"));
+    assertTrue(tokens.contains("publicintvalue(){}"));
+    assertTrue(tokens.contains("default{\"a\",\"b\"};"));
+    assertTrue(tokens.length() < tokens(lexer()).length());
+  }
+
+  /**
+   * Parses the sample and returns what {@link InfoBuilder#printClassInfo} prints of it.
+   */
+  private String parse(boolean declarationsOnly) {
+    InfoBuilder.Caches.clear();
+    InfoBuilder.setDeclarationsOnly(declarationsOnly);
+
+    PrintStream out = System.out;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(bytes));
+    try {
+      InfoBuilder builder = new InfoBuilder(SAMPLE);
+      builder.parseFile();
+      InfoBuilder.resolve();
+      InfoBuilder.printClassInfo(builder.getRootClass());
+    } finally {
+      System.setOut(out);
+    }
+    return bytes.toString();
+  }
+
+  private static JavaLexer lexer() throws Exception {
+    return new JavaLexer(new ANTLRFileStream(SAMPLE, "UTF8"));
+  }
+
+  /**
+   * Returns the text of the default channel tokens of {@code source}, without spaces.
+   */
+  private static String tokens(TokenSource source) {
+    StringBuilder text = new StringBuilder();
+    for (Token token = source.nextToken(); token.getType() != Token.EOF;
+        token = source.nextToken()) {
+      if (token.getChannel() == Token.DEFAULT_CHANNEL) {
+        text.append(token.getText());
+      }
+    }
+    return text.toString();
+  }
+}
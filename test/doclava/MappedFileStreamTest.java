@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.parser.MappedFileStream;
+
+import junit.framework.TestCase;
+
+import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.CharStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+public class MappedFileStreamTest extends TestCase {
+  public void testAscii() throws Exception {
+    assertSameChars("test/doclava/sample/Declarations.java");
+  }
+
+  public void testNonAscii() throws Exception {
+    // ASCII, then two, three and four byte sequences, then a malformed byte
+    assertSameChars(write(new byte[] {
+        'a', 'b', (byte) 0xc3, (byte) 0xa9, (byte) 0xe2, (byte) 0x82, (byte) 0xac,
+        (byte) 0xf0, (byte) 0x9f, (byte) 0x98, (byte) 0x80, (byte) 0xff, 'z' }));
+  }
+
+  public void testLargeFileIsMapped() throws Exception {
+    byte[] bytes = new byte[512 * 1024];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ('a' + i % 26);
+    }
+    bytes[bytes.length - 2] = (byte) 0xc3;
+    bytes[bytes.length - 1] = (byte) 0xa9;
+    assertSameChars(write(bytes));
+  }
+
+  public void testPooledBuffer() throws Exception {
+    // a released buffer is reused by the next stream, which must not see its old contents
+    MappedFileStream first = new MappedFileStream(write("a longer file".getBytes("UTF-8")));
+    first.release();
+    assertSameChars(write("short".getBytes("UTF-8")));
+  }
+
+  private static void assertSameChars(String fileName) throws Exception {
+    CharStream expected = new ANTLRFileStream(fileName, "UTF8");
+    MappedFileStream actual = new MappedFileStream(fileName);
+    assertEquals(fileName, actual.getSourceName());
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.substring(0, expected.size() - 1),
+        actual.substring(0, actual.size() - 1));
+    actual.release();
+  }
+
+  private static String write(byte[] bytes) throws Exception {
+    File file = File.createTempFile("stream", ".java");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+    return file.getPath();
+  }
+}
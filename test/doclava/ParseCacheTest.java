@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.InfoBuilder;
+import com.google.doclava.ParseCache;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+public class ParseCacheTest extends TestCase {
+  private static final String SAMPLE = "test/doclava/sample/Declarations.java";
+  private static final String UNUSED_KEY = "0123456789abcdef0123456789abcdef01234567";
+
+  private File mDir;
+
+  public void setUp() throws Exception {
+    mDir = Files.createTempDirectory("parsecache").toFile();
+  }
+
+  public void tearDown() {
+    InfoBuilder.setParseCache(null);
+    InfoBuilder.Caches.clear();
+    for (File file : mDir.listFiles()) {
+      file.delete();
+    }
+    mDir.delete();
+  }
+
+  public void testSameClassInfoFromParseCache() {
+    String parsed = parse(SAMPLE, null);
+
+    ParseCache first = new ParseCache(mDir.getPath());
+    assertEquals(parsed, parse(SAMPLE, first));
+    assertEquals(0, first.loadedCount());
+    assertEquals(1, first.parsedCount());
+    assertEquals(1, mDir.list().length);
+
+    ParseCache second = new ParseCache(mDir.getPath());
+    assertEquals(parsed, parse(SAMPLE, second));
+    assertEquals(1, second.loadedCount());
+    assertEquals(0, second.parsedCount());
+  }
+
+  public void testFileWithErrorsIsNotRecorded() throws Exception {
+    File source = new File(mDir, "Broken.java");
+    Files.write(source.toPath(),
+        "package broken; public class Broken { int x; } #".getBytes("UTF-8"));
+
+    ParseCache cache = new ParseCache(mDir.getPath());
+    parse(source.getPath(), cache);
+    assertEquals(0, cache.parsedCount());
+    assertEquals(1, mDir.list().length);
+
+    parse(source.getPath(), cache);
+    assertEquals(0, cache.loadedCount());
+  }
+
+  public void testPruneOnlyDeletesUnusedRecords() throws Exception {
+    File unused = write(UNUSED_KEY);
+    File other = write("notes.txt");
+    File upper = write(UNUSED_KEY.toUpperCase());
+
+    ParseCache cache = new ParseCache(mDir.getPath());
+    parse(SAMPLE, cache);
+    String used = cache.key(SAMPLE);
+    cache.prune();
+
+    assertFalse(unused.exists());
+    assertTrue(other.exists());
+    assertTrue(upper.exists());
+    assertTrue(new File(mDir, used).exists());
+  }
+
+  public void testNoPruneWithoutAsking() throws Exception {
+    File unused = write(UNUSED_KEY);
+
+    ParseCache cache = new ParseCache(mDir.getPath());
+    parse(SAMPLE, cache);
+
+    assertTrue(unused.exists());
+  }
+
+  private File write(String name) throws Exception {
+    File file = new File(mDir, name);
+    Files.write(file.toPath(), "something else".getBytes("UTF-8"));
+    return file;
+  }
+
+  /**
+   * Parses {@code filename} through {@code cache}, if not null, and returns what
+   * {@link InfoBuilder#printClassInfo} prints of it.
+   */
+  private static String parse(String filename, ParseCache cache) {
+    InfoBuilder.Caches.clear();
+    InfoBuilder.setParseCache(cache);
+
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(bytes));
+    // the syntax errors of a broken file are not what is tested
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      InfoBuilder builder = new InfoBuilder(filename);
+      builder.parseFile();
+      InfoBuilder.resolve();
+      if (builder.getRootClass() != null) {
+        InfoBuilder.printClassInfo(builder.getRootClass());
+      }
+    } finally {
+      System.setOut(out);
+      System.setErr(err);
+    }
+    return bytes.toString();
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.InfoBuilder;
+import com.google.doclava.parser.DeclarationTokenSource;
+import com.google.doclava.parser.DeclarationTreeBuilder;
+import com.google.doclava.parser.JavaLexer;
+import com.google.doclava.parser.JavaParser;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.antlr.runtime.debug.BlankDebugEventListener;
+import org.antlr.runtime.debug.DebugEventListener;
+import org.antlr.runtime.debug.ParseTreeBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the throughput of the lexer, the parser and InfoBuilder, the front end of Doclava2.
+ * <p>
+ * Each benchmark goes over every file of the corpus once per round. Some rounds are run first
+ * to warm up the JIT and are not counted; then the measured rounds report the time per round,
+ * files and tokens per second, and the bytes allocated per file. All but the InfoBuilder
+ * benchmarks parse from text already read into memory, so they measure no I/O. The default
+ * corpus is {@link #CORPUS}: generics heavy, annotation heavy and comment heavy sources.
+ * <p>
+ * The "parsefiles" benchmarks run {@link InfoBuilder#parseFiles} on the whole corpus, as
+ * Doclava2 does, once for each number of threads in {@code -threads}, which follows the name
+ * after a slash; "parsefiles-declarations" does so with
+ * {@link InfoBuilder#setDeclarationsOnly} set. Only the calling thread's allocation
+ * can be counted, so it is left out for more than one thread. {@code -copies} makes a corpus
+ * of the size of a large tree, of that many copies of the files, each copy in packages of its
+ * own; doclava's 72 sources 70 times over, {@code -copies 70 src}, are 5,040 files.
+ * <p>
+ * usage: ParserBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-only &lt;benchmark&gt;] [-threads &lt;threads,...&gt;] [-copies &lt;copies&gt;]
+ * [&lt;file or directory&gt; ...]
+ */
+public class ParserBenchmark {
+  private static final String CORPUS = "test/doclava/sample/benchmark";
+
+  private abstract static class Benchmark {
+    final String name;
+
+    Benchmark(String name) {
+      this.name = name;
+    }
+
+    abstract void run(Source source) throws Exception;
+  }
+
+  private static class Source {
+    final String fileName;
+    final char[] text;
+    final int tokens;
+
+    Source(String fileName) throws IOException {
+      this.fileName = fileName;
+      this.text = read(fileName);
+      this.tokens = countTokens(lexer(this));
+    }
+  }
+
+  private static final Benchmark[] BENCHMARKS = {
+    new Benchmark("lexer") {
+      void run(Source source) {
+        countTokens(lexer(source));
+      }
+    },
+    new Benchmark("lexer-declarations") {
+      void run(Source source) {
+        countTokens(new DeclarationTokenSource(lexer(source)));
+      }
+    },
+    new Benchmark("parser") {
+      void run(Source source) throws Exception {
+        parse(lexer(source), new BlankDebugEventListener());
+      }
+    },
+    new Benchmark("parser-parsetree") {
+      void run(Source source) throws Exception {
+        parse(lexer(source), new ParseTreeBuilder("compilationUnit"));
+      }
+    },
+    new Benchmark("parser-declarationtree") {
+      void run(Source source) throws Exception {
+        parse(lexer(source), new DeclarationTreeBuilder("compilationUnit", null));
+      }
+    },
+    new Benchmark("parser-declarations") {
+      void run(Source source) throws Exception {
+        parse(new DeclarationTokenSource(lexer(source)),
+            new DeclarationTreeBuilder("compilationUnit", null));
+      }
+    },
+    new Benchmark("infobuilder") {
+      void run(Source source) {
+        InfoBuilder.setDeclarationsOnly(false);
+        new InfoBuilder(source.fileName).parseFile();
+      }
+    },
+    new Benchmark("infobuilder-declarations") {
+      void run(Source source) {
+        InfoBuilder.setDeclarationsOnly(true);
+        new InfoBuilder(source.fileName).parseFile();
+      }
+    },
+  };
+
+  public static void main(String[] args) throws Exception {
+    int warmup = 20;
+    int rounds = 20;
+    String only = null;
+    String threads = "1,2,4";
+    int copies = 1;
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-only".equals(args[i])) {
+        only = args[++i];
+      } else if ("-threads".equals(args[i])) {
+        threads = args[++i];
+      } else if ("-copies".equals(args[i])) {
+        copies = Integer.parseInt(args[++i]);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      paths.add(CORPUS);
+    }
+
+    if (copies > 1) {
+      File dir = copy(paths, copies);
+      paths.clear();
+      paths.add(dir.getPath());
+    }
+    List<Source> sources = new ArrayList<Source>();
+    for (String path : paths) {
+      addSources(new File(path), sources);
+    }
+    long tokens = 0;
+    for (Source source : sources) {
+      tokens += source.tokens;
+    }
+    System.out.println(sources.size() + " files, " + tokens + " tokens, " + warmup
+        + " warmup rounds, " + rounds + " measured rounds");
+    System.out.println(String.format("%-26s %12s %12s %14s %14s",
+        "benchmark", "ms/round", "files/s", "tokens/s", "bytes/file"));
+
+    for (Benchmark benchmark : BENCHMARKS) {
+      if (only != null && !only.equals(benchmark.name)) {
+        continue;
+      }
+
+      for (int i = 0; i < warmup; i++) {
+        round(benchmark, sources);
+      }
+
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        round(benchmark, sources);
+      }
+      long nanos = System.nanoTime() - start;
+      allocated = allocatedBytes() - allocated;
+
+      double seconds = nanos / 1e9;
+      long files = (long) sources.size() * rounds;
+      System.out.println(String.format("%-26s %12.2f %12.0f %14.0f %14s",
+          benchmark.name,
+          nanos / 1e6 / rounds,
+          files / seconds,
+          tokens * rounds / seconds,
+          allocated < 0 ? "n/a" : String.valueOf(allocated / files)));
+    }
+
+    for (int declarations = 0; declarations < 2; declarations++) {
+      String name = declarations == 0 ? "parsefiles" : "parsefiles-declarations";
+      if (only != null && !only.equals(name)) {
+        continue;
+      }
+      InfoBuilder.setDeclarationsOnly(declarations == 1);
+
+      for (String value : threads.split(",")) {
+        int count = Integer.parseInt(value);
+        for (int i = 0; i < warmup; i++) {
+          parseFiles(sources, count);
+        }
+
+        // only the calling thread's allocation can be counted
+        long allocated = count == 1 ? allocatedBytes() : -1;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+          parseFiles(sources, count);
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = allocated < 0 ? -1 : allocatedBytes() - allocated;
+
+        double seconds = nanos / 1e9;
+        long files = (long) sources.size() * rounds;
+        System.out.println(String.format("%-26s %12.2f %12.0f %14.0f %14s",
+            name + "/" + count,
+            nanos / 1e6 / rounds,
+            files / seconds,
+            tokens * rounds / seconds,
+            allocated < 0 ? "n/a" : String.valueOf(allocated / files)));
+      }
+    }
+    InfoBuilder.setDeclarationsOnly(false);
+  }
+
+  private static void parseFiles(List<Source> sources, int threads) {
+    List<InfoBuilder> builders = new ArrayList<InfoBuilder>(sources.size());
+    for (Source source : sources) {
+      builders.add(new InfoBuilder(source.fileName));
+    }
+    InfoBuilder.parseFiles(builders, threads);
+    InfoBuilder.Caches.clear();
+  }
+
+  private static void round(Benchmark benchmark, List<Source> sources) throws Exception {
+    for (Source source : sources) {
+      benchmark.run(source);
+    }
+    // InfoBuilder would otherwise find every class already there from the last round
+    InfoBuilder.Caches.clear();
+  }
+
+  private static void addSources(File file, List<Source> sources) throws IOException {
+    if (file.isDirectory()) {
+      File[] files = file.listFiles();
+      Arrays.sort(files);
+      for (File child : files) {
+        addSources(child, sources);
+      }
+    } else if (file.getName().endsWith(".java")) {
+      sources.add(new Source(file.getPath()));
+    }
+  }
+
+  /**
+   * Writes {@code copies} copies of the sources under {@code paths} to a temporary directory.
+   * The package of each copy has ".copy" and the number of the copy added to it, so that the
+   * classes of the copies are all different.
+   * @return the directory
+   */
+  private static File copy(List<String> paths, int copies) throws IOException {
+    File dir = File.createTempFile("parser-benchmark-", "");
+    dir.delete();
+    dir.mkdir();
+    dir.deleteOnExit();
+    for (int copy = 0; copy < copies; copy++) {
+      for (String path : paths) {
+        copy(new File(path), new File(dir, "copy" + copy), ".copy" + copy);
+      }
+    }
+    return dir;
+  }
+
+  private static void copy(File from, File to, String suffix) throws IOException {
+    if (from.isDirectory()) {
+      to.mkdirs();
+      to.deleteOnExit();
+      for (File child : from.listFiles()) {
+        copy(child, new File(to, child.getName()), suffix);
+      }
+    } else if (from.getName().endsWith(".java")) {
+      String text = new String(read(from.getPath()))
+          .replaceFirst("(?m)^package\\s+([\\w.]+)\\s*;", "package $1" + suffix + ";");
+      to.deleteOnExit();
+      Writer out = new OutputStreamWriter(new FileOutputStream(to), "UTF-8");
+      try {
+        out.write(text);
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  private static JavaLexer lexer(Source source) {
+    ANTLRStringStream input = new ANTLRStringStream(source.text, source.text.length);
+    input.name = source.fileName;
+    return new JavaLexer(input);
+  }
+
+  private static int countTokens(TokenSource tokens) {
+    int count = 0;
+    while (tokens.nextToken().getType() != Token.EOF) {
+      count++;
+    }
+    return count;
+  }
+
+  private static void parse(TokenSource tokens, DebugEventListener listener) throws Exception {
+    new JavaParser(new CommonTokenStream(tokens), listener).compilationUnit();
+  }
+
+  private static char[] read(String fileName) throws IOException {
+    StringBuilder text = new StringBuilder();
+    Reader in = new InputStreamReader(new FileInputStream(fileName), "UTF-8");
+    try {
+      char[] buffer = new char[8192];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        text.append(buffer, 0, count);
+      }
+    } finally {
+      in.close();
+    }
+    char[] chars = new char[text.length()];
+    text.getChars(0, chars.length, chars, 0);
+    return chars;
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.ClassInfo;
+import com.google.doclava.Doclava;
+import com.google.doclava.FieldInfo;
+import com.google.doclava.MethodInfo;
+import com.google.doclava.SinceTagger;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures {@link SinceTagger#tagAll} with 25 api levels, each a {@link SyntheticApi} with 20
+ * more classes and 4 more members per class than the one before, up to 500 classes of 100
+ * members, by default. The doc model tagged is the api of the last level.
+ * <p>
+ * Each round parses every level's file and tags a model that has no since tags yet, first on
+ * one thread and then on {@code -threads} threads, the number {@link Doclava#threads} is set to.
+ * Only the tagging is timed, not building the model. The tags of every class and member are
+ * checked against the level the synthetic api first has it in.
+ * <p>
+ * usage: SinceTaggerBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-levels &lt;levels&gt;] [-classes &lt;classes added per level&gt;]
+ * [-members &lt;members added per class per level&gt;] [-threads &lt;threads&gt;]
+ */
+public class SinceTaggerBenchmark {
+  public static void main(String[] args) throws Exception {
+    int warmup = 2;
+    int rounds = 3;
+    int levels = 25;
+    int classes = 20;
+    int members = 4;
+    int threads = 4;
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-levels".equals(args[i])) {
+        levels = Integer.parseInt(args[++i]);
+      } else if ("-classes".equals(args[i])) {
+        classes = Integer.parseInt(args[++i]);
+      } else if ("-members".equals(args[i])) {
+        members = Integer.parseInt(args[++i]);
+      } else if ("-threads".equals(args[i])) {
+        threads = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    File[] files = new File[levels];
+    long size = 0;
+    for (int level = 1; level <= levels; level++) {
+      files[level - 1] = SyntheticApi.write(level * classes, level * members);
+      size += files[level - 1].length();
+    }
+    ClassInfo[] docs = docs(levels, classes, members);
+    int total = 0;
+    for (ClassInfo cl : docs) {
+      total += 1 + cl.constructors().size() + cl.fields().size() + cl.methods().size();
+    }
+
+    tag(files, docs);
+    String error = check(docs, classes, members);
+    if (error != null) {
+      System.out.println(error);
+      System.exit(1);
+    }
+
+    System.out.println(levels + " levels, " + size + " bytes, " + docs.length + " classes and "
+        + total + " symbols tagged, " + warmup + " warmup rounds, " + rounds
+        + " measured rounds");
+    System.out.println(String.format("%-26s %12s %14s %14s",
+        "benchmark", "ms/round", "ms/level", "bytes/symbol"));
+
+    for (int benchmark = 0; benchmark < 2; benchmark++) {
+      Doclava.threads = benchmark == 0 ? 1 : threads;
+      for (int i = 0; i < warmup; i++) {
+        tag(files, docs(levels, classes, members));
+      }
+      long nanos = 0;
+      long allocated = 0;
+      for (int i = 0; i < rounds; i++) {
+        docs = docs(levels, classes, members);
+        // only the calling thread's allocation can be counted
+        long before = Doclava.threads == 1 ? allocatedBytes() : -1;
+        long start = System.nanoTime();
+        tag(files, docs);
+        nanos += System.nanoTime() - start;
+        allocated = before < 0 || allocated < 0 ? -1 : allocated + allocatedBytes() - before;
+      }
+      error = check(docs, classes, members);
+      if (error != null) {
+        System.out.println(error);
+        System.exit(1);
+      }
+      System.out.println(String.format("%-26s %12.2f %14.2f %14s",
+          "tagall -threads " + Doclava.threads,
+          nanos / 1e6 / rounds,
+          nanos / 1e6 / rounds / levels,
+          allocated < 0 ? "n/a" : String.valueOf(allocated / ((long) total * rounds))));
+    }
+  }
+
+  /**
+   * @return the classes of the api of the last level, with no since tags
+   */
+  private static ClassInfo[] docs(int levels, int classes, int members) throws Exception {
+    return SyntheticApi.classes(SyntheticApi.parse(levels * classes, levels * members));
+  }
+
+  private static void tag(File[] files, ClassInfo[] docs) {
+    SinceTagger tagger = new SinceTagger();
+    for (int i = 0; i < files.length; i++) {
+      tagger.addVersion(files[i].getPath(), String.valueOf(i + 1));
+    }
+    tagger.tagAll(docs);
+  }
+
+  /**
+   * @return a description of the first tag that is not the level its class or member was added
+   * in, or null if all are
+   */
+  private static String check(ClassInfo[] docs, int classes, int members) {
+    for (ClassInfo cl : docs) {
+      int c = index(cl.name());
+      String error = check(cl, cl.getSince(), level(c, classes, -1, members));
+      for (MethodInfo constructor : cl.constructors()) {
+        error = error != null ? error
+            : check(constructor, constructor.getSince(), level(c, classes, 0, members));
+      }
+      for (FieldInfo field : cl.fields()) {
+        error = error != null ? error
+            : check(field, field.getSince(), level(c, classes, index(field.name()), members));
+      }
+      for (MethodInfo method : cl.methods()) {
+        error = error != null ? error
+            : check(method, method.getSince(), level(c, classes, index(method.name()), members));
+      }
+      if (error != null) {
+        return error;
+      }
+    }
+    return null;
+  }
+
+  private static String check(Object symbol, String since, int level) {
+    if (!String.valueOf(level).equals(since)) {
+      return symbol + " is tagged since " + since + " instead of " + level;
+    }
+    return null;
+  }
+
+  /**
+   * @return the first level that has class {@code c} and, unless it is -1, member {@code m}
+   */
+  private static int level(int c, int classes, int m, int members) {
+    return Math.max(c / classes, m / members) + 1;
+  }
+
+  /** The index in the names of {@link SyntheticApi}, after their one-letter prefix. */
+  private static int index(String name) {
+    return Integer.parseInt(name.substring(1));
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.Doclava;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.DocumentationTool;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Checks the class files that -stubsclassjar writes against those javac compiles the -stubs
+ * sources of the same classes to. The samples have generic, nested, inner, enum and annotation
+ * classes; a client that uses all of them has to compile against both, and the compiler has to
+ * see the same declarations in both, constant values and annotations included.
+ */
+public class StubClassWriterTest extends TestCase {
+  private static final String SAMPLES = "test/doclava/sample/stubs";
+  private static final String PACKAGE = "doclava.sample.stubs";
+  private static final String CLIENT = "test/doclava/sample/StubsClient.java";
+
+  // javadoc runs the doclet once, for all the tests, as Doclava can only run once in a JVM
+  private static File sDir;
+  private static File sStubs;
+  private static File sStubsClassJar;
+
+  public static Test suite() {
+    return new TestSetup(new TestSuite(StubClassWriterTest.class)) {
+      @Override
+      protected void setUp() throws Exception {
+        writeStubs();
+      }
+
+      @Override
+      protected void tearDown() {
+        delete(sDir);
+      }
+    };
+  }
+
+  private static void writeStubs() throws Exception {
+    sDir = Files.createTempDirectory("stubclasswriter").toFile();
+    sStubs = new File(sDir, "stubs");
+    sStubsClassJar = new File(sDir, "stubs.jar");
+
+    DocumentationTool javadoc = ToolProvider.getSystemDocumentationTool();
+    StandardJavaFileManager files = javadoc.getStandardFileManager(null, null, null);
+    List<String> options = Arrays.asList("-quiet", "-nodocs", "-hide", "113",
+        "-stubpackages", PACKAGE, "-stubs", sStubs.getPath(),
+        "-stubsclassjar", sStubsClassJar.getPath());
+    assertTrue(javadoc.getTask(null, files, null, Doclava.class, options,
+        files.getJavaFileObjectsFromFiles(sources(new File(SAMPLES)))).call());
+    files.close();
+  }
+
+  public void testClientSeesSameDeclarationsAsInCompiledStubs() throws Exception {
+    File javacClasses = new File(sDir, "javac");
+    compile(sources(sStubs), null, javacClasses, null);
+
+    Describer fromStubs = new Describer();
+    compile(Collections.singletonList(new File(CLIENT)), javacClasses.getPath(),
+        new File(sDir, "client-javac"), fromStubs);
+    Describer fromStubsClassJar = new Describer();
+    compile(Collections.singletonList(new File(CLIENT)), sStubsClassJar.getPath(),
+        new File(sDir, "client-jar"), fromStubsClassJar);
+
+    assertTrue(fromStubs.toString().contains("CLASS [public] doclava.sample.stubs.Container"));
+    assertEquals(fromStubs.toString(), fromStubsClassJar.toString());
+  }
+
+  public void testStubClassesLoadAndThrow() throws Exception {
+    URLClassLoader loader =
+        new URLClassLoader(new URL[] { sStubsClassJar.toURI().toURL() }, null);
+    JarFile jar = new JarFile(sStubsClassJar);
+    try {
+      int count = 0;
+      for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+        String name = entries.nextElement().getName();
+        // initializing links the class, so every method is verified
+        Class<?> cl = Class.forName(
+            name.substring(0, name.length() - ".class".length()).replace('/', '.'), true, loader);
+        // the generic signatures are parsed when they are asked for; the annotations are not
+        // read, as those with enum values cannot be, the values() methods of the stubs throw
+        cl.getGenericSuperclass();
+        cl.getGenericInterfaces();
+        for (Field field : cl.getDeclaredFields()) {
+          field.toGenericString();
+        }
+        for (Constructor<?> constructor : cl.getDeclaredConstructors()) {
+          constructor.toGenericString();
+        }
+        for (Method method : cl.getDeclaredMethods()) {
+          method.toGenericString();
+        }
+        count++;
+      }
+      assertEquals(9, count);
+
+      try {
+        loader.loadClass(PACKAGE + ".Container").getConstructor().newInstance();
+        fail();
+      } catch (InvocationTargetException e) {
+        assertEquals("Stub!", e.getCause().getMessage());
+      }
+    } finally {
+      jar.close();
+      loader.close();
+    }
+  }
+
+  /**
+   * Compiles {@code sources} against {@code classPath}, if it is not null, to {@code out},
+   * running {@code processor} if it is not null, and fails if there are errors.
+   */
+  private static void compile(List<File> sources, String classPath, File out,
+      AbstractProcessor processor) throws Exception {
+    out.mkdirs();
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    StandardJavaFileManager files = javac.getStandardFileManager(null, null, null);
+    List<String> options = new ArrayList<String>(Arrays.asList("-d", out.getPath(), "-nowarn"));
+    if (classPath != null) {
+      options.add("-classpath");
+      options.add(classPath);
+    }
+    JavaCompiler.CompilationTask task = javac.getTask(null, files, diagnostics, options, null,
+        files.getJavaFileObjectsFromFiles(sources));
+    if (processor != null) {
+      task.setProcessors(Collections.singletonList(processor));
+    }
+    boolean success = task.call();
+    files.close();
+
+    StringBuilder errors = new StringBuilder();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors.append(diagnostic).append('\n');
+      }
+    }
+    assertEquals("", errors.toString());
+    assertTrue(success);
+  }
+
+  /**
+   * Describes the non-private declarations of {@link #PACKAGE} as the compiler sees them, in an
+   * order that does not depend on the order of the class files.
+   */
+  @SupportedAnnotationTypes("*")
+  private static class Describer extends AbstractProcessor {
+    private final StringBuilder mDescription = new StringBuilder();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+      if (mDescription.length() == 0) {
+        describe(processingEnv.getElementUtils().getPackageElement(PACKAGE), "");
+      }
+      return false;
+    }
+
+    private void describe(Element element, String indent) {
+      mDescription.append(indent).append(element.getKind()).append(' ')
+          .append(element.getModifiers()).append(' ').append(element).append('\n');
+      indent += "  ";
+      List<String> annotations = new ArrayList<String>();
+      for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+        annotations.add(annotation.toString());
+      }
+      Collections.sort(annotations);
+      for (String annotation : annotations) {
+        mDescription.append(indent).append(annotation).append('\n');
+      }
+
+      if (element instanceof TypeElement) {
+        TypeElement type = (TypeElement) element;
+        describeTypeParameters(type.getTypeParameters(), indent);
+        mDescription.append(indent).append("extends ").append(type.getSuperclass()).append('\n');
+        mDescription.append(indent).append("implements ").append(type.getInterfaces())
+            .append('\n');
+      } else if (element instanceof ExecutableElement) {
+        ExecutableElement method = (ExecutableElement) element;
+        describeTypeParameters(method.getTypeParameters(), indent);
+        mDescription.append(indent).append("returns ").append(method.getReturnType())
+            .append('\n');
+        mDescription.append(indent).append("throws ").append(method.getThrownTypes())
+            .append('\n');
+        if (method.isVarArgs()) {
+          mDescription.append(indent).append("varargs\n");
+        }
+        AnnotationValue defaultValue = method.getDefaultValue();
+        if (defaultValue != null) {
+          mDescription.append(indent).append("default ").append(defaultValue).append('\n');
+        }
+      } else if (element instanceof VariableElement) {
+        VariableElement field = (VariableElement) element;
+        mDescription.append(indent).append("type ").append(field.asType()).append('\n');
+        Object value = field.getConstantValue();
+        if (value != null) {
+          mDescription.append(indent).append("value ")
+              .append(processingEnv.getElementUtils().getConstantExpression(value)).append('\n');
+        }
+      }
+
+      TreeMap<String, Element> members = new TreeMap<String, Element>();
+      for (Element member : element.getEnclosedElements()) {
+        // javac compiles the initializers of the stub sources to a <clinit> method
+        if (!member.getModifiers().contains(Modifier.PRIVATE)
+            && member.getKind() != ElementKind.STATIC_INIT) {
+          members.put(member.getKind() + " " + member, member);
+        }
+      }
+      for (Element member : members.values()) {
+        describe(member, indent);
+      }
+    }
+
+    private void describeTypeParameters(List<? extends TypeParameterElement> parameters,
+        String indent) {
+      for (TypeParameterElement parameter : parameters) {
+        mDescription.append(indent).append("<").append(parameter).append(" extends ")
+            .append(parameter.getBounds()).append(">\n");
+      }
+    }
+
+    @Override
+    public String toString() {
+      return mDescription.toString();
+    }
+  }
+
+  private static List<File> sources(File dir) {
+    List<File> sources = new ArrayList<File>();
+    File[] children = dir.listFiles();
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        sources.addAll(sources(child));
+      } else if (child.getName().endsWith(".java")) {
+        sources.add(child);
+      }
+    }
+    return sources;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
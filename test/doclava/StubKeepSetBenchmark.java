@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.ClassInfo;
+import com.google.doclava.Stubs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+
+/**
+ * Measures {@link Stubs#cantStripThis}, which finds every class the stubs need, on hierarchies
+ * of 10, 1,000 and 10,000 classes by default. Each is a {@link SyntheticApi} whose classes all
+ * extend the one before, so keeping the last class keeps the whole chain, as deep as the
+ * hierarchy; a recursive walk needs a stack frame or more for each of those classes.
+ * <p>
+ * Each row reports the time per round and the time and bytes allocated per class kept. The
+ * number of classes kept is checked to be the depth of the hierarchy.
+ * <p>
+ * usage: StubKeepSetBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-depths &lt;depth,...&gt;] [-members &lt;members per class&gt;]
+ */
+public class StubKeepSetBenchmark {
+  public static void main(String[] args) throws Exception {
+    int warmup = 20;
+    int rounds = 20;
+    String depths = "10,1000,10000";
+    int members = 10;
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-depths".equals(args[i])) {
+        depths = args[++i];
+      } else if ("-members".equals(args[i])) {
+        members = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    System.out.println(members + " members per class, " + warmup + " warmup rounds, " + rounds
+        + " measured rounds");
+    System.out.println(String.format("%-26s %12s %14s %14s",
+        "benchmark", "ms/round", "ns/class", "bytes/class"));
+
+    String[] values = depths.split(",");
+    ClassInfo[] deepest = new ClassInfo[values.length];
+    int[] kept = new int[values.length];
+    for (int d = 0; d < values.length; d++) {
+      int depth = Integer.parseInt(values[d]);
+      ClassInfo[] classes = SyntheticApi.classes(SyntheticApi.parse(depth, members, depth));
+      deepest[d] = classes[classes.length - 1];
+      kept[d] = keep(deepest[d]);
+      if (kept[d] < depth) {
+        System.out.println("only " + kept[d] + " of the " + depth + " classes were kept");
+        System.exit(1);
+      }
+    }
+
+    // every depth is warmed up before any is measured, so the first is not measured colder
+    for (int d = 0; d < values.length; d++) {
+      for (int i = 0; i < warmup; i++) {
+        keep(deepest[d]);
+      }
+    }
+    for (int d = 0; d < values.length; d++) {
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        keep(deepest[d]);
+      }
+      long nanos = System.nanoTime() - start;
+      allocated = allocatedBytes() - allocated;
+      long total = (long) kept[d] * rounds;
+      System.out.println(String.format("%-26s %12.2f %14.0f %14s",
+          "depth " + values[d],
+          nanos / 1e6 / rounds,
+          (double) nanos / total,
+          allocated < 0 ? "n/a" : String.valueOf(allocated / total)));
+    }
+  }
+
+  /**
+   * @return the number of classes kept for the stubs of {@code cl}
+   */
+  private static int keep(ClassInfo cl) {
+    HashSet<ClassInfo> notStrippable = new HashSet<ClassInfo>();
+    Stubs.cantStripThis(cl, notStrippable, "0:0");
+    return notStrippable.size();
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
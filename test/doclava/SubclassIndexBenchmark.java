@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.ClassInfo;
+import com.google.doclava.SubclassIndex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.TreeMap;
+
+/**
+ * Measures finding the known subclasses of every class, as each class page lists them, on a
+ * {@link SyntheticApi} of 20,000 classes by default.
+ * <p>
+ * "index" builds a {@link SubclassIndex} and looks up the direct and indirect subclasses of every
+ * class. "scan" is how each page used to find them, walking every class and asking whether it
+ * derives from the class of the page; that is quadratic in the number of classes, so it is run
+ * for the first {@code -pages} classes only and the time for all of them is projected from it.
+ * Both fill the same sorted maps the page does, and their results are checked to be the same.
+ * <p>
+ * usage: SubclassIndexBenchmark [-warmup &lt;rounds&gt;] [-rounds &lt;rounds&gt;]
+ * [-classes &lt;classes&gt;] [-pages &lt;pages scanned&gt;]
+ */
+public class SubclassIndexBenchmark {
+  public static void main(String[] args) throws Exception {
+    int warmup = 5;
+    int rounds = 5;
+    int classes = 20000;
+    int pages = 200;
+    for (int i = 0; i < args.length; i++) {
+      if ("-warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-rounds".equals(args[i])) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if ("-classes".equals(args[i])) {
+        classes = Integer.parseInt(args[++i]);
+      } else if ("-pages".equals(args[i])) {
+        pages = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+
+    ClassInfo[] all = SyntheticApi.classes(SyntheticApi.parse(classes, 1));
+    pages = Math.min(pages, all.length);
+    if (!index(all, pages).equals(scan(all, pages))) {
+      System.out.println("the index and the scan found different subclasses");
+      System.exit(1);
+    }
+
+    System.out.println(all.length + " classes, " + pages + " pages scanned, " + warmup
+        + " warmup rounds, " + rounds + " measured rounds");
+    System.out.println(String.format("%-26s %12s %14s %14s",
+        "benchmark", "ms/round", "ms/all pages", "bytes/page"));
+
+    for (int i = 0; i < warmup; i++) {
+      index(all, all.length);
+    }
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      index(all, all.length);
+    }
+    long nanos = System.nanoTime() - start;
+    allocated = allocatedBytes() - allocated;
+    report("index", nanos, rounds, all.length, all.length, allocated);
+
+    for (int i = 0; i < warmup; i++) {
+      scan(all, pages);
+    }
+    allocated = allocatedBytes();
+    start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      scan(all, pages);
+    }
+    nanos = System.nanoTime() - start;
+    allocated = allocatedBytes() - allocated;
+    report("scan", nanos, rounds, pages, all.length, allocated);
+  }
+
+  /**
+   * Builds the index of {@code all} and lists the subclasses of the first {@code pages} classes.
+   */
+  private static String index(ClassInfo[] all, int pages) {
+    SubclassIndex index = new SubclassIndex(all);
+    StringBuilder result = new StringBuilder();
+    for (int p = 0; p < pages; p++) {
+      TreeMap<String, ClassInfo> direct = new TreeMap<String, ClassInfo>();
+      TreeMap<String, ClassInfo> indirect = new TreeMap<String, ClassInfo>();
+      for (ClassInfo cl : index.directSubclasses(all[p])) {
+        direct.put(cl.name(), cl);
+      }
+      for (ClassInfo cl : index.indirectSubclasses(all[p])) {
+        indirect.put(cl.name(), cl);
+      }
+      append(result, direct, indirect);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Lists the subclasses of the first {@code pages} classes of {@code all} by walking all of them
+   * for each.
+   */
+  private static String scan(ClassInfo[] all, int pages) {
+    StringBuilder result = new StringBuilder();
+    for (int p = 0; p < pages; p++) {
+      TreeMap<String, ClassInfo> direct = new TreeMap<String, ClassInfo>();
+      TreeMap<String, ClassInfo> indirect = new TreeMap<String, ClassInfo>();
+      for (ClassInfo cl : all) {
+        if (cl.superclass() != null && cl.superclass().equals(all[p])) {
+          direct.put(cl.name(), cl);
+        } else if (cl.isDerivedFrom(all[p])) {
+          indirect.put(cl.name(), cl);
+        }
+      }
+      append(result, direct, indirect);
+    }
+    return result.toString();
+  }
+
+  private static void append(StringBuilder result, TreeMap<String, ClassInfo> direct,
+      TreeMap<String, ClassInfo> indirect) {
+    result.append(direct.keySet()).append(' ').append(indirect.keySet()).append('\n');
+  }
+
+  private static void report(String name, long nanos, int rounds, int pages, int allPages,
+      long allocated) {
+    double ms = nanos / 1e6 / rounds;
+    System.out.println(String.format("%-26s %12.2f %14.2f %14s",
+        name,
+        ms,
+        ms * allPages / pages,
+        allocated < 0 ? "n/a" : String.valueOf(allocated / ((long) pages * rounds))));
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.ClassInfo;
+import com.google.doclava.PackageInfo;
+import com.google.doclava.apicheck.ApiCheck;
+import com.google.doclava.apicheck.ApiInfo;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Synthetic api files, in the format of api.txt, for the benchmarks that need a model far larger
+ * than the samples; apicheck parses them into the classes the rest of doclava works on.
+ * <p>
+ * The same sizes always give the same text, written as {@link com.google.doclava.Stubs#writeApi}
+ * would write it, so writing the parsed api gives the text back. A larger api has every class
+ * and member of a smaller one, as the api of each level has those of the levels before it.
+ */
+class SyntheticApi {
+  private static final int CLASSES_PER_PACKAGE = 50;
+  /** Every class but the first of each run of this many extends the one before it. */
+  private static final int HIERARCHY_DEPTH = 10;
+
+  /**
+   * Returns the text of an api with {@code classes} classes of {@code members} members each: a
+   * constructor, then as many methods as fields.
+   */
+  static String text(int classes, int members) {
+    return text(classes, members, HIERARCHY_DEPTH);
+  }
+
+  /**
+   * Returns {@link #text(int, int)} with the classes in chains of {@code depth} classes, each
+   * extending the one before it, instead of chains of 10.
+   */
+  static String text(int classes, int members, int depth) {
+    StringBuilder text = new StringBuilder();
+    for (int c = 0; c < classes; c++) {
+      if (c % CLASSES_PER_PACKAGE == 0) {
+        if (c > 0) {
+          text.append("}\n\n");
+        }
+        text.append("package ").append(packageName(c)).append(" {\n\n");
+      }
+      text.append("  public class ").append(className(c));
+      if (c % depth != 0) {
+        text.append(" extends ").append(packageName(c - 1)).append('.').append(className(c - 1));
+      }
+      text.append(" {\n");
+      if (members > 0) {
+        text.append("    ctor public ").append(className(c)).append("(int, java.lang.String);\n");
+      }
+      for (int m = 1; m < members; m += 2) {
+        appendMethod(text, m);
+      }
+      for (int m = 2; m < members; m += 2) {
+        text.append("    field public static final int ").append(memberName("F", m))
+            .append(" = ").append(m).append("; // 0x").append(Integer.toHexString(m)).append('\n');
+      }
+      text.append("  }\n\n");
+    }
+    if (classes > 0) {
+      text.append("}\n\n");
+    }
+    return text.toString();
+  }
+
+  /**
+   * Writes {@link #text} of the same sizes to a temporary file, deleted when the JVM exits.
+   */
+  static File write(int classes, int members) throws Exception {
+    return write(classes, members, HIERARCHY_DEPTH);
+  }
+
+  static File write(int classes, int members, int depth) throws Exception {
+    File file = File.createTempFile("synthetic-" + classes + "-" + members + "-", ".txt");
+    file.deleteOnExit();
+    Files.write(file.toPath(), text(classes, members, depth).getBytes("UTF-8"));
+    return file;
+  }
+
+  /**
+   * Parses {@link #text} of the same sizes, as apicheck parses api files.
+   */
+  static ApiInfo parse(int classes, int members) throws Exception {
+    return parse(classes, members, HIERARCHY_DEPTH);
+  }
+
+  static ApiInfo parse(int classes, int members, int depth) throws Exception {
+    return ApiCheck.parseApi(write(classes, members, depth).getPath());
+  }
+
+  /**
+   * @return the classes of {@code api}, sorted by qualified name, which is the order of
+   * {@link #text}
+   */
+  static ClassInfo[] classes(ApiInfo api) {
+    List<ClassInfo> classes = new ArrayList<ClassInfo>();
+    for (PackageInfo pkg : api.getPackages().values()) {
+      classes.addAll(pkg.allClasses().values());
+    }
+    Collections.sort(classes, ClassInfo.qualifiedComparator);
+    return classes.toArray(new ClassInfo[classes.size()]);
+  }
+
+  static String packageName(int c) {
+    return String.format("synthetic.p%03d", c / CLASSES_PER_PACKAGE);
+  }
+
+  static String className(int c) {
+    return String.format("C%05d", c);
+  }
+
+  private static void appendMethod(StringBuilder text, int m) {
+    String name = memberName("m", m);
+    switch (m % 3) {
+      case 0:
+        text.append("    method public int ").append(name).append("(int, long);\n");
+        break;
+      case 1:
+        text.append("    method public java.util.List<java.lang.String> ").append(name)
+            .append("(java.util.Map<java.lang.String, java.lang.Integer>)")
+            .append(" throws java.io.IOException;\n");
+        break;
+      default:
+        text.append("    method public static java.lang.String ").append(name)
+            .append("(java.lang.Object, java.lang.String[]);\n");
+        break;
+    }
+  }
+
+  private static String memberName(String prefix, int m) {
+    return String.format("%s%05d", prefix, m);
+  }
+}
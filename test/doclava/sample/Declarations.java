@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.sample;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class with something of everything that has braces, for the declaration only parse.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class Declarations<T extends Comparable<T>> implements Runnable {
+    /** An array initializer. */
+    public static final int[] VALUES = { 1, 2, 3 };
+
+    /** An anonymous class. */
+    public final Runnable mRunnable = new Runnable() {
+        public void run() {
+            if (VALUES.length > 0) { return; }
+        }
+    };
+
+    /** A class literal. */
+    public static final Class<?> TYPE = Declarations.class;
+
+    static {
+        int x = VALUES[0];
+        { x++; }
+    }
+
+    {
+        String brace = "}";
+        char c = '{';
+        // }
+    }
+
+    /**
+     * A constructor.
+     * @param value the value
+     */
+    public Declarations(T value) {
+        this();
+    }
+
+    private Declarations() {
+        super();
+    }
+
+    /**
+     * A generic method.
+     */
+    public <E extends Exception> List<T> list(T... values) throws IOException, E {
+        List<T> list = new ArrayList<T>();
+        for (T value : values) {
+            list.add(value);
+        }
+        class Local {
+            void local() {}
+        }
+        return list;
+    }
+
+    public void run() {
+        synchronized (this) {
+            new Thread() { public void run() {} }.start();
+        }
+    }
+
+    public abstract static class Inner implements Comparable<Inner> {
+        /** An abstract method. */
+        public abstract void inner();
+
+        public int compareTo(Inner other) {
+            return 0;
+        }
+    }
+
+    /** An enum. */
+    public enum Kind {
+        /** The first kind. */
+        FIRST(1) {
+            @Override
+            public int value() { return 1; }
+        },
+        @Deprecated
+        SECOND(2);
+
+        private final int mValue;
+
+        Kind(int value) {
+            mValue = value;
+        }
+
+        public int value() {
+            return mValue;
+        }
+    }
+
+    /** An annotation. */
+    public @interface Note {
+        String[] names() default { "a", "b" };
+        Class<?> type() default Object.class;
+        int value();
+    }
+
+    /** An interface. */
+    public interface Callback {
+        int LIMIT = 10;
+        void call(@Deprecated Object value);
+    }
+}
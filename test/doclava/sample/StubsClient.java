@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample;
+
+import doclava.sample.stubs.Container;
+import doclava.sample.stubs.Level;
+import doclava.sample.stubs.Marker;
+import doclava.sample.stubs.Source;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled by StubClassWriterTest against the stubs of doclava.sample.stubs, both the class
+ * files of -stubsclassjar and what javac makes of the -stubs sources: it uses each kind of
+ * declaration they have, the constants where only constants are allowed.
+ */
+@Marker(value = Container.NAME, codes = { Container.COUNT, Marker.VERSION }, level = Level.HIGH,
+    type = StubsClient.class)
+public class StubsClient implements Source<String>, Container.Visitor<Integer> {
+  public static final String CONSTANTS = Container.NAME + Container.CHAR + Container.ENABLED
+      + Container.RATIO + Container.HALF + Container.BYTE + Container.BIG;
+
+  public String next() throws IOException {
+    return Source.DEFAULT;
+  }
+
+  public Integer visit(Container<?> container, Container.Entry<String, Integer> entry) {
+    return entry.getValue() + DEPTH + container.size();
+  }
+
+  static int code(int value) {
+    switch (value) {
+      case Container.COUNT:
+        return 0;
+      case Container.CHAR:
+        return 1;
+      case Container.SHORT:
+        return 2;
+      case Marker.VERSION:
+        return 3;
+      default:
+        return -1;
+    }
+  }
+
+  static int weigh(Level level) {
+    switch (level) {
+      case LOW:
+        return 0;
+      case MEDIUM:
+        return level.weight;
+      default:
+        return level.isHigh() ? 2 : Level.heaviest(level, Level.LOW).ordinal();
+    }
+  }
+
+  static <T extends Comparable<? super T> & java.io.Serializable> T read(Container<T> container)
+      throws IOException {
+    Container<T>.Cursor cursor = container.new Cursor(0);
+    Container<T>.Cursor.Mark mark = cursor.new Mark();
+    List<Object> sink = new ArrayList<Object>();
+    T first = container.<T>first(null, sink);
+    container.release();
+    int[][] grid = Container.grid(Container.BIG);
+    return first != null ? first : cursor.current();
+  }
+
+  static class Strings extends Container<String> {
+    Strings() throws IOException {
+      super("a", "b", "c");
+      mCount = items.length;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.sample.benchmark;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Part of the parser benchmark corpus: annotation types, and annotations with single, named,
+ * array and nested values on every kind of declaration.
+ */
+@AnnotationHeavy.Info(name = "heavy", tags = { "a", "b", "c" }, level = AnnotationHeavy.Level.HIGH)
+@SuppressWarnings({ "unchecked", "rawtypes", "deprecation" })
+public class AnnotationHeavy {
+    public enum Level { LOW, MEDIUM, HIGH }
+
+    @Documented
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD, ElementType.FIELD,
+            ElementType.PARAMETER })
+    public @interface Info {
+        String name() default "";
+        String[] tags() default {};
+        Level level() default Level.LOW;
+        Class<?>[] types() default { Object.class };
+        Nested nested() default @Nested(value = 1, names = { "x" });
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Nested {
+        int value();
+        String[] names() default { "a", "b" };
+    }
+
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Marker {
+    }
+
+    @Info(name = "field", level = Level.MEDIUM)
+    @Deprecated
+    public static final int CONSTANT = 0x7f;
+
+    @Info(tags = "single")
+    @Marker
+    protected transient volatile String mValue;
+
+    @Info(name = "constructor", nested = @Nested(2))
+    public AnnotationHeavy(@Info(name = "value") @Marker String value) {
+        mValue = value;
+    }
+
+    @Override
+    @Info(name = "toString", types = { String.class, Integer.class }, level = Level.HIGH)
+    public String toString() {
+        return mValue;
+    }
+
+    @Deprecated
+    @Marker
+    @Info(name = "method", tags = { "one", "two", "three", "four", "five", "six", "seven" })
+    public synchronized <T> T method(@Marker final T first,
+            @Info(name = "second") @Deprecated Object second) {
+        @SuppressWarnings("unused")
+        Object local = second;
+        return first;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Info(nested = @Nested(value = 3, names = { "p", "q", "r" }))
+    public static <T> T cast(@Marker Object value) {
+        return (T) value;
+    }
+
+    @Info(name = "inner", level = Level.LOW)
+    @Marker
+    public static class Inner {
+        @Info public int a;
+        @Info @Marker public int b;
+        @Info(name = "c") @Marker @Deprecated public int c;
+
+        @Info(name = "run")
+        public void run(@Marker int x, @Marker int y, @Info(name = "z") int z) {
+        }
+    }
+
+    @Info(name = "kind")
+    public enum Kind {
+        @Info(name = "first") @Deprecated FIRST,
+        @Info(name = "second") @Marker SECOND,
+        @Info(name = "third", tags = { "t" }) THIRD
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample.benchmark;
+
+import java.util.List;
+
+/**
+ * Part of the parser benchmark corpus: array dimensions written after the names of fields and
+ * parameters, alone and added to those of the type.
+ */
+public class CStyleArrays<T> {
+    public T mItems[];
+    public int mCounts[], mTotal, mGrid[][];
+    public String[] mRows[] = new String[0][], mColumns;
+    public static final int SIZES[] = { 1, 2, 3 };
+
+    public static void main(String args[]) {
+    }
+
+    public void fill(T items[], int from, List<T>[] lists[]) {
+    }
+
+    public int sum(int values[][], long... others) {
+        return 0;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.sample.benchmark;
+
+import static java.lang.Character.MAX_RADIX;
+
+import doclava.sample.benchmark.internal.Flags;
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+/**
+ * Part of the parser benchmark corpus: constants worked out from expressions, names of other
+ * constants and casts, nested type names, varargs and overrides of generic methods.
+ */
+public class ConstantsHeavy extends AbstractMap<String, Integer> implements Flags {
+    public static final int SHIFTED = 1 << 3;
+    public static final int MASK = ~0 >>> 4 & 0xff00;
+    public static final long BIG = 1L << 40 | SHIFTED;
+    public static final int MIN = -2147483648;
+    public static final long MIN_LONG = -9223372036854775808L;
+    public static final int LIMIT = Integer.MAX_VALUE - SHIFTED * 2;
+    public static final int QUALIFIED = java.lang.Short.MAX_VALUE % 1000;
+    public static final int RADIX = MAX_RADIX / 2;
+    public static final int INHERITED = VISIBLE | CACHED;
+    public static final int FORWARD = ConstantsHeavy.LATER + 1;
+    public static final int LATER = (SHIFTED > 4) ? 100 : 200;
+    public static final byte BYTE = (byte) 0x1ff;
+    public static final short SHORT = (short) (LIMIT >> 8);
+    public static final char CHAR = 'a' + 2;
+    public static final char NEXT = (char) (CHAR + 1);
+    public static final float RATIO = 1 / 3f;
+    public static final double HALF = 1.0 / 2;
+    public static final double HEX = 0x1.8p1;
+    public static final boolean ENABLED = SHIFTED > 4 && !false;
+    public static final String NAME = "constants" + '-' + CHAR + SHIFTED;
+    public static final String CAST = (String) "cast";
+    public static final String ESCAPED = "tab\tquote\"\u00e9\101";
+    public static final int OUTER = Inner.DEPTH * 2;
+    public static final Integer BOXED = 1;
+    public static final int CALLED = Integer.parseInt("1");
+    public static final int DIVIDED = 1 / 0;
+    public final int instance = SHIFTED;
+    public static final int[] ARRAY = { 1, 2 };
+
+    public static class Inner {
+        public static final int DEPTH = SHIFTED + LATER;
+    }
+
+    @Override
+    public java.util.Set<Map.Entry<String, Integer>> entrySet() {
+        return null;
+    }
+
+    @Override
+    public Integer put(String key, Integer value) {
+        return value;
+    }
+
+    public Map.Entry<String, Integer> first(Map.Entry<String, Integer>... entries) {
+        return entries.length > 0 ? entries[0] : null;
+    }
+
+    public static int sum(int... values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
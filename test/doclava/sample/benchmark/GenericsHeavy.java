@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.sample.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Part of the parser benchmark corpus: nested type arguments, bounded type variables,
+ * wildcards and generic methods.
+ */
+public class GenericsHeavy<K extends Comparable<? super K>, V extends List<? extends K>>
+        implements Iterable<Map.Entry<K, V>> {
+    private final Map<K, Map<String, List<V>>> mTable = new HashMap<K, Map<String, List<V>>>();
+    private final Comparator<? super K> mComparator;
+
+    public GenericsHeavy(Comparator<? super K> comparator) {
+        mComparator = comparator;
+    }
+
+    public <T extends K> Map<T, List<? extends V>> select(Collection<? extends T> keys,
+            Map<? super T, ? extends V> values) {
+        Map<T, List<? extends V>> result = new HashMap<T, List<? extends V>>();
+        for (T key : keys) {
+            List<V> list = new ArrayList<V>();
+            V value = values.get(key);
+            if (value != null) {
+                list.add(value);
+            }
+            result.put(key, list);
+        }
+        return result;
+    }
+
+    public static <A extends Comparable<A>, B extends Map<A, ? extends List<A>>> A max(B map) {
+        A best = null;
+        for (Map.Entry<A, ? extends List<A>> entry : map.entrySet()) {
+            for (A candidate : entry.getValue()) {
+                if (best == null || candidate.compareTo(best) > 0) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    public <E extends Exception> void visit(Visitor<? super K, ? super V, E> visitor) throws E {
+        for (Map.Entry<K, Map<String, List<V>>> outer : mTable.entrySet()) {
+            for (Map.Entry<String, List<V>> inner : outer.getValue().entrySet()) {
+                for (V value : inner.getValue()) {
+                    visitor.visit(outer.getKey(), value);
+                }
+            }
+        }
+    }
+
+    public Iterator<Map.Entry<K, V>> iterator() {
+        final Iterator<Map.Entry<K, Map<String, List<V>>>> it = mTable.entrySet().iterator();
+        return new Iterator<Map.Entry<K, V>>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public Map.Entry<K, V> next() {
+                final Map.Entry<K, Map<String, List<V>>> next = it.next();
+                return new Map.Entry<K, V>() {
+                    public K getKey() {
+                        return next.getKey();
+                    }
+
+                    public V getValue() {
+                        List<V> values = next.getValue().values().iterator().next();
+                        return values.isEmpty() ? null : values.get(0);
+                    }
+
+                    public V setValue(V value) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            public void remove() {
+                it.remove();
+            }
+        };
+    }
+
+    public int compare(K a, K b) {
+        return mComparator != null ? mComparator.compare(a, b) : a.compareTo(b);
+    }
+
+    /**
+     * Visits the entries of a table.
+     */
+    public interface Visitor<K, V, E extends Exception> {
+        void visit(K key, V value) throws E;
+    }
+
+    public static class Node<T extends Node<T, U>, U extends Comparable<? super U>>
+            implements Comparable<Node<T, U>> {
+        private final List<T> mChildren = new ArrayList<T>();
+        private U mValue;
+
+        public List<? extends Node<T, U>> children() {
+            return mChildren;
+        }
+
+        public <R extends Collection<? super U>> R collect(R into) {
+            into.add(mValue);
+            for (T child : mChildren) {
+                child.collect(into);
+            }
+            return into;
+        }
+
+        public int compareTo(Node<T, U> other) {
+            return mValue.compareTo(other.mValue);
+        }
+    }
+}
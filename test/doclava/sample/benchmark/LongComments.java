@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.sample.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Part of the parser benchmark corpus: long javadoc comments with tags, html and code samples,
+ * as the public classes of a framework have them, in front of fairly little code.
+ * <p>
+ * A reader pulls characters from an underlying {@link Reader} and keeps track of the line and
+ * column of the next character, so that errors can point at the place in the input where they
+ * were found. Lines end at a line feed, a carriage return, or a carriage return followed by a
+ * line feed; the last line need not end at all. Columns count characters, not code points, so a
+ * supplementary character takes two columns.
+ * <p>
+ * Typical use looks like this:
+ * <pre>
+ * LongComments reader = new LongComments(new StringReader(text));
+ * int c;
+ * while ((c = reader.read()) != -1) {
+ *     if (c == '{') {
+ *         depth++;
+ *     } else if (c == '}' &amp;&amp; --depth &lt; 0) {
+ *         throw new IOException("unbalanced brace at " + reader.position());
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * This class is not thread safe. Instances are cheap, so each thread that reads should create
+ * its own, and an instance should not be shared between threads without synchronization.
+ *
+ * @see java.io.LineNumberReader
+ * @see java.io.PushbackReader
+ * @since 1
+ */
+public class LongComments {
+    /**
+     * The character that {@link #read()} returns when the end of the input has been reached.
+     * This is the same value that {@link Reader#read()} uses, so code written against a
+     * plain reader keeps working when it is switched over to this class.
+     */
+    public static final int END = -1;
+
+    /*
+     * Implementation notes: the position is updated as characters are handed out, not as they
+     * are read from the underlying reader, so that a character that is pushed back does not
+     * move the position. A carriage return is remembered so that a following line feed does
+     * not count as a second line break.
+     */
+
+    private final Reader mReader;
+    private int mLine = 1;
+    private int mColumn = 1;
+    private boolean mAfterCarriageReturn;
+    private int mPushedBack = -2;
+
+    /**
+     * Creates a reader that reads from {@code reader}, starting at line 1, column 1.
+     * <p>
+     * The underlying reader is not buffered by this class; wrap it in a
+     * {@link java.io.BufferedReader} first if it reads from a file or a socket, as reading it a
+     * character at a time would otherwise be very slow.
+     *
+     * @param reader the reader to read from, which must not be {@code null}
+     * @throws NullPointerException if {@code reader} is {@code null}
+     */
+    public LongComments(Reader reader) {
+        if (reader == null) {
+            throw new NullPointerException("reader");
+        }
+        mReader = reader;
+    }
+
+    /**
+     * Reads the next character and moves the position past it.
+     * <p>
+     * A line feed, a carriage return, and a carriage return followed by a line feed all end a
+     * line: the position after them is column 1 of the next line. The characters themselves are
+     * returned unchanged, so a caller that cares about the exact line endings still sees them.
+     *
+     * @return the character read, as an integer in the range 0 to 65535, or {@link #END} if
+     *     the end of the input has been reached
+     * @throws IOException if the underlying reader throws one
+     */
+    public int read() throws IOException {
+        int c;
+        if (mPushedBack != -2) {
+            c = mPushedBack;
+            mPushedBack = -2;
+        } else {
+            c = mReader.read();
+        }
+        if (c == '\n') {
+            if (!mAfterCarriageReturn) {
+                mLine++;
+            }
+            mColumn = 1;
+        } else if (c == '\r') {
+            mLine++;
+            mColumn = 1;
+        } else if (c != END) {
+            mColumn++;
+        }
+        mAfterCarriageReturn = c == '\r';
+        return c;
+    }
+
+    /**
+     * Pushes back a character, so that the next call to {@link #read()} returns it again.
+     * Only one character can be pushed back at a time, and the position is not moved back;
+     * see the implementation notes above for why.
+     *
+     * @param c the character to push back, as returned by {@link #read()}
+     * @throws IllegalStateException if a character has been pushed back already and not read
+     *     again since
+     */
+    public void unread(int c) {
+        if (mPushedBack != -2) {
+            throw new IllegalStateException("already pushed back");
+        }
+        mPushedBack = c;
+    }
+
+    /**
+     * Returns the line of the next character to be read, counting from 1.
+     *
+     * @return the line number
+     */
+    public int line() {
+        return mLine;
+    }
+
+    /**
+     * Returns the column of the next character to be read, counting from 1. Tabs are not
+     * expanded: a tab moves the column on by one like any other character.
+     *
+     * @return the column number
+     */
+    public int column() {
+        return mColumn;
+    }
+
+    /**
+     * Returns the position of the next character as {@code line:column}, the way compilers
+     * print it, for use in error messages.
+     *
+     * @return the position, for example {@code "12:7"}
+     */
+    public String position() {
+        return mLine + ":" + mColumn;
+    }
+}
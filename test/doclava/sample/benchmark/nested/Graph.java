@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample.benchmark.nested;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Part of the parser benchmark corpus: a private nested class with the same simple name as a
+ * nested class of {@link Tree} and a class of the package, which is what Node means here.
+ */
+public class Graph {
+    private final List<Node> mNodes = new ArrayList<Node>();
+
+    public int size() {
+        return mNodes.size();
+    }
+
+    private static class Node {
+        Node mNext;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample.benchmark.nested;
+
+import java.util.List;
+
+/**
+ * Part of the parser benchmark corpus: members that refer to a nested class declared after
+ * them, which is what Node means here rather than the class of the package or the nested
+ * class of {@link Graph}.
+ */
+public abstract class Tree {
+    public abstract List<Node> nodes();
+
+    public abstract Node root();
+
+    public abstract doclava.sample.benchmark.nested.Node detach(Node node);
+
+    public static class Node {
+        public Node parent() {
+            return null;
+        }
+    }
+}
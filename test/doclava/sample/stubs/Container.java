@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample.stubs;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Part of the stub class file corpus: generic supertypes, bounds, wildcards and methods, nested,
+ * inner and local enum classes, constants, varargs and thrown exceptions.
+ */
+@Marker(value = Container.NAME, codes = { 1, Container.COUNT }, level = Level.LOW,
+    type = Map.Entry.class)
+public class Container<T extends Comparable<? super T> & Serializable> extends AbstractList<T>
+    implements Cloneable, Source<T> {
+  public static final int COUNT = 1 << 4;
+  public static final long BIG = 1L << 40;
+  public static final String NAME = "container\t\u00e9";
+  public static final char CHAR = 'c';
+  public static final boolean ENABLED = true;
+  public static final float RATIO = 0.5f;
+  public static final double HALF = 0.25;
+  public static final byte BYTE = -1;
+  public static final short SHORT = 300;
+  public static final Object NONE = null;
+
+  @Deprecated
+  protected transient volatile int mCount;
+  public T[] items;
+  public List<? extends Map<String, Integer>> maps;
+
+  public Container() {
+  }
+
+  protected Container(T first, T... rest) throws IOException {
+  }
+
+  @Override
+  public T get(int index) {
+    return null;
+  }
+
+  @Override
+  public int size() {
+    return 0;
+  }
+
+  @Override
+  public T next() throws IOException {
+    return null;
+  }
+
+  @Marker(level = Level.HIGH)
+  public synchronized <U extends T> U first(Class<U> type, List<? super U>... sinks)
+      throws IllegalStateException {
+    return null;
+  }
+
+  public static int[][] grid(long size) {
+    return null;
+  }
+
+  public final native void release();
+
+  /** A nested class, which has no outer instance. */
+  public static class Entry<K, V> implements Map.Entry<K, V> {
+    public Entry(K key) {
+    }
+
+    public K getKey() {
+      return null;
+    }
+
+    public V getValue() {
+      return null;
+    }
+
+    public V setValue(V value) {
+      return null;
+    }
+  }
+
+  /** An inner class, whose constructors take the outer instance first. */
+  public class Cursor {
+    public Cursor(int position) {
+    }
+
+    public T current() {
+      return null;
+    }
+
+    /** An inner class of an inner class. */
+    public class Mark {
+    }
+  }
+
+  /** A nested interface. */
+  public interface Visitor<R> {
+    int DEPTH = 3;
+
+    R visit(Container<?> container, Entry<String, R> entry);
+  }
+
+  /** A nested enum. */
+  protected enum State {
+    OPEN, CLOSED
+  }
+}
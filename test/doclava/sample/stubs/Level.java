@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample.stubs;
+
+/**
+ * Part of the stub class file corpus: an enum with a constructor, fields and constant bodies.
+ */
+public enum Level implements Comparable<Level> {
+  LOW(1),
+  @Deprecated
+  MEDIUM(5),
+  HIGH(10) {
+    @Override
+    public boolean isHigh() {
+      return true;
+    }
+  };
+
+  public final int weight;
+
+  Level(int weight) {
+    this.weight = weight;
+  }
+
+  public boolean isHigh() {
+    return false;
+  }
+
+  public static Level heaviest(Level... levels) {
+    return null;
+  }
+}
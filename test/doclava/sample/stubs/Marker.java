@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package doclava.sample.stubs;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Part of the stub class file corpus: an annotation type with defaults of each kind.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD, ElementType.FIELD })
+public @interface Marker {
+  int VERSION = 2;
+
+  String value() default "marker";
+
+  int[] codes() default {};
+
+  Level level() default Level.MEDIUM;
+
+  Class<?> type() default Object.class;
+
+  long limit() default Long.MAX_VALUE;
+
+  char separator() default ',';
+
+  double scale() default 1.5;
+
+  boolean strict() default false;
+
+  Retention retention() default @Retention(RetentionPolicy.CLASS);
+}